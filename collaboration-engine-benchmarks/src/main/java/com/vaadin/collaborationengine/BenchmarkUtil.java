@@ -0,0 +1,70 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.vaadin.collaborationengine.util.MockService;
+
+/**
+ * Helpers for running the engine headless in benchmarks, with a
+ * {@link LocalBackend} and an executor that runs tasks right away.
+ *
+ * @author Vaadin Ltd
+ */
+class BenchmarkUtil {
+
+    private BenchmarkUtil() {
+    }
+
+    static CollaborationEngine createEngine() {
+        return createEngine(new TestUtil.MockConfiguration());
+    }
+
+    static CollaborationEngine createEngine(
+            CollaborationEngineConfiguration configuration) {
+        return TestUtil.createTestCollaborationEngine(new MockService(),
+                configuration);
+    }
+
+    /*
+     * A topic that isn't connected to an event log, so that changes are
+     * applied to it directly.
+     */
+    static Topic createTopic(CollaborationEngine ce) {
+        return new Topic("topic", () -> ce, null);
+    }
+
+    static String createPut(String mapName, String key, JsonNode value) {
+        return JsonUtil.toString(
+                JsonUtil.createPutChange(mapName, key, null, value, null));
+    }
+
+    static String createInsert(String listName, JsonNode value) {
+        return createListChange(ListOperation.OperationType.INSERT_BEFORE,
+                listName, null, null, value);
+    }
+
+    static String createListChange(ListOperation.OperationType type,
+            String listName, UUID key, UUID positionKey, JsonNode value) {
+        return JsonUtil.toString(JsonUtil.createListChange(type, listName,
+                key != null ? key.toString() : null,
+                positionKey != null ? positionKey.toString() : null, value,
+                null, Collections.emptyMap(), Collections.emptyMap(), null));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the basic operations of {@link EntryList} for lists from a hundred
+ * to a million entries.
+ *
+ * @author Vaadin Ltd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryListBenchmark {
+
+    private static final StoredValue VALUE = StoredValue
+            .of(JsonUtil.toJsonNode("value"));
+
+    @Param({ "100", "1000", "10000", "100000", "1000000" })
+    private int size;
+
+    private EntryList list;
+
+    private UUID[] keys;
+
+    @Setup
+    public void setup() {
+        list = new EntryList();
+        keys = new UUID[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = UUID.randomUUID();
+            list.insertLast(keys[i], VALUE, keys[i], null);
+        }
+    }
+
+    /*
+     * The inserted entry is removed again to keep the size of the list
+     * constant.
+     */
+    @Benchmark
+    public Object insertAndRemove() {
+        UUID key = UUID.randomUUID();
+        Object entry = list.insertAfter(randomKey(), key, VALUE, key, null);
+        list.remove(key);
+        return entry;
+    }
+
+    @Benchmark
+    public Object move() {
+        UUID keyToFind = randomKey();
+        UUID keyToMove = randomKey();
+        if (keyToFind.equals(keyToMove)) {
+            return null;
+        }
+        return list.moveAfter(keyToFind, keyToMove, keyToMove, null);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long stream() {
+        return list.stream().count();
+    }
+
+    private UUID randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(size)];
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Measures the cost of delivering one map change to a number of subscribers
+ * that all read the new value as a {@link CollaborationMessage}, with and
+ * without sharing the decoded value between the subscribers.
+ *
+ * @author Vaadin Ltd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+
+    @Param({ "1", "10", "100", "500" })
+    private int subscribers;
+
+    @Param({ "false", "true" })
+    private boolean shared;
+
+    private CollaborationMap source;
+
+    private JsonNode value;
+
+    private Predicate<Class<?>> cachedTypes;
+
+    @Setup
+    public void setup() {
+        source = (CollaborationMap) Proxy.newProxyInstance(
+                CollaborationMap.class.getClassLoader(),
+                new Class<?>[] { CollaborationMap.class },
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException();
+                });
+        value = JsonUtil.toJsonNode(new CollaborationMessage(
+                new UserInfo("user", "User Name", "avatar.png"),
+                "Lorem ipsum dolor sit amet, consectetur adipiscing elit",
+                Instant.now()));
+        boolean share = shared;
+        cachedTypes = type -> share;
+    }
+
+    @Benchmark
+    public void deliverChange(Blackhole blackhole) {
+        MapChange change = new MapChange("messages", MapChangeType.PUT, "key",
+                null, value, null, UUID.randomUUID());
+        for (int i = 0; i < subscribers; i++) {
+            MapChangeEvent event = new MapChangeEvent(source, change,
+                    cachedTypes);
+            blackhole.consume(event.getValue(CollaborationMessage.class));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Compares encoding and decoding the built-in value types with
+ * {@link JsonUtil} against a plain object mapper that uses the default bean
+ * serialization, which is what {@link JsonUtil} did before it got cached
+ * readers and hand-written codecs.
+ *
+ * @author Vaadin Ltd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    @Param({ "UserInfo", "CollaborationMessage", "FocusedEditor",
+            "Duration" })
+    private String type;
+
+    private ObjectMapper beanMapper;
+
+    private Object value;
+
+    private JsonNode node;
+
+    @Setup
+    public void setup() {
+        beanMapper = new ObjectMapper();
+        beanMapper.registerModule(new JavaTimeModule());
+        beanMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS,
+                false);
+
+        UserInfo user = new UserInfo("user", "User Name", "avatar.png");
+        user.setAbbreviation("UN");
+        user.setColorIndex(3);
+        value = switch (type) {
+        case "UserInfo" -> user;
+        case "CollaborationMessage" -> new CollaborationMessage(user,
+                "Lorem ipsum dolor sit amet", Instant.now());
+        case "FocusedEditor" -> new FormManager.FocusedEditor(user, 2,
+                "firstName");
+        case "Duration" -> Duration.ofMinutes(5);
+        default -> throw new IllegalArgumentException(type);
+        };
+        node = JsonUtil.toJsonNode(value);
+    }
+
+    @Benchmark
+    public JsonNode encodeBeanMapper() {
+        return beanMapper.valueToTree(value);
+    }
+
+    @Benchmark
+    public JsonNode encodeJsonUtil() {
+        return JsonUtil.toJsonNode(value);
+    }
+
+    @Benchmark
+    public Object decodeBeanMapper() throws JsonProcessingException {
+        return beanMapper.treeToValue(node, value.getClass());
+    }
+
+    @Benchmark
+    public Object decodeJsonUtil() {
+        return JsonUtil.toInstance(node, value.getClass());
+    }
+
+    @Benchmark
+    public Object decodeTypeBeanMapper() throws Exception {
+        return beanMapper.readValue(beanMapper.treeAsTokens(node),
+                beanMapper.getTypeFactory().constructType(value.getClass()));
+    }
+
+    @Benchmark
+    public Object decodeTypeJsonUtil() {
+        return JsonUtil.toInstance(node, (Type) value.getClass());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Measures building the snapshot payload of a topic and loading a topic from
+ * a payload, for topics with the given number of map entries and list items.
+ *
+ * @author Vaadin Ltd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({ "100", "10000", "100000" })
+    private int entries;
+
+    private CollaborationEngine ce;
+
+    private Topic topic;
+
+    private String payload;
+
+    @Setup
+    public void setup() {
+        ce = BenchmarkUtil.createEngine();
+        topic = BenchmarkUtil.createTopic(ce);
+        for (int i = 0; i < entries; i++) {
+            JsonNode value = JsonUtil.toJsonNode("value" + i);
+            topic.applyChange(UUID.randomUUID(),
+                    BenchmarkUtil.createPut("map", "key" + i, value));
+            topic.applyChange(UUID.randomUUID(),
+                    BenchmarkUtil.createInsert("list", value));
+        }
+        payload = build();
+    }
+
+    @Benchmark
+    public String build() {
+        return JsonUtil.toString(Topic.Snapshot
+                .fromTopic(topic, UUID.randomUUID()).toObjectNode());
+    }
+
+    @Benchmark
+    public Object load() {
+        Topic loaded = BenchmarkUtil.createTopic(ce);
+        loaded.loadSnapshot(new Topic.Snapshot(JsonUtil.fromString(payload)));
+        return loaded;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Measures {@link Topic#applyChange(UUID, String)} for each type of change,
+ * including parsing the change payload like when it arrives from the event
+ * log.
+ *
+ * @author Vaadin Ltd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicBenchmark {
+
+    private static final JsonNode VALUE = JsonUtil.toJsonNode("value");
+
+    @Param({ "m-put", "m-replace", "m-timeout", "l-insert", "l-move",
+            "l-set" })
+    private String changeType;
+
+    private CollaborationEngine ce;
+
+    private Topic topic;
+
+    private String payload;
+
+    @Setup
+    public void setup() {
+        ce = BenchmarkUtil.createEngine();
+    }
+
+    /*
+     * Inserts keep adding items, so the topic is recreated to measure each
+     * iteration against a similar list.
+     */
+    @Setup(Level.Iteration)
+    public void setupTopic() {
+        topic = BenchmarkUtil.createTopic(ce);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        topic.applyChange(first, BenchmarkUtil.createInsert("list", VALUE));
+        topic.applyChange(second, BenchmarkUtil.createInsert("list", VALUE));
+        topic.applyChange(UUID.randomUUID(),
+                BenchmarkUtil.createPut("map", "key", VALUE));
+
+        payload = switch (changeType) {
+        case "m-put" -> BenchmarkUtil.createPut("map", "key", VALUE);
+        case "m-replace" -> JsonUtil.toString(
+                JsonUtil.createReplaceChange("map", "key", null, VALUE));
+        case "m-timeout" -> JsonUtil.toString(JsonUtil
+                .createMapTimeoutChange("map", Duration.ofMinutes(1)));
+        case "l-insert" -> BenchmarkUtil.createInsert("list", VALUE);
+        case "l-move" -> BenchmarkUtil.createListChange(
+                ListOperation.OperationType.MOVE_AFTER, "list", first, second,
+                null);
+        case "l-set" -> BenchmarkUtil.createListChange(
+                ListOperation.OperationType.SET, "list", first, null, VALUE);
+        default -> throw new IllegalArgumentException(changeType);
+        };
+    }
+
+    @Benchmark
+    public Object applyChange() {
+        // List inserts use the id as the key of the new item
+        return topic.applyChange(UUID.randomUUID(), payload);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vaadin.collaborationengine.util.MockConnectionContext;
+
+/**
+ * Measures how long it takes for a value put to a map to be delivered to all
+ * subscribers of the map, each with a topic connection of its own, through
+ * the local backend. Actions are run right away by the test connection
+ * contexts, so the result doesn't include any UI access.
+ *
+ * @author Vaadin Ltd
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicConnectionBenchmark {
+
+    @Param({ "1", "10", "100", "1000" })
+    private int subscribers;
+
+    private final List<TopicConnectionRegistration> registrations = new ArrayList<>();
+
+    private final LongAdder received = new LongAdder();
+
+    private CollaborationMap map;
+
+    private int counter;
+
+    @Setup
+    public void setup() {
+        CollaborationEngine ce = BenchmarkUtil.createEngine();
+        for (int i = 0; i < subscribers; i++) {
+            registrations.add(ce.openTopicConnection(
+                    MockConnectionContext.createEager(), "topic",
+                    new UserInfo("user" + i), connection -> {
+                        connection.getNamedMap("map").subscribe(event -> {
+                            if (event.getValue(String.class) != null) {
+                                received.increment();
+                            }
+                        });
+                        return null;
+                    }));
+        }
+        AtomicReference<CollaborationMap> writer = new AtomicReference<>();
+        registrations.add(ce.openTopicConnection(
+                MockConnectionContext.createEager(), "topic",
+                new UserInfo("writer"), connection -> {
+                    writer.set(connection.getNamedMap("map"));
+                    return null;
+                }));
+        map = writer.get();
+    }
+
+    @TearDown
+    public void tearDown() {
+        registrations.forEach(TopicConnectionRegistration::remove);
+        if (received.sum() == 0) {
+            throw new IllegalStateException("No changes were delivered");
+        }
+    }
+
+    @Benchmark
+    public Object put() {
+        return map.put("key", Integer.toString(counter++));
+    }
+}
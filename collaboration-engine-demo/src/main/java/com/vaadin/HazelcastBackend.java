@@ -47,23 +47,35 @@ public class HazelcastBackend extends Backend {
         }
     }
 
+    /*
+     * The offset of an event is the number of events that have been truncated
+     * from the log plus the index of the event in the list, which makes it
+     * possible to find an event by offset without scanning the list.
+     */
     private static class HazelcastEventLog implements EventLog {
+        private final String logId;
         private final IList<IdAndEvent> list;
+        private final IMap<String, Long> truncatedCounts;
 
-        private BiConsumer<UUID, String> eventConsumer;
+        private OffsetEventConsumer eventConsumer;
         private int nextEventIndex = 0;
+        private long truncatedCount;
 
         private UUID newerThan;
 
-        private HazelcastEventLog(IList<IdAndEvent> list) {
+        private HazelcastEventLog(String logId, IList<IdAndEvent> list,
+                IMap<String, Long> truncatedCounts) {
+            this.logId = logId;
             this.list = list;
+            this.truncatedCounts = truncatedCounts;
         }
 
         private synchronized void deliverEvents() {
             while (nextEventIndex < list.size()) {
+                long offset = truncatedCount + nextEventIndex;
                 IdAndEvent idAndEvent = list.get(nextEventIndex++);
                 if (this.newerThan == null) {
-                    eventConsumer.accept(idAndEvent.trackingId,
+                    eventConsumer.accept(offset, idAndEvent.trackingId,
                             idAndEvent.event);
                 } else {
                     if (idAndEvent.trackingId.equals(newerThan)) {
@@ -74,20 +86,45 @@ public class HazelcastBackend extends Backend {
         }
 
         private synchronized void handleRemoveItem() {
+            truncatedCount++;
             if (nextEventIndex > 0) {
                 nextEventIndex--;
             }
         }
 
+        private long getTruncatedCount() {
+            return truncatedCounts.getOrDefault(logId, 0L);
+        }
+
         @Override
-        public synchronized Registration subscribe(UUID newerThan,
+        public Registration subscribe(UUID newerThan,
                 BiConsumer<UUID, String> eventConsumer)
                 throws EventIdNotFoundException {
+            return subscribe(newerThan, NO_OFFSET, (offset, trackingId,
+                    event) -> eventConsumer.accept(trackingId, event));
+        }
+
+        @Override
+        public synchronized Registration subscribe(UUID newerThan,
+                long newerThanOffset, OffsetEventConsumer eventConsumer)
+                throws EventIdNotFoundException {
             if (this.eventConsumer != null) {
                 throw new IllegalStateException();
             }
 
-            if (newerThan != null) {
+            truncatedCount = getTruncatedCount();
+            nextEventIndex = 0;
+            UUID skipUntil = newerThan;
+            if (newerThan != null && newerThanOffset != NO_OFFSET) {
+                long index = newerThanOffset - truncatedCount;
+                if (index < 0 || index >= list.size() || !newerThan
+                        .equals(list.get((int) index).trackingId)) {
+                    throw new EventIdNotFoundException(
+                            "newerThan doesn't " + "exist in the log.");
+                }
+                nextEventIndex = (int) index + 1;
+                skipUntil = null;
+            } else if (newerThan != null) {
                 Optional<IdAndEvent> newerThanIdAndEvent = list.stream()
                         .filter(item -> newerThan.equals(item.trackingId))
                         .findFirst();
@@ -96,9 +133,8 @@ public class HazelcastBackend extends Backend {
                             "newerThan doesn't " + "exist in the log.");
                 }
             }
-            this.newerThan = newerThan;
+            this.newerThan = skipUntil;
             this.eventConsumer = eventConsumer;
-            nextEventIndex = 0;
 
             UUID registrationId = list
                     .addItemListener(new ItemListener<IdAndEvent>() {
@@ -129,6 +165,40 @@ public class HazelcastBackend extends Backend {
             list.add(new IdAndEvent(trackingId, event));
         }
 
+        @Override
+        public synchronized void truncate(UUID olderThan,
+                long olderThanOffset) {
+            if (olderThan == null || olderThanOffset == NO_OFFSET) {
+                truncate(olderThan);
+                return;
+            }
+            truncatedCounts.lock(logId);
+            try {
+                long index = olderThanOffset - getTruncatedCount();
+                if (index < 0 || index >= list.size() || !olderThan
+                        .equals(list.get((int) index).trackingId)) {
+                    // NOOP
+                    return;
+                }
+                removeFirst((int) index);
+            } finally {
+                truncatedCounts.unlock(logId);
+            }
+        }
+
+        /*
+         * The removed items are fetched and then removed in one call. The
+         * list compares items in their serialized form, and every event has
+         * a unique tracking id, so only the first items are removed.
+         */
+        private void removeFirst(int count) {
+            if (count == 0) {
+                return;
+            }
+            list.removeAll(list.subList(0, count));
+            truncatedCounts.put(logId, getTruncatedCount() + count);
+        }
+
         @Override
         public synchronized void truncate(UUID olderThan) {
             Predicate<IdAndEvent> filter = e -> true;
@@ -151,7 +221,12 @@ public class HazelcastBackend extends Backend {
                     }
                 };
             }
-            list.removeIf(filter);
+            truncatedCounts.lock(logId);
+            try {
+                removeFirst((int) list.stream().filter(filter).count());
+            } finally {
+                truncatedCounts.unlock(logId);
+            }
         }
     }
 
@@ -159,10 +234,14 @@ public class HazelcastBackend extends Backend {
 
     private final IMap<String, Snapshot> snapshots;
 
+    private final IMap<String, Long> truncatedCounts;
+
     public HazelcastBackend(HazelcastInstance hz) {
         this.hz = Objects.requireNonNull(hz);
         this.snapshots = hz
                 .getMap(HazelcastBackend.class.getName() + ".snapshots");
+        this.truncatedCounts = hz
+                .getMap(HazelcastBackend.class.getName() + ".truncated");
     }
 
     @Override
@@ -203,7 +282,8 @@ public class HazelcastBackend extends Backend {
 
     @Override
     public EventLog openEventLog(String topicId) {
-        return new HazelcastEventLog(hz.getList(topicId));
+        return new HazelcastEventLog(topicId, hz.getList(topicId),
+                truncatedCounts);
     }
 
     @Override
@@ -0,0 +1,588 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine.hazelcast;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hazelcast.cluster.InitialMembershipEvent;
+import com.hazelcast.cluster.InitialMembershipListener;
+import com.hazelcast.cluster.MembershipEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceNotActiveException;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.IMap;
+import com.hazelcast.ringbuffer.OverflowPolicy;
+import com.hazelcast.ringbuffer.ReadResultSet;
+import com.hazelcast.ringbuffer.Ringbuffer;
+import com.hazelcast.ringbuffer.StaleSequenceException;
+import com.vaadin.collaborationengine.Backend;
+import com.vaadin.collaborationengine.MembershipEvent.MembershipEventType;
+import com.vaadin.collaborationengine.MembershipListener;
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * A {@link Backend} implementation that uses Hazelcast to share topic data
+ * between the nodes of a cluster.
+ * <p>
+ * Each event log is stored in a Hazelcast {@link Ringbuffer} and the sequence
+ * of each event in the ringbuffer is used as the event offset. Subscribers read
+ * events in batches with a single blocking remote call per batch, and can
+ * resume directly from the offset stored in a topic snapshot. Snapshots are
+ * stored in an {@link IMap} and replaced atomically on the member that owns
+ * the snapshot entry.
+ * <p>
+ * The ringbuffers are named with the {@value #RINGBUFFER_PREFIX} prefix and
+ * the snapshot map is named {@value #SNAPSHOTS_MAP}, which can be used to
+ * configure them in the Hazelcast configuration. The ringbuffer capacity
+ * should be large enough to hold all events that are submitted between two
+ * topic snapshots. A subscriber that falls behind the capacity of the
+ * ringbuffer cannot continue, since the events it has not yet read are lost.
+ * Subscribers of {@link EventLog#publisher(UUID, long)} are signaled the
+ * {@link StaleSequenceException} in that case, which makes a topic load the
+ * latest snapshot and subscribe again from there.
+ * When connecting to the cluster as a Hazelcast client, this class must be
+ * available on the cluster members since it uses an entry processor to replace
+ * snapshots.
+ *
+ * @author Vaadin Ltd
+ */
+public class HazelcastBackend extends Backend {
+
+    /**
+     * The prefix of the names of the ringbuffers that store the event logs.
+     */
+    public static final String RINGBUFFER_PREFIX = "collaboration-engine.log.";
+
+    /**
+     * The name of the map that stores the snapshots.
+     */
+    public static final String SNAPSHOTS_MAP = "collaboration-engine.snapshots";
+
+    /**
+     * The name of the map that stores the oldest retained sequence of each
+     * truncated event log.
+     */
+    public static final String RETAINED_MAP = "collaboration-engine.retained";
+
+    static final int DEFAULT_READ_BATCH_SIZE = 100;
+
+    // The maximum number of items in one ringbuffer batch operation
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final long READ_RETRY_DELAY_MILLIS = 1000;
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(HazelcastBackend.class);
+
+    static class ReplaceSnapshotProcessor
+            implements EntryProcessor<String, Snapshot, Boolean> {
+        private final UUID expectedId;
+        private final UUID newId;
+        private final String payload;
+
+        ReplaceSnapshotProcessor(UUID expectedId, UUID newId,
+                String payload) {
+            this.expectedId = expectedId;
+            this.newId = newId;
+            this.payload = payload;
+        }
+
+        @Override
+        public Boolean process(Map.Entry<String, Snapshot> entry) {
+            Snapshot current = entry.getValue();
+            UUID currentId = current != null ? current.getId() : null;
+            if (!Objects.equals(expectedId, currentId)) {
+                return Boolean.FALSE;
+            }
+            entry.setValue(new Snapshot(newId, payload));
+            return Boolean.TRUE;
+        }
+    }
+
+    private class RingbufferEventLog implements EventLog {
+        private final String logId;
+        private final Ringbuffer<Event> ringbuffer;
+
+        private Subscription subscription;
+
+        private RingbufferEventLog(String logId) {
+            this.logId = logId;
+            this.ringbuffer = hz.getRingbuffer(RINGBUFFER_PREFIX + logId);
+        }
+
+        @Override
+        public void submitEvent(UUID trackingId, String eventPayload) {
+            ringbuffer.add(new Event(trackingId, eventPayload));
+        }
+
+        @Override
+        public void submitEvents(List<Event> events) {
+            for (int i = 0; i < events.size(); i += MAX_BATCH_SIZE) {
+                List<Event> batch = events.subList(i,
+                        Math.min(events.size(), i + MAX_BATCH_SIZE));
+                ringbuffer.addAllAsync(batch, OverflowPolicy.OVERWRITE)
+                        .toCompletableFuture().join();
+            }
+        }
+
+        @Override
+        public Registration subscribe(UUID newerThan,
+                BiConsumer<UUID, String> eventConsumer)
+                throws EventIdNotFoundException {
+            Objects.requireNonNull(eventConsumer);
+            return subscribe(newerThan, NO_OFFSET, (offset, trackingId,
+                    payload) -> eventConsumer.accept(trackingId, payload));
+        }
+
+        @Override
+        public synchronized Registration subscribe(UUID newerThan,
+                long newerThanOffset, OffsetEventConsumer eventConsumer)
+                throws EventIdNotFoundException {
+            Objects.requireNonNull(eventConsumer);
+            if (subscription != null) {
+                throw new IllegalStateException(
+                        "Already subscribed to " + logId);
+            }
+            long startSequence = getStartSequence(newerThan, newerThanOffset);
+
+            Subscription newSubscription = new Subscription(this,
+                    eventConsumer, error -> LOGGER.error("Events in " + logId
+                            + " were overwritten before they could be read."
+                            + " Increase the capacity of the ringbuffer "
+                            + RINGBUFFER_PREFIX + logId + ".", error));
+            subscription = newSubscription;
+            newSubscription.start(startSequence, Long.MAX_VALUE);
+
+            return () -> {
+                synchronized (this) {
+                    newSubscription.cancel();
+                    if (subscription == newSubscription) {
+                        subscription = null;
+                    }
+                }
+            };
+        }
+
+        /*
+         * Events are read from the ringbuffer only as they are requested, and
+         * overwritten events are signaled to the subscriber as an error.
+         */
+        @Override
+        public Flow.Publisher<OffsetEvent> publisher(UUID newerThan,
+                long newerThanOffset) {
+            return subscriber -> {
+                Objects.requireNonNull(subscriber);
+                Subscription newSubscription = new Subscription(this,
+                        (offset, trackingId, payload) -> subscriber.onNext(
+                                new OffsetEvent(offset, trackingId, payload)),
+                        subscriber::onError);
+                subscriber.onSubscribe(newSubscription);
+                long startSequence;
+                try {
+                    startSequence = getStartSequence(newerThan,
+                            newerThanOffset);
+                } catch (EventIdNotFoundException e) {
+                    newSubscription.cancel();
+                    subscriber.onError(e);
+                    return;
+                }
+                newSubscription.start(startSequence, 0);
+            };
+        }
+
+        private long getStartSequence(UUID newerThan, long newerThanOffset)
+                throws EventIdNotFoundException {
+            if (newerThan == null) {
+                return getHeadSequence();
+            }
+            long sequence = findSequence(newerThan, newerThanOffset);
+            if (sequence < 0) {
+                throw new EventIdNotFoundException(
+                        "newerThan doesn't exist in the log.");
+            }
+            return sequence + 1;
+        }
+
+        @Override
+        public void truncate(UUID olderThan) {
+            truncate(olderThan, NO_OFFSET);
+        }
+
+        @Override
+        public void truncate(UUID olderThan, long olderThanOffset) {
+            long sequence;
+            if (olderThan == null) {
+                sequence = ringbuffer.tailSequence() + 1;
+            } else {
+                sequence = findSequence(olderThan, olderThanOffset);
+                if (sequence < 0) {
+                    // NOOP
+                    return;
+                }
+            }
+            /*
+             * Events cannot be removed from a ringbuffer, they are overwritten
+             * once the capacity is reached. Instead the oldest retained
+             * sequence is stored so that subscribing from a truncated event
+             * fails like it would with any other backend.
+             */
+            retainedSequences.merge(logId, sequence, Math::max);
+        }
+
+        private long getHeadSequence() {
+            Long retained = retainedSequences.get(logId);
+            long head = ringbuffer.headSequence();
+            return retained != null ? Math.max(head, retained) : head;
+        }
+
+        /*
+         * Returns the sequence of the event with the given tracking id, or -1
+         * if the event is not in the retained part of the log. The offset is
+         * checked first so that the ringbuffer only needs to be scanned for
+         * callers that don't know the offset.
+         */
+        private long findSequence(UUID trackingId, long offset) {
+            long head = getHeadSequence();
+            long tail = ringbuffer.tailSequence();
+            if (offset != NO_OFFSET) {
+                if (offset < head || offset > tail) {
+                    return -1;
+                }
+                ReadResultSet<Event> result = readBatch(offset, 1);
+                return result.size() == 1 && trackingId
+                        .equals(result.get(0).getTrackingId()) ? offset : -1;
+            }
+            long sequence = head;
+            while (sequence <= tail) {
+                ReadResultSet<Event> result = readBatch(sequence,
+                        MAX_BATCH_SIZE);
+                for (int i = 0; i < result.size(); i++) {
+                    if (trackingId.equals(result.get(i).getTrackingId())) {
+                        return result.getSequence(i);
+                    }
+                }
+                if (result.readCount() == 0) {
+                    break;
+                }
+                sequence = result.getNextSequenceToReadFrom();
+            }
+            return -1;
+        }
+
+        private ReadResultSet<Event> readBatch(long sequence, int maxCount) {
+            try {
+                return ringbuffer.readManyAsync(sequence, 0, maxCount, null)
+                        .toCompletableFuture().join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof StaleSequenceException) {
+                    // Overwritten while searching, continue from the new head
+                    return ringbuffer.readManyAsync(getHeadSequence(), 0,
+                            maxCount, null).toCompletableFuture().join();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /*
+     * A subscription to a ringbuffer that reads as many events as have been
+     * requested. Subscriptions of the push based subscribe method request an
+     * unbounded number of events.
+     */
+    private class Subscription implements Flow.Subscription {
+        private final RingbufferEventLog eventLog;
+        private final OffsetEventConsumer consumer;
+        private final Consumer<Throwable> errorHandler;
+
+        private volatile boolean active = true;
+
+        // All fields below are guarded by this
+        private long demand;
+        private long nextSequence = -1;
+        private boolean reading;
+
+        private Subscription(RingbufferEventLog eventLog,
+                OffsetEventConsumer consumer,
+                Consumer<Throwable> errorHandler) {
+            this.eventLog = eventLog;
+            this.consumer = consumer;
+            this.errorHandler = errorHandler;
+        }
+
+        private void start(long sequence, long initialDemand) {
+            synchronized (this) {
+                nextSequence = sequence;
+                demand = addDemand(demand, initialDemand);
+            }
+            readIfRequested();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                active = false;
+                errorHandler.accept(new IllegalArgumentException(
+                        "The number of requested events must be positive"));
+                return;
+            }
+            synchronized (this) {
+                demand = addDemand(demand, n);
+            }
+            readIfRequested();
+        }
+
+        @Override
+        public void cancel() {
+            active = false;
+        }
+
+        /*
+         * Reads are chained so that the next batch is requested only after
+         * the previous one has been delivered. This guarantees that the
+         * consumer is never invoked concurrently.
+         */
+        private void readIfRequested() {
+            long sequence;
+            int maxCount;
+            synchronized (this) {
+                if (!active || reading || nextSequence < 0 || demand == 0) {
+                    return;
+                }
+                reading = true;
+                sequence = nextSequence;
+                maxCount = (int) Math.min(demand, readBatchSize);
+            }
+            read(sequence, maxCount);
+        }
+
+        private void read(long sequence, int maxCount) {
+            eventLog.ringbuffer.readManyAsync(sequence, 1, maxCount, null)
+                    .whenCompleteAsync((result, error) -> {
+                        if (!active) {
+                            return;
+                        }
+                        if (error != null) {
+                            handleReadError(sequence, maxCount, error);
+                            return;
+                        }
+                        /*
+                         * Reading from an overwritten sequence continues from
+                         * the head of the ringbuffer instead of failing, so
+                         * the skipped events are detected from the sequence
+                         * of the first event that was read.
+                         */
+                        if (result.size() > 0
+                                && result.getSequence(0) > sequence) {
+                            handleReadError(sequence, maxCount,
+                                    new StaleSequenceException("Events from "
+                                            + sequence + " to "
+                                            + (result.getSequence(0) - 1)
+                                            + " were overwritten",
+                                            result.getSequence(0)));
+                            return;
+                        }
+                        synchronized (this) {
+                            nextSequence = result.getNextSequenceToReadFrom();
+                            if (demand != Long.MAX_VALUE) {
+                                demand -= result.size();
+                            }
+                        }
+                        deliver(result);
+                        synchronized (this) {
+                            reading = false;
+                        }
+                        readIfRequested();
+                    }, executor);
+        }
+
+        private void deliver(ReadResultSet<Event> result) {
+            for (int i = 0; i < result.size() && active; i++) {
+                Event event = result.get(i);
+                try {
+                    consumer.accept(result.getSequence(i),
+                            event.getTrackingId(), event.getPayload());
+                } catch (RuntimeException e) {
+                    LOGGER.error("Failed to handle event in " + eventLog.logId,
+                            e);
+                }
+            }
+        }
+
+        private void handleReadError(long sequence, int maxCount,
+                Throwable error) {
+            Throwable cause = error instanceof CompletionException
+                    && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof HazelcastInstanceNotActiveException
+                    || !hz.getLifecycleService().isRunning()) {
+                active = false;
+            } else if (cause instanceof StaleSequenceException) {
+                active = false;
+                errorHandler.accept(cause);
+            } else {
+                LOGGER.warn("Failed to read events from " + eventLog.logId
+                        + ", retrying", cause);
+                CompletableFuture.runAsync(() -> read(sequence, maxCount),
+                        CompletableFuture.delayedExecutor(
+                                READ_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS,
+                                executor));
+            }
+        }
+    }
+
+    private static long addDemand(long demand, long n) {
+        return demand + n < 0 ? Long.MAX_VALUE : demand + n;
+    }
+
+    private final HazelcastInstance hz;
+
+    private final IMap<String, Snapshot> snapshots;
+
+    private final IMap<String, Long> retainedSequences;
+
+    private final ExecutorService executor;
+
+    private volatile int readBatchSize = DEFAULT_READ_BATCH_SIZE;
+
+    /**
+     * Creates a new backend that uses the given Hazelcast instance.
+     *
+     * @param hz
+     *            the Hazelcast instance, not <code>null</code>
+     */
+    public HazelcastBackend(HazelcastInstance hz) {
+        this.hz = Objects.requireNonNull(hz);
+        this.snapshots = hz.getMap(SNAPSHOTS_MAP);
+        this.retainedSequences = hz.getMap(RETAINED_MAP);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable,
+                    "collaboration-engine-hazelcast-backend");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the maximum number of events that a subscriber reads from the
+     * ringbuffer with one remote call. The default is
+     * {@value #DEFAULT_READ_BATCH_SIZE}.
+     *
+     * @param readBatchSize
+     *            the batch size, between 1 and 1000
+     */
+    public void setReadBatchSize(int readBatchSize) {
+        if (readBatchSize < 1 || readBatchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException(
+                    "The read batch size must be between 1 and "
+                            + MAX_BATCH_SIZE);
+        }
+        this.readBatchSize = readBatchSize;
+    }
+
+    /**
+     * Gets the maximum number of events that a subscriber reads from the
+     * ringbuffer with one remote call.
+     *
+     * @return the batch size
+     */
+    public int getReadBatchSize() {
+        return readBatchSize;
+    }
+
+    @Override
+    public EventLog openEventLog(String logId) {
+        Objects.requireNonNull(logId, "Log ID cannot be null");
+        return new RingbufferEventLog(logId);
+    }
+
+    @Override
+    public Registration addMembershipListener(
+            MembershipListener membershipListener) {
+        UUID registrationId = hz.getCluster()
+                .addMembershipListener(new InitialMembershipListener() {
+
+                    @Override
+                    public void init(InitialMembershipEvent event) {
+                        event.getMembers()
+                                .forEach(member -> submitEvent(
+                                        MembershipEventType.JOIN,
+                                        member.getUuid()));
+                    }
+
+                    @Override
+                    public void memberAdded(MembershipEvent membershipEvent) {
+                        submitEvent(MembershipEventType.JOIN,
+                                membershipEvent.getMember().getUuid());
+                    }
+
+                    @Override
+                    public void memberRemoved(MembershipEvent membershipEvent) {
+                        submitEvent(MembershipEventType.LEAVE,
+                                membershipEvent.getMember().getUuid());
+                    }
+
+                    private void submitEvent(MembershipEventType type,
+                            UUID id) {
+                        membershipListener.handleMembershipEvent(
+                                new com.vaadin.collaborationengine.MembershipEvent(
+                                        type, id, getCollaborationEngine()));
+                    }
+                });
+        return () -> hz.getCluster().removeMembershipListener(registrationId);
+    }
+
+    @Override
+    public UUID getNodeId() {
+        return hz.getCluster().getLocalMember().getUuid();
+    }
+
+    @Override
+    public CompletableFuture<Snapshot> loadLatestSnapshot(String name) {
+        Objects.requireNonNull(name, "Name cannot be null");
+        return snapshots.getAsync(name).toCompletableFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> replaceSnapshot(String name, UUID expectedId,
+            UUID newId, String payload) {
+        Objects.requireNonNull(name, "Name cannot be null");
+        Objects.requireNonNull(newId, "New ID cannot be null");
+        return snapshots
+                .submitToKey(name,
+                        new ReplaceSnapshotProcessor(expectedId, newId,
+                                payload))
+                .toCompletableFuture().thenAccept(replaced -> {
+                    if (!replaced.booleanValue()) {
+                        LOGGER.debug("Snapshot " + name
+                                + " was not replaced since its id didn't match "
+                                + expectedId);
+                    }
+                });
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine.hazelcast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.config.RingbufferConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.ringbuffer.StaleSequenceException;
+import com.vaadin.collaborationengine.Backend;
+import com.vaadin.collaborationengine.Backend.EventLog;
+import com.vaadin.flow.shared.Registration;
+
+public class HazelcastBackendTest {
+
+    private static final String LOG_ID = HazelcastBackendTest.class.getName();
+
+    private static final String SMALL_LOG_ID = "small." + LOG_ID;
+
+    private HazelcastInstance hz1;
+    private HazelcastInstance hz2;
+
+    private HazelcastBackend backend1;
+    private HazelcastBackend backend2;
+
+    @Before
+    public void init() {
+        String clusterName = UUID.randomUUID().toString();
+        hz1 = Hazelcast.newHazelcastInstance(createConfig(clusterName));
+        hz2 = Hazelcast.newHazelcastInstance(createConfig(clusterName));
+        backend1 = new HazelcastBackend(hz1);
+        backend2 = new HazelcastBackend(hz2);
+    }
+
+    @After
+    public void cleanup() {
+        hz2.shutdown();
+        hz1.shutdown();
+    }
+
+    @Test
+    public void submitEvent_subscriberOnOtherNode_receivesEventsInOrder()
+            throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        backend2.openEventLog(LOG_ID).subscribe(null,
+                (id, payload) -> received.add(payload));
+
+        EventLog log1 = backend1.openEventLog(LOG_ID);
+        log1.submitEvent(UUID.randomUUID(), "a");
+        log1.submitEvent(UUID.randomUUID(), "b");
+        log1.submitEvent(UUID.randomUUID(), "c");
+
+        waitUntil(() -> received.size() == 3);
+        Assert.assertEquals(List.of("a", "b", "c"), received);
+    }
+
+    @Test
+    public void submitEvents_receivedWithIncreasingOffsets() throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        List<Long> offsets = new CopyOnWriteArrayList<>();
+        backend2.openEventLog(LOG_ID).subscribe(null, EventLog.NO_OFFSET,
+                (offset, id, payload) -> {
+                    offsets.add(offset);
+                    received.add(payload);
+                });
+
+        backend1.openEventLog(LOG_ID).submitEvents(createEvents(250));
+
+        waitUntil(() -> received.size() == 250);
+        for (int i = 0; i < 250; i++) {
+            Assert.assertEquals(String.valueOf(i), received.get(i));
+            Assert.assertEquals(i, offsets.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void subscribeWithOffset_onlyNewerEventsReceived() throws Exception {
+        EventLog log1 = backend1.openEventLog(LOG_ID);
+        List<Backend.Event> events = createEvents(5);
+        log1.submitEvents(events);
+
+        List<String> received = new CopyOnWriteArrayList<>();
+        backend2.openEventLog(LOG_ID).subscribe(events.get(2).getTrackingId(),
+                2, (offset, id, payload) -> received.add(payload));
+
+        waitUntil(() -> received.size() == 2);
+        Assert.assertEquals(List.of("3", "4"), received);
+    }
+
+    @Test
+    public void subscribeWithIdOnly_onlyNewerEventsReceived() throws Exception {
+        EventLog log1 = backend1.openEventLog(LOG_ID);
+        List<Backend.Event> events = createEvents(5);
+        log1.submitEvents(events);
+
+        List<String> received = new CopyOnWriteArrayList<>();
+        backend2.openEventLog(LOG_ID).subscribe(events.get(3).getTrackingId(),
+                (id, payload) -> received.add(payload));
+
+        waitUntil(() -> received.size() == 1);
+        Assert.assertEquals(List.of("4"), received);
+    }
+
+    @Test
+    public void subscribeWithMismatchingOffset_subscribeFails() {
+        EventLog log1 = backend1.openEventLog(LOG_ID);
+        List<Backend.Event> events = createEvents(5);
+        log1.submitEvents(events);
+
+        Assert.assertThrows(Backend.EventIdNotFoundException.class,
+                () -> backend2.openEventLog(LOG_ID).subscribe(
+                        events.get(2).getTrackingId(), 3,
+                        (offset, id, payload) -> {
+                        }));
+    }
+
+    @Test
+    public void truncate_subscribeFromTruncatedEvent_subscribeFails()
+            throws Exception {
+        EventLog log1 = backend1.openEventLog(LOG_ID);
+        List<Backend.Event> events = createEvents(5);
+        log1.submitEvents(events);
+
+        log1.truncate(events.get(2).getTrackingId(), 2);
+
+        EventLog log2 = backend2.openEventLog(LOG_ID);
+        Assert.assertThrows(Backend.EventIdNotFoundException.class,
+                () -> log2.subscribe(events.get(1).getTrackingId(),
+                        (id, payload) -> {
+                        }));
+
+        List<String> received = new CopyOnWriteArrayList<>();
+        log2.subscribe(null, (id, payload) -> received.add(payload));
+        waitUntil(() -> received.size() == 3);
+        Assert.assertEquals(List.of("2", "3", "4"), received);
+    }
+
+    @Test
+    public void eventsOverwritten_subscribeFromOverwrittenEvent_subscribeFails() {
+        EventLog log1 = backend1.openEventLog(SMALL_LOG_ID);
+        List<Backend.Event> events = createEvents(20);
+        log1.submitEvents(events);
+
+        Assert.assertThrows(Backend.EventIdNotFoundException.class,
+                () -> backend2.openEventLog(SMALL_LOG_ID).subscribe(
+                        events.get(0).getTrackingId(), 0,
+                        (offset, id, payload) -> {
+                        }));
+    }
+
+    @Test
+    public void publisher_onlyRequestedEventsReceived() throws Exception {
+        backend1.openEventLog(LOG_ID).submitEvents(createEvents(5));
+
+        SubscriberSpy spy = new SubscriberSpy();
+        backend2.openEventLog(LOG_ID).publisher(null, EventLog.NO_OFFSET)
+                .subscribe(spy);
+        spy.subscription.get().request(2);
+
+        waitUntil(() -> spy.received.size() == 2);
+        Thread.sleep(200);
+        Assert.assertEquals(List.of("0", "1"), spy.received);
+
+        spy.subscription.get().request(3);
+        waitUntil(() -> spy.received.size() == 5);
+        Assert.assertEquals(List.of("0", "1", "2", "3", "4"), spy.received);
+    }
+
+    @Test
+    public void publisher_ringbufferOverflowsBeforeRequest_errorSignaled()
+            throws Exception {
+        EventLog log1 = backend1.openEventLog(SMALL_LOG_ID);
+        SubscriberSpy spy = new SubscriberSpy();
+        backend2.openEventLog(SMALL_LOG_ID).publisher(null, EventLog.NO_OFFSET)
+                .subscribe(spy);
+        spy.subscription.get().request(1);
+        log1.submitEvent(UUID.randomUUID(), "first");
+        waitUntil(() -> spy.received.size() == 1);
+
+        // More events than the capacity of the ringbuffer
+        log1.submitEvents(createEvents(20));
+        spy.subscription.get().request(1);
+
+        waitUntil(() -> spy.error.get() != null);
+        Assert.assertTrue(spy.error.get() instanceof StaleSequenceException);
+        Assert.assertEquals(List.of("first"), spy.received);
+    }
+
+    @Test
+    public void publisher_subscribeFromOverwrittenEvent_errorSignaled() {
+        EventLog log1 = backend1.openEventLog(SMALL_LOG_ID);
+        List<Backend.Event> events = createEvents(20);
+        log1.submitEvents(events);
+
+        SubscriberSpy spy = new SubscriberSpy();
+        backend2.openEventLog(SMALL_LOG_ID)
+                .publisher(events.get(0).getTrackingId(), 0).subscribe(spy);
+
+        Assert.assertTrue(spy.error
+                .get() instanceof Backend.EventIdNotFoundException);
+    }
+
+    @Test
+    public void unsubscribe_noMoreEventsReceived() throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        Registration registration = backend2.openEventLog(LOG_ID)
+                .subscribe(null, (id, payload) -> received.add(payload));
+
+        EventLog log1 = backend1.openEventLog(LOG_ID);
+        log1.submitEvent(UUID.randomUUID(), "a");
+        waitUntil(() -> received.size() == 1);
+
+        registration.remove();
+        log1.submitEvent(UUID.randomUUID(), "b");
+        Thread.sleep(200);
+
+        Assert.assertEquals(List.of("a"), received);
+    }
+
+    @Test
+    public void replaceSnapshot_loadFromOtherNode() {
+        UUID id = UUID.randomUUID();
+        backend1.replaceSnapshot("snapshot", null, id, "foo").join();
+
+        Backend.Snapshot snapshot = backend2.loadLatestSnapshot("snapshot")
+                .join();
+        Assert.assertEquals(id, snapshot.getId());
+        Assert.assertEquals("foo", snapshot.getPayload());
+    }
+
+    @Test
+    public void replaceSnapshot_unexpectedId_notReplaced() {
+        UUID id = UUID.randomUUID();
+        backend1.replaceSnapshot("snapshot", null, id, "foo").join();
+
+        backend2.replaceSnapshot("snapshot", UUID.randomUUID(),
+                UUID.randomUUID(), "bar").join();
+        backend2.replaceSnapshot("snapshot", null, UUID.randomUUID(), "baz")
+                .join();
+
+        Backend.Snapshot snapshot = backend1.loadLatestSnapshot("snapshot")
+                .join();
+        Assert.assertEquals(id, snapshot.getId());
+        Assert.assertEquals("foo", snapshot.getPayload());
+    }
+
+    @Test
+    public void replaceSnapshot_expectedId_replaced() {
+        UUID id = UUID.randomUUID();
+        UUID newId = UUID.randomUUID();
+        backend1.replaceSnapshot("snapshot", null, id, "foo").join();
+        backend2.replaceSnapshot("snapshot", id, newId, "bar").join();
+
+        Backend.Snapshot snapshot = backend1.loadLatestSnapshot("snapshot")
+                .join();
+        Assert.assertEquals(newId, snapshot.getId());
+        Assert.assertEquals("bar", snapshot.getPayload());
+    }
+
+    @Test
+    public void getNodeId_differentForEachMember() {
+        Assert.assertEquals(hz1.getCluster().getLocalMember().getUuid(),
+                backend1.getNodeId());
+        Assert.assertNotEquals(backend1.getNodeId(), backend2.getNodeId());
+    }
+
+    private static class SubscriberSpy
+            implements Flow.Subscriber<Backend.OffsetEvent> {
+        private final AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        private final List<String> received = new CopyOnWriteArrayList<>();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription.set(subscription);
+        }
+
+        @Override
+        public void onNext(Backend.OffsetEvent item) {
+            received.add(item.getPayload());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            Assert.fail("Event logs are never completed");
+        }
+    }
+
+    private static List<Backend.Event> createEvents(int count) {
+        List<Backend.Event> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(new Backend.Event(UUID.randomUUID(), String.valueOf(i)));
+        }
+        return events;
+    }
+
+    private static Config createConfig(String clusterName) {
+        Config config = new Config();
+        config.setClusterName(clusterName);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getAutoDetectionConfig().setEnabled(false);
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+        // Small capacity to be able to test overwritten events
+        config.addRingBufferConfig(new RingbufferConfig(
+                HazelcastBackend.RINGBUFFER_PREFIX + "small.*")
+                .setCapacity(10));
+        return config;
+    }
+
+    private static void waitUntil(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Heap and garbage collection statistics of the running JVM.
+ *
+ * @author Vaadin Ltd
+ */
+class JvmStats {
+
+    private final long collections;
+
+    private final long collectionMillis;
+
+    private JvmStats(long collections, long collectionMillis) {
+        this.collections = collections;
+        this.collectionMillis = collectionMillis;
+    }
+
+    /**
+     * Captures the current totals of garbage collections.
+     *
+     * @return the captured statistics, not <code>null</code>
+     */
+    static JvmStats capture() {
+        long collections = 0;
+        long collectionMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, gc.getCollectionCount());
+            collectionMillis += Math.max(0, gc.getCollectionTime());
+        }
+        return new JvmStats(collections, collectionMillis);
+    }
+
+    /**
+     * Resets the peak heap usage to the current usage.
+     */
+    static void resetPeakHeapUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Gets the sum of the peak usages of the heap memory pools since the
+     * latest reset. Pools peak at different times, so this is an upper
+     * bound of the actual peak.
+     *
+     * @return the peak heap usage in bytes
+     */
+    static long getPeakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Gets the heap usage after a full garbage collection, which is the size
+     * of the data that is actually retained.
+     *
+     * @return the retained heap usage in bytes
+     */
+    static long getRetainedHeapUsage() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+                .getUsed();
+    }
+
+    long getCollections() {
+        return collections;
+    }
+
+    long getCollectionMillis() {
+        return collectionMillis;
+    }
+}
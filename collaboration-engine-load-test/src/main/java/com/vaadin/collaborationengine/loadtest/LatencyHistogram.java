@@ -0,0 +1,141 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * A lock-free histogram of latencies with microsecond resolution. Values are
+ * counted in logarithmic buckets that are each split into 32 linear
+ * sub-buckets, which keeps the error of reported percentiles within about 3%
+ * with a fixed memory footprint regardless of the number of recorded values.
+ *
+ * @author Vaadin Ltd
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Values below this are counted exactly
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+
+    private static final int LINEAR_BITS = SUB_BUCKET_BITS + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(
+            LINEAR_LIMIT + (Long.SIZE - LINEAR_BITS) * SUB_BUCKETS);
+
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos
+     *            the latency in nanoseconds
+     */
+    void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(indexOf(micros));
+        max.accumulate(micros);
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     *
+     * @return the number of recorded latencies
+     */
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the highest recorded latency.
+     *
+     * @return the highest latency in microseconds, or 0 if nothing has been
+     *         recorded
+     */
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the latency at the given percentile. The value is the upper bound
+     * of the bucket that contains the percentile, but never higher than the
+     * highest recorded latency.
+     *
+     * @param percentile
+     *            the percentile, between 0 and 100
+     * @return the latency in microseconds, or 0 if nothing has been recorded
+     */
+    long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException(
+                    "The percentile must be between 0 and 100");
+        }
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears all recorded latencies.
+     */
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        max.reset();
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - LINEAR_BITS) * SUB_BUCKETS
+                + subBucket;
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_BITS;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowerBound = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
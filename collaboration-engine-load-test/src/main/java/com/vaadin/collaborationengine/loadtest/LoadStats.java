@@ -0,0 +1,101 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine.loadtest;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the actions of the simulated users and the deliveries of those
+ * actions to other users, along with the end-to-end latency of each delivery.
+ * Actions and deliveries aren't counted while the load test is warming up.
+ *
+ * @author Vaadin Ltd
+ */
+class LoadStats {
+
+    private final LongAdder actions = new LongAdder();
+
+    private final LongAdder deliveries = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private volatile boolean recording;
+
+    /**
+     * Records that a simulated user performed an action.
+     */
+    void recordAction() {
+        if (recording) {
+            actions.increment();
+        }
+    }
+
+    /**
+     * Records that the result of an action was delivered to a simulated user.
+     *
+     * @param sentNanos
+     *            the {@link System#nanoTime()} when the action was performed
+     */
+    void recordDelivery(long sentNanos) {
+        if (recording) {
+            deliveries.increment();
+            latency.record(System.nanoTime() - sentNanos);
+        }
+    }
+
+    /**
+     * Records that an action of a simulated user failed. Errors are counted
+     * also during warmup.
+     */
+    void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Clears the counts of actions and deliveries and starts recording.
+     */
+    void start() {
+        actions.reset();
+        deliveries.reset();
+        latency.reset();
+        recording = true;
+    }
+
+    /**
+     * Stops recording.
+     */
+    void stop() {
+        recording = false;
+    }
+
+    long getActions() {
+        return actions.sum();
+    }
+
+    long getDeliveries() {
+        return deliveries.sum();
+    }
+
+    long getErrors() {
+        return errors.sum();
+    }
+
+    LatencyHistogram getLatency() {
+        return latency;
+    }
+}
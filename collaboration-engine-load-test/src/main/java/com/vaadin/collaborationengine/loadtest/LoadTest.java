@@ -0,0 +1,248 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.vaadin.collaborationengine.Backend;
+import com.vaadin.collaborationengine.CollaborationEngine;
+import com.vaadin.collaborationengine.LocalBackend;
+import com.vaadin.collaborationengine.TestUtil;
+import com.vaadin.collaborationengine.UserInfo;
+import com.vaadin.collaborationengine.hazelcast.HazelcastBackend;
+import com.vaadin.collaborationengine.util.MockService;
+import com.vaadin.flow.server.VaadinService;
+
+/**
+ * Headless load generator that simulates users of chat, presence and forms
+ * without browsers. The users are spread evenly over a number of engine
+ * nodes, which share a backend, and over a number of topics per workload.
+ * Each user performs one action at a fixed interval and every action is
+ * delivered to all users in the same topic.
+ * <p>
+ * After a warmup, the generator measures the throughput of actions and
+ * deliveries, the latency from an action to each of its deliveries, and the
+ * heap usage and garbage collection of the JVM. Run with no arguments for
+ * the defaults, or see {@link LoadTestOptions#USAGE} for the options.
+ *
+ * @author Vaadin Ltd
+ */
+public class LoadTest {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(LoadTest.class);
+
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private final LoadTestOptions options;
+
+    private final LoadStats stats = new LoadStats();
+
+    private final List<VaadinService> services = new ArrayList<>();
+
+    private final List<HazelcastInstance> hazelcastInstances = new ArrayList<>();
+
+    private final List<Workload.SimulatedUser> users = new ArrayList<>();
+
+    private LoadTest(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadTestOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        new LoadTest(options).run();
+    }
+
+    private void run() throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors
+                .newScheduledThreadPool(options.threads);
+        try {
+            List<CollaborationEngine> engines = startNodes();
+            connectUsers(engines);
+            scheduleActions(scheduler);
+
+            LOGGER.info("Warming up for {} s", options.warmup.toSeconds());
+            Thread.sleep(options.warmup.toMillis());
+
+            LOGGER.info("Measuring for {} s", options.duration.toSeconds());
+            JvmStats before = JvmStats.capture();
+            JvmStats.resetPeakHeapUsage();
+            stats.start();
+            long start = System.nanoTime();
+            Thread.sleep(options.duration.toMillis());
+            stats.stop();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            JvmStats after = JvmStats.capture();
+            long peakHeap = JvmStats.getPeakHeapUsage();
+
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            report(seconds, before, after, peakHeap,
+                    JvmStats.getRetainedHeapUsage());
+        } finally {
+            scheduler.shutdownNow();
+            stopNodes();
+        }
+    }
+
+    private List<CollaborationEngine> startNodes() {
+        Supplier<Backend> backendFactory = createBackendFactory();
+        List<CollaborationEngine> engines = new ArrayList<>();
+        for (int i = 0; i < options.nodes; i++) {
+            MockService service = new MockService();
+            TestUtil.MockConfiguration configuration = new TestUtil.MockConfiguration();
+            configuration.setBackend(backendFactory.get());
+            engines.add(CollaborationEngine.configure(service, configuration));
+            services.add(service);
+        }
+        return engines;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Supplier<Backend> createBackendFactory() {
+        switch (options.backend) {
+        case "local":
+            return LocalBackend::new;
+        case "hazelcast":
+            return () -> {
+                HazelcastInstance hz = Hazelcast
+                        .newHazelcastInstance(createHazelcastConfig());
+                hazelcastInstances.add(hz);
+                return new HazelcastBackend(hz);
+            };
+        default:
+            try {
+                return Class.forName(options.backend)
+                        .asSubclass(Supplier.class).getDeclaredConstructor()
+                        .newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("The backend '"
+                        + options.backend
+                        + "' is neither a built-in backend nor a Supplier<Backend> with a public no-arguments constructor",
+                        e);
+            }
+        }
+    }
+
+    /*
+     * All nodes run in this JVM, so they find each other on the loopback
+     * interface without multicast.
+     */
+    private static Config createHazelcastConfig() {
+        Config config = new Config();
+        config.setClusterName("collaboration-engine-load-test");
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+        return config;
+    }
+
+    private void connectUsers(List<CollaborationEngine> engines) {
+        LOGGER.info("Connecting {} users", options.users);
+        for (int i = 0; i < options.users; i++) {
+            Workload workload = options.workloads
+                    .get(i % options.workloads.size());
+            CollaborationEngine ce = engines.get(i % engines.size());
+            String topicId = Integer.toString(i % options.topics);
+            users.add(workload.connect(ce, new UserInfo("user-" + i),
+                    topicId, stats));
+        }
+    }
+
+    /*
+     * The actions of a single user are never run concurrently, since a
+     * periodic task doesn't overlap with itself.
+     */
+    private void scheduleActions(ScheduledExecutorService scheduler) {
+        long interval = options.interval.toNanos();
+        for (Workload.SimulatedUser user : users) {
+            long delay = ThreadLocalRandom.current().nextLong(interval);
+            scheduler.scheduleAtFixedRate(() -> {
+                try {
+                    user.act();
+                } catch (RuntimeException e) {
+                    // An exception would cancel all further actions
+                    stats.recordError();
+                    LOGGER.debug("Action failed", e);
+                }
+            }, delay, interval, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void stopNodes() {
+        users.forEach(Workload.SimulatedUser::close);
+        services.forEach(VaadinService::destroy);
+        hazelcastInstances.forEach(HazelcastInstance::shutdown);
+    }
+
+    private void report(double seconds, JvmStats before, JvmStats after,
+            long peakHeap, long retainedHeap) {
+        LatencyHistogram latency = stats.getLatency();
+        StringBuilder percentiles = new StringBuilder();
+        for (double percentile : PERCENTILES) {
+            percentiles.append(format("p%s %.3f", formatPercentile(percentile),
+                    latency.getPercentile(percentile) / 1000.0)).append(", ");
+        }
+        System.out.println(format(
+                "%d users on %d node(s) with the %s backend, %d topics per workload %s",
+                options.users, options.nodes, options.backend, options.topics,
+                options.workloads));
+        System.out.println(
+                format("Throughput: %.1f actions/s, %.1f deliveries/s",
+                        stats.getActions() / seconds,
+                        stats.getDeliveries() / seconds));
+        System.out.println(format("Latency (ms): %smax %.3f", percentiles,
+                latency.getMax() / 1000.0));
+        System.out.println(format("Heap (MB): peak %.1f, retained %.1f",
+                peakHeap / 1e6, retainedHeap / 1e6));
+        System.out.println(format("GC: %d collections, %d ms",
+                after.getCollections() - before.getCollections(),
+                after.getCollectionMillis() - before.getCollectionMillis()));
+        System.out.println(format("Errors: %d", stats.getErrors()));
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile)
+                ? Long.toString((long) percentile)
+                : Double.toString(percentile);
+    }
+
+    private static String format(String format, Object... args) {
+        return String.format(Locale.ENGLISH, format, args);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine.loadtest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The options of a load test run, parsed from command line arguments of the
+ * form <code>--name=value</code>.
+ *
+ * @author Vaadin Ltd
+ */
+class LoadTestOptions {
+
+    static final String USAGE = """
+            Options:
+              --users=<count>        simulated users (default 1000)
+              --topics=<count>       topics per workload (default 100)
+              --workloads=<list>     comma-separated workloads out of chat,
+                                     presence and form (default all)
+              --interval=<millis>    time between the actions of each user
+                                     (default 1000)
+              --nodes=<count>        engine nodes sharing the backend
+                                     (default 1)
+              --backend=<backend>    local, hazelcast, or the class name of a
+                                     Supplier<Backend> (default local)
+              --threads=<count>      threads that run user actions
+                                     (default available processors)
+              --warmup=<seconds>     warmup time (default 10)
+              --duration=<seconds>   measurement time (default 60)
+            """;
+
+    int users = 1000;
+
+    int topics = 100;
+
+    List<Workload> workloads = List.of(Workload.values());
+
+    Duration interval = Duration.ofSeconds(1);
+
+    int nodes = 1;
+
+    String backend = "local";
+
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    Duration warmup = Duration.ofSeconds(10);
+
+    Duration duration = Duration.ofSeconds(60);
+
+    /**
+     * Parses the given command line arguments.
+     *
+     * @param args
+     *            the arguments, not <code>null</code>
+     * @return the parsed options, not <code>null</code>
+     * @throws IllegalArgumentException
+     *             if an argument is unknown or has an invalid value
+     */
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException(
+                        "Invalid argument '" + arg + "'");
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+            case "users" -> options.users = parsePositive(name, value);
+            case "topics" -> options.topics = parsePositive(name, value);
+            case "workloads" -> options.workloads = parseWorkloads(value);
+            case "interval" -> options.interval = Duration
+                    .ofMillis(parsePositive(name, value));
+            case "nodes" -> options.nodes = parsePositive(name, value);
+            case "backend" -> options.backend = value;
+            case "threads" -> options.threads = parsePositive(name, value);
+            case "warmup" -> options.warmup = Duration
+                    .ofSeconds(parseNonNegative(name, value));
+            case "duration" -> options.duration = Duration
+                    .ofSeconds(parsePositive(name, value));
+            default -> throw new IllegalArgumentException(
+                    "Unknown option '" + name + "'");
+            }
+        }
+        if (options.nodes > 1 && options.backend.equals("local")) {
+            throw new IllegalArgumentException(
+                    "The local backend doesn't support more than one node");
+        }
+        return options;
+    }
+
+    private static List<Workload> parseWorkloads(String value) {
+        List<Workload> workloads = new ArrayList<>();
+        for (String name : value.split(",")) {
+            try {
+                workloads.add(Workload
+                        .valueOf(name.trim().toUpperCase(Locale.ENGLISH)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                        "Unknown workload '" + name + "'", e);
+            }
+        }
+        return workloads;
+    }
+
+    private static int parsePositive(String name, String value) {
+        int number = parseNonNegative(name, value);
+        if (number == 0) {
+            throw new IllegalArgumentException(
+                    "The value of '" + name + "' must be positive");
+        }
+        return number;
+    }
+
+    private static int parseNonNegative(String name, String value) {
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "The value of '" + name + "' must be a number", e);
+        }
+        if (number < 0) {
+            throw new IllegalArgumentException(
+                    "The value of '" + name + "' can't be negative");
+        }
+        return number;
+    }
+}
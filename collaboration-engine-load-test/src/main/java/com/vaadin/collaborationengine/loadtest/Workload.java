@@ -0,0 +1,174 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine.loadtest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.vaadin.collaborationengine.AbstractCollaborationManager;
+import com.vaadin.collaborationengine.CollaborationEngine;
+import com.vaadin.collaborationengine.FormManager;
+import com.vaadin.collaborationengine.MessageManager;
+import com.vaadin.collaborationengine.PresenceManager;
+import com.vaadin.collaborationengine.UserInfo;
+
+/**
+ * The kinds of synthetic workloads that simulated users can generate. Each
+ * user connects to its topic through the system connection context of its
+ * node, the same way as a background task in an application would, and uses
+ * one of the public managers to perform its actions.
+ *
+ * @author Vaadin Ltd
+ */
+enum Workload {
+
+    /**
+     * Users submit chat messages, which are delivered to every user in the
+     * same topic.
+     */
+    CHAT {
+        @Override
+        SimulatedUser connect(CollaborationEngine ce, UserInfo user,
+                String topicId, LoadStats stats) {
+            MessageManager manager = new MessageManager(ce.getSystemContext(),
+                    user, "chat/" + topicId, () -> ce);
+            manager.setMessageHandler(context -> stats.recordDelivery(
+                    Long.parseLong(context.getMessage().getText())));
+            return new SimulatedUser(manager, () -> {
+                stats.recordAction();
+                manager.submit(Long.toString(System.nanoTime()));
+            });
+        }
+    },
+
+    /**
+     * Users toggle their presence, which is delivered to every user in the
+     * same topic.
+     */
+    PRESENCE {
+        @Override
+        SimulatedUser connect(CollaborationEngine ce, UserInfo user,
+                String topicId, LoadStats stats) {
+            PresenceManager manager = new PresenceManager(
+                    ce.getSystemContext(), user, "presence/" + topicId,
+                    () -> ce);
+            manager.setPresenceHandler(context -> {
+                String userId = context.getUser().getId();
+                recordPresenceChange(userId, stats);
+                return () -> recordPresenceChange(userId, stats);
+            });
+            boolean[] present = new boolean[1];
+            return new SimulatedUser(manager, () -> {
+                present[0] = !present[0];
+                PRESENCE_CHANGES.put(user.getId(), System.nanoTime());
+                stats.recordAction();
+                manager.markAsPresent(present[0]);
+            });
+        }
+    },
+
+    /**
+     * Users move their highlight to a random field of a shared form and set
+     * its value, which is delivered to every user in the same topic.
+     */
+    FORM {
+        @Override
+        SimulatedUser connect(CollaborationEngine ce, UserInfo user,
+                String topicId, LoadStats stats) {
+            FormManager manager = new FormManager(ce.getSystemContext(), user,
+                    "form/" + topicId, () -> ce);
+            manager.setPropertyChangeHandler(event -> {
+                if (event.getValue() instanceof Number sentNanos) {
+                    stats.recordDelivery(sentNanos.longValue());
+                }
+            });
+            String[] focused = new String[1];
+            return new SimulatedUser(manager, () -> {
+                String field = "field"
+                        + ThreadLocalRandom.current().nextInt(FORM_FIELDS);
+                if (focused[0] != null) {
+                    manager.highlight(focused[0], false);
+                }
+                manager.highlight(field, true);
+                focused[0] = field;
+                stats.recordAction();
+                manager.setValue(field, System.nanoTime());
+            });
+        }
+    };
+
+    private static final int FORM_FIELDS = 10;
+
+    // The time of the latest presence change of each user
+    private static final Map<String, Long> PRESENCE_CHANGES = new ConcurrentHashMap<>();
+
+    /**
+     * A simulated user that is connected to a topic.
+     */
+    static final class SimulatedUser {
+        private final AbstractCollaborationManager manager;
+        private final Runnable action;
+
+        private SimulatedUser(AbstractCollaborationManager manager,
+                Runnable action) {
+            this.manager = manager;
+            this.action = action;
+        }
+
+        /**
+         * Performs one action of the workload. The actions of a single user
+         * must not be run concurrently.
+         */
+        void act() {
+            action.run();
+        }
+
+        /**
+         * Disconnects the user from its topic.
+         */
+        void close() {
+            manager.close();
+        }
+    }
+
+    /**
+     * Connects a new simulated user to a topic.
+     *
+     * @param ce
+     *            the engine of the node that the user is connected to, not
+     *            <code>null</code>
+     * @param user
+     *            the simulated user, not <code>null</code>
+     * @param topicId
+     *            the id of the topic, which is prefixed with the name of the
+     *            workload so that workloads don't share topics, not
+     *            <code>null</code>
+     * @param stats
+     *            the stats to record actions and deliveries to, not
+     *            <code>null</code>
+     * @return the connected user, not <code>null</code>
+     */
+    abstract SimulatedUser connect(CollaborationEngine ce, UserInfo user,
+            String topicId, LoadStats stats);
+
+    private static void recordPresenceChange(String userId, LoadStats stats) {
+        Long sentNanos = PRESENCE_CHANGES.get(userId);
+        if (sentNanos != null) {
+            stats.recordDelivery(sentNanos);
+        }
+    }
+}
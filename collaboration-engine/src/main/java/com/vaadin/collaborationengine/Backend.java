@@ -16,9 +16,11 @@
 package com.vaadin.collaborationengine;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.function.BiConsumer;
 
 import com.vaadin.flow.shared.Registration;
@@ -63,10 +65,90 @@ public abstract class Backend {
         }
     }
 
+    /**
+     * The {@code Event} class is used to submit multiple events at once using
+     * the {@link EventLog#submitEvents(List)} method.
+     */
+    public static class Event implements Serializable {
+        private final UUID trackingId;
+        private final String payload;
+
+        public Event(UUID trackingId, String payload) {
+            this.trackingId = Objects.requireNonNull(trackingId);
+            this.payload = Objects.requireNonNull(payload);
+        }
+
+        public UUID getTrackingId() {
+            return trackingId;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * An event delivered by an event log together with its offset, as
+     * published by {@link EventLog#publisher(UUID, long)}.
+     */
+    public static class OffsetEvent extends Event {
+        private final long offset;
+
+        public OffsetEvent(long offset, UUID trackingId, String payload) {
+            super(trackingId, payload);
+            this.offset = offset;
+        }
+
+        /**
+         * Gets the offset of the event in the log.
+         *
+         * @return the offset, or {@link EventLog#NO_OFFSET} if the event log
+         *         doesn't assign offsets
+         */
+        public long getOffset() {
+            return offset;
+        }
+    }
+
+    /**
+     * A consumer of events that are delivered together with their offset in
+     * the event log.
+     */
+    @FunctionalInterface
+    public interface OffsetEventConsumer {
+        /**
+         * Receives an event from the event log.
+         *
+         * @param offset
+         *            the offset of the event in the log, or
+         *            {@link EventLog#NO_OFFSET} if the event log doesn't
+         *            assign offsets
+         * @param trackingId
+         *            the tracking id of the event, not <code>null</code>
+         * @param eventPayload
+         *            the payload of the event, not <code>null</code>
+         */
+        void accept(long offset, UUID trackingId, String eventPayload);
+    }
+
     /**
      * A strictly ordered log of submitted events.
+     * <p>
+     * An event log can optionally assign each appended event an offset, which
+     * is a <code>long</code> value that increases monotonically within the log.
+     * Offsets let the backend find a position in the log directly instead of
+     * searching for an event by its tracking id. Offsets are delivered through
+     * {@link #subscribe(UUID, long, OffsetEventConsumer)} and stored in topic
+     * snapshots, so that they can later be passed back to the same method or
+     * to {@link #truncate(UUID, long)}.
      */
     public interface EventLog {
+        /**
+         * The offset value used when an event log doesn't assign offsets or
+         * when the offset of an event is not known.
+         */
+        long NO_OFFSET = -1;
+
         /**
          * Submits an event through the backend to all subscribers. The tracking
          * id needs to be delivered to active subscribers but it is not
@@ -79,6 +161,23 @@ public abstract class Backend {
          */
         void submitEvent(UUID trackingId, String eventPayload);
 
+        /**
+         * Submits multiple events through the backend to all subscribers. The
+         * events must be appended to the log in the order of the list. The
+         * default implementation submits the events one by one using
+         * {@link #submitEvent(UUID, String)}. Backends that can append multiple
+         * events in one operation, for example through pipelining or bulk
+         * writes, should override this method.
+         *
+         * @param events
+         *            the events to submit, not <code>null</code>
+         */
+        default void submitEvents(List<Event> events) {
+            for (Event event : events) {
+                submitEvent(event.getTrackingId(), event.getPayload());
+            }
+        }
+
         /**
          * Adds a subscriber to receive all past and future events for this
          * event log. A newly added subscriber should initially receive all
@@ -111,6 +210,74 @@ public abstract class Backend {
                 BiConsumer<UUID, String> eventConsumer)
                 throws EventIdNotFoundException;
 
+        /**
+         * Adds a subscriber to receive all past and future events for this
+         * event log together with their offsets. This method behaves like
+         * {@link #subscribe(UUID, BiConsumer)}, but event logs that assign
+         * offsets can use {@code newerThanOffset} to seek directly to the
+         * position after the given event.
+         * <p>
+         * Both the id and the offset of the same event are passed so that an
+         * event log that doesn't assign offsets, or that doesn't recognize the
+         * offset, can fall back to searching by id. The default implementation
+         * ignores the offset, delegates to
+         * {@link #subscribe(UUID, BiConsumer)} and delivers all events with
+         * {@link #NO_OFFSET}.
+         *
+         * @param newerThan
+         *            if not <code>null</code>, only events after the event with
+         *            the provided UUID will be considered.
+         * @param newerThanOffset
+         *            the offset of the event identified by {@code newerThan},
+         *            or {@link #NO_OFFSET} if not known
+         * @param eventConsumer
+         *            a consumer that should receive all events, not
+         *            <code>null</code>
+         * @return a registration to remove the event consumer, not
+         *         <code>null</code>
+         * @throws EventIdNotFoundException
+         *             when the provided event does not exist in the event log.
+         */
+        default Registration subscribe(UUID newerThan, long newerThanOffset,
+                OffsetEventConsumer eventConsumer)
+                throws EventIdNotFoundException {
+            Objects.requireNonNull(eventConsumer);
+            return subscribe(newerThan, (trackingId,
+                    payload) -> eventConsumer.accept(NO_OFFSET, trackingId,
+                            payload));
+        }
+
+        /**
+         * Creates a publisher of the events in this log that delivers events
+         * only as they are requested by the subscriber, so that a subscriber
+         * that falls behind is not forced to either block the thread that
+         * delivers events or to buffer an unbounded number of them. Each
+         * subscriber receives the events after the given event like with
+         * {@link #subscribe(UUID, long, OffsetEventConsumer)}, and an
+         * {@link EventIdNotFoundException} is signaled through
+         * {@link Flow.Subscriber#onError(Throwable)}.
+         * <p>
+         * The default implementation adapts
+         * {@link #subscribe(UUID, long, OffsetEventConsumer)} by buffering the
+         * pushed events until they are requested. If the buffer fills up, the
+         * subscription is cancelled and the subscriber is signaled an error,
+         * after which it can subscribe again from the last event it has
+         * handled. Event logs that can read events on demand should override
+         * this method to fetch events only as they are requested.
+         *
+         * @param newerThan
+         *            if not <code>null</code>, only events after the event with
+         *            the provided UUID will be published
+         * @param newerThanOffset
+         *            the offset of the event identified by {@code newerThan},
+         *            or {@link #NO_OFFSET} if not known
+         * @return a publisher of events, not <code>null</code>
+         */
+        default Flow.Publisher<OffsetEvent> publisher(UUID newerThan,
+                long newerThanOffset) {
+            return new EventLogPublisher(this, newerThan, newerThanOffset);
+        }
+
         /**
          * Removes all events in the log before the given id. If a {@code null}
          * id is passed, then all events are removed.
@@ -119,6 +286,22 @@ public abstract class Backend {
          *            the oldest UUID to retain
          */
         void truncate(UUID olderThan);
+
+        /**
+         * Removes all events in the log before the given event. Event logs
+         * that assign offsets can use {@code olderThanOffset} to find the
+         * position directly. The default implementation ignores the offset
+         * and delegates to {@link #truncate(UUID)}.
+         *
+         * @param olderThan
+         *            the oldest UUID to retain
+         * @param olderThanOffset
+         *            the offset of the event identified by {@code olderThan},
+         *            or {@link #NO_OFFSET} if not known
+         */
+        default void truncate(UUID olderThan, long olderThanOffset) {
+            truncate(olderThan);
+        }
     }
 
     private CollaborationEngine collaborationEngine;
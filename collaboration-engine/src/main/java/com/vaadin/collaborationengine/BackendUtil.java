@@ -31,22 +31,27 @@ class BackendUtil {
 
         int maxAttempts = ce.getConfiguration()
                 .getEventLogSubscribeRetryAttempts();
+        EngineMetrics metrics = ce.getMetrics();
+        long start = metrics.start();
         CompletableFuture<UUID> future = new CompletableFuture<>();
-        attemptInitialization(0, maxAttempts, initializer, future);
-        return future;
+        attemptInitialization(0, maxAttempts, initializer, metrics, future);
+        return future.whenComplete((uuid, e) -> metrics
+                .recordSince(metrics.initializationDuration, start));
     }
 
     private static void attemptInitialization(int attempt, int maxAttempts,
-            Initializer initializer, CompletableFuture<UUID> future) {
+            Initializer initializer, EngineMetrics metrics,
+            CompletableFuture<UUID> future) {
         if (attempt < maxAttempts) {
             CompletableFuture<UUID> initFuture = initializer.initialize();
             initFuture.whenComplete((uuid, e) -> {
                 if (e != null) {
+                    metrics.initializationFailures.increment();
                     CollaborationEngine.LOGGER.warn(
                             "Initialize event " + "log failed - retry attempt "
                                     + (attempt + 1) + "/" + maxAttempts + ".");
                     attemptInitialization(attempt + 1, maxAttempts, initializer,
-                            future);
+                            metrics, future);
                 } else {
                     future.complete(uuid);
                 }
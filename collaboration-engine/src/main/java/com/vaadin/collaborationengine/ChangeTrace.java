@@ -0,0 +1,321 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.vaadin.collaborationengine.CollaborationEngineMetrics.Histogram;
+import com.vaadin.flow.server.Command;
+
+/**
+ * Traces the latency of a sampled change from the moment a topic connection
+ * submits it until it has been delivered to the subscribers of each
+ * connection. A traced change carries the time it was submitted and sent to
+ * the backend, and the node it was submitted on, in its payload, so that each
+ * node that applies the change can record the stages that follow. Those times
+ * are taken from the wall clock of the engine since they're compared across
+ * nodes, while the stages within a node are timed with
+ * {@link System#nanoTime()}.
+ * <p>
+ * The stages are recorded to per-topic histograms, see
+ * {@link CollaborationEngineMetrics#TRACE_DISPATCH} and the constants that
+ * follow it.
+ *
+ * @author Vaadin Ltd
+ */
+class ChangeTrace {
+
+    /**
+     * The per-topic histograms that the stages of traced changes are recorded
+     * to.
+     */
+    static class Stages {
+        private final Histogram dispatch;
+        private final Histogram backend;
+        private final Histogram apply;
+        private final Histogram fanOut;
+        private final Histogram access;
+        private final Histogram delivery;
+        private final Histogram endToEnd;
+        private final Histogram remoteEndToEnd;
+
+        private static final List<String> NAMES = List.of(
+                CollaborationEngineMetrics.TRACE_DISPATCH,
+                CollaborationEngineMetrics.TRACE_BACKEND,
+                CollaborationEngineMetrics.TRACE_APPLY,
+                CollaborationEngineMetrics.TRACE_FAN_OUT,
+                CollaborationEngineMetrics.TRACE_ACCESS,
+                CollaborationEngineMetrics.TRACE_DELIVERY,
+                CollaborationEngineMetrics.TRACE_END_TO_END,
+                CollaborationEngineMetrics.TRACE_REMOTE_END_TO_END);
+
+        Stages(CollaborationEngineMetrics metrics, String topicId) {
+            dispatch = metrics.histogram(
+                    CollaborationEngineMetrics.TRACE_DISPATCH, topicId);
+            backend = metrics.histogram(
+                    CollaborationEngineMetrics.TRACE_BACKEND, topicId);
+            apply = metrics.histogram(CollaborationEngineMetrics.TRACE_APPLY,
+                    topicId);
+            fanOut = metrics.histogram(
+                    CollaborationEngineMetrics.TRACE_FAN_OUT, topicId);
+            access = metrics.histogram(
+                    CollaborationEngineMetrics.TRACE_ACCESS, topicId);
+            delivery = metrics.histogram(
+                    CollaborationEngineMetrics.TRACE_DELIVERY, topicId);
+            endToEnd = metrics.histogram(
+                    CollaborationEngineMetrics.TRACE_END_TO_END, topicId);
+            remoteEndToEnd = metrics.histogram(
+                    CollaborationEngineMetrics.TRACE_REMOTE_END_TO_END,
+                    topicId);
+        }
+
+        /**
+         * Removes the histograms of a topic from the given metrics.
+         *
+         * @param metrics
+         *            the metrics that the histograms were created with, not
+         *            <code>null</code>
+         * @param topicId
+         *            the id of the topic, not <code>null</code>
+         */
+        static void remove(CollaborationEngineMetrics metrics,
+                String topicId) {
+            NAMES.forEach(name -> metrics.removeHistogram(name, topicId));
+        }
+    }
+
+    /*
+     * An event of a traced change that hasn't been sent to the backend yet.
+     * The change is serialized only once it has been stamped with the time it
+     * is sent, by send.
+     */
+    private static class PendingEvent extends Backend.Event {
+        private final ObjectNode change;
+        private final long submitted;
+
+        private PendingEvent(UUID trackingId, ObjectNode change,
+                long submitted) {
+            super(trackingId, "");
+            this.change = change;
+            this.submitted = submitted;
+        }
+
+        @Override
+        public String getPayload() {
+            return JsonUtil.toString(change);
+        }
+    }
+
+    // The traced change being applied by the current thread, if any
+    private static final ThreadLocal<ChangeTrace> APPLYING = new ThreadLocal<>();
+
+    // When the current thread started to run dispatched actions, or 0
+    private static final ThreadLocal<long[]> ACCESS_STARTED = ThreadLocal
+            .withInitial(() -> new long[1]);
+
+    private final Stages stages;
+    private final Clock clock;
+    private final long submitted;
+    private final boolean local;
+    private final long applyStarted;
+
+    private ChangeTrace(Stages stages, Clock clock, long submitted,
+            boolean local) {
+        this.stages = stages;
+        this.clock = clock;
+        this.submitted = submitted;
+        this.local = local;
+        this.applyStarted = System.nanoTime();
+    }
+
+    /**
+     * Creates the backend event of a change submitted by a topic connection,
+     * stamping it with the submit time and node if it's sampled for tracing.
+     *
+     * @param trackingId
+     *            the tracking id of the change, not <code>null</code>
+     * @param change
+     *            the change, not <code>null</code>
+     * @param ce
+     *            the engine of the connection, not <code>null</code>
+     * @return the event, not <code>null</code>
+     */
+    static Backend.Event createEvent(UUID trackingId, ObjectNode change,
+            CollaborationEngine ce) {
+        if (!ce.getMetrics().sampleTrace()) {
+            return new Backend.Event(trackingId, JsonUtil.toString(change));
+        }
+        change.putObject(JsonUtil.CHANGE_TRACE)
+                .put(JsonUtil.CHANGE_TRACE_SUBMITTED, now(ce.getClock()))
+                .put(JsonUtil.CHANGE_NODE_ID,
+                        ce.getConfiguration().getBackend().getNodeId()
+                                .toString());
+        return new PendingEvent(trackingId, change, System.nanoTime());
+    }
+
+    /**
+     * Stamps the traced changes among the given events with the time they're
+     * sent to the backend, replacing their events in the list.
+     *
+     * @param events
+     *            the events about to be sent, not <code>null</code>
+     * @param ce
+     *            the engine of the connection, not <code>null</code>
+     * @param topicId
+     *            the id of the topic, not <code>null</code>
+     */
+    static void send(List<Backend.Event> events, CollaborationEngine ce,
+            String topicId) {
+        events.replaceAll(event -> {
+            if (!(event instanceof PendingEvent)) {
+                return event;
+            }
+            PendingEvent pending = (PendingEvent) event;
+            ((ObjectNode) pending.change.get(JsonUtil.CHANGE_TRACE)).put(
+                    JsonUtil.CHANGE_TRACE_SENT, now(ce.getClock()));
+            Stages stages = ce.getMetrics().getTraceStages(topicId);
+            if (stages != null) {
+                stages.dispatch.record(System.nanoTime() - pending.submitted);
+            }
+            return new Backend.Event(pending.getTrackingId(),
+                    JsonUtil.toString(pending.change));
+        });
+    }
+
+    /**
+     * Starts tracing the application of a change to a topic, if the change is
+     * traced. Actions dispatched with {@link #traceDelivery(Command)} by the
+     * current thread are traced until {@link #applied()} is called.
+     *
+     * @param change
+     *            the change being applied, not <code>null</code>
+     * @param ce
+     *            the engine of the topic, not <code>null</code>
+     * @param topicId
+     *            the id of the topic, not <code>null</code>
+     * @return the trace, or <code>null</code> if the change isn't traced
+     */
+    static ChangeTrace startApply(ObjectNode change, CollaborationEngine ce,
+            String topicId) {
+        JsonNode trace = change.get(JsonUtil.CHANGE_TRACE);
+        if (trace == null) {
+            return null;
+        }
+        Stages stages = ce.getMetrics().getTraceStages(topicId);
+        if (stages == null) {
+            return null;
+        }
+        Clock clock = ce.getClock();
+        JsonNode sent = trace.get(JsonUtil.CHANGE_TRACE_SENT);
+        if (sent != null) {
+            record(stages.backend, now(clock) - sent.asLong());
+        }
+        boolean local = ce.getConfiguration().getBackend().getNodeId()
+                .toString()
+                .equals(trace.path(JsonUtil.CHANGE_NODE_ID).asText());
+        ChangeTrace changeTrace = new ChangeTrace(stages, clock,
+                trace.path(JsonUtil.CHANGE_TRACE_SUBMITTED).asLong(), local);
+        APPLYING.set(changeTrace);
+        return changeTrace;
+    }
+
+    /**
+     * Records the time spent applying the traced change and stops tracing the
+     * actions dispatched by the current thread.
+     */
+    void applied() {
+        APPLYING.remove();
+        stages.apply.record(System.nanoTime() - applyStarted);
+    }
+
+    /**
+     * Wraps an action that delivers a change to the subscribers of a
+     * connection, so that the delivery is traced if the change that the
+     * current thread is applying is traced.
+     *
+     * @param action
+     *            the action that delivers the change, not <code>null</code>
+     * @return the action to dispatch, not <code>null</code>
+     */
+    static Command traceDelivery(Command action) {
+        ChangeTrace trace = APPLYING.get();
+        if (trace == null) {
+            return action;
+        }
+        long dispatched = System.nanoTime();
+        trace.stages.fanOut.record(dispatched - trace.applyStarted);
+        return () -> {
+            long accessed = ACCESS_STARTED.get()[0];
+            if (accessed == 0) {
+                accessed = System.nanoTime();
+            }
+            // Actions dispatched while others are being run wait for nothing
+            accessed = Math.max(accessed, dispatched);
+            trace.stages.access.record(accessed - dispatched);
+            try {
+                action.execute();
+            } finally {
+                trace.stages.delivery.record(System.nanoTime() - accessed);
+                record(trace.local ? trace.stages.endToEnd
+                        : trace.stages.remoteEndToEnd,
+                        now(trace.clock) - trace.submitted);
+            }
+        };
+    }
+
+    /**
+     * Marks that the current thread starts to run the actions dispatched to
+     * a connection context, e.g. after acquiring the lock of a UI session.
+     *
+     * @return the previous mark, to be passed to
+     *         {@link #accessEnded(long)}
+     */
+    static long accessStarted() {
+        long[] started = ACCESS_STARTED.get();
+        long previous = started[0];
+        started[0] = System.nanoTime();
+        return previous;
+    }
+
+    /**
+     * Marks that the current thread has run the actions dispatched to a
+     * connection context.
+     *
+     * @param previous
+     *            the mark returned by {@link #accessStarted()}
+     */
+    static void accessEnded(long previous) {
+        ACCESS_STARTED.get()[0] = previous;
+    }
+
+    /*
+     * Spans measured with wall clocks, possibly of different nodes, can come
+     * out negative when a clock is adjusted.
+     */
+    private static void record(Histogram histogram, long value) {
+        histogram.record(Math.max(0, value));
+    }
+
+    private static long now(Clock clock) {
+        Instant now = clock.instant();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+}
@@ -16,6 +16,7 @@
 package com.vaadin.collaborationengine;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -29,16 +30,16 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.vaadin.collaborationengine.Backend.EventLog;
 import com.vaadin.flow.component.Component;
 import com.vaadin.flow.component.UI;
@@ -94,6 +95,7 @@ public class CollaborationEngine {
     private Map<String, Integer> activeTopicsCount = new ConcurrentHashMap<>();
     private final Set<TopicConnectionRegistration> registrations = ConcurrentHashMap
             .newKeySet();
+    private final Map<String, ScheduledFuture<?>> scheduledUnloads = new ConcurrentHashMap<>();
 
     private CollaborationEngineConfiguration configuration;
 
@@ -103,10 +105,14 @@ public class CollaborationEngine {
 
     private ExecutorService executorService;
 
+    private ScheduledExecutorService scheduler;
+
     private VaadinService vaadinService;
 
     private SystemConnectionContext systemContext;
 
+    private EngineMetrics metrics = EngineMetrics.DISABLED;
+
     private final AtomicBoolean active = new AtomicBoolean(true);
 
     static {
@@ -129,16 +135,90 @@ public class CollaborationEngine {
         if (isActive) {
             activeTopicsCount.putIfAbsent(topicId, 0);
         }
+        AtomicBoolean lastDeactivated = new AtomicBoolean();
         activeTopicsCount.computeIfPresent(topicId, (topic, count) -> {
             int newCount = isActive ? count + 1 : count - 1;
             if (newCount <= 0) {
                 activeTopicsCount.remove(topicId);
                 topicActivationHandler.setActive(topicId, false);
+                lastDeactivated.set(true);
             } else if (isActive && newCount == 1) {
                 topicActivationHandler.setActive(topicId, true);
+                cancelTopicUnload(topicId);
             }
             return newCount;
         });
+        if (lastDeactivated.get()) {
+            getMetrics().releaseTraceStages(topicId);
+            scheduleTopicUnload(topicId);
+        } else if (isActive) {
+            TopicAndEventLog topicAndEventLog = topics.get(topicId);
+            if (topicAndEventLog != null) {
+                // Load again if the topic was unloaded while inactive
+                topicAndEventLog.topic.load();
+            }
+        }
+    }
+
+    private void scheduleTopicUnload(String topicId) {
+        Duration delay = configuration.getTopicUnloadDelay();
+        if (delay == null || configuration.getBackend() instanceof LocalBackend) {
+            return;
+        }
+        if (delay.isZero()) {
+            unloadTopicIfInactive(topicId);
+            return;
+        }
+        ScheduledFuture<?> previous = scheduledUnloads.put(topicId,
+                getScheduler().schedule(
+                        () -> unloadTopicIfInactive(topicId),
+                        delay.toMillis(), TimeUnit.MILLISECONDS));
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    private void cancelTopicUnload(String topicId) {
+        ScheduledFuture<?> scheduled = scheduledUnloads.remove(topicId);
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+
+    private void unloadTopicIfInactive(String topicId) {
+        scheduledUnloads.remove(topicId);
+        TopicAndEventLog topicAndEventLog = topics.get(topicId);
+        if (topicAndEventLog == null) {
+            return;
+        }
+        Topic topic = topicAndEventLog.topic;
+        synchronized (topic) {
+            // A connection activated concurrently loads the topic again
+            // afterwards, so this check only avoids needless reloading
+            if (!activeTopicsCount.containsKey(topicId)) {
+                LOGGER.debug("Unloading topic {} without local connections",
+                        topicId);
+                topic.unload();
+            }
+        }
+    }
+
+    /*
+     * Used for delayed tasks such as unloading topics and submitting coalesced
+     * writes. Tasks must be short and hand off any real work to the executor
+     * service or an action dispatcher.
+     */
+    synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors
+                    .newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable,
+                                "collaboration-engine-scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        return scheduler;
     }
 
     /**
@@ -230,6 +310,8 @@ public class CollaborationEngine {
         ce.configuration = configuration;
         ce.vaadinService = vaadinService;
         ce.systemContext = new SystemConnectionContext(() -> ce);
+        ce.metrics = ce.createMetrics(configuration.getMetrics(),
+                configuration.getChangeTraceSampleRate());
 
         configuration.getBackend().setCollaborationEngine(ce);
 
@@ -249,6 +331,11 @@ public class CollaborationEngine {
                 LOGGER.info("Shutting down thread pool");
                 ce.executorService.shutdown();
             }
+            synchronized (ce) {
+                if (ce.scheduler != null) {
+                    ce.scheduler.shutdownNow();
+                }
+            }
         });
         if (storeInService) {
             // Avoid storing from inside computeIfAbsent
@@ -387,11 +474,15 @@ public class CollaborationEngine {
             return createFailedTopicConnectionRegistration(context);
         }
 
+        if (isBackendDegraded()) {
+            LOGGER.warn("Tried to open a connection to topic " + topicId
+                    + " while the backend is degraded");
+            return createFailedTopicConnectionRegistration(context);
+        }
+
         TopicAndEventLog topicAndConnection = topics.computeIfAbsent(topicId,
                 this::createTopicAndEventLog);
-        BiConsumer<UUID, ObjectNode> distributor = (id,
-                node) -> topicAndConnection.eventLog.submitEvent(id,
-                        JsonUtil.toString(node));
+        Consumer<List<Backend.Event>> distributor = topicAndConnection.eventLog::submitEvents;
         TopicConnection connection = new TopicConnection(() -> this, context,
                 topicAndConnection.topic, distributor, localUser,
                 isActive -> updateTopicActivation(topicId, isActive),
@@ -411,6 +502,12 @@ public class CollaborationEngine {
         return registration;
     }
 
+    private boolean isBackendDegraded() {
+        Backend backend = configuration.getBackend();
+        return backend instanceof ResilientBackend
+                && ((ResilientBackend) backend).isDegraded();
+    }
+
     private TopicConnectionRegistration createFailedTopicConnectionRegistration(
             ConnectionContext context) {
         return new TopicConnectionRegistration(null, context,
@@ -530,6 +627,27 @@ public class CollaborationEngine {
         return configuration;
     }
 
+    EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    private EngineMetrics createMetrics(CollaborationEngineMetrics metrics,
+            double traceSampleRate) {
+        metrics.gauge(CollaborationEngineMetrics.CONNECTIONS,
+                () -> registrations.size());
+        metrics.gauge(CollaborationEngineMetrics.ACTIVE_TOPICS,
+                () -> activeTopicsCount.size());
+        metrics.gauge(CollaborationEngineMetrics.MAX_TOPIC_CONNECTIONS,
+                () -> activeTopicsCount.values().stream()
+                        .mapToLong(Integer::longValue).max().orElse(0));
+        metrics.gauge(CollaborationEngineMetrics.CHANGE_RESULT_TRACKERS,
+                () -> topics.values().stream().mapToLong(
+                        topicAndEventLog -> topicAndEventLog.topic
+                                .getChangeResultTrackerCount())
+                        .sum());
+        return new EngineMetrics(metrics, traceSampleRate);
+    }
+
     Clock getClock() {
         return clock;
     }
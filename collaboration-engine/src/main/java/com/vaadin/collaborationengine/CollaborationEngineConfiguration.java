@@ -15,7 +15,9 @@
  */
 package com.vaadin.collaborationengine;
 
+import java.time.Duration;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
 import com.vaadin.experimental.FeatureFlags;
@@ -60,6 +62,20 @@ public class CollaborationEngineConfiguration {
 
     private ExecutorService executorService;
 
+    private Duration topicUnloadDelay;
+
+    private boolean optimisticUpdates;
+
+    private Duration writeCoalescingInterval;
+
+    private Set<Class<?>> immutableValueTypes = Set.of();
+
+    private boolean compactValueStorage;
+
+    private CollaborationEngineMetrics metrics = EngineMetrics.NO_OP;
+
+    private double changeTraceSampleRate;
+
     private LicenseStorage licenseStorage;
 
     /**
@@ -292,6 +308,263 @@ public class CollaborationEngineConfiguration {
         this.executorService = executorService;
     }
 
+    /**
+     * Sets how long a topic stays loaded on this node after the last local
+     * topic connection to it has been deactivated. When the delay has passed
+     * without any new local connections, the node stops following the changes
+     * of the topic and discards its data. The topic is loaded again from the
+     * latest snapshot and the event log when a connection to it is activated.
+     * <p>
+     * By default, topics are never unloaded. Unloading has no effect with the
+     * default local backend since it doesn't store the event log.
+     *
+     * @param topicUnloadDelay
+     *            the delay after which topics without local connections are
+     *            unloaded, or <code>null</code> to never unload topics
+     */
+    public void setTopicUnloadDelay(Duration topicUnloadDelay) {
+        if (topicUnloadDelay != null && topicUnloadDelay.isNegative()) {
+            throw new IllegalArgumentException(
+                    "The topic unload delay cannot be negative");
+        }
+        this.topicUnloadDelay = topicUnloadDelay;
+    }
+
+    /**
+     * Gets the delay after which topics without local connections are
+     * unloaded.
+     *
+     * @see #setTopicUnloadDelay(Duration)
+     *
+     * @return the topic unload delay, or <code>null</code> if topics are never
+     *         unloaded
+     */
+    public Duration getTopicUnloadDelay() {
+        return topicUnloadDelay;
+    }
+
+    /**
+     * Sets whether values put to a {@link CollaborationMap} are shown to the
+     * topic connection that put them before the change has been confirmed by
+     * the backend. With a clustered backend, each change otherwise becomes
+     * visible only after it has been submitted to the event log and delivered
+     * back to this node.
+     * <p>
+     * When enabled, the value of an unconditional
+     * {@link CollaborationMap#put(String, Object)} is returned by the
+     * {@link CollaborationMap#get(String, Class)} methods of the same
+     * connection and delivered to its map subscribers right away. The value
+     * is reconciled when the change arrives from the backend: changes made by
+     * others in the meantime are hidden until the local change is applied on
+     * top of them. If the change cannot be submitted, the value is rolled back
+     * and subscribers receive an event with the value that the backend has.
+     * Conditional operations such as
+     * {@link CollaborationMap#replace(String, Object, Object)} are never
+     * applied optimistically. By default, optimistic updates are disabled.
+     *
+     * @param optimisticUpdates
+     *            <code>true</code> to show map changes to the connection that
+     *            made them before they are confirmed, <code>false</code> to
+     *            wait for the backend
+     */
+    public void setOptimisticUpdates(boolean optimisticUpdates) {
+        this.optimisticUpdates = optimisticUpdates;
+    }
+
+    /**
+     * Gets whether map changes are shown to the connection that made them
+     * before they are confirmed by the backend.
+     *
+     * @see #setOptimisticUpdates(boolean)
+     *
+     * @return <code>true</code> if optimistic updates are enabled,
+     *         <code>false</code> otherwise
+     */
+    public boolean isOptimisticUpdates() {
+        return optimisticUpdates;
+    }
+
+    /**
+     * Sets the interval within which successive values put to the same key of
+     * a {@link CollaborationMap} through the same topic connection are
+     * coalesced into one change. Only the latest value put within the
+     * interval is submitted to the other connections, and the futures
+     * returned by all the coalesced
+     * {@link CollaborationMap#put(String, Object)} calls complete when that
+     * value has been applied. This reduces the number of changes caused by
+     * for example text fields that update a value on each keystroke.
+     * <p>
+     * The interval starts at the first put to a key, so the latest value is
+     * submitted at most this much later than without coalescing. Conditional
+     * operations are never coalesced. Values that have not been submitted
+     * when a connection is deactivated are submitted right away, except for
+     * values with {@link EntryScope#CONNECTION} which would be removed anyway.
+     * By default, writes are not coalesced.
+     *
+     * @param writeCoalescingInterval
+     *            the coalescing interval, or <code>null</code> or zero to
+     *            submit each value right away
+     */
+    public void setWriteCoalescingInterval(Duration writeCoalescingInterval) {
+        if (writeCoalescingInterval != null
+                && writeCoalescingInterval.isNegative()) {
+            throw new IllegalArgumentException(
+                    "The write coalescing interval cannot be negative");
+        }
+        this.writeCoalescingInterval = writeCoalescingInterval;
+    }
+
+    /**
+     * Gets the interval within which successive values put to the same map
+     * key are coalesced into one change.
+     *
+     * @see #setWriteCoalescingInterval(Duration)
+     *
+     * @return the coalescing interval, or <code>null</code> if writes are not
+     *         coalesced
+     */
+    public Duration getWriteCoalescingInterval() {
+        return writeCoalescingInterval;
+    }
+
+    /**
+     * Sets the application types whose instances are never modified after
+     * they have been decoded from collaboration values, in addition to the
+     * built-in immutable types such as strings, boxed primitives, enums and
+     * {@code java.time} values.
+     * <p>
+     * A change is delivered to subscribers in all connections to a topic.
+     * When an event value is requested as one of these types, for example with
+     * {@link MapChangeEvent#getValue(Class)} or
+     * {@link ListChangeEvent#getValue(Class)}, the value is decoded once per
+     * change and the same instance is returned to every subscriber, instead
+     * of being decoded separately for each of them. For example, if no
+     * message handler modifies the messages it receives,
+     * {@link CollaborationMessage} can be declared to avoid decoding each new
+     * message once per message list. Declaring a type that is modified by any
+     * subscriber makes that modification visible to all other subscribers.
+     * By default, no application types are declared.
+     *
+     * @param immutableValueTypes
+     *            the types to share decoded instances of, not
+     *            <code>null</code>
+     */
+    public void setImmutableValueTypes(Set<Class<?>> immutableValueTypes) {
+        Objects.requireNonNull(immutableValueTypes,
+                "The set of types cannot be null");
+        this.immutableValueTypes = Set.copyOf(immutableValueTypes);
+    }
+
+    /**
+     * Gets the application types whose decoded instances are shared between
+     * subscribers.
+     *
+     * @see #setImmutableValueTypes(Set)
+     *
+     * @return an unmodifiable set of types, not <code>null</code>
+     */
+    public Set<Class<?>> getImmutableValueTypes() {
+        return immutableValueTypes;
+    }
+
+    /**
+     * Sets whether the values of collaboration maps and lists are kept in
+     * memory as encoded JSON instead of parsed JSON trees. Encoded values take
+     * a fraction of the memory, which matters for topics with lots of data,
+     * but each value needs to be decoded again when it's read, for example
+     * when a new subscriber joins or a snapshot is taken. The most recently
+     * written and read values of each topic are kept decoded. By default,
+     * values are kept as JSON trees.
+     *
+     * @param compactValueStorage
+     *            <code>true</code> to keep values encoded, <code>false</code>
+     *            to keep them as JSON trees
+     */
+    public void setCompactValueStorage(boolean compactValueStorage) {
+        this.compactValueStorage = compactValueStorage;
+    }
+
+    /**
+     * Gets whether the values of collaboration maps and lists are kept in
+     * memory as encoded JSON.
+     *
+     * @see #setCompactValueStorage(boolean)
+     *
+     * @return <code>true</code> if values are kept encoded,
+     *         <code>false</code> otherwise
+     */
+    public boolean isCompactValueStorage() {
+        return compactValueStorage;
+    }
+
+    /**
+     * Sets where the engine records its metrics, such as the number of
+     * applied changes, the number of dispatched actions that are waiting to
+     * be run and the duration of taking snapshots. The metrics must be set
+     * before the engine is configured with this configuration. By default, no
+     * metrics are recorded.
+     *
+     * @see InMemoryMetrics
+     *
+     * @param metrics
+     *            the metrics to record to, not <code>null</code>
+     */
+    public void setMetrics(CollaborationEngineMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics,
+                "The metrics cannot be null");
+    }
+
+    /**
+     * Gets the metrics that the engine records to.
+     *
+     * @see #setMetrics(CollaborationEngineMetrics)
+     *
+     * @return the metrics, not <code>null</code>
+     */
+    public CollaborationEngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the fraction of map and list changes whose latency is traced from
+     * the moment they're submitted until they have been delivered to the
+     * subscribers of each topic connection. The time spent in each stage on
+     * the way, such as waiting for the backend or for the UI session lock, is
+     * recorded to histograms per topic of the {@link #getMetrics() metrics},
+     * so tracing has no effect unless metrics are set. The histograms of a
+     * topic are removed when the topic no longer has active connections on
+     * this node. By default, no changes are traced.
+     * <p>
+     * Traced changes carry their submit time and node to the other nodes of a
+     * cluster, so the stages that span several nodes are only as accurate as
+     * the synchronization of the clocks of the nodes.
+     *
+     * @see CollaborationEngineMetrics#histogram(String, String)
+     *
+     * @param changeTraceSampleRate
+     *            the fraction of changes to trace, from <code>0</code> for
+     *            none to <code>1</code> for all
+     */
+    public void setChangeTraceSampleRate(double changeTraceSampleRate) {
+        if (!(changeTraceSampleRate >= 0 && changeTraceSampleRate <= 1)) {
+            throw new IllegalArgumentException(
+                    "The change trace sample rate must be between 0 and 1");
+        }
+        this.changeTraceSampleRate = changeTraceSampleRate;
+    }
+
+    /**
+     * Gets the fraction of changes whose latency is traced.
+     *
+     * @see #setChangeTraceSampleRate(double)
+     *
+     * @return the fraction of changes to trace, from <code>0</code> for none
+     *         to <code>1</code> for all
+     */
+    public double getChangeTraceSampleRate() {
+        return changeTraceSampleRate;
+    }
+
     String getBeaconPathProperty() {
         String beaconPath = vaadinService.getDeploymentConfiguration()
                 .getStringProperty(BEACON_PATH_CONFIG_PROPERTY, null);
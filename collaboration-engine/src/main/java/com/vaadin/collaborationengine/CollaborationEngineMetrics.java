@@ -0,0 +1,271 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Receives the metrics of a Collaboration Engine instance, for example to
+ * publish them to a monitoring system. An implementation can be set with
+ * {@link CollaborationEngineConfiguration#setMetrics(CollaborationEngineMetrics)}.
+ * By default, no metrics are recorded. {@link InMemoryMetrics} keeps the
+ * metrics in memory without any dependencies.
+ * <p>
+ * The engine requests all instruments by name once, when it's configured, and
+ * records to them from any thread while it's running. Recording must
+ * therefore be thread-safe and cheap, since it's done e.g. within the lock of
+ * a topic.
+ *
+ * @author Vaadin Ltd
+ */
+public interface CollaborationEngineMetrics {
+
+    /**
+     * Counter of map and list changes that have been applied to topics.
+     */
+    String CHANGES_ACCEPTED = "collaboration-engine.changes.accepted";
+
+    /**
+     * Counter of map and list changes that have been rejected because a
+     * condition, such as the expected value of a replace, didn't match.
+     */
+    String CHANGES_REJECTED = "collaboration-engine.changes.rejected";
+
+    /**
+     * Histogram of the time in nanoseconds spent applying a change to a
+     * topic, including notifying subscribers and taking a snapshot.
+     */
+    String CHANGE_DURATION = "collaboration-engine.changes.duration";
+
+    /**
+     * Counter of actions dispatched to connection contexts, such as
+     * delivering a change to a subscriber.
+     */
+    String ACTIONS_DISPATCHED = "collaboration-engine.actions.dispatched";
+
+    /**
+     * Histogram of the time in nanoseconds that dispatched actions wait for
+     * their connection context to run them.
+     */
+    String ACTION_WAIT_DURATION = "collaboration-engine.actions.wait";
+
+    /**
+     * Gauge of dispatched actions that their connection context hasn't run
+     * yet. Actions of connections that have been deactivated are not
+     * included.
+     */
+    String ACTIONS_PENDING = "collaboration-engine.actions.pending";
+
+    /**
+     * Gauge of changes whose result is waiting to be reported to the
+     * connection that submitted them.
+     */
+    String CHANGE_RESULT_TRACKERS = "collaboration-engine.change-result-trackers";
+
+    /**
+     * Histogram of the time in nanoseconds spent building and encoding a
+     * snapshot of a topic.
+     */
+    String SNAPSHOT_DURATION = "collaboration-engine.snapshots.duration";
+
+    /**
+     * Histogram of the time in nanoseconds spent loading a topic from a
+     * snapshot.
+     */
+    String SNAPSHOT_LOAD_DURATION = "collaboration-engine.snapshots.load.duration";
+
+    /**
+     * Histogram of the time in nanoseconds spent initializing a topic from
+     * the backend, including retries.
+     */
+    String BACKEND_INITIALIZATION_DURATION = "collaboration-engine.backend.initialization.duration";
+
+    /**
+     * Counter of failed attempts to initialize a topic from the backend.
+     */
+    String BACKEND_INITIALIZATION_FAILURES = "collaboration-engine.backend.initialization.failures";
+
+    /**
+     * Gauge of open topic connections.
+     */
+    String CONNECTIONS = "collaboration-engine.connections";
+
+    /**
+     * Gauge of topics with at least one active connection.
+     */
+    String ACTIVE_TOPICS = "collaboration-engine.topics.active";
+
+    /**
+     * Gauge of active connections to the topic that has the most of them.
+     */
+    String MAX_TOPIC_CONNECTIONS = "collaboration-engine.topics.connections.max";
+
+    /**
+     * Per-topic histogram of the time in nanoseconds from submitting a traced
+     * change until the connection that submitted it sends it to the backend.
+     *
+     * @see CollaborationEngineConfiguration#setChangeTraceSampleRate(double)
+     */
+    String TRACE_DISPATCH = "collaboration-engine.trace.dispatch";
+
+    /**
+     * Per-topic histogram of the time in nanoseconds from sending a traced
+     * change to the backend until a node starts applying it to its topic.
+     */
+    String TRACE_BACKEND = "collaboration-engine.trace.backend";
+
+    /**
+     * Per-topic histogram of the time in nanoseconds spent applying a traced
+     * change to a topic, including dispatching it to the connections.
+     */
+    String TRACE_APPLY = "collaboration-engine.trace.apply";
+
+    /**
+     * Per-topic histogram of the time in nanoseconds from starting to apply a
+     * traced change until it's dispatched to a connection. It grows with the
+     * number of connections that the change is dispatched to before.
+     */
+    String TRACE_FAN_OUT = "collaboration-engine.trace.fan-out";
+
+    /**
+     * Per-topic histogram of the time in nanoseconds from dispatching a traced
+     * change to a connection until its connection context starts running the
+     * dispatched actions, e.g. once it holds the lock of the UI session.
+     */
+    String TRACE_ACCESS = "collaboration-engine.trace.access";
+
+    /**
+     * Per-topic histogram of the time in nanoseconds from the connection
+     * context starting to run the dispatched actions until the subscribers of
+     * a connection have been notified of a traced change.
+     */
+    String TRACE_DELIVERY = "collaboration-engine.trace.delivery";
+
+    /**
+     * Per-topic histogram of the time in nanoseconds from submitting a traced
+     * change until the subscribers of a connection on the same node have been
+     * notified of it.
+     */
+    String TRACE_END_TO_END = "collaboration-engine.trace.end-to-end";
+
+    /**
+     * Per-topic histogram of the time in nanoseconds from submitting a traced
+     * change on another node until the subscribers of a connection on this
+     * node have been notified of it, as measured with the clocks of both
+     * nodes.
+     */
+    String TRACE_REMOTE_END_TO_END = "collaboration-engine.trace.remote-end-to-end";
+
+    /**
+     * A counter that can only be incremented.
+     */
+    @FunctionalInterface
+    interface Counter {
+        /**
+         * Increments the counter by the given amount.
+         *
+         * @param amount
+         *            the non-negative amount to add
+         */
+        void increment(long amount);
+
+        /**
+         * Increments the counter by one.
+         */
+        default void increment() {
+            increment(1);
+        }
+    }
+
+    /**
+     * A distribution of recorded values, such as durations.
+     */
+    @FunctionalInterface
+    interface Histogram {
+        /**
+         * Records a value.
+         *
+         * @param value
+         *            the non-negative value to record
+         */
+        void record(long value);
+    }
+
+    /**
+     * Gets the counter with the given name.
+     *
+     * @param name
+     *            the name of the counter, not <code>null</code>
+     * @return the counter, not <code>null</code>
+     */
+    Counter counter(String name);
+
+    /**
+     * Gets the histogram with the given name.
+     *
+     * @param name
+     *            the name of the histogram, not <code>null</code>
+     * @return the histogram, not <code>null</code>
+     */
+    Histogram histogram(String name);
+
+    /**
+     * Gets the histogram with the given name for the given topic. The engine
+     * requests per-topic histograms when it records the first traced change
+     * of a topic. By default, the topic id is appended to the name in square
+     * brackets, e.g. <code>collaboration-engine.trace.apply[chat]</code>.
+     * Implementations that support tags can override this to tag the
+     * histogram with the topic id instead.
+     *
+     * @param name
+     *            the name of the histogram, not <code>null</code>
+     * @param topicId
+     *            the id of the topic, not <code>null</code>
+     * @return the histogram, not <code>null</code>
+     */
+    default Histogram histogram(String name, String topicId) {
+        return histogram(name + "[" + topicId + "]");
+    }
+
+    /**
+     * Removes the histogram with the given name for the given topic. The
+     * engine removes the per-topic histograms of a topic when the topic no
+     * longer has active connections on this node, so that implementations
+     * don't need to keep them for every topic that has ever been used. The
+     * default implementation does nothing.
+     *
+     * @param name
+     *            the name of the histogram, not <code>null</code>
+     * @param topicId
+     *            the id of the topic, not <code>null</code>
+     * @see #histogram(String, String)
+     */
+    default void removeHistogram(String name, String topicId) {
+        // NOOP
+    }
+
+    /**
+     * Registers a gauge with the given name. The value of a gauge is read
+     * from the engine whenever it's needed, so it should be read only when
+     * the metrics are published.
+     *
+     * @param name
+     *            the name of the gauge, not <code>null</code>
+     * @param value
+     *            the supplier of the current value, not <code>null</code>
+     */
+    void gauge(String name, LongSupplier value);
+}
@@ -235,7 +235,8 @@ public interface CollaborationList extends HasExpirationTimeout, Serializable {
 
     /**
      * Subscribes to changes to this list. When subscribing, the subscriber will
-     * receive an event for each item already in the list.
+     * receive an event for each item already in the list. Those events are
+     * delivered together through {@link ListSubscriber#onInitialState(List)}.
      *
      * @param subscriber
      *            the subscriber to use, not <code>null</code>
@@ -17,8 +17,12 @@ package com.vaadin.collaborationengine;
 
 import java.io.Serializable;
 import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -208,7 +212,8 @@ public interface CollaborationMap extends HasExpirationTimeout, Serializable {
 
     /**
      * Subscribes to changes to this map. When subscribing, the subscriber will
-     * receive an event for each current value association.
+     * receive an event for each current value association. Those events are
+     * delivered together through {@link MapSubscriber#onInitialState(List)}.
      *
      * @param subscriber
      *            the subscriber to use, not <code>null</code>
@@ -219,6 +224,100 @@ public interface CollaborationMap extends HasExpirationTimeout, Serializable {
      */
     Registration subscribe(MapSubscriber subscriber);
 
+    /**
+     * Subscribes to changes to the given keys of this map. When subscribing,
+     * the subscriber will receive an event for the current value of each of
+     * the given keys that has a value. Changes to other keys are not
+     * delivered to the subscriber.
+     * <p>
+     * This is more efficient than {@link #subscribe(MapSubscriber)} for maps
+     * with many keys of which only a few are of interest, since both the
+     * initial events and the delivery of changes scale with the number of
+     * subscribed keys rather than the size of the map. The default
+     * implementation filters the events of {@link #subscribe(MapSubscriber)}.
+     *
+     * @param keys
+     *            the keys to subscribe to, not <code>null</code>
+     * @param subscriber
+     *            the subscriber to use, not <code>null</code>
+     * @return a handle that can be used for removing the subscription, not
+     *         <code>null</code>
+     */
+    default Registration subscribe(Set<String> keys,
+            MapSubscriber subscriber) {
+        Objects.requireNonNull(keys, "Keys cannot be null");
+        Set<String> subscribedKeys = Set.copyOf(keys);
+        return subscribe(subscribedKeys::contains, subscriber);
+    }
+
+    /**
+     * Subscribes to changes to the keys of this map that match the given
+     * filter, for example all keys with a given prefix. When subscribing, the
+     * subscriber will receive an event for each current value association with
+     * a matching key. Changes to other keys are not delivered to the
+     * subscriber.
+     * <p>
+     * Since an arbitrary filter cannot be indexed, the initial events are
+     * still computed by testing every key of the map. Use
+     * {@link #subscribe(Set, MapSubscriber)} when the keys are known in
+     * advance.
+     *
+     * @param keyFilter
+     *            the filter that keys must match, not <code>null</code>
+     * @param subscriber
+     *            the subscriber to use, not <code>null</code>
+     * @return a handle that can be used for removing the subscription, not
+     *         <code>null</code>
+     */
+    default Registration subscribe(Predicate<String> keyFilter,
+            MapSubscriber subscriber) {
+        Objects.requireNonNull(keyFilter, "Key filter cannot be null");
+        Objects.requireNonNull(subscriber, "Subscriber cannot be null");
+        return subscribe(new MapSubscriber() {
+            @Override
+            public void onMapChange(MapChangeEvent event) {
+                if (keyFilter.test(event.getKey())) {
+                    subscriber.onMapChange(event);
+                }
+            }
+
+            @Override
+            public void onInitialState(List<MapChangeEvent> events) {
+                List<MapChangeEvent> matching = events.stream()
+                        .filter(event -> keyFilter.test(event.getKey()))
+                        .toList();
+                if (!matching.isEmpty()) {
+                    subscriber.onInitialState(matching);
+                }
+            }
+        });
+    }
+
+    /**
+     * Subscribes to changes to this map, merging changes that have not yet
+     * been delivered to the subscriber. When subscribing, the subscriber will
+     * receive an event for each current value association.
+     * <p>
+     * With {@link #subscribe(MapSubscriber)}, every change is queued for
+     * delivery, so a subscriber that is behind, for example because the UI
+     * is busy or the browser is slow to respond, gets all intermediate values
+     * once it catches up. With this method, a change to a key that still has
+     * an undelivered change is merged into it, so the subscriber only
+     * receives one event per key with the value before the first and after
+     * the last of the merged changes, or no event at all if the value was
+     * changed back. The number of undelivered changes is thus limited by the
+     * number of keys in the map. The default implementation delegates to
+     * {@link #subscribe(MapSubscriber)}.
+     *
+     * @param subscriber
+     *            the subscriber to use, not <code>null</code>
+     * @return a handle that can be used for removing the subscription, not
+     *         <code>null</code>
+     */
+    default Registration subscribeConflated(MapSubscriber subscriber) {
+        return subscribe(subscriber);
+    }
+
     /**
      * Gets the topic connection which is used to propagate changes to this map.
      *
@@ -77,6 +77,12 @@ public class ComponentConnectionContext implements ConnectionContext {
 
     private transient ExecutionQueue inbox = new ExecutionQueue();
     private transient ExecutionQueue shutdownCommands = new ExecutionQueue();
+    /*
+     * The UI that a flush of the inbox has been scheduled for but hasn't yet
+     * drained it, or null. At most one flush is pending at a time, so that
+     * dispatching many actions doesn't queue as many session accesses.
+     */
+    private transient AtomicReference<UI> flushScheduledFor = new AtomicReference<>();
     private final ActionDispatcher actionDispatcher = new ActionDispatcherImpl();
     private final AtomicReference<State> state = new AtomicReference<>(
             State.INACTIVE);
@@ -115,6 +121,7 @@ public class ComponentConnectionContext implements ConnectionContext {
         in.defaultReadObject();
         inbox = new ExecutionQueue();
         shutdownCommands = new ExecutionQueue();
+        flushScheduledFor = new AtomicReference<>();
         CollaborationEngineServiceInitListener
                 .addReinitializer(this::reinitialize);
     }
@@ -315,25 +322,67 @@ public class ComponentConnectionContext implements ConnectionContext {
 
     private void flushPendingActionsIfActive() {
         UI localUI = this.ui;
-        if (localUI == null || backgroundRunner == null) {
+        if (localUI == null || backgroundRunner == null
+                || !scheduleFlush(localUI)) {
             return;
         }
         VaadinSession session = localUI.getSession();
-        backgroundRunner.execute(() -> session.access(() -> {
-            UI currentUI = UI.getCurrent();
-            if (currentUI == null) {
-                UI.setCurrent(localUI);
-            }
-            try {
-                inbox.runPendingCommands();
-                inactivateIfDeactivating();
-            } finally {
-                if (currentUI == null) {
-                    UI.setCurrent(null);
+        try {
+            backgroundRunner.execute(() -> {
+                try {
+                    session.access(() -> flushPendingActions(localUI));
+                } catch (RuntimeException e) {
+                    flushScheduledFor.compareAndSet(localUI, null);
+                    throw e;
                 }
+            });
+        } catch (RuntimeException e) {
+            flushScheduledFor.compareAndSet(localUI, null);
+            throw e;
+        }
+    }
+
+    /*
+     * Returns false if a flush for the UI is already pending, since it will
+     * also run the actions that have been added to the inbox before it
+     * completes. A flush that is pending for a UI that the context is no
+     * longer attached to might never run, so it doesn't count.
+     */
+    private boolean scheduleFlush(UI localUI) {
+        while (true) {
+            UI scheduled = flushScheduledFor.get();
+            if (scheduled == localUI) {
+                return false;
             }
-        }));
+            if (flushScheduledFor.compareAndSet(scheduled, localUI)) {
+                return true;
+            }
+        }
+    }
 
+    private void flushPendingActions(UI localUI) {
+        UI currentUI = UI.getCurrent();
+        if (currentUI == null) {
+            UI.setCurrent(localUI);
+        }
+        long previousAccess = ChangeTrace.accessStarted();
+        try {
+            inbox.runPendingCommands();
+            inactivateIfDeactivating();
+        } finally {
+            ChangeTrace.accessEnded(previousAccess);
+            if (currentUI == null) {
+                UI.setCurrent(null);
+            }
+            /*
+             * Actions added after the inbox was drained but before the flush
+             * was marked as done didn't schedule a flush of their own.
+             */
+            flushScheduledFor.compareAndSet(localUI, null);
+            if (!inbox.isEmpty()) {
+                flushPendingActionsIfActive();
+            }
+        }
     }
 
     private static void checkForPush(UI ui) {
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Caches the instances decoded from a JSON value of a single change. A change
+ * is delivered to the subscribers of all connections to a topic, and would
+ * otherwise be decoded separately for each of them. Each type is decoded at
+ * most once and the same instance is returned to every caller, so the cache
+ * must only be used for immutable types.
+ *
+ * @author Vaadin Ltd
+ */
+class DecodedValueCache {
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = Set.of(String.class,
+            Boolean.class, Character.class, Byte.class, Short.class,
+            Integer.class, Long.class, Float.class, Double.class,
+            BigInteger.class, BigDecimal.class, UUID.class);
+
+    private final JsonNode value;
+
+    // Created on first use since most changes are never decoded twice
+    private volatile Map<Class<?>, Object> instances;
+
+    DecodedValueCache(JsonNode value) {
+        this.value = value;
+    }
+
+    /**
+     * Checks whether instances of the given type are known to be immutable
+     * without any configuration, which is the case for strings, boxed
+     * primitives, big numbers, UUIDs, enums and the value types in
+     * {@code java.time}.
+     */
+    static boolean isImmutable(Class<?> type) {
+        return IMMUTABLE_TYPES.contains(type) || type.isEnum()
+                || "java.time".equals(type.getPackageName());
+    }
+
+    <T> T get(Class<T> type) {
+        if (value == null) {
+            return null;
+        }
+        Map<Class<?>, Object> map = instances;
+        if (map == null) {
+            synchronized (this) {
+                map = instances;
+                if (map == null) {
+                    map = new ConcurrentHashMap<>();
+                    instances = map;
+                }
+            }
+        }
+        return type.cast(map.computeIfAbsent(type,
+                ignore -> JsonUtil.toInstance(value, type)));
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.vaadin.collaborationengine.CollaborationEngineMetrics.Counter;
+import com.vaadin.collaborationengine.CollaborationEngineMetrics.Histogram;
+import com.vaadin.flow.server.Command;
+
+/**
+ * The instruments that the engine records its metrics to, requested once from
+ * the configured {@link CollaborationEngineMetrics}. When no metrics are
+ * configured, nothing is timed, so the instrumentation costs next to
+ * nothing.
+ *
+ * @author Vaadin Ltd
+ */
+class EngineMetrics {
+
+    /**
+     * The metrics that are used when none have been configured.
+     */
+    static final CollaborationEngineMetrics NO_OP = new CollaborationEngineMetrics() {
+        @Override
+        public Counter counter(String name) {
+            return amount -> {
+            };
+        }
+
+        @Override
+        public Histogram histogram(String name) {
+            return value -> {
+            };
+        }
+
+        @Override
+        public void gauge(String name, LongSupplier value) {
+            // Never read
+        }
+    };
+
+    static final EngineMetrics DISABLED = new EngineMetrics(NO_OP, 0);
+
+    // The most topics that traced changes are recorded for at a time
+    static final int MAX_TRACED_TOPICS = 1000;
+
+    private final CollaborationEngineMetrics metrics;
+    private final boolean enabled;
+    private final double traceSampleRate;
+    final Counter changesAccepted;
+    final Counter changesRejected;
+    final Histogram changeDuration;
+    final Counter actionsDispatched;
+    final Histogram actionWaitDuration;
+    final Histogram snapshotDuration;
+    final Histogram snapshotLoadDuration;
+    final Histogram initializationDuration;
+    final Counter initializationFailures;
+    private final LongAdder pendingActions = new LongAdder();
+    private final Map<String, ChangeTrace.Stages> traceStages = new ConcurrentHashMap<>();
+
+    EngineMetrics(CollaborationEngineMetrics metrics, double traceSampleRate) {
+        this.metrics = metrics;
+        enabled = metrics != NO_OP;
+        this.traceSampleRate = enabled ? traceSampleRate : 0;
+        changesAccepted = metrics
+                .counter(CollaborationEngineMetrics.CHANGES_ACCEPTED);
+        changesRejected = metrics
+                .counter(CollaborationEngineMetrics.CHANGES_REJECTED);
+        changeDuration = metrics
+                .histogram(CollaborationEngineMetrics.CHANGE_DURATION);
+        actionsDispatched = metrics
+                .counter(CollaborationEngineMetrics.ACTIONS_DISPATCHED);
+        actionWaitDuration = metrics
+                .histogram(CollaborationEngineMetrics.ACTION_WAIT_DURATION);
+        snapshotDuration = metrics
+                .histogram(CollaborationEngineMetrics.SNAPSHOT_DURATION);
+        snapshotLoadDuration = metrics
+                .histogram(CollaborationEngineMetrics.SNAPSHOT_LOAD_DURATION);
+        initializationDuration = metrics.histogram(
+                CollaborationEngineMetrics.BACKEND_INITIALIZATION_DURATION);
+        initializationFailures = metrics.counter(
+                CollaborationEngineMetrics.BACKEND_INITIALIZATION_FAILURES);
+        metrics.gauge(CollaborationEngineMetrics.ACTIONS_PENDING,
+                pendingActions::sum);
+    }
+
+    /**
+     * Gets the start time of an operation to time.
+     *
+     * @return the current {@link System#nanoTime()}, or 0 if metrics are
+     *         disabled
+     */
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time elapsed since the given start time.
+     *
+     * @param histogram
+     *            the histogram to record to, not <code>null</code>
+     * @param start
+     *            the start time from {@link #start()}
+     */
+    void recordSince(Histogram histogram, long start) {
+        if (enabled) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Decides whether a submitted change is traced.
+     *
+     * @return <code>true</code> to trace the change, <code>false</code>
+     *         otherwise
+     */
+    boolean sampleTrace() {
+        return traceSampleRate > 0 && (traceSampleRate >= 1
+                || ThreadLocalRandom.current().nextDouble() < traceSampleRate);
+    }
+
+    /**
+     * Gets the histograms that the stages of traced changes of a topic are
+     * recorded to. Changes traced by other nodes are recorded as well,
+     * regardless of the sample rate of this node.
+     *
+     * Histograms are kept for at most {@value #MAX_TRACED_TOPICS} topics at a
+     * time, until they are released with {@link #releaseTraceStages(String)}.
+     *
+     * @param topicId
+     *            the id of the topic, not <code>null</code>
+     * @return the histograms, or <code>null</code> if metrics are disabled or
+     *         if the changes of too many other topics are being traced
+     */
+    ChangeTrace.Stages getTraceStages(String topicId) {
+        if (!enabled) {
+            return null;
+        }
+        ChangeTrace.Stages stages = traceStages.get(topicId);
+        if (stages == null && traceStages.size() < MAX_TRACED_TOPICS) {
+            stages = traceStages.computeIfAbsent(topicId,
+                    id -> new ChangeTrace.Stages(metrics, id));
+        }
+        return stages;
+    }
+
+    /**
+     * Stops recording the stages of traced changes of a topic and removes
+     * its histograms, e.g. when the topic no longer has active connections.
+     *
+     * @param topicId
+     *            the id of the topic, not <code>null</code>
+     */
+    void releaseTraceStages(String topicId) {
+        if (traceStages.remove(topicId) != null) {
+            ChangeTrace.Stages.remove(metrics, topicId);
+        }
+    }
+
+    /**
+     * Wraps an action dispatcher to count the actions dispatched through it,
+     * to time how long they wait before they're run and to emit a
+     * {@link FlightRecorderEvents.ActionDispatched} event for them. Actions
+     * are passed through as such while metrics are disabled and no flight
+     * recording is running.
+     *
+     * @param dispatcher
+     *            the dispatcher to wrap, not <code>null</code>
+     * @param topicId
+     *            the id of the topic that the actions are dispatched for, not
+     *            <code>null</code>
+     * @return the wrapped dispatcher, not <code>null</code>
+     */
+    MeteredActionDispatcher wrap(ActionDispatcher dispatcher, String topicId) {
+        return new MeteredActionDispatcher(dispatcher, topicId);
+    }
+
+    /**
+     * An action dispatcher that records metrics for the actions dispatched
+     * through it. Its actions are counted as pending until they're run or
+     * until the dispatcher is released, since a context that is discarded
+     * never runs the actions that it has queued.
+     */
+    class MeteredActionDispatcher implements ActionDispatcher {
+        private final ActionDispatcher dispatcher;
+        private final String topicId;
+        // The actions of this dispatcher that are counted as pending
+        private final AtomicLong pending = new AtomicLong();
+        private volatile boolean released;
+
+        private MeteredActionDispatcher(ActionDispatcher dispatcher,
+                String topicId) {
+            this.dispatcher = dispatcher;
+            this.topicId = topicId;
+        }
+
+        @Override
+        public void dispatchAction(Command action) {
+            FlightRecorderEvents.ActionDispatched event = new FlightRecorderEvents.ActionDispatched();
+            if (!enabled && !event.isEnabled()) {
+                dispatcher.dispatchAction(action);
+                return;
+            }
+            boolean counted = enabled && !released;
+            if (enabled) {
+                actionsDispatched.increment();
+            }
+            if (counted) {
+                pending.incrementAndGet();
+                pendingActions.increment();
+            }
+            event.begin();
+            long dispatched = System.nanoTime();
+            dispatcher.dispatchAction(() -> {
+                long started = System.nanoTime();
+                if (enabled) {
+                    actionWaitDuration.record(started - dispatched);
+                }
+                // Not counted anymore if the dispatcher has been released
+                if (counted && pending
+                        .getAndUpdate(count -> Math.max(count - 1, 0)) > 0) {
+                    pendingActions.decrement();
+                }
+                try {
+                    action.execute();
+                } finally {
+                    if (event.shouldCommit()) {
+                        event.topic = topicId;
+                        event.queueWait = started - dispatched;
+                        event.runTime = System.nanoTime() - started;
+                        event.commit();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public <T> CompletableFuture<T> createCompletableFuture() {
+            return dispatcher.createCompletableFuture();
+        }
+
+        /**
+         * Stops counting the actions of this dispatcher as pending, e.g. when
+         * the connection that uses it is deactivated. Actions that are still
+         * queued might never be run.
+         */
+        void release() {
+            released = true;
+            pendingActions.add(-pending.getAndSet(0));
+        }
+    }
+}
@@ -19,6 +19,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 import java.util.stream.Stream.Builder;
 
@@ -36,7 +37,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 class EntryList {
     @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
     private static class ListEntry {
-        JsonNode value;
+        StoredValue value;
         UUID prev;
         UUID next;
         UUID revisionId;
@@ -46,7 +47,8 @@ class EntryList {
     @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
     static class ListEntrySnapshot {
         final UUID id;
-        final JsonNode value;
+        // Compact values are only decoded when read
+        private final StoredValue value;
         final UUID prev;
         final UUID next;
         final UUID revisionId;
@@ -69,12 +71,16 @@ class EntryList {
                 @JsonProperty("revisionId") UUID revisionId,
                 @JsonProperty("scopeOwnerId") UUID scopeOwnerId) {
             this.id = id;
-            this.value = value;
+            this.value = StoredValue.of(value);
             this.prev = prev;
             this.next = next;
             this.revisionId = revisionId;
             this.scopeOwnerId = scopeOwnerId;
         }
+
+        JsonNode getValue() {
+            return value.get();
+        }
     }
 
     private final Map<UUID, ListEntry> entries = new HashMap<>();
@@ -91,7 +97,7 @@ class EntryList {
         tail = null;
     }
 
-    ListEntrySnapshot insertFirst(UUID key, JsonNode value, UUID revisionId,
+    ListEntrySnapshot insertFirst(UUID key, StoredValue value, UUID revisionId,
             UUID scopeOwnerId) {
         ListEntry item = createAndAddItem(key, value, revisionId, scopeOwnerId);
 
@@ -100,7 +106,7 @@ class EntryList {
         return new ListEntrySnapshot(key, item);
     }
 
-    ListEntrySnapshot insertLast(UUID key, JsonNode value, UUID revisionId,
+    ListEntrySnapshot insertLast(UUID key, StoredValue value, UUID revisionId,
             UUID scopeOwnerId) {
         ListEntry item = createAndAddItem(key, value, revisionId, scopeOwnerId);
 
@@ -110,7 +116,7 @@ class EntryList {
     }
 
     ListEntrySnapshot insertBefore(UUID keyToFind, UUID keyToInsert,
-            JsonNode value, UUID revisionId, UUID scopeOwnerId) {
+            StoredValue value, UUID revisionId, UUID scopeOwnerId) {
         ListEntry item = createAndAddItem(keyToInsert, value, revisionId,
                 scopeOwnerId);
 
@@ -121,7 +127,7 @@ class EntryList {
     }
 
     ListEntrySnapshot insertAfter(UUID keyToFind, UUID keyToInsert,
-            JsonNode value, UUID revisionId, UUID scopeOwnerId) {
+            StoredValue value, UUID revisionId, UUID scopeOwnerId) {
         ListEntry item = createAndAddItem(keyToInsert, value, revisionId,
                 scopeOwnerId);
 
@@ -191,7 +197,7 @@ class EntryList {
             return null;
         }
 
-        return item.value;
+        return item.value.get();
     }
 
     ListEntrySnapshot getEntry(UUID key) {
@@ -241,7 +247,7 @@ class EntryList {
         }
     }
 
-    private ListEntry createAndAddItem(UUID key, JsonNode value,
+    private ListEntry createAndAddItem(UUID key, StoredValue value,
             UUID revisionId, UUID scopeOwnerId) {
         ListEntry item = new ListEntry();
         item.value = value;
@@ -252,11 +258,24 @@ class EntryList {
         return item;
     }
 
-    void setValue(UUID key, JsonNode newValue, UUID revisionId,
+    void setValue(UUID key, StoredValue newValue, UUID revisionId,
             UUID scopeOwnerId) {
         ListEntry listEntry = entries.get(key);
         listEntry.value = newValue;
         listEntry.revisionId = revisionId;
         listEntry.scopeOwnerId = scopeOwnerId;
     }
+
+    /**
+     * Replaces the stored value of each entry, e.g. to store values loaded
+     * from a snapshot in a different form.
+     *
+     * @param operator
+     *            the operator that returns the new stored value for the old
+     *            one, not <code>null</code>
+     */
+    void replaceValues(UnaryOperator<StoredValue> operator) {
+        entries.values().forEach(entry -> entry.value = operator
+                .apply(entry.value));
+    }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Flow;
+
+import com.vaadin.collaborationengine.Backend.EventIdNotFoundException;
+import com.vaadin.collaborationengine.Backend.EventLog;
+import com.vaadin.collaborationengine.Backend.OffsetEvent;
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * Adapts the push-style {@link EventLog#subscribe(UUID, long,
+ * Backend.OffsetEventConsumer)} to a {@link Flow.Publisher}.
+ * <p>
+ * Events pushed by the event log are delivered right away while the
+ * subscriber has outstanding demand, and buffered otherwise. Events are never
+ * delivered concurrently or recursively: an event pushed while another one is
+ * being delivered is buffered and delivered by the thread that is already
+ * delivering. The thread that pushes events is never blocked waiting for
+ * demand. Instead, when the buffer is full the subscription is cancelled and
+ * the subscriber is signaled a {@link BufferOverflowException}, so that it can
+ * subscribe again from the last event it has handled and read the rest from
+ * the log at its own pace.
+ *
+ * @author Vaadin Ltd
+ */
+class EventLogPublisher implements Flow.Publisher<OffsetEvent> {
+
+    static final int DEFAULT_BUFFER_CAPACITY = 10000;
+
+    /**
+     * Signaled to a subscriber that didn't request events as fast as they
+     * were submitted to the event log.
+     */
+    static class BufferOverflowException extends RuntimeException {
+        BufferOverflowException(String message) {
+            super(message);
+        }
+    }
+
+    private final EventLog eventLog;
+    private final UUID newerThan;
+    private final long newerThanOffset;
+    private final int bufferCapacity;
+
+    EventLogPublisher(EventLog eventLog, UUID newerThan, long newerThanOffset) {
+        this(eventLog, newerThan, newerThanOffset, DEFAULT_BUFFER_CAPACITY);
+    }
+
+    EventLogPublisher(EventLog eventLog, UUID newerThan, long newerThanOffset,
+            int bufferCapacity) {
+        if (bufferCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "The buffer capacity must be positive");
+        }
+        this.eventLog = Objects.requireNonNull(eventLog);
+        this.newerThan = newerThan;
+        this.newerThanOffset = newerThanOffset;
+        this.bufferCapacity = bufferCapacity;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super OffsetEvent> subscriber) {
+        Objects.requireNonNull(subscriber);
+        PushSubscription subscription = new PushSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    private class PushSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super OffsetEvent> subscriber;
+
+        // All fields below are guarded by this
+        private final Queue<OffsetEvent> buffer = new ArrayDeque<>();
+        private long demand;
+        private boolean delivering;
+        private boolean cancelled;
+        private Throwable error;
+        private Registration registration;
+
+        private PushSubscription(
+                Flow.Subscriber<? super OffsetEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        private void start() {
+            Registration newRegistration;
+            try {
+                newRegistration = eventLog.subscribe(newerThan,
+                        newerThanOffset, this::push);
+            } catch (EventIdNotFoundException e) {
+                fail(e);
+                return;
+            }
+            boolean alreadyCancelled;
+            synchronized (this) {
+                alreadyCancelled = cancelled;
+                if (!alreadyCancelled) {
+                    registration = newRegistration;
+                }
+            }
+            if (alreadyCancelled) {
+                newRegistration.remove();
+            }
+        }
+
+        private void push(long offset, UUID trackingId, String payload) {
+            synchronized (this) {
+                if (cancelled || error != null) {
+                    return;
+                }
+                if (buffer.size() >= bufferCapacity) {
+                    buffer.clear();
+                    error = new BufferOverflowException(
+                            "More than " + bufferCapacity
+                                    + " events were submitted to the event log"
+                                    + " before the subscriber requested them");
+                } else {
+                    buffer.add(new OffsetEvent(offset, trackingId, payload));
+                }
+            }
+            deliver();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException(
+                        "The number of requested events must be positive"));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            deliver();
+        }
+
+        @Override
+        public void cancel() {
+            Registration toRemove;
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+                toRemove = registration;
+                registration = null;
+            }
+            if (toRemove != null) {
+                toRemove.remove();
+            }
+        }
+
+        private void fail(Throwable throwable) {
+            synchronized (this) {
+                if (cancelled || error != null) {
+                    return;
+                }
+                buffer.clear();
+                error = throwable;
+            }
+            deliver();
+        }
+
+        private void deliver() {
+            synchronized (this) {
+                if (delivering) {
+                    // The delivering thread picks up the change
+                    return;
+                }
+                delivering = true;
+            }
+            try {
+                while (true) {
+                    OffsetEvent event;
+                    Throwable failure = null;
+                    synchronized (this) {
+                        if (cancelled) {
+                            delivering = false;
+                            return;
+                        } else if (error != null) {
+                            failure = error;
+                            event = null;
+                        } else if (demand > 0 && !buffer.isEmpty()) {
+                            event = buffer.poll();
+                            demand--;
+                        } else {
+                            delivering = false;
+                            return;
+                        }
+                    }
+                    if (failure != null) {
+                        cancel();
+                        subscriber.onError(failure);
+                    } else {
+                        subscriber.onNext(event);
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    delivering = false;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,858 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vaadin.collaborationengine.MembershipEvent.MembershipEventType;
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * A backend implementation for single-node deployments that stores event logs
+ * and snapshots in the file system, so that collaboration data is preserved
+ * when the application is restarted.
+ * <p>
+ * Each event log is stored as a sequence of append-only segment files which
+ * are memory-mapped, so appending an event is a memory write. Each event gets
+ * an offset that is its position in the log, which lets a topic resume
+ * directly from the offset stored in its latest snapshot. Truncating a log
+ * deletes the segments that only contain older events. Snapshots are written
+ * to a temporary file which then atomically replaces the previous snapshot.
+ * <p>
+ * Appended events are flushed to disk by a background thread, so that one
+ * flush covers all events appended since the previous flush. Events that are
+ * appended less than the flush interval before an operating system crash or
+ * power loss can be lost. Setting the flush interval to zero flushes after
+ * every append instead. Call {@link #close()} when shutting down to flush all
+ * remaining events.
+ * <p>
+ * Each application start is a new node. When a topic is loaded, the nodes of
+ * earlier runs of the application that haven't yet been reported to it are
+ * reported as having left, so that connection scoped data from before the
+ * restart is cleaned up. The reports are made from the background thread of
+ * the backend. The ids of earlier nodes are kept until every event log has
+ * reported them.
+ *
+ * @author Vaadin Ltd
+ */
+public class FileBackend extends Backend {
+
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(100);
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(FileBackend.class);
+
+    private static final String LOGS_DIRECTORY = "logs";
+
+    private static final String SNAPSHOTS_DIRECTORY = "snapshots";
+
+    private static final String NODES_FILE = "nodes";
+
+    private static final String START_OFFSET_FILE = "start";
+
+    private static final String REPORTED_NODES_FILE = "reported";
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /*
+     * A record consists of its total length, a CRC32 checksum of the rest of
+     * the record, the offset, the tracking id and the UTF-8 payload. A length
+     * of zero marks the end of the written part of a segment. A record with an
+     * invalid length or checksum is the result of an interrupted write and
+     * marks the end as well.
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 16;
+
+    private static class Segment {
+        private final long baseOffset;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private long nextOffset;
+        private boolean dirty;
+
+        private Segment(long baseOffset, Path path, int size)
+                throws IOException {
+            this.baseOffset = baseOffset;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(size, channel.size()));
+            this.nextOffset = baseOffset;
+            // Find the end of the written records
+            forEachRecord(baseOffset, (record, offset) -> {
+                position = record.position() + record.remaining();
+                nextOffset = offset + 1;
+                return true;
+            });
+        }
+
+        private int remaining() {
+            return buffer.capacity() - position;
+        }
+
+        /*
+         * Invokes the visitor for each valid record with an offset not lower
+         * than the given offset, until the visitor returns false. The record
+         * buffer is positioned at the start of the record and limited to its
+         * end.
+         */
+        private void forEachRecord(long fromOffset, RecordVisitor visitor) {
+            ByteBuffer view = buffer.duplicate();
+            int recordPosition = 0;
+            while (recordPosition + HEADER_SIZE <= view.capacity()) {
+                int length = view.getInt(recordPosition);
+                if (length < HEADER_SIZE
+                        || length > view.capacity() - recordPosition) {
+                    return;
+                }
+                ByteBuffer record = view.duplicate();
+                record.limit(recordPosition + length);
+                record.position(recordPosition + 8);
+                CRC32 crc = new CRC32();
+                crc.update(record);
+                if ((int) crc.getValue() != view.getInt(recordPosition + 4)) {
+                    return;
+                }
+                record.position(recordPosition);
+                long offset = view.getLong(recordPosition + 8);
+                if (offset >= fromOffset && !visitor.visit(record, offset)) {
+                    return;
+                }
+                recordPosition += length;
+            }
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close segment " + path, e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        boolean visit(ByteBuffer record, long offset);
+    }
+
+    private class FileEventLog implements EventLog {
+        private final String logId;
+        private final Path directory;
+        private final TreeMap<Long, Segment> segments = new TreeMap<>();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private final ArrayDeque<OffsetEvent> undelivered = new ArrayDeque<>();
+        // Earlier nodes that have been reported as having left for this log
+        private final Set<UUID> reportedNodeIds = new HashSet<>();
+        private boolean delivering;
+        private boolean reportScheduled;
+        private long startOffset;
+
+        private FileEventLog(String logId, Path directory) throws IOException {
+            this.logId = logId;
+            this.directory = directory;
+            Path reportedFile = directory.resolve(REPORTED_NODES_FILE);
+            if (Files.exists(directory)) {
+                reportedNodeIds.addAll(readNodeIds(reportedFile));
+                reportedNodeIds.retainAll(previousNodeIds);
+            } else {
+                // A new log doesn't have data from earlier nodes
+                Files.createDirectories(directory);
+                reportedNodeIds.addAll(previousNodeIds);
+                writeNodeIds(reportedFile, reportedNodeIds);
+            }
+            List<Long> baseOffsets = new ArrayList<>();
+            try (Stream<Path> files = Files.list(directory)) {
+                files.map(path -> path.getFileName().toString())
+                        .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                        .map(name -> Long.valueOf(name.substring(0,
+                                name.length() - SEGMENT_SUFFIX.length())))
+                        .sorted().forEach(baseOffsets::add);
+            }
+            for (long baseOffset : baseOffsets) {
+                segments.put(baseOffset, openSegment(baseOffset, 0));
+            }
+            Path startFile = directory.resolve(START_OFFSET_FILE);
+            if (Files.exists(startFile)) {
+                startOffset = Long.parseLong(Files.readString(startFile).trim());
+            } else if (!segments.isEmpty()) {
+                startOffset = segments.firstKey();
+            }
+        }
+
+        private Segment openSegment(long baseOffset, int size)
+                throws IOException {
+            return new Segment(baseOffset,
+                    directory.resolve(String.format("%020d", baseOffset)
+                            + SEGMENT_SUFFIX),
+                    size);
+        }
+
+        private long getNextOffset() {
+            return segments.isEmpty() ? startOffset
+                    : segments.lastEntry().getValue().nextOffset;
+        }
+
+        @Override
+        public void submitEvent(UUID trackingId, String eventPayload) {
+            submitEvents(List.of(new Event(trackingId, eventPayload)));
+        }
+
+        @Override
+        public void submitEvents(List<Event> events) {
+            synchronized (this) {
+                for (Event event : events) {
+                    undelivered.add(new OffsetEvent(append(event),
+                            event.getTrackingId(), event.getPayload()));
+                }
+                if (flushInterval.isZero()) {
+                    flush();
+                }
+                if (delivering) {
+                    // Delivered in order by the thread that is delivering
+                    return;
+                }
+                delivering = true;
+            }
+            deliverEvents();
+        }
+
+        /*
+         * Delivers the appended events in offset order without holding the
+         * lock of the log, since subscribers take the lock of their topic
+         * while submitters might already hold it. Only one thread delivers at
+         * a time, so events submitted meanwhile, also by the subscribers
+         * themselves, are delivered by that thread once it gets to them.
+         */
+        private void deliverEvents() {
+            boolean completed = false;
+            try {
+                while (true) {
+                    OffsetEvent event;
+                    List<Subscriber> targets;
+                    synchronized (this) {
+                        event = undelivered.poll();
+                        if (event == null) {
+                            delivering = false;
+                            completed = true;
+                            return;
+                        }
+                        targets = new ArrayList<>(subscribers);
+                    }
+                    targets.forEach(subscriber -> subscriber.deliver(event));
+                }
+            } finally {
+                if (!completed) {
+                    // The next submit delivers the remaining events
+                    synchronized (this) {
+                        delivering = false;
+                    }
+                }
+            }
+        }
+
+        private long append(Event event) {
+            byte[] payload = event.getPayload()
+                    .getBytes(StandardCharsets.UTF_8);
+            int length = HEADER_SIZE + payload.length;
+            long offset = getNextOffset();
+            try {
+                Segment segment = segments.isEmpty() ? null
+                        : segments.lastEntry().getValue();
+                if (segment == null || segment.remaining() < length) {
+                    segment = openSegment(offset,
+                            Math.max(segmentSize, length));
+                    Segment empty = segments.put(offset, segment);
+                    if (empty != null) {
+                        // An empty segment that is too small for the record
+                        empty.close();
+                    }
+                }
+                ByteBuffer record = segment.buffer.duplicate();
+                record.position(segment.position + 8);
+                record.putLong(offset);
+                record.putLong(event.getTrackingId().getMostSignificantBits());
+                record.putLong(
+                        event.getTrackingId().getLeastSignificantBits());
+                record.put(payload);
+                record.flip();
+                record.position(segment.position + 8);
+                CRC32 crc = new CRC32();
+                crc.update(record);
+                segment.buffer.putInt(segment.position + 4,
+                        (int) crc.getValue());
+                // Writing the length last makes the record visible
+                segment.buffer.putInt(segment.position, length);
+                segment.position += length;
+                segment.nextOffset = offset + 1;
+                segment.dirty = true;
+                return offset;
+            } catch (IOException e) {
+                throw new UncheckedIOException(
+                        "Failed to append event to " + logId, e);
+            }
+        }
+
+        @Override
+        public Registration subscribe(UUID newerThan,
+                BiConsumer<UUID, String> eventConsumer)
+                throws EventIdNotFoundException {
+            Objects.requireNonNull(eventConsumer);
+            return subscribe(newerThan, NO_OFFSET, (offset, trackingId,
+                    payload) -> eventConsumer.accept(trackingId, payload));
+        }
+
+        @Override
+        public Registration subscribe(UUID newerThan, long newerThanOffset,
+                OffsetEventConsumer eventConsumer)
+                throws EventIdNotFoundException {
+            Objects.requireNonNull(eventConsumer);
+            Registration registration = addConsumer(newerThan,
+                    newerThanOffset, eventConsumer);
+            scheduleNodeLeaveReport();
+            return registration;
+        }
+
+        /*
+         * Nodes from earlier runs will never leave by themselves, so they are
+         * reported as having left once a subscriber has caught up with the log
+         * that might contain their data. The subscriber is typically a topic
+         * that holds its own lock while subscribing, and the membership
+         * listeners of all topics take their topic's lock, so the report is
+         * made from the backend thread instead. The nodes are stored as
+         * reported for this log once the listeners have cleaned up after them.
+         */
+        private void scheduleNodeLeaveReport() {
+            List<UUID> unreported;
+            synchronized (this) {
+                if (reportScheduled) {
+                    return;
+                }
+                reportScheduled = true;
+                unreported = previousNodeIds.stream()
+                        .filter(id -> !reportedNodeIds.contains(id)).toList();
+            }
+            if (unreported.isEmpty() || closed) {
+                return;
+            }
+            executor.execute(() -> {
+                if (membershipListeners.isEmpty()) {
+                    return;
+                }
+                unreported.forEach(id -> fireMembershipEvent(
+                        MembershipEventType.LEAVE, id));
+                synchronized (this) {
+                    reportedNodeIds.addAll(unreported);
+                    try {
+                        writeNodeIds(directory.resolve(REPORTED_NODES_FILE),
+                                reportedNodeIds);
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to store the reported nodes of "
+                                + logId, e);
+                    }
+                }
+            });
+        }
+
+        private synchronized Registration addConsumer(UUID newerThan,
+                long newerThanOffset, OffsetEventConsumer eventConsumer)
+                throws EventIdNotFoundException {
+            long fromOffset = startOffset;
+            if (newerThan != null) {
+                long offset = findOffset(newerThan, newerThanOffset);
+                if (offset == NO_OFFSET) {
+                    throw new EventIdNotFoundException(
+                            "newerThan doesn't exist in the log.");
+                }
+                fromOffset = offset + 1;
+            }
+            forEachEvent(fromOffset, (offset, trackingId, payload) -> {
+                eventConsumer.accept(offset, trackingId, payload);
+                return true;
+            });
+            // Events appended but not yet delivered have been replayed
+            Subscriber subscriber = new Subscriber(eventConsumer,
+                    getNextOffset());
+            subscribers.add(subscriber);
+            return () -> {
+                synchronized (this) {
+                    subscriber.removed = true;
+                    subscribers.remove(subscriber);
+                }
+            };
+        }
+
+        @Override
+        public void truncate(UUID olderThan) {
+            truncate(olderThan, NO_OFFSET);
+        }
+
+        @Override
+        public synchronized void truncate(UUID olderThan,
+                long olderThanOffset) {
+            long offset = getNextOffset();
+            if (olderThan != null) {
+                offset = findOffset(olderThan, olderThanOffset);
+                if (offset == NO_OFFSET) {
+                    // NOOP
+                    return;
+                }
+            }
+            try {
+                Path startFile = directory.resolve(START_OFFSET_FILE);
+                writeAtomically(startFile, Long.toString(offset));
+                startOffset = offset;
+                // Delete segments that only contain events before the offset
+                while (!segments.isEmpty()
+                        && segments.firstEntry().getValue().nextOffset <= offset
+                        && segments.size() > 1) {
+                    Segment segment = segments.pollFirstEntry().getValue();
+                    segment.close();
+                    Files.deleteIfExists(segment.path);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(
+                        "Failed to truncate " + logId, e);
+            }
+        }
+
+        /*
+         * Returns the offset of the event with the given tracking id, or
+         * NO_OFFSET if there is no such event in the log. A known offset is
+         * checked directly, otherwise the whole log is scanned.
+         */
+        private long findOffset(UUID trackingId, long offset) {
+            long[] found = { NO_OFFSET };
+            if (offset != NO_OFFSET) {
+                if (offset < startOffset || offset >= getNextOffset()) {
+                    return NO_OFFSET;
+                }
+                forEachEvent(offset, (eventOffset, eventId, payload) -> {
+                    if (eventOffset == offset && eventId.equals(trackingId)) {
+                        found[0] = offset;
+                    }
+                    return false;
+                });
+            } else {
+                forEachEvent(startOffset, (eventOffset, eventId, payload) -> {
+                    if (eventId.equals(trackingId)) {
+                        found[0] = eventOffset;
+                        return false;
+                    }
+                    return true;
+                });
+            }
+            return found[0];
+        }
+
+        private void forEachEvent(long fromOffset, EventVisitor visitor) {
+            Long firstSegment = segments.floorKey(fromOffset);
+            Map<Long, Segment> tail = segments
+                    .tailMap(firstSegment != null ? firstSegment : fromOffset);
+            for (Segment segment : tail.values()) {
+                boolean[] stopped = { false };
+                segment.forEachRecord(fromOffset, (record, offset) -> {
+                    record.position(record.position() + 16);
+                    UUID trackingId = new UUID(record.getLong(),
+                            record.getLong());
+                    byte[] payload = new byte[record.remaining()];
+                    record.get(payload);
+                    stopped[0] = !visitor.visit(offset, trackingId,
+                            new String(payload, StandardCharsets.UTF_8));
+                    return !stopped[0];
+                });
+                if (stopped[0]) {
+                    return;
+                }
+            }
+        }
+
+        private void flush() {
+            List<Segment> dirtySegments = new ArrayList<>();
+            synchronized (this) {
+                for (Segment segment : segments.values()) {
+                    if (segment.dirty) {
+                        segment.dirty = false;
+                        dirtySegments.add(segment);
+                    }
+                }
+            }
+            dirtySegments.forEach(segment -> segment.buffer.force());
+        }
+
+        private synchronized void close() {
+            segments.values().forEach(Segment::close);
+            segments.clear();
+        }
+    }
+
+    private static class Subscriber {
+        private final OffsetEventConsumer consumer;
+        // Only accessed by the delivering thread once subscribed
+        private long nextOffset;
+        private volatile boolean removed;
+
+        private Subscriber(OffsetEventConsumer consumer, long nextOffset) {
+            this.consumer = consumer;
+            this.nextOffset = nextOffset;
+        }
+
+        private void deliver(OffsetEvent event) {
+            if (removed || event.getOffset() < nextOffset) {
+                return;
+            }
+            nextOffset = event.getOffset() + 1;
+            consumer.accept(event.getOffset(), event.getTrackingId(),
+                    event.getPayload());
+        }
+    }
+
+    @FunctionalInterface
+    private interface EventVisitor {
+        boolean visit(long offset, UUID trackingId, String payload);
+    }
+
+    private final Path directory;
+
+    private final UUID nodeId = UUID.randomUUID();
+
+    // Nodes of earlier runs that some event log hasn't reported yet
+    private final List<UUID> previousNodeIds;
+
+    private final Map<String, FileEventLog> eventLogs = new ConcurrentHashMap<>();
+
+    private final List<MembershipListener> membershipListeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService executor;
+
+    private final Object snapshotLock = new Object();
+
+    private volatile int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    private volatile Duration flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a new file backend that stores its data in the given directory.
+     * The directory is created if it doesn't exist. The same directory must not
+     * be used by multiple backends at the same time.
+     *
+     * @param directory
+     *            the directory to store data in, not <code>null</code>
+     * @throws UncheckedIOException
+     *             if the directory cannot be initialized
+     */
+    public FileBackend(Path directory) {
+        this.directory = Objects.requireNonNull(directory,
+                "The directory cannot be null");
+        try {
+            Files.createDirectories(directory.resolve(LOGS_DIRECTORY));
+            Files.createDirectories(directory.resolve(SNAPSHOTS_DIRECTORY));
+            Path nodesFile = directory.resolve(NODES_FILE);
+            previousNodeIds = List
+                    .copyOf(removeReportedNodeIds(readNodeIds(nodesFile)));
+            List<UUID> nodeIds = new ArrayList<>(previousNodeIds);
+            nodeIds.add(nodeId);
+            writeNodeIds(nodesFile, nodeIds);
+        } catch (IOException e) {
+            throw new UncheckedIOException(
+                    "Failed to initialize directory " + directory, e);
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable,
+                    "collaboration-engine-file-backend");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleFlush();
+    }
+
+    /**
+     * Sets the size of new segment files. Events larger than the segment size
+     * get a segment of their own. The default is 16 MB.
+     *
+     * @param segmentSize
+     *            the segment size in bytes, must be positive
+     */
+    public void setSegmentSize(int segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException(
+                    "The segment size must be positive");
+        }
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Sets how often appended events are flushed to disk. A zero interval
+     * flushes after every append. The default is 100 milliseconds.
+     *
+     * @param flushInterval
+     *            the flush interval, not <code>null</code> or negative
+     */
+    public void setFlushInterval(Duration flushInterval) {
+        Objects.requireNonNull(flushInterval,
+                "The flush interval cannot be null");
+        if (flushInterval.isNegative()) {
+            throw new IllegalArgumentException(
+                    "The flush interval cannot be negative");
+        }
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Flushes all appended events to disk and releases the open files. The
+     * backend cannot be used after it has been closed.
+     */
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        eventLogs.values().forEach(log -> {
+            log.flush();
+            log.close();
+        });
+        eventLogs.clear();
+    }
+
+    private void scheduleFlush() {
+        // Events are flushed on append when the interval is zero
+        Duration interval = flushInterval.isZero() ? DEFAULT_FLUSH_INTERVAL
+                : flushInterval;
+        executor.schedule(() -> {
+            try {
+                eventLogs.values().forEach(FileEventLog::flush);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to flush event logs", e);
+            } finally {
+                if (!closed) {
+                    scheduleFlush();
+                }
+            }
+        }, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Returns the given node ids without the ones that every event log has
+     * already reported as having left.
+     */
+    private List<UUID> removeReportedNodeIds(List<UUID> nodeIds)
+            throws IOException {
+        Set<UUID> unreported = new HashSet<>();
+        try (Stream<Path> logs = Files.list(directory.resolve(LOGS_DIRECTORY))) {
+            for (Path log : (Iterable<Path>) logs::iterator) {
+                List<UUID> reported = readNodeIds(
+                        log.resolve(REPORTED_NODES_FILE));
+                nodeIds.stream().filter(id -> !reported.contains(id))
+                        .forEach(unreported::add);
+            }
+        }
+        return nodeIds.stream().filter(unreported::contains).toList();
+    }
+
+    // For testing
+    void awaitBackgroundTasks() {
+        try {
+            executor.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public EventLog openEventLog(String logId) {
+        Objects.requireNonNull(logId, "Log ID cannot be null");
+        if (closed) {
+            throw new IllegalStateException("The backend has been closed");
+        }
+        return eventLogs.computeIfAbsent(logId, id -> {
+            try {
+                return new FileEventLog(id, directory.resolve(LOGS_DIRECTORY)
+                        .resolve(toFileName(id)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(
+                        "Failed to open event log " + id, e);
+            }
+        });
+    }
+
+    @Override
+    public Registration addMembershipListener(
+            MembershipListener membershipListener) {
+        Objects.requireNonNull(membershipListener);
+        membershipListeners.add(membershipListener);
+        membershipListener.handleMembershipEvent(new MembershipEvent(
+                MembershipEventType.JOIN, nodeId, getCollaborationEngine()));
+        return () -> membershipListeners.remove(membershipListener);
+    }
+
+    private void fireMembershipEvent(MembershipEventType type, UUID id) {
+        if (membershipListeners.isEmpty()) {
+            return;
+        }
+        MembershipEvent event = new MembershipEvent(type, id,
+                getCollaborationEngine());
+        membershipListeners
+                .forEach(listener -> listener.handleMembershipEvent(event));
+    }
+
+    @Override
+    public UUID getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public CompletableFuture<Snapshot> loadLatestSnapshot(String name) {
+        Objects.requireNonNull(name, "Name cannot be null");
+        synchronized (snapshotLock) {
+            try {
+                return CompletableFuture.completedFuture(readSnapshot(name));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> replaceSnapshot(String name, UUID expectedId,
+            UUID newId, String payload) {
+        Objects.requireNonNull(name, "Name cannot be null");
+        Objects.requireNonNull(newId, "New ID cannot be null");
+        synchronized (snapshotLock) {
+            try {
+                Snapshot current = readSnapshot(name);
+                UUID currentId = current != null ? current.getId() : null;
+                if (Objects.equals(expectedId, currentId)) {
+                    writeAtomically(getSnapshotFile(name),
+                            newId + "\n" + payload);
+                }
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+
+    private Snapshot readSnapshot(String name) throws IOException {
+        Path file = getSnapshotFile(name);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        String content = Files.readString(file);
+        int separator = content.indexOf('\n');
+        return new Snapshot(UUID.fromString(content.substring(0, separator)),
+                content.substring(separator + 1));
+    }
+
+    private Path getSnapshotFile(String name) {
+        return directory.resolve(SNAPSHOTS_DIRECTORY)
+                .resolve(toFileName(name) + SNAPSHOT_SUFFIX);
+    }
+
+    private static List<UUID> readNodeIds(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        return Files.readAllLines(file).stream().map(String::trim)
+                .filter(line -> !line.isEmpty()).map(UUID::fromString)
+                .toList();
+    }
+
+    private static void writeNodeIds(Path file, Collection<UUID> nodeIds)
+            throws IOException {
+        writeAtomically(file, nodeIds.stream().map(UUID::toString)
+                .collect(Collectors.joining("\n")));
+    }
+
+    private static void writeAtomically(Path file, String content)
+            throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer
+                    .wrap(content.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+     * Topic ids and snapshot names can contain any characters, so they are
+     * hashed to get file names that are valid on every file system.
+     */
+    private static String toFileName(String name) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(
+                    digest.digest(name.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events emitted by the engine, so that latency spikes
+ * can be correlated with e.g. garbage collection and lock contention in
+ * production recordings. The events are recorded whenever a recording is
+ * running, except that changes and dispatched actions are only recorded when
+ * they take at least a millisecond, since there are lots of them. The
+ * thresholds can be changed in the recording settings. When no recording is
+ * running, the events cost next to nothing, since the JIT removes the unused
+ * event instances.
+ *
+ * @author Vaadin Ltd
+ */
+class FlightRecorderEvents {
+
+    private static final String PREFIX = "com.vaadin.collaborationengine.";
+
+    private static final String CATEGORY = "Collaboration Engine";
+
+    private FlightRecorderEvents() {
+    }
+
+    @Name(PREFIX + "TopicChangeApplied")
+    @Label("Topic Change Applied")
+    @Category({ "Vaadin", CATEGORY })
+    @Description("A change from the event log was applied to a topic")
+    @Threshold("1 ms")
+    static class TopicChangeApplied extends Event {
+        @Label("Topic")
+        String topic;
+
+        @Label("Change Type")
+        String changeType;
+
+        @Label("Result")
+        String result;
+
+        @Label("Event Log Offset")
+        long offset;
+    }
+
+    @Name(PREFIX + "ActionDispatched")
+    @Label("Action Dispatched")
+    @Category({ "Vaadin", CATEGORY })
+    @Description("An action was dispatched to a connection context and run, "
+            + "for example to deliver a change to a subscriber. The event "
+            + "thread is the one that ran the action.")
+    @Threshold("1 ms")
+    static class ActionDispatched extends Event {
+        @Label("Topic")
+        String topic;
+
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+
+        @Label("Run Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long runTime;
+    }
+
+    @Name(PREFIX + "SnapshotWritten")
+    @Label("Snapshot Written")
+    @Category({ "Vaadin", CATEGORY })
+    @Description("A snapshot of a topic was built and handed to the backend")
+    static class SnapshotWritten extends Event {
+        @Label("Topic")
+        String topic;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name(PREFIX + "EventLogReplay")
+    @Label("Event Log Replay")
+    @Category({ "Vaadin", CATEGORY })
+    @Description("A topic subscribed to its event log and applied the events "
+            + "that the log delivered while subscribing")
+    static class EventLogReplay extends Event {
+        @Label("Topic")
+        String topic;
+
+        @Label("From Offset")
+        long fromOffset;
+
+        @Label("To Offset")
+        long toOffset;
+
+        @Label("Events")
+        int events;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name(PREFIX + "ConnectionActivated")
+    @Label("Connection Activated")
+    @Category({ "Vaadin", CATEGORY })
+    @Description("A topic connection was activated, from the activation of "
+            + "its context until the activation callback had run")
+    static class ConnectionActivated extends Event {
+        @Label("Topic")
+        String topic;
+
+        @Label("User")
+        String user;
+    }
+}
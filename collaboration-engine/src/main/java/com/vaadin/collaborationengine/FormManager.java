@@ -20,7 +20,9 @@ import java.io.ObjectInputStream;
 import java.io.Serial;
 import java.io.Serializable;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -349,7 +351,7 @@ public class FormManager extends AbstractCollaborationManager
         resetEntries();
         highlightHandler = handler;
         if (handler != null && list != null) {
-            subscribeRegistration = list.subscribe(this::onListChange);
+            subscribeRegistration = list.subscribe(createListSubscriber());
         }
     }
 
@@ -388,7 +390,7 @@ public class FormManager extends AbstractCollaborationManager
 
         list = topicConnection.getNamedList(COLLECTION_NAME);
         if (this.highlightHandler != null && subscribeRegistration == null) {
-            subscribeRegistration = list.subscribe(this::onListChange);
+            subscribeRegistration = list.subscribe(createListSubscriber());
         }
 
         if (expirationTimeout != null) {
@@ -409,6 +411,44 @@ public class FormManager extends AbstractCollaborationManager
                 event.getValue(Object.class));
     }
 
+    private ListSubscriber createListSubscriber() {
+        return new ListSubscriber() {
+            @Override
+            public void onListChange(ListChangeEvent event) {
+                FormManager.this.onListChange(event);
+            }
+
+            @Override
+            public void onInitialState(List<ListChangeEvent> events) {
+                FormManager.this.onInitialState(events);
+            }
+        };
+    }
+
+    /*
+     * The initial highlights are first counted per editor, so that the
+     * handler is invoked once per highlighted field after all entries have
+     * been processed.
+     */
+    private void onInitialState(List<ListChangeEvent> events) {
+        List<FocusedEditor> newEditors = new ArrayList<>();
+        for (ListChangeEvent event : events) {
+            FocusedEditor editor = event.getValue(FocusedEditor.class);
+            if (editor != null && userEntries
+                    .computeIfAbsent(editor, ignore -> new UserEntry())
+                    .count++ == 0) {
+                newEditors.add(editor);
+            }
+        }
+        if (highlightHandler != null) {
+            newEditors.forEach(editor -> userEntries
+                    .get(editor).registration = highlightHandler
+                            .handleHighlight(new DefaultHighlightContext(
+                                    editor.user, editor.propertyName,
+                                    editor.fieldIndex)));
+        }
+    }
+
     private void onListChange(ListChangeEvent event) {
         switch (event.getType()) {
         case INSERT:
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates the ids used for changes, list keys, snapshots and other internal
+ * events.
+ * <p>
+ * The ids are time-ordered UUIDs in the version 7 layout: the most significant
+ * 48 bits hold the Unix time in milliseconds, followed by the version, a 12 bit
+ * counter and 62 random bits. Ids created by the same thread are strictly
+ * increasing, and ids created by different threads are ordered by their
+ * millisecond. The state is kept per thread, so generating an id doesn't
+ * contend on a shared random source the way {@link UUID#randomUUID()} does.
+ * The ids are unique but not unpredictable, so they must not be used as
+ * secrets.
+ *
+ * @author Vaadin Ltd
+ */
+final class IdUtil {
+
+    private static final int COUNTER_BITS = 12;
+
+    private static final int MAX_COUNTER = (1 << COUNTER_BITS) - 1;
+
+    private static final long VERSION = 0x7000L;
+
+    private static final long VARIANT = 0x8000000000000000L;
+
+    private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+    private static class State {
+        private long lastMillis;
+        private int counter;
+    }
+
+    private static final ThreadLocal<State> STATE = ThreadLocal
+            .withInitial(State::new);
+
+    private IdUtil() {
+        // Only static helpers
+    }
+
+    /**
+     * Creates a new time-ordered id.
+     *
+     * @return the new id, not <code>null</code>
+     */
+    static UUID newId() {
+        return newId(System.currentTimeMillis());
+    }
+
+    static UUID newId(long currentMillis) {
+        State state = STATE.get();
+        if (currentMillis > state.lastMillis) {
+            state.lastMillis = currentMillis;
+            state.counter = 0;
+        } else if (state.counter < MAX_COUNTER) {
+            // Same millisecond or clock moved back, keep the ids increasing
+            state.counter++;
+        } else {
+            state.lastMillis++;
+            state.counter = 0;
+        }
+        long mostSigBits = (state.lastMillis << 16) | VERSION | state.counter;
+        long leastSigBits = VARIANT
+                | (ThreadLocalRandom.current().nextLong() & RANDOM_MASK);
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * Gets the timestamp of an id created by {@link #newId()}.
+     *
+     * @param id
+     *            the id, not <code>null</code>
+     * @return the Unix time in milliseconds when the id was created
+     */
+    static long getTimestamp(UUID id) {
+        return id.getMostSignificantBits() >>> 16;
+    }
+}
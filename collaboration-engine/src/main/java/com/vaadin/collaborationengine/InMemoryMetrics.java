@@ -0,0 +1,263 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics that are kept in memory, for reading them from application code
+ * e.g. to expose them on a status page or to log them periodically. Counters
+ * and histograms are recorded with {@link LongAdder}s, which keeps recording
+ * cheap also when many threads record to the same instrument.
+ * <p>
+ * Histograms count values in buckets of eight per power of two, so the
+ * reported percentiles are within 12.5% of the exact values.
+ *
+ * @author Vaadin Ltd
+ */
+public class InMemoryMetrics implements CollaborationEngineMetrics {
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private final Map<String, InMemoryHistogram> histograms = new ConcurrentHashMap<>();
+
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * A snapshot of the values recorded to a histogram.
+     */
+    public static final class HistogramSnapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private HistogramSnapshot(long[] counts, long sum, long max) {
+            this.counts = counts;
+            long count = 0;
+            for (long bucket : counts) {
+                count += bucket;
+            }
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Gets the number of recorded values.
+         *
+         * @return the number of values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the sum of the recorded values.
+         *
+         * @return the sum of the values
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Gets the highest recorded value.
+         *
+         * @return the highest value, or 0 if no values have been recorded
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Gets the mean of the recorded values.
+         *
+         * @return the mean, or 0 if no values have been recorded
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Gets an estimate of the value at the given percentile. The estimate
+         * is never lower than the actual value, nor higher than the highest
+         * recorded value.
+         *
+         * @param percentile
+         *            the percentile, between 0 and 100
+         * @return the value at the percentile, or 0 if no values have been
+         *         recorded
+         */
+        public long getPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException(
+                        "The percentile must be between 0 and 100");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1,
+                    (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(InMemoryHistogram.upperBoundOf(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    @Override
+    public Counter counter(String name) {
+        LongAdder counter = counters.computeIfAbsent(name,
+                ignore -> new LongAdder());
+        return counter::add;
+    }
+
+    @Override
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name,
+                ignore -> new InMemoryHistogram());
+    }
+
+    /*
+     * The name is the one that histogram(String, String) uses by default.
+     */
+    @Override
+    public void removeHistogram(String name, String topicId) {
+        histograms.remove(name + "[" + topicId + "]");
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Gets the current values of all counters.
+     *
+     * @return an unmodifiable map from counter names to values, sorted by
+     *         name, not <code>null</code>
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Gets the current values of all gauges.
+     *
+     * @return an unmodifiable map from gauge names to values, sorted by name,
+     *         not <code>null</code>
+     */
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Gets snapshots of all histograms.
+     *
+     * @return an unmodifiable map from histogram names to snapshots, sorted by
+     *         name, not <code>null</code>
+     */
+    public Map<String, HistogramSnapshot> getHistograms() {
+        Map<String, HistogramSnapshot> values = new TreeMap<>();
+        histograms.forEach(
+                (name, histogram) -> values.put(name, histogram.snapshot()));
+        return Collections.unmodifiableMap(values);
+    }
+
+    private static class InMemoryHistogram implements Histogram {
+
+        private static final int SUB_BUCKET_BITS = 3;
+
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        // Values below this are counted exactly
+        private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+
+        private static final int LINEAR_BITS = SUB_BUCKET_BITS + 1;
+
+        // Buckets are created when the first value is counted in them
+        private final AtomicReferenceArray<LongAdder> counts = new AtomicReferenceArray<>(
+                LINEAR_LIMIT + (Long.SIZE - LINEAR_BITS) * SUB_BUCKETS);
+
+        private final LongAdder sum = new LongAdder();
+
+        private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+        @Override
+        public void record(long value) {
+            long nonNegative = Math.max(0, value);
+            getBucket(indexOf(nonNegative)).increment();
+            sum.add(nonNegative);
+            max.accumulate(nonNegative);
+        }
+
+        private LongAdder getBucket(int index) {
+            LongAdder bucket = counts.get(index);
+            if (bucket == null) {
+                counts.compareAndSet(index, null, new LongAdder());
+                bucket = counts.get(index);
+            }
+            return bucket;
+        }
+
+        private HistogramSnapshot snapshot() {
+            long[] values = new long[counts.length()];
+            for (int i = 0; i < values.length; i++) {
+                LongAdder bucket = counts.get(i);
+                values[i] = bucket != null ? bucket.sum() : 0;
+            }
+            return new HistogramSnapshot(values, sum.sum(), max.get());
+        }
+
+        private static int indexOf(long value) {
+            if (value < LINEAR_LIMIT) {
+                return (int) value;
+            }
+            int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            int shift = exponent - SUB_BUCKET_BITS;
+            int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+            return LINEAR_LIMIT + (exponent - LINEAR_BITS) * SUB_BUCKETS
+                    + subBucket;
+        }
+
+        private static long upperBoundOf(int index) {
+            if (index < LINEAR_LIMIT) {
+                return index;
+            }
+            int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_BITS;
+            int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+            int shift = exponent - SUB_BUCKET_BITS;
+            long lowerBound = (long) (SUB_BUCKETS + subBucket) << shift;
+            return lowerBound + (1L << shift) - 1;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.module.SimpleSerializers;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Hand-written streaming serializers and deserializers for the value types
+ * that the engine itself stores in topics. They produce the same JSON as the
+ * default bean serialization of those types, but skip the bean introspection
+ * and property buffering of the generic path.
+ * <p>
+ * The serializers are only used for the exact types, so that subclasses of
+ * e.g. {@link UserInfo} still have all their properties serialized.
+ *
+ * @author Vaadin Ltd
+ */
+class JsonCodecs {
+
+    private static final String USER = "user";
+    private static final String USER_ID = "id";
+    private static final String USER_NAME = "name";
+    private static final String USER_ABBREVIATION = "abbreviation";
+    private static final String USER_IMAGE = "image";
+    private static final String USER_COLOR_INDEX = "colorIndex";
+    private static final String MESSAGE_TEXT = "text";
+    private static final String MESSAGE_TIME = "time";
+    private static final String EDITOR_FIELD_INDEX = "fieldIndex";
+    private static final String EDITOR_PROPERTY_NAME = "propertyName";
+
+    private JsonCodecs() {
+    }
+
+    /**
+     * Creates a Jackson module with the codecs of the built-in value types.
+     *
+     * @return the module, not <code>null</code>
+     */
+    static SimpleModule createModule() {
+        SimpleModule module = new SimpleModule("CollaborationEngineCodecs");
+        module.setSerializers(new ExactTypeSerializers(Map.of(UserInfo.class,
+                new UserInfoSerializer(), CollaborationMessage.class,
+                new CollaborationMessageSerializer(),
+                FormManager.FocusedEditor.class,
+                new FocusedEditorSerializer())));
+        module.addDeserializer(UserInfo.class, new UserInfoDeserializer());
+        module.addDeserializer(CollaborationMessage.class,
+                new CollaborationMessageDeserializer());
+        module.addDeserializer(FormManager.FocusedEditor.class,
+                new FocusedEditorDeserializer());
+        return module;
+    }
+
+    private static class ExactTypeSerializers extends SimpleSerializers {
+        private final Map<Class<?>, JsonSerializer<?>> serializers;
+
+        private ExactTypeSerializers(
+                Map<Class<?>, JsonSerializer<?>> serializers) {
+            this.serializers = serializers;
+        }
+
+        @Override
+        public JsonSerializer<?> findSerializer(SerializationConfig config,
+                JavaType type, BeanDescription beanDesc) {
+            return serializers.get(type.getRawClass());
+        }
+    }
+
+    private static class UserInfoSerializer extends StdSerializer<UserInfo> {
+        private UserInfoSerializer() {
+            super(UserInfo.class);
+        }
+
+        @Override
+        public void serialize(UserInfo user, JsonGenerator generator,
+                SerializerProvider provider) throws IOException {
+            writeUser(user, generator, provider);
+        }
+    }
+
+    private static class CollaborationMessageSerializer
+            extends StdSerializer<CollaborationMessage> {
+        private CollaborationMessageSerializer() {
+            super(CollaborationMessage.class);
+        }
+
+        @Override
+        public void serialize(CollaborationMessage message,
+                JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            generator.writeStartObject(message);
+            generator.writeFieldName(USER);
+            writeUser(message.getUser(), generator, provider);
+            writeStringField(generator, MESSAGE_TEXT, message.getText());
+            Instant time = message.getTime();
+            // Same as the ISO_INSTANT format of the JavaTimeModule
+            writeStringField(generator, MESSAGE_TIME,
+                    time != null ? time.toString() : null);
+            generator.writeEndObject();
+        }
+    }
+
+    private static class FocusedEditorSerializer
+            extends StdSerializer<FormManager.FocusedEditor> {
+        private FocusedEditorSerializer() {
+            super(FormManager.FocusedEditor.class);
+        }
+
+        @Override
+        public void serialize(FormManager.FocusedEditor editor,
+                JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            generator.writeStartObject(editor);
+            generator.writeFieldName(USER);
+            writeUser(editor.user, generator, provider);
+            generator.writeNumberField(EDITOR_FIELD_INDEX, editor.fieldIndex);
+            writeStringField(generator, EDITOR_PROPERTY_NAME,
+                    editor.propertyName);
+            generator.writeEndObject();
+        }
+    }
+
+    private static class UserInfoDeserializer
+            extends StdDeserializer<UserInfo> {
+        private UserInfoDeserializer() {
+            super(UserInfo.class);
+        }
+
+        @Override
+        public UserInfo deserialize(JsonParser parser,
+                DeserializationContext context) throws IOException {
+            return readUser(parser, context, this);
+        }
+    }
+
+    private static class CollaborationMessageDeserializer
+            extends StdDeserializer<CollaborationMessage> {
+        private CollaborationMessageDeserializer() {
+            super(CollaborationMessage.class);
+        }
+
+        @Override
+        public CollaborationMessage deserialize(JsonParser parser,
+                DeserializationContext context) throws IOException {
+            CollaborationMessage message = new CollaborationMessage();
+            String field = startObject(parser, context, this);
+            while (field != null) {
+                parser.nextToken();
+                switch (field) {
+                case USER:
+                    message.setUser(readUser(parser, context, this));
+                    break;
+                case MESSAGE_TEXT:
+                    message.setText(readString(parser));
+                    break;
+                case MESSAGE_TIME:
+                    message.setTime(readInstant(parser, context));
+                    break;
+                default:
+                    context.handleUnknownProperty(parser, this,
+                            CollaborationMessage.class, field);
+                }
+                field = parser.nextFieldName();
+            }
+            return message;
+        }
+    }
+
+    private static class FocusedEditorDeserializer
+            extends StdDeserializer<FormManager.FocusedEditor> {
+        private FocusedEditorDeserializer() {
+            super(FormManager.FocusedEditor.class);
+        }
+
+        @Override
+        public FormManager.FocusedEditor deserialize(JsonParser parser,
+                DeserializationContext context) throws IOException {
+            UserInfo user = null;
+            int fieldIndex = 0;
+            String propertyName = null;
+            String field = startObject(parser, context, this);
+            while (field != null) {
+                parser.nextToken();
+                switch (field) {
+                case USER:
+                    user = readUser(parser, context, this);
+                    break;
+                case EDITOR_FIELD_INDEX:
+                    fieldIndex = parser.getValueAsInt();
+                    break;
+                case EDITOR_PROPERTY_NAME:
+                    propertyName = readString(parser);
+                    break;
+                default:
+                    context.handleUnknownProperty(parser, this,
+                            FormManager.FocusedEditor.class, field);
+                }
+                field = parser.nextFieldName();
+            }
+            return new FormManager.FocusedEditor(user, fieldIndex,
+                    propertyName);
+        }
+    }
+
+    private static void writeUser(UserInfo user, JsonGenerator generator,
+            SerializerProvider provider) throws IOException {
+        if (user == null) {
+            generator.writeNull();
+            return;
+        }
+        if (user.getClass() != UserInfo.class) {
+            // Subclasses may add properties, so let the bean serializer of
+            // the runtime type handle them
+            provider.defaultSerializeValue(user, generator);
+            return;
+        }
+        generator.writeStartObject(user);
+        writeStringField(generator, USER_ID, user.getId());
+        writeStringField(generator, USER_NAME, user.getName());
+        writeStringField(generator, USER_ABBREVIATION, user.getAbbreviation());
+        writeStringField(generator, USER_IMAGE, user.getImage());
+        generator.writeNumberField(USER_COLOR_INDEX, user.getColorIndex());
+        generator.writeEndObject();
+    }
+
+    private static UserInfo readUser(JsonParser parser,
+            DeserializationContext context, JsonDeserializer<?> deserializer)
+            throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        String id = null;
+        String name = null;
+        String abbreviation = null;
+        String image = null;
+        int colorIndex = -1;
+        String field = startObject(parser, context, deserializer);
+        while (field != null) {
+            parser.nextToken();
+            switch (field) {
+            case USER_ID:
+                id = readString(parser);
+                break;
+            case USER_NAME:
+                name = readString(parser);
+                break;
+            case USER_ABBREVIATION:
+                abbreviation = readString(parser);
+                break;
+            case USER_IMAGE:
+                image = readString(parser);
+                break;
+            case USER_COLOR_INDEX:
+                colorIndex = parser.getValueAsInt();
+                break;
+            default:
+                context.handleUnknownProperty(parser, deserializer,
+                        UserInfo.class, field);
+            }
+            field = parser.nextFieldName();
+        }
+        if (id == null) {
+            return context.reportInputMismatch(deserializer,
+                    "Null user id isn't supported");
+        }
+        UserInfo user = new UserInfo(id, colorIndex);
+        user.setName(name);
+        user.setAbbreviation(abbreviation);
+        user.setImage(image);
+        return user;
+    }
+
+    private static Instant readInstant(JsonParser parser,
+            DeserializationContext context) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        } else if (token == JsonToken.VALUE_STRING) {
+            try {
+                return Instant.parse(parser.getText());
+            } catch (DateTimeParseException e) {
+                // Let the JavaTimeModule handle its lenient formats
+            }
+        }
+        return context.readValue(parser, Instant.class);
+    }
+
+    /*
+     * Returns the name of the first field, or null for an empty object.
+     */
+    private static String startObject(JsonParser parser,
+            DeserializationContext context, JsonDeserializer<?> deserializer)
+            throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            return parser.nextFieldName();
+        } else if (token == JsonToken.FIELD_NAME) {
+            return parser.currentName();
+        } else if (token == JsonToken.END_OBJECT) {
+            return null;
+        }
+        throw context.wrongTokenException(parser, deserializer.handledType(),
+                JsonToken.START_OBJECT, null);
+    }
+
+    private static String readString(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return parser.getValueAsString();
+    }
+
+    private static void writeStringField(JsonGenerator generator, String name,
+            String value) throws IOException {
+        generator.writeFieldName(name);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value);
+        }
+    }
+}
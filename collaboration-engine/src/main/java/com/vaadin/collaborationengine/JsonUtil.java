@@ -23,15 +23,19 @@ import java.time.YearMonth;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 /**
@@ -62,6 +66,12 @@ class JsonUtil {
 
     static final String CHANGE_EMPTY = "empty";
 
+    static final String CHANGE_TRACE = "trace";
+
+    static final String CHANGE_TRACE_SUBMITTED = "submitted";
+
+    static final String CHANGE_TRACE_SENT = "sent";
+
     static final String CHANGE_TYPE_PUT = "m-put";
 
     static final String CHANGE_TYPE_REPLACE = "m-replace";
@@ -111,9 +121,34 @@ class JsonUtil {
 
     private static final ObjectMapper mapper;
 
+    /*
+     * Readers and writers resolve their root (de)serializer once, instead of
+     * looking it up from the mapper for every value.
+     */
+    private static final ClassValue<ObjectReader> readers = new ClassValue<>() {
+        @Override
+        protected ObjectReader computeValue(Class<?> type) {
+            return mapper.readerFor(type);
+        }
+    };
+
+    /*
+     * Generic types can't be keyed by a ClassValue, but the instances come
+     * from type references in code so the set of keys stays small.
+     */
+    private static final Map<Type, ObjectReader> genericReaders = new ConcurrentHashMap<>();
+
+    private static final ClassValue<ObjectWriter> writers = new ClassValue<>() {
+        @Override
+        protected ObjectWriter computeValue(Class<?> type) {
+            return mapper.writerFor(type);
+        }
+    };
+
     static {
         mapper = new ObjectMapper();
         mapper.registerModule(new JavaTimeModule());
+        mapper.registerModule(JsonCodecs.createModule());
         mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
     }
 
@@ -125,9 +160,15 @@ class JsonUtil {
     }
 
     static JsonNode toJsonNode(Object value) {
-        try {
-            return mapper.valueToTree(value);
-        } catch (IllegalArgumentException e) {
+        if (value == null) {
+            return mapper.valueToTree(null);
+        }
+        try (TokenBuffer buffer = new TokenBuffer(mapper, false)) {
+            writers.get(value.getClass()).writeValue(buffer, value);
+            try (JsonParser parser = buffer.asParser()) {
+                return mapper.readTree(parser);
+            }
+        } catch (IOException | IllegalArgumentException e) {
             throw new JsonConversionException(
                     "Failed to encode the object to JSON node. "
                             + "Make sure the value contains a supported type.",
@@ -139,9 +180,16 @@ class JsonUtil {
         if (jsonNode == null) {
             return null;
         }
+        if (type != Object.class && type.isInstance(jsonNode)) {
+            /*
+             * Jackson would return the node itself. Nodes are shared between
+             * the topic and all readers, so only a copy may be handed out.
+             */
+            return type.cast(jsonNode.deepCopy());
+        }
         try {
-            return mapper.treeToValue(jsonNode, type);
-        } catch (JsonProcessingException e) {
+            return readers.get(type).readValue(jsonNode);
+        } catch (IOException e) {
             throw new JsonConversionException(
                     "Failed to parse the JSON node to " + type.getName(), e);
         }
@@ -165,13 +213,18 @@ class JsonUtil {
         if (jsonNode == null) {
             return null;
         }
-        JavaType javaType = mapper.getTypeFactory().constructType(type);
+        if (type instanceof Class<?>) {
+            return toInstance(jsonNode, (Class<?>) type);
+        }
+        ObjectReader reader = genericReaders.computeIfAbsent(type,
+                key -> mapper.readerFor(
+                        mapper.getTypeFactory().constructType(key)));
         try {
-            return mapper.readValue(mapper.treeAsTokens(jsonNode), javaType);
+            return reader.readValue(jsonNode);
         } catch (IOException e) {
             throw new JsonConversionException(
                     "Failed to parse the JSON node to "
-                            + javaType.getTypeName(),
+                            + reader.getValueType().getTypeName(),
                     e);
         }
     }
@@ -348,7 +401,8 @@ class JsonUtil {
             return null;
         } else {
             try {
-                return mapper.writeValueAsString(value);
+                return writers.get(value.getClass())
+                        .writeValueAsString(value);
             } catch (JsonProcessingException e) {
                 throw new JsonConversionException(
                         "Failed to serialize the object to string.", e);
@@ -356,6 +410,38 @@ class JsonUtil {
         }
     }
 
+    /**
+     * Encodes a JSON node to UTF-8 bytes.
+     *
+     * @param node
+     *            the JSON node, not <code>null</code>
+     * @return the encoded bytes, not <code>null</code>
+     */
+    static byte[] toBytes(JsonNode node) {
+        try {
+            return mapper.writeValueAsBytes(node);
+        } catch (JsonProcessingException e) {
+            throw new JsonConversionException(
+                    "Failed to encode the JSON node to bytes.", e);
+        }
+    }
+
+    /**
+     * Decodes a JSON node from UTF-8 bytes.
+     *
+     * @param bytes
+     *            the encoded bytes, not <code>null</code>
+     * @return the JSON node, not <code>null</code>
+     */
+    static JsonNode fromBytes(byte[] bytes) {
+        try {
+            return mapper.readTree(bytes);
+        } catch (IOException e) {
+            throw new JsonConversionException(
+                    "Failed to decode the JSON node from bytes.", e);
+        }
+    }
+
     /**
      * Deserializes a JSON string to {@link ObjectNode}.
      *
@@ -39,6 +39,9 @@ class ListChange implements ChangeDetails {
 
     private final UUID revisionId;
 
+    private final DecodedValueCache decodedValue;
+    private final DecodedValueCache decodedOldValue;
+
     ListChange(String listName, ListChangeType type, UUID key,
             JsonNode oldValue, JsonNode value, UUID oldPrev, UUID prev,
             UUID oldNext, UUID next, UUID expectedId, UUID revisionId) {
@@ -53,6 +56,16 @@ class ListChange implements ChangeDetails {
         this.next = next;
         this.expectedId = expectedId;
         this.revisionId = revisionId;
+        this.decodedValue = new DecodedValueCache(value);
+        this.decodedOldValue = new DecodedValueCache(oldValue);
+    }
+
+    DecodedValueCache getDecodedValue() {
+        return decodedValue;
+    }
+
+    DecodedValueCache getDecodedOldValue() {
+        return decodedOldValue;
     }
 
     String getListName() {
@@ -16,6 +16,7 @@
 package com.vaadin.collaborationengine;
 
 import java.util.EventObject;
+import java.util.function.Predicate;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 
@@ -29,6 +30,8 @@ public class ListChangeEvent extends EventObject {
 
     private final ListChange change;
 
+    private final Predicate<Class<?>> cachedTypes;
+
     /**
      * Creates a new event.
      *
@@ -38,8 +41,26 @@ public class ListChangeEvent extends EventObject {
      *            the list change
      */
     ListChangeEvent(CollaborationList list, ListChange change) {
+        this(list, change, type -> false);
+    }
+
+    /**
+     * Creates a new event that shares decoded values of the given types with
+     * all other events for the same change.
+     *
+     * @param list
+     *            the list source of the event
+     * @param change
+     *            the list change
+     * @param cachedTypes
+     *            tests whether a type is immutable so that decoded instances
+     *            can be shared
+     */
+    ListChangeEvent(CollaborationList list, ListChange change,
+            Predicate<Class<?>> cachedTypes) {
         super(list);
         this.change = change;
+        this.cachedTypes = cachedTypes;
     }
 
     @Override
@@ -76,6 +97,9 @@ public class ListChangeEvent extends EventObject {
      * @return the current value of the item affected by the change
      */
     public <T> T getValue(Class<T> type) {
+        if (cachedTypes.test(type)) {
+            return change.getDecodedValue().get(type);
+        }
         return JsonUtil.toInstance(change.getValue(), type);
     }
 
@@ -110,6 +134,9 @@ public class ListChangeEvent extends EventObject {
      * @return the old value of the item affected by the change
      */
     public <T> T getOldValue(Class<T> type) {
+        if (cachedTypes.test(type)) {
+            return change.getDecodedOldValue().get(type);
+        }
         return JsonUtil.toInstance(change.getOldValue(), type);
     }
 
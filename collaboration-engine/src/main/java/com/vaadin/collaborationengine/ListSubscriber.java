@@ -15,6 +15,8 @@
  */
 package com.vaadin.collaborationengine;
 
+import java.util.List;
+
 /**
  * Event handler that gets notified for changes to collaboration lists. A
  * listener can be registered using
@@ -33,4 +35,23 @@ public interface ListSubscriber {
      *            the list change event, not <code>null</code>
      */
     void onListChange(ListChangeEvent event);
+
+    /**
+     * Handles the items that are already in the list when subscribing. The
+     * events for all items are delivered together in one call, in list order,
+     * before any subsequent change is delivered to
+     * {@link #onListChange(ListChangeEvent)}. This method is not called if the
+     * list is empty when subscribing.
+     * <p>
+     * Override this method to process a large list in one pass, for example
+     * to build a cache. The default implementation calls
+     * {@link #onListChange(ListChangeEvent)} for each event.
+     *
+     * @param events
+     *            the events for the items in the list, not <code>null</code>
+     *            and not empty
+     */
+    default void onInitialState(List<ListChangeEvent> events) {
+        events.forEach(this::onListChange);
+    }
 }
@@ -29,6 +29,8 @@ class MapChange implements ChangeDetails {
     private final JsonNode oldValue;
     private final UUID expectedId;
     private final UUID revisionId;
+    private final DecodedValueCache decodedValue;
+    private final DecodedValueCache decodedOldValue;
 
     MapChange(String mapName, MapChangeType type, String key, JsonNode oldValue,
             JsonNode newValue, UUID expectedId, UUID revisionId) {
@@ -41,6 +43,8 @@ class MapChange implements ChangeDetails {
         this.oldValue = oldValue;
         this.expectedId = expectedId;
         this.revisionId = revisionId;
+        this.decodedValue = new DecodedValueCache(newValue);
+        this.decodedOldValue = new DecodedValueCache(oldValue);
     }
 
     JsonNode getOldValue() {
@@ -63,6 +67,14 @@ class MapChange implements ChangeDetails {
         return value;
     }
 
+    DecodedValueCache getDecodedValue() {
+        return decodedValue;
+    }
+
+    DecodedValueCache getDecodedOldValue() {
+        return decodedOldValue;
+    }
+
     UUID getExpectedId() {
         return expectedId;
     }
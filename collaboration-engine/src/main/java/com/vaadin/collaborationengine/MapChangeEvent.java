@@ -17,6 +17,7 @@ package com.vaadin.collaborationengine;
 
 import java.util.EventObject;
 import java.util.Objects;
+import java.util.function.Predicate;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -32,6 +33,9 @@ public class MapChangeEvent extends EventObject {
     private final String key;
     private final JsonNode oldValue;
     private final JsonNode value;
+    private final transient DecodedValueCache decodedOldValue;
+    private final transient DecodedValueCache decodedValue;
+    private final transient Predicate<Class<?>> cachedTypes;
 
     /**
      * Creates a new map change event.
@@ -45,11 +49,32 @@ public class MapChangeEvent extends EventObject {
      * @since 1.0
      */
     public MapChangeEvent(CollaborationMap source, MapChange change) {
+        this(source, change, type -> false);
+    }
+
+    /**
+     * Creates a new map change event that shares decoded values of the given
+     * types with all other events for the same change.
+     *
+     * @param source
+     *            the collaboration map for which the event is fired, not
+     *            <code>null</code>
+     * @param change
+     *            detail of the change, not <code>null</code>
+     * @param cachedTypes
+     *            tests whether a type is immutable so that decoded instances
+     *            can be shared, not <code>null</code>
+     */
+    MapChangeEvent(CollaborationMap source, MapChange change,
+            Predicate<Class<?>> cachedTypes) {
         super(source);
         Objects.requireNonNull(change, "Entry change must not be null");
         this.key = change.getKey();
         this.oldValue = change.getOldValue();
         this.value = change.getValue();
+        this.decodedOldValue = change.getDecodedOldValue();
+        this.decodedValue = change.getDecodedValue();
+        this.cachedTypes = cachedTypes;
     }
 
     @Override
@@ -82,7 +107,7 @@ public class MapChangeEvent extends EventObject {
      * @since 1.0
      */
     public <T> T getOldValue(Class<T> type) {
-        return JsonUtil.toInstance(oldValue, type);
+        return decode(oldValue, decodedOldValue, type);
     }
 
     /**
@@ -117,7 +142,16 @@ public class MapChangeEvent extends EventObject {
      * @since 1.0
      */
     public <T> T getValue(Class<T> type) {
-        return JsonUtil.toInstance(value, type);
+        return decode(value, decodedValue, type);
+    }
+
+    private <T> T decode(JsonNode node, DecodedValueCache cache,
+            Class<T> type) {
+        // The cache is not restored if the event is deserialized
+        if (cache != null && cachedTypes.test(type)) {
+            return cache.get(type);
+        }
+        return JsonUtil.toInstance(node, type);
     }
 
     /**
@@ -15,6 +15,8 @@
  */
 package com.vaadin.collaborationengine;
 
+import java.util.List;
+
 /**
  * Event handler that gets notified for changes to collaboration maps. A
  * listener can be registered using
@@ -34,4 +36,23 @@ public interface MapSubscriber {
      * @since 1.0
      */
     void onMapChange(MapChangeEvent event);
+
+    /**
+     * Handles the values that are already in the map when subscribing. The
+     * events for all current value associations are delivered together in
+     * one call, before any subsequent change is delivered to
+     * {@link #onMapChange(MapChangeEvent)}. This method is not called if the
+     * map is empty when subscribing.
+     * <p>
+     * Override this method to process a large map in one pass, for example to
+     * build a cache. The default implementation calls
+     * {@link #onMapChange(MapChangeEvent)} for each event.
+     *
+     * @param events
+     *            the events for the values in the map, not <code>null</code>
+     *            and not empty
+     */
+    default void onInitialState(List<MapChangeEvent> events) {
+        events.forEach(this::onMapChange);
+    }
 }
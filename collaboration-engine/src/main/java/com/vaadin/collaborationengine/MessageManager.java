@@ -281,7 +281,17 @@ public class MessageManager extends AbstractCollaborationManager {
 
     private Registration onConnectionActivate(TopicConnection topicConnection) {
         list = topicConnection.getNamedList(LIST_NAME);
-        list.subscribe(this::onListChange);
+        list.subscribe(new ListSubscriber() {
+            @Override
+            public void onListChange(ListChangeEvent event) {
+                MessageManager.this.onListChange(event);
+            }
+
+            @Override
+            public void onInitialState(List<ListChangeEvent> events) {
+                MessageManager.this.onInitialState(events);
+            }
+        });
         fetchPersistedList();
         pendingMessageFutures.entrySet().removeIf(entry -> {
             CompletableFuture<Void> future = entry.getKey();
@@ -308,15 +318,47 @@ public class MessageManager extends AbstractCollaborationManager {
                 .getValue(CollaborationMessage.class);
         lastMessageKey = event.getKey();
         if (message != null) {
-            CompletableFuture<Void> future = persistedMessageFutures
-                    .remove(message);
-            if (future != null) {
-                future.complete(null);
-            }
+            completePersistedMessage(message);
             applyHandler(message);
         }
     }
 
+    /*
+     * When catching up after a reconnect, the last seen message is looked up
+     * once instead of comparing each message to it, and the handler is only
+     * invoked for the messages after it.
+     */
+    private void onInitialState(List<ListChangeEvent> events) {
+        lastMessageKey = events.get(events.size() - 1).getKey();
+        List<CollaborationMessage> messages = new ArrayList<>(events.size());
+        for (ListChangeEvent event : events) {
+            CollaborationMessage message = event
+                    .getValue(CollaborationMessage.class);
+            if (message != null) {
+                completePersistedMessage(message);
+                messages.add(message);
+            }
+        }
+        int first = 0;
+        if (catchupMode) {
+            int lastSeen = messages.indexOf(lastSeenMessage);
+            if (lastSeen < 0) {
+                return;
+            }
+            catchupMode = false;
+            first = lastSeen + 1;
+        }
+        messages.subList(first, messages.size()).forEach(this::applyHandler);
+    }
+
+    private void completePersistedMessage(CollaborationMessage message) {
+        CompletableFuture<Void> future = persistedMessageFutures
+                .remove(message);
+        if (future != null) {
+            future.complete(null);
+        }
+    }
+
     private void applyHandler(CollaborationMessage message) {
         if (!catchupMode) {
             lastSeenMessage = message;
@@ -0,0 +1,503 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * A backend decorator that stores the events of all topics in a fixed number
+ * of partition event logs of the decorated backend. Each topic is assigned to
+ * a partition based on the hash of its id, and each node keeps at most one
+ * subscription per partition no matter how many topics are loaded. Events
+ * received from a partition are demultiplexed locally and delivered only to
+ * the topics that are loaded on this node.
+ * <p>
+ * This reduces the number of logs and listeners that a cluster backend has to
+ * manage when there are many topics, at the cost of each node receiving the
+ * events of all topics in the partitions it is subscribed to. A topic that is
+ * loaded while its partition is already subscribed catches up through a
+ * temporary subscription from its own position and then switches over to the
+ * shared one.
+ * <p>
+ * Since a partition log is shared by many topics, truncating the log of a
+ * single topic does not remove any events. Old events should instead be
+ * removed by the retention mechanism of the decorated backend, for example by
+ * limiting the capacity of the partition logs. The partition count must be the
+ * same on all nodes of a cluster, and it cannot be changed without discarding
+ * the existing events.
+ *
+ * @author Vaadin Ltd
+ */
+public class MultiplexedBackend extends Backend {
+
+    static final int DEFAULT_PARTITION_COUNT = 64;
+
+    static final String PARTITION_LOG_PREFIX = "collaboration-engine.partition.";
+
+    private static class PendingEvent {
+        private final long offset;
+        private final UUID trackingId;
+        private final String envelope;
+
+        private PendingEvent(long offset, UUID trackingId, String envelope) {
+            this.offset = offset;
+            this.trackingId = trackingId;
+            this.envelope = envelope;
+        }
+    }
+
+    private class TopicEventLog implements EventLog {
+        private final String topicId;
+        private final Partition partition;
+
+        private TopicEventLog(String topicId, Partition partition) {
+            this.topicId = topicId;
+            this.partition = partition;
+        }
+
+        @Override
+        public void submitEvent(UUID trackingId, String eventPayload) {
+            Objects.requireNonNull(eventPayload);
+            partition.getLog().submitEvent(trackingId,
+                    wrap(topicId, eventPayload));
+        }
+
+        @Override
+        public void submitEvents(List<Event> events) {
+            List<Event> wrapped = new ArrayList<>(events.size());
+            for (Event event : events) {
+                wrapped.add(new Event(event.getTrackingId(),
+                        wrap(topicId, event.getPayload())));
+            }
+            partition.getLog().submitEvents(wrapped);
+        }
+
+        @Override
+        public Registration subscribe(UUID newerThan,
+                BiConsumer<UUID, String> eventConsumer)
+                throws EventIdNotFoundException {
+            Objects.requireNonNull(eventConsumer);
+            return subscribe(newerThan, NO_OFFSET, (offset, trackingId,
+                    payload) -> eventConsumer.accept(trackingId, payload));
+        }
+
+        @Override
+        public Registration subscribe(UUID newerThan, long newerThanOffset,
+                OffsetEventConsumer eventConsumer)
+                throws EventIdNotFoundException {
+            Objects.requireNonNull(eventConsumer);
+            return partition.subscribe(new TopicSubscriber(topicId, newerThan,
+                    eventConsumer), newerThanOffset);
+        }
+
+        @Override
+        public void truncate(UUID olderThan) {
+            // NOOP, the partition log also contains events of other topics
+        }
+    }
+
+    private class Partition {
+        private final String logId;
+        private final Object subscribeLock = new Object();
+        // Guarded by this
+        private final Map<String, List<TopicSubscriber>> subscribers = new HashMap<>();
+        private final Set<TopicSubscriber> catchingUp = new HashSet<>();
+        private EventLog log;
+        // Guarded by subscribeLock
+        private Registration sharedRegistration;
+
+        private Partition(int index) {
+            this.logId = PARTITION_LOG_PREFIX + index;
+        }
+
+        private synchronized EventLog getLog() {
+            if (log == null) {
+                log = getDelegate().openEventLog(logId);
+            }
+            return log;
+        }
+
+        private Registration subscribe(TopicSubscriber subscriber,
+                long newerThanOffset) throws EventIdNotFoundException {
+            synchronized (subscribeLock) {
+                boolean first = sharedRegistration == null;
+                synchronized (this) {
+                    subscribers.computeIfAbsent(subscriber.topicId,
+                            id -> new ArrayList<>()).add(subscriber);
+                    if (!first) {
+                        subscriber.catchingUp = true;
+                        catchingUp.add(subscriber);
+                    }
+                }
+                try {
+                    if (first) {
+                        // The shared subscription starts from the position of
+                        // the first topic, so no catching up is needed
+                        sharedRegistration = getLog().subscribe(
+                                subscriber.newerThan, newerThanOffset,
+                                this::handleEvent);
+                    } else {
+                        subscriber.setCatchUpRegistration(getLog().subscribe(
+                                subscriber.newerThan, newerThanOffset,
+                                subscriber::handleCatchUpEvent));
+                    }
+                } catch (EventIdNotFoundException | RuntimeException e) {
+                    removeSubscriber(subscriber);
+                    throw e;
+                }
+            }
+            subscriber.deliverPending();
+            return () -> {
+                synchronized (subscribeLock) {
+                    removeSubscriber(subscriber);
+                }
+            };
+        }
+
+        private void removeSubscriber(TopicSubscriber subscriber) {
+            subscriber.removed = true;
+            boolean empty;
+            synchronized (this) {
+                List<TopicSubscriber> topicSubscribers = subscribers
+                        .get(subscriber.topicId);
+                if (topicSubscribers != null) {
+                    topicSubscribers.remove(subscriber);
+                    if (topicSubscribers.isEmpty()) {
+                        subscribers.remove(subscriber.topicId);
+                    }
+                }
+                catchingUp.remove(subscriber);
+                empty = subscribers.isEmpty();
+            }
+            subscriber.removeCatchUpRegistration();
+            if (empty && sharedRegistration != null) {
+                sharedRegistration.remove();
+                sharedRegistration = null;
+            }
+        }
+
+        private synchronized void catchUpFinished(TopicSubscriber subscriber) {
+            catchingUp.remove(subscriber);
+        }
+
+        private void handleEvent(long offset, UUID trackingId,
+                String envelope) {
+            Set<TopicSubscriber> targets;
+            synchronized (this) {
+                List<TopicSubscriber> topicSubscribers = subscribers
+                        .get(getTopicId(envelope));
+                if (topicSubscribers == null && catchingUp.isEmpty()) {
+                    return;
+                }
+                targets = new LinkedHashSet<>(catchingUp);
+                if (topicSubscribers != null) {
+                    targets.addAll(topicSubscribers);
+                }
+            }
+            PendingEvent event = new PendingEvent(offset, trackingId,
+                    envelope);
+            for (TopicSubscriber subscriber : targets) {
+                subscriber.handleSharedEvent(event);
+                subscriber.deliverPending();
+            }
+        }
+    }
+
+    /*
+     * A subscriber that is catching up receives events both from its own
+     * catch-up subscription and from the shared subscription of the
+     * partition. Events from the shared subscription are buffered until the
+     * catch-up subscription reaches the first buffered event, or until the
+     * shared subscription has received all events that were delivered through
+     * the catch-up subscription. After that, the catch-up subscription is
+     * removed and events are only received from the shared subscription.
+     */
+    private class TopicSubscriber {
+        private final String topicId;
+        private final UUID newerThan;
+        private final OffsetEventConsumer consumer;
+        // Guarded by this
+        private final Set<UUID> seen = new HashSet<>();
+        private final List<PendingEvent> buffer = new ArrayList<>();
+        private final Queue<PendingEvent> deliveries = new ArrayDeque<>();
+        private boolean catchingUp;
+        private boolean delivering;
+        private Registration catchUpRegistration;
+        private volatile boolean removed;
+
+        private TopicSubscriber(String topicId, UUID newerThan,
+                OffsetEventConsumer consumer) {
+            this.topicId = topicId;
+            this.newerThan = newerThan;
+            this.consumer = consumer;
+        }
+
+        private void handleCatchUpEvent(long offset, UUID trackingId,
+                String envelope) {
+            PendingEvent event = new PendingEvent(offset, trackingId,
+                    envelope);
+            boolean finished = false;
+            synchronized (this) {
+                if (!catchingUp) {
+                    return;
+                }
+                if (!buffer.isEmpty()
+                        && buffer.get(0).trackingId.equals(trackingId)) {
+                    finished = finishCatchUp();
+                } else {
+                    seen.add(trackingId);
+                    enqueue(event);
+                }
+            }
+            if (finished) {
+                afterCatchUp();
+            }
+            deliverPending();
+        }
+
+        private void handleSharedEvent(PendingEvent event) {
+            boolean finished = false;
+            synchronized (this) {
+                if (!catchingUp) {
+                    enqueue(event);
+                    return;
+                }
+                if (event.trackingId.equals(newerThan)) {
+                    // Buffered events are older than the starting point
+                    buffer.clear();
+                } else if (seen.remove(event.trackingId)) {
+                    finished = seen.isEmpty() && buffer.isEmpty()
+                            && finishCatchUp();
+                } else {
+                    buffer.add(event);
+                }
+            }
+            if (finished) {
+                afterCatchUp();
+            }
+        }
+
+        private synchronized boolean finishCatchUp() {
+            catchingUp = false;
+            buffer.forEach(this::enqueue);
+            buffer.clear();
+            seen.clear();
+            return true;
+        }
+
+        private void afterCatchUp() {
+            removeCatchUpRegistration();
+            getPartition(topicId).catchUpFinished(this);
+        }
+
+        private void setCatchUpRegistration(Registration registration) {
+            boolean remove;
+            synchronized (this) {
+                catchUpRegistration = registration;
+                // The catch-up might have finished during the subscribe call
+                remove = !catchingUp || removed;
+            }
+            if (remove) {
+                removeCatchUpRegistration();
+            }
+        }
+
+        private void removeCatchUpRegistration() {
+            Registration registration;
+            synchronized (this) {
+                registration = catchUpRegistration;
+                catchUpRegistration = null;
+            }
+            if (registration != null) {
+                registration.remove();
+            }
+        }
+
+        private void enqueue(PendingEvent event) {
+            if (isForTopic(event.envelope, topicId)) {
+                deliveries.add(event);
+            }
+        }
+
+        /*
+         * Events are delivered outside of any lock so that the consumer can
+         * submit new events. Events submitted by the consumer itself are
+         * delivered by the outer invocation after the consumer returns.
+         */
+        private void deliverPending() {
+            synchronized (this) {
+                if (delivering) {
+                    return;
+                }
+                delivering = true;
+            }
+            boolean completed = false;
+            try {
+                while (true) {
+                    PendingEvent event;
+                    synchronized (this) {
+                        event = deliveries.poll();
+                        if (event == null) {
+                            delivering = false;
+                            completed = true;
+                            return;
+                        }
+                    }
+                    if (!removed) {
+                        consumer.accept(event.offset, event.trackingId,
+                                getPayload(event.envelope));
+                    }
+                }
+            } finally {
+                if (!completed) {
+                    synchronized (this) {
+                        delivering = false;
+                    }
+                }
+            }
+        }
+    }
+
+    private final Backend delegate;
+
+    private final Partition[] partitions;
+
+    /**
+     * Creates a new multiplexed backend that decorates the given backend using
+     * the default number of partitions.
+     *
+     * @param delegate
+     *            the backend to decorate, not <code>null</code>
+     */
+    public MultiplexedBackend(Backend delegate) {
+        this(delegate, DEFAULT_PARTITION_COUNT);
+    }
+
+    /**
+     * Creates a new multiplexed backend that decorates the given backend using
+     * the given number of partitions. All nodes in a cluster must use the same
+     * number of partitions.
+     *
+     * @param delegate
+     *            the backend to decorate, not <code>null</code>
+     * @param partitionCount
+     *            the number of partition event logs, must be positive
+     */
+    public MultiplexedBackend(Backend delegate, int partitionCount) {
+        this.delegate = Objects.requireNonNull(delegate,
+                "The delegate backend cannot be null");
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException(
+                    "The partition count must be positive");
+        }
+        partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i);
+        }
+    }
+
+    /**
+     * Gets the number of partition event logs that the events of all topics
+     * are stored in.
+     *
+     * @return the partition count
+     */
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    @Override
+    public EventLog openEventLog(String logId) {
+        Objects.requireNonNull(logId, "Log ID cannot be null");
+        return new TopicEventLog(logId, getPartition(logId));
+    }
+
+    @Override
+    public Registration addMembershipListener(
+            MembershipListener membershipListener) {
+        return getDelegate().addMembershipListener(membershipListener);
+    }
+
+    @Override
+    public UUID getNodeId() {
+        return delegate.getNodeId();
+    }
+
+    @Override
+    public CompletableFuture<Snapshot> loadLatestSnapshot(String name) {
+        return getDelegate().loadLatestSnapshot(name);
+    }
+
+    @Override
+    public CompletableFuture<Void> replaceSnapshot(String name, UUID expectedId,
+            UUID newId, String payload) {
+        return getDelegate().replaceSnapshot(name, expectedId, newId, payload);
+    }
+
+    private Partition getPartition(String topicId) {
+        // String hash codes are specified, so all nodes agree on the partition
+        return partitions[Math.floorMod(topicId.hashCode(), partitions.length)];
+    }
+
+    private Backend getDelegate() {
+        if (delegate.getCollaborationEngine() == null
+                && getCollaborationEngine() != null) {
+            delegate.setCollaborationEngine(getCollaborationEngine());
+        }
+        return delegate;
+    }
+
+    /*
+     * An event in a partition log is prefixed with the length of the topic id
+     * and the topic id itself, e.g. "5:topicpayload", so that the topic can be
+     * identified without parsing the payload.
+     */
+    static String wrap(String topicId, String payload) {
+        return topicId.length() + ":" + topicId + payload;
+    }
+
+    static String getTopicId(String envelope) {
+        int separator = envelope.indexOf(':');
+        int length = Integer.parseInt(envelope, 0, separator, 10);
+        return envelope.substring(separator + 1, separator + 1 + length);
+    }
+
+    static boolean isForTopic(String envelope, String topicId) {
+        int separator = envelope.indexOf(':');
+        return Integer.parseInt(envelope, 0, separator, 10) == topicId.length()
+                && envelope.startsWith(topicId, separator + 1);
+    }
+
+    static String getPayload(String envelope) {
+        int separator = envelope.indexOf(':');
+        int length = Integer.parseInt(envelope, 0, separator, 10);
+        return envelope.substring(separator + 1 + length);
+    }
+}
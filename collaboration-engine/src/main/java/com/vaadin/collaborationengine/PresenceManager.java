@@ -20,6 +20,7 @@ import java.io.ObjectInputStream;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -204,7 +205,7 @@ public class PresenceManager extends AbstractCollaborationManager {
         resetEntries();
         this.presenceHandler = handler;
         if (handler != null && list != null) {
-            subscribeRegistration = list.subscribe(this::onListChange);
+            subscribeRegistration = list.subscribe(createListSubscriber());
         }
     }
 
@@ -214,7 +215,7 @@ public class PresenceManager extends AbstractCollaborationManager {
             addLocalUserToTopic();
         }
         if (this.presenceHandler != null && subscribeRegistration == null) {
-            subscribeRegistration = list.subscribe(this::onListChange);
+            subscribeRegistration = list.subscribe(createListSubscriber());
         }
         return this::onConnectionDeactivate;
     }
@@ -225,6 +226,43 @@ public class PresenceManager extends AbstractCollaborationManager {
         resetEntries();
     }
 
+    private ListSubscriber createListSubscriber() {
+        return new ListSubscriber() {
+            @Override
+            public void onListChange(ListChangeEvent event) {
+                PresenceManager.this.onListChange(event);
+            }
+
+            @Override
+            public void onInitialState(List<ListChangeEvent> events) {
+                PresenceManager.this.onInitialState(events);
+            }
+        };
+    }
+
+    /*
+     * The initial entries are first counted per user, so that the handler is
+     * invoked once per present user after all entries have been processed.
+     */
+    private void onInitialState(List<ListChangeEvent> events) {
+        Map<String, UserInfo> newUsers = new LinkedHashMap<>();
+        for (ListChangeEvent event : events) {
+            UserInfo user = event.getValue(UserInfo.class);
+            if (user != null && userEntries
+                    .computeIfAbsent(user.getId(), ignore -> new UserEntry())
+                    .count++ == 0) {
+                newUsers.put(user.getId(), user);
+            }
+        }
+        LOGGER.debug("{}: handle {} initially present users", this,
+                newUsers.size());
+        if (presenceHandler != null) {
+            newUsers.forEach((id, user) -> userEntries
+                    .get(id).registration = presenceHandler
+                            .handlePresence(new DefaultPresenceContext(user)));
+        }
+    }
+
     private void onListChange(ListChangeEvent event) {
         switch (event.getType()) {
         case INSERT:
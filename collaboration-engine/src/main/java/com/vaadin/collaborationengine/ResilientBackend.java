@@ -0,0 +1,664 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * A backend decorator that shields Collaboration Engine from a slow or
+ * unavailable cluster backend. Events submitted to an event log are put in a
+ * bounded outbound queue and delivered to the decorated backend in batches from
+ * a background thread, so that the thread submitting the event never waits for
+ * backend I/O.
+ * <p>
+ * Failing or slow calls to the decorated backend are tracked by a circuit
+ * breaker. When the number of consecutive failures reaches the configured
+ * threshold, the circuit opens and no calls are made to the decorated backend
+ * until the configured open duration has elapsed. A trial call is then made,
+ * delivering the next queued events or, if there are none, loading a snapshot.
+ * Queued events are retained while the circuit is open and are delivered in
+ * order once the trial call succeeds. Failed deliveries are retried with an
+ * increasing delay while the circuit is still closed, leaving out the events
+ * that the decorated event log received before failing. Event log truncations
+ * are queued in the same way. While the backend is degraded, new topic
+ * connections fail so that
+ * {@link TopicConnectionRegistration#onConnectionFailed} actions are run.
+ * <p>
+ * Calls to the decorated backend are made from a separate thread, and a call
+ * that hasn't returned within the call timeout counts as a failure. Call
+ * {@link #close()} when shutting down to stop the background threads.
+ *
+ * @author Vaadin Ltd
+ */
+public class ResilientBackend extends Backend {
+
+    static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    static final int DEFAULT_BATCH_SIZE = 100;
+
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(10);
+
+    static final Duration DEFAULT_CALL_TIMEOUT = Duration.ofSeconds(5);
+
+    /*
+     * The delay before retrying a failed delivery while the circuit is still
+     * closed. It's doubled for each consecutive failure, up to the open
+     * duration.
+     */
+    static final Duration RETRY_DELAY = Duration.ofMillis(100);
+
+    /*
+     * The snapshot that is loaded as the trial call when there are no events
+     * to deliver. It doesn't need to exist.
+     */
+    private static final String TRIAL_SNAPSHOT_NAME = ResilientBackend.class
+            .getName() + ".trial";
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(ResilientBackend.class);
+
+    private enum CircuitState {
+        /**
+         * Calls are made to the decorated backend.
+         */
+        CLOSED,
+        /**
+         * Calls are not made to the decorated backend until the open duration
+         * has elapsed.
+         */
+        OPEN,
+        /**
+         * The open duration has elapsed and a trial call is being made to find
+         * out whether the decorated backend has recovered.
+         */
+        HALF_OPEN
+    }
+
+    private static class OutboundEvent {
+        private final ResilientEventLog eventLog;
+        private final UUID trackingId;
+        private final String payload;
+
+        private OutboundEvent(ResilientEventLog eventLog, UUID trackingId,
+                String payload) {
+            this.eventLog = eventLog;
+            this.trackingId = trackingId;
+            this.payload = payload;
+        }
+    }
+
+    private static class Truncation {
+        private final UUID olderThan;
+        private final long olderThanOffset;
+
+        private Truncation(UUID olderThan, long olderThanOffset) {
+            this.olderThan = olderThan;
+            this.olderThanOffset = olderThanOffset;
+        }
+    }
+
+    private class ResilientEventLog implements EventLog {
+        private final String logId;
+        private final EventLog delegateLog;
+
+        private ResilientEventLog(String logId, EventLog delegateLog) {
+            this.logId = logId;
+            this.delegateLog = delegateLog;
+        }
+
+        @Override
+        public void submitEvent(UUID trackingId, String eventPayload) {
+            Objects.requireNonNull(trackingId);
+            Objects.requireNonNull(eventPayload);
+            ensureOpen();
+            if (!queueCapacity.tryAcquire()) {
+                throw new IllegalStateException(
+                        "The outbound event queue is full, cannot submit event to "
+                                + logId);
+            }
+            queue.add(new OutboundEvent(this, trackingId, eventPayload));
+            scheduleDrain(0);
+        }
+
+        @Override
+        public void submitEvents(List<Event> events) {
+            Objects.requireNonNull(events);
+            ensureOpen();
+            List<OutboundEvent> outbound = new ArrayList<>(events.size());
+            for (Event event : events) {
+                outbound.add(new OutboundEvent(this, event.getTrackingId(),
+                        event.getPayload()));
+            }
+            // Room for the whole batch is reserved at once
+            if (!queueCapacity.tryAcquire(outbound.size())) {
+                throw new IllegalStateException(
+                        "The outbound event queue is full, cannot submit events to "
+                                + logId);
+            }
+            queue.addAll(outbound);
+            scheduleDrain(0);
+        }
+
+        @Override
+        public Registration subscribe(UUID newerThan,
+                BiConsumer<UUID, String> eventConsumer)
+                throws EventIdNotFoundException {
+            return delegateLog.subscribe(newerThan, eventConsumer);
+        }
+
+        @Override
+        public Registration subscribe(UUID newerThan, long newerThanOffset,
+                OffsetEventConsumer eventConsumer)
+                throws EventIdNotFoundException {
+            return delegateLog.subscribe(newerThan, newerThanOffset,
+                    eventConsumer);
+        }
+
+        @Override
+        public void truncate(UUID olderThan) {
+            truncate(olderThan, NO_OFFSET);
+        }
+
+        @Override
+        public void truncate(UUID olderThan, long olderThanOffset) {
+            // A later truncation supersedes one that hasn't been made yet
+            truncations.put(this, new Truncation(olderThan, olderThanOffset));
+            scheduleDrain(0);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BackendCall<T> {
+        T execute();
+    }
+
+    private final Backend delegate;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService caller;
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private final List<OutboundEvent> inFlight = new ArrayList<>();
+
+    /*
+     * Whether the decorated log might have received some of the first batch
+     * of in-flight events even though delivering them failed.
+     */
+    private boolean inFlightUncertain;
+
+    // The latest call, which might still be running after it timed out
+    private Future<?> latestCall;
+
+    private final Map<ResilientEventLog, Truncation> truncations = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<OutboundEvent> queue = new LinkedBlockingQueue<>();
+
+    /*
+     * Permits for the free places in the queue, acquired before adding events
+     * and released when they are taken for delivery.
+     */
+    private volatile Semaphore queueCapacity = new Semaphore(
+            DEFAULT_QUEUE_CAPACITY);
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+    private Duration openDuration = DEFAULT_OPEN_DURATION;
+
+    private Duration callTimeout = DEFAULT_CALL_TIMEOUT;
+
+    private volatile CircuitState circuitState = CircuitState.CLOSED;
+
+    private int consecutiveFailures;
+
+    /**
+     * Creates a new resilient backend that decorates the given backend.
+     *
+     * @param delegate
+     *            the backend to decorate, not <code>null</code>
+     */
+    public ResilientBackend(Backend delegate) {
+        this(delegate, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable,
+                    "collaboration-engine-resilient-backend");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    ResilientBackend(Backend delegate, ScheduledExecutorService scheduler) {
+        this.delegate = Objects.requireNonNull(delegate,
+                "The delegate backend cannot be null");
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.caller = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable,
+                    "collaboration-engine-resilient-backend-call");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the maximum number of events that can be waiting to be delivered to
+     * the decorated backend. Submitting an event when the queue is full fails
+     * with an {@link IllegalStateException}. The capacity cannot be changed
+     * while there are queued events.
+     *
+     * @param queueCapacity
+     *            the queue capacity, must be positive
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException(
+                    "The queue capacity must be positive");
+        }
+        if (!queue.isEmpty()) {
+            throw new IllegalStateException(
+                    "The queue capacity cannot be changed while events are queued");
+        }
+        this.queueCapacity = new Semaphore(queueCapacity);
+    }
+
+    /**
+     * Sets the maximum number of queued events that are delivered to the
+     * decorated backend in one batch.
+     *
+     * @param batchSize
+     *            the batch size, must be positive
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(
+                    "The batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the number of consecutive failed or timed out calls after which the
+     * circuit breaker opens.
+     *
+     * @param failureThreshold
+     *            the failure threshold, must be positive
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException(
+                    "The failure threshold must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Sets how long the circuit breaker stays open before a trial call is made
+     * to the decorated backend.
+     *
+     * @param openDuration
+     *            the open duration, not <code>null</code>
+     */
+    public void setOpenDuration(Duration openDuration) {
+        this.openDuration = Objects.requireNonNull(openDuration);
+    }
+
+    /**
+     * Sets the duration after which a call to the decorated backend is
+     * considered to have failed. Snapshot operations that have not completed
+     * within this time are completed exceptionally, and event submissions that
+     * have not returned within this time count as failures for the circuit
+     * breaker. No further events are submitted until a timed out submission
+     * has returned.
+     *
+     * @param callTimeout
+     *            the call timeout, not <code>null</code>
+     */
+    public void setCallTimeout(Duration callTimeout) {
+        this.callTimeout = Objects.requireNonNull(callTimeout);
+    }
+
+    /**
+     * Checks whether the decorated backend is currently considered to be
+     * degraded, i.e. whether the circuit breaker is not closed.
+     *
+     * @return <code>true</code> if the backend is degraded, <code>false</code>
+     *         otherwise
+     */
+    public boolean isDegraded() {
+        return circuitState != CircuitState.CLOSED;
+    }
+
+    /**
+     * Gets the number of events that are waiting in the outbound queue. Events
+     * of a batch that is currently being delivered are not included.
+     *
+     * @return the number of queued events
+     */
+    public int getQueuedEventCount() {
+        return queue.size();
+    }
+
+    /**
+     * Stops delivering queued events and truncations to the decorated backend
+     * and stops the background threads. Events that are still queued are not
+     * delivered. The decorated backend is not closed. The backend cannot be
+     * used after it has been closed.
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        caller.shutdownNow();
+    }
+
+    private void ensureOpen() {
+        if (scheduler.isShutdown()) {
+            throw new IllegalStateException("The backend has been closed");
+        }
+    }
+
+    @Override
+    public EventLog openEventLog(String logId) {
+        return new ResilientEventLog(logId, getDelegate().openEventLog(logId));
+    }
+
+    @Override
+    public Registration addMembershipListener(
+            MembershipListener membershipListener) {
+        return getDelegate().addMembershipListener(membershipListener);
+    }
+
+    @Override
+    public UUID getNodeId() {
+        return delegate.getNodeId();
+    }
+
+    @Override
+    public CompletableFuture<Snapshot> loadLatestSnapshot(String name) {
+        return withTimeout(getDelegate().loadLatestSnapshot(name));
+    }
+
+    @Override
+    public CompletableFuture<Void> replaceSnapshot(String name, UUID expectedId,
+            UUID newId, String payload) {
+        if (circuitState == CircuitState.OPEN) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    "The backend is unavailable, snapshot not replaced"));
+        }
+        return withTimeout(getDelegate().replaceSnapshot(name, expectedId,
+                newId, payload));
+    }
+
+    private Backend getDelegate() {
+        if (delegate.getCollaborationEngine() == null
+                && getCollaborationEngine() != null) {
+            delegate.setCollaborationEngine(getCollaborationEngine());
+        }
+        return delegate;
+    }
+
+    private <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future) {
+        return future.orTimeout(callTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((result, e) -> {
+                    synchronized (this) {
+                        if (e != null) {
+                            recordFailure(e);
+                        } else {
+                            recordSuccess();
+                        }
+                    }
+                });
+    }
+
+    private void scheduleDrain(long delayMillis) {
+        if (!scheduler.isShutdown()
+                && drainScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::drain, delayMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * Only run by the scheduler thread, which means that the in-flight list is
+     * never accessed concurrently. Nothing is delivered while the circuit is
+     * open, since the trial call that is scheduled when it opens resumes the
+     * delivery.
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        while (circuitState != CircuitState.OPEN) {
+            if (inFlight.isEmpty()) {
+                queueCapacity.release(queue.drainTo(inFlight, batchSize));
+            }
+            boolean succeeded = truncateLogs()
+                    && (inFlight.isEmpty() || deliverInFlight());
+            if (succeeded && inFlight.isEmpty() && queue.isEmpty()) {
+                return;
+            }
+            if (!succeeded) {
+                if (circuitState != CircuitState.OPEN) {
+                    scheduleDrain(getRetryDelayMillis());
+                }
+                return;
+            }
+        }
+    }
+
+    /*
+     * Run by the scheduler thread once the open duration has elapsed.
+     */
+    private void startTrial() {
+        synchronized (this) {
+            if (circuitState != CircuitState.OPEN) {
+                return;
+            }
+            circuitState = CircuitState.HALF_OPEN;
+        }
+        if (!inFlight.isEmpty() || !queue.isEmpty()
+                || !truncations.isEmpty()) {
+            drain();
+        } else {
+            withTimeout(getDelegate().loadLatestSnapshot(TRIAL_SNAPSHOT_NAME));
+        }
+    }
+
+    private synchronized long getRetryDelayMillis() {
+        int doublings = Math.min(Math.max(consecutiveFailures - 1, 0), 20);
+        return Math.min(RETRY_DELAY.toMillis() << doublings,
+                openDuration.toMillis());
+    }
+
+    private boolean deliverInFlight() {
+        while (!inFlight.isEmpty()) {
+            // Consecutive events to the same log are delivered as one batch
+            ResilientEventLog eventLog = inFlight.get(0).eventLog;
+            int count = 1;
+            while (count < inFlight.size()
+                    && inFlight.get(count).eventLog == eventLog) {
+                count++;
+            }
+            List<OutboundEvent> batch = inFlight.subList(0, count);
+            if (inFlightUncertain) {
+                if (!removeReceived(eventLog, batch)) {
+                    return false;
+                }
+                inFlightUncertain = false;
+                if (batch.isEmpty()) {
+                    continue;
+                }
+            }
+            List<Event> events = new ArrayList<>(count);
+            for (OutboundEvent event : batch) {
+                events.add(new Event(event.trackingId, event.payload));
+            }
+            boolean delivered = call(() -> {
+                eventLog.delegateLog.submitEvents(events);
+                return Boolean.TRUE;
+            }) != null;
+            if (!delivered) {
+                // The log may have appended some events before failing
+                inFlightUncertain = true;
+                return false;
+            }
+            batch.clear();
+        }
+        return true;
+    }
+
+    /*
+     * Removes the events of a batch that the decorated log received although
+     * submitting the batch failed, so that they aren't appended twice. A log
+     * that appends the events one by one has received a prefix of the batch,
+     * so they are found by replaying the log after the first event of the
+     * batch.
+     */
+    private boolean removeReceived(ResilientEventLog eventLog,
+            List<OutboundEvent> batch) {
+        UUID first = batch.get(0).trackingId;
+        Set<UUID> received = call(() -> {
+            Set<UUID> ids = ConcurrentHashMap.newKeySet();
+            try {
+                eventLog.delegateLog
+                        .subscribe(first, (id, payload) -> ids.add(id))
+                        .remove();
+            } catch (EventIdNotFoundException e) {
+                // Nothing was appended
+                return ids;
+            }
+            ids.add(first);
+            return ids;
+        });
+        if (received == null) {
+            return false;
+        }
+        batch.removeIf(event -> received.contains(event.trackingId));
+        return true;
+    }
+
+    private boolean truncateLogs() {
+        for (Map.Entry<ResilientEventLog, Truncation> entry : truncations
+                .entrySet()) {
+            Truncation truncation = entry.getValue();
+            boolean truncated = call(() -> {
+                entry.getKey().delegateLog.truncate(truncation.olderThan,
+                        truncation.olderThanOffset);
+                return Boolean.TRUE;
+            }) != null;
+            if (!truncated) {
+                return false;
+            }
+            truncations.remove(entry.getKey(), truncation);
+        }
+        return true;
+    }
+
+    /*
+     * Makes the call from the caller thread and waits for it at most for the
+     * call timeout. Returns null if the call failed or timed out. A call that
+     * timed out keeps the caller thread busy, so further calls fail right away
+     * until it returns, instead of piling up behind it.
+     */
+    private <T> T call(BackendCall<T> backendCall) {
+        if (latestCall != null && !latestCall.isDone()) {
+            synchronized (this) {
+                recordFailure(new TimeoutException(
+                        "The previous call has not returned yet"));
+            }
+            return null;
+        }
+        Future<T> future;
+        try {
+            future = caller.submit(backendCall::execute);
+        } catch (RejectedExecutionException e) {
+            // Closed
+            return null;
+        }
+        latestCall = future;
+        try {
+            T result = future.get(callTimeout.toMillis(),
+                    TimeUnit.MILLISECONDS);
+            synchronized (this) {
+                recordSuccess();
+            }
+            return result;
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                recordFailure(e.getCause());
+            }
+            return null;
+        } catch (TimeoutException e) {
+            synchronized (this) {
+                recordFailure(e);
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void recordSuccess() {
+        consecutiveFailures = 0;
+        if (circuitState != CircuitState.CLOSED) {
+            LOGGER.info("Backend has recovered, resuming normal operation");
+            circuitState = CircuitState.CLOSED;
+        }
+    }
+
+    private void recordFailure(Throwable cause) {
+        consecutiveFailures++;
+        if (circuitState == CircuitState.HALF_OPEN
+                || (circuitState == CircuitState.CLOSED
+                        && consecutiveFailures >= failureThreshold)) {
+            LOGGER.warn("Backend is degraded after " + consecutiveFailures
+                    + " consecutive failures, pausing calls for "
+                    + openDuration.toMillis() + " ms", cause);
+            circuitState = CircuitState.OPEN;
+            // Recovery must not depend on anything being submitted
+            if (!scheduler.isShutdown()) {
+                scheduler.schedule(this::startTrial, openDuration.toMillis(),
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
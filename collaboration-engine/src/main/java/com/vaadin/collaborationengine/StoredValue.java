@@ -0,0 +1,179 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A JSON value of a map entry or list item stored in a topic. The value is
+ * kept either as the JSON tree itself or, when compact value storage is
+ * enabled, as the encoded bytes of the tree which are decoded again whenever
+ * the value is read. Trees take several times the memory of their encoded
+ * form, while most stored values are read again only when a new subscriber
+ * joins or a snapshot is taken.
+ * <p>
+ * Stored values are serialized as the JSON tree in snapshots, regardless of
+ * how they are kept in memory.
+ *
+ * @author Vaadin Ltd
+ */
+abstract class StoredValue implements Serializable {
+
+    /**
+     * Keeps the most recently stored or read compact values decoded, so that
+     * values that are read over and over are decoded only once. Access must
+     * be synchronized by the topic that owns the cache.
+     */
+    static class DecodedValues implements Serializable {
+
+        static final int DEFAULT_CAPACITY = 100;
+
+        private final int capacity;
+
+        private transient Map<Compact, JsonNode> values;
+
+        DecodedValues(int capacity) {
+            if (capacity < 0) {
+                throw new IllegalArgumentException(
+                        "The capacity can't be negative");
+            }
+            this.capacity = capacity;
+        }
+
+        private JsonNode get(Compact value) {
+            return getValues().get(value);
+        }
+
+        private void put(Compact value, JsonNode node) {
+            if (capacity > 0) {
+                getValues().put(value, node);
+            }
+        }
+
+        private Map<Compact, JsonNode> getValues() {
+            if (values == null) {
+                // Access order makes this a least recently used cache
+                values = new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(
+                            Map.Entry<Compact, JsonNode> eldest) {
+                        return size() > capacity;
+                    }
+                };
+            }
+            return values;
+        }
+
+        // For testing
+        int size() {
+            return values == null ? 0 : values.size();
+        }
+    }
+
+    /**
+     * Stores the given value as a JSON tree.
+     *
+     * @param node
+     *            the value to store
+     * @return the stored value, not <code>null</code>
+     */
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    static StoredValue of(JsonNode node) {
+        return new Tree(node);
+    }
+
+    /**
+     * Stores the given value as encoded bytes. The tree is kept in the given
+     * cache of decoded values, since a value that was just stored is likely
+     * to be read soon.
+     *
+     * @param node
+     *            the value to store, not <code>null</code>
+     * @param decodedValues
+     *            the cache of decoded values of the topic, not
+     *            <code>null</code>
+     * @return the stored value, not <code>null</code>
+     */
+    static StoredValue compact(JsonNode node, DecodedValues decodedValues) {
+        Compact value = new Compact(JsonUtil.toBytes(node), decodedValues);
+        decodedValues.put(value, node);
+        return value;
+    }
+
+    /**
+     * Gets the stored value. The returned tree is shared and must not be
+     * modified.
+     *
+     * @return the JSON tree of the value
+     */
+    abstract JsonNode get();
+
+    /*
+     * Used when the value is serialized, e.g. to a snapshot, which reads all
+     * values once and would otherwise flush the cache of decoded values.
+     */
+    @JsonValue
+    abstract JsonNode toJsonNode();
+
+    private static class Tree extends StoredValue {
+        private final JsonNode node;
+
+        private Tree(JsonNode node) {
+            this.node = node;
+        }
+
+        @Override
+        JsonNode get() {
+            return node;
+        }
+
+        @Override
+        JsonNode toJsonNode() {
+            return node;
+        }
+    }
+
+    private static class Compact extends StoredValue {
+        private final byte[] bytes;
+        private final DecodedValues decodedValues;
+
+        private Compact(byte[] bytes, DecodedValues decodedValues) {
+            this.bytes = bytes;
+            this.decodedValues = decodedValues;
+        }
+
+        @Override
+        JsonNode get() {
+            JsonNode node = decodedValues.get(this);
+            if (node == null) {
+                node = JsonUtil.fromBytes(bytes);
+                decodedValues.put(this, node);
+            }
+            return node;
+        }
+
+        @Override
+        JsonNode toJsonNode() {
+            return JsonUtil.fromBytes(bytes);
+        }
+    }
+}
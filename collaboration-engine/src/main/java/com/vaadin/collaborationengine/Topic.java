@@ -16,6 +16,7 @@
 package com.vaadin.collaborationengine;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
@@ -27,10 +28,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -50,6 +55,8 @@ import com.vaadin.flow.shared.Registration;
 
 class Topic implements Serializable {
 
+    static final int EVENT_BATCH_SIZE = 100;
+
     enum ChangeResult {
         ACCEPTED, REJECTED
     }
@@ -62,12 +69,19 @@ class Topic implements Serializable {
         // Marker interface
     }
 
+    /**
+     * A map entry. Values stored in the topic are never modified. The same
+     * node instance is shared with change events and all readers instead of
+     * being copied, and {@link JsonUtil} only hands out copies of nodes. With
+     * compact value storage, readers share the node decoded from the stored
+     * value instead.
+     */
     @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
     static class Entry implements Serializable {
 
         final UUID revisionId;
 
-        final JsonNode data;
+        final StoredValue data;
 
         final UUID scopeOwnerId;
 
@@ -75,12 +89,19 @@ class Topic implements Serializable {
         public Entry(@JsonProperty("id") UUID id,
                 @JsonProperty("data") JsonNode data,
                 @JsonProperty("scopeOwnerId") UUID scopeOwnerId) {
+            this(id, StoredValue.of(data), scopeOwnerId);
+        }
+
+        Entry(UUID id, StoredValue data, UUID scopeOwnerId) {
             this.revisionId = id;
             this.data = data;
             this.scopeOwnerId = scopeOwnerId;
         }
     }
 
+    private record MapKey(String mapName, String key) implements Serializable {
+    }
+
     static class Snapshot implements Serializable {
         private static final TypeReference<Map<String, EntryList>> LISTS_TYPE = new TypeReference<>() {
         };
@@ -92,6 +113,7 @@ class Topic implements Serializable {
         };
 
         private static final String LATEST = "latest";
+        private static final String LATEST_OFFSET = "latest-offset";
         private static final String LISTS = "lists";
         private static final String MAPS = "maps";
         private static final String LIST_TIMEOUTS = "list-timeouts";
@@ -105,9 +127,18 @@ class Topic implements Serializable {
         }
 
         static Snapshot fromTopic(Topic topic, UUID latestChangeId) {
+            return fromTopic(topic, latestChangeId,
+                    Backend.EventLog.NO_OFFSET);
+        }
+
+        static Snapshot fromTopic(Topic topic, UUID latestChangeId,
+                long latestChangeOffset) {
             ObjectNode objectNode = JsonUtil.getObjectMapper()
                     .createObjectNode();
             objectNode.put(LATEST, latestChangeId.toString());
+            if (latestChangeOffset != Backend.EventLog.NO_OFFSET) {
+                objectNode.put(LATEST_OFFSET, latestChangeOffset);
+            }
             objectNode.set(LISTS, JsonUtil.toJsonNode(topic.namedListData));
             objectNode.set(MAPS, JsonUtil.toJsonNode(topic.namedMapData));
             objectNode.set(LIST_TIMEOUTS,
@@ -125,6 +156,16 @@ class Topic implements Serializable {
             return objectNode;
         }
 
+        UUID getLatestChangeId() {
+            return JsonUtil.toUUID(objectNode.get(LATEST));
+        }
+
+        long getLatestChangeOffset() {
+            JsonNode offset = objectNode.get(LATEST_OFFSET);
+            return offset != null ? offset.asLong()
+                    : Backend.EventLog.NO_OFFSET;
+        }
+
         Map<String, EntryList> getLists() {
             return JsonUtil.toInstance(objectNode.get(LISTS), LISTS_TYPE);
         }
@@ -164,18 +205,32 @@ class Topic implements Serializable {
     private final List<UUID> activeNodes = new ArrayList<>();
     private Instant lastDisconnected;
     private final List<SerializableBiConsumer<UUID, ChangeDetails>> changeListeners = new ArrayList<>();
+    private final Map<String, List<SerializableBiConsumer<UUID, ChangeDetails>>> mapChangeListeners = new HashMap<>();
+    private final Map<String, List<SerializableBiConsumer<UUID, ChangeDetails>>> listChangeListeners = new HashMap<>();
+    private final Map<MapKey, List<SerializableBiConsumer<UUID, ChangeDetails>>> mapKeyChangeListeners = new HashMap<>();
     private final Map<UUID, SerializableConsumer<ChangeResult>> changeResultTrackers = new ConcurrentHashMap<>();
     private final List<UUID> backendNodes = new ArrayList<>();
     private final Backend.EventLog eventLog;
     private UUID lastSnapshotId;
     private boolean leader;
     private int changeCount;
+    private boolean loaded;
+    private EventSubscriber eventSubscriber;
+    // Null unless values are stored compactly
+    private final StoredValue.DecodedValues decodedValues;
+    private UUID lastEventId;
+    private long lastEventOffset = Backend.EventLog.NO_OFFSET;
 
     Topic(String id, SerializableSupplier<CollaborationEngine> ceSupplier,
             Backend.EventLog eventLog) {
         this.id = id;
         this.ceSupplier = ceSupplier;
         this.eventLog = eventLog;
+        decodedValues = getCollaborationEngine().getConfiguration()
+                .isCompactValueStorage()
+                        ? new StoredValue.DecodedValues(
+                                StoredValue.DecodedValues.DEFAULT_CAPACITY)
+                        : null;
         final Backend backend = getBackend();
         backend.addMembershipListener(event -> {
             if (event.getType().equals(MembershipEventType.LEAVE)) {
@@ -183,11 +238,60 @@ class Topic implements Serializable {
             }
         });
         if (eventLog != null) {
-            BackendUtil
-                    .initializeFromSnapshot(getCollaborationEngine(),
-                            this::initializeFromSnapshot)
-                    .thenAccept(uuid -> lastSnapshotId = uuid);
+            load();
+        }
+    }
+
+    /**
+     * Loads the topic from the latest snapshot and subscribes to the event log,
+     * unless it's already loaded.
+     */
+    synchronized void load() {
+        if (loaded) {
+            return;
         }
+        loaded = true;
+        BackendUtil
+                .initializeFromSnapshot(getCollaborationEngine(),
+                        this::initializeFromSnapshot)
+                .thenAccept(uuid -> lastSnapshotId = uuid);
+    }
+
+    /**
+     * Unsubscribes from the event log and discards all topic data, so that the
+     * topic no longer follows changes made on other nodes. The other nodes are
+     * notified that this node has left the topic. The topic can be loaded
+     * again with {@link #load()}.
+     */
+    synchronized void unload() {
+        if (!loaded) {
+            return;
+        }
+        loaded = false;
+        if (eventSubscriber != null) {
+            eventLog.submitEvent(IdUtil.newId(), JsonUtil
+                    .toString(JsonUtil.createNodeLeave(getCurrentNodeId())));
+            eventSubscriber.cancel();
+            eventSubscriber = null;
+        }
+        discardData();
+    }
+
+    private void discardData() {
+        namedMapData.clear();
+        namedListData.clear();
+        mapExpirationTimeouts.clear();
+        listExpirationTimeouts.clear();
+        activeNodes.clear();
+        backendNodes.clear();
+        lastDisconnected = null;
+        lastSnapshotId = null;
+        leader = false;
+        changeCount = 0;
+    }
+
+    synchronized boolean isLoaded() {
+        return loaded;
     }
 
     UUID getCurrentNodeId() {
@@ -200,35 +304,223 @@ class Topic implements Serializable {
 
     private CompletableFuture<UUID> initializeFromSnapshot() {
         return getBackend().loadLatestSnapshot(id)
-                .thenCompose(this::loadAndSubscribe);
+                .thenCompose(snapshot -> loadAndSubscribe(snapshot, true));
+    }
+
+    private CompletableFuture<UUID> reinitializeFromSnapshot() {
+        return getBackend().loadLatestSnapshot(id)
+                .thenCompose(snapshot -> loadAndSubscribe(snapshot, false));
     }
 
-    private CompletableFuture<UUID> loadAndSubscribe(
-            Backend.Snapshot snapshot) {
+    private synchronized CompletableFuture<UUID> loadAndSubscribe(
+            Backend.Snapshot snapshot, boolean join) {
         CompletableFuture<UUID> future = new CompletableFuture<>();
-        try {
-            UUID latestChange = null;
-            if (snapshot != null) {
-                ObjectNode payload = JsonUtil.fromString(snapshot.getPayload());
-                latestChange = JsonUtil.toUUID(payload.get(Snapshot.LATEST));
-                loadSnapshot(new Snapshot(payload));
-                eventLog.subscribe(latestChange, this::applyChange);
-            } else {
-                eventLog.subscribe(null, this::applyChange);
-            }
+        if (!loaded) {
+            // Unloaded while the snapshot was being loaded
+            future.complete(null);
+            return future;
+        }
+        UUID latestChange = null;
+        long latestChangeOffset = Backend.EventLog.NO_OFFSET;
+        if (snapshot != null) {
+            Snapshot topicSnapshot = new Snapshot(
+                    JsonUtil.fromString(snapshot.getPayload()));
+            latestChange = topicSnapshot.getLatestChangeId();
+            latestChangeOffset = topicSnapshot.getLatestChangeOffset();
+            loadSnapshot(topicSnapshot);
+        }
+        Throwable failure = subscribeToEventLog(latestChange,
+                latestChangeOffset);
+        if (failure != null) {
+            // Start from scratch with the next snapshot that is loaded
+            discardData();
+            future.completeExceptionally(failure);
+            return future;
+        }
 
+        if (join) {
             ObjectNode nodeEvent = JsonUtil.createNodeJoin(getCurrentNodeId());
 
-            eventLog.submitEvent(UUID.randomUUID(),
-                    JsonUtil.toString(nodeEvent));
-
-            future.complete(latestChange);
-        } catch (Backend.EventIdNotFoundException e) {
-            future.completeExceptionally(e);
+            eventLog.submitEvent(IdUtil.newId(), JsonUtil.toString(nodeEvent));
         }
+
+        future.complete(latestChange);
         return future;
     }
 
+    /*
+     * Returns the error if the subscription failed right away, for example
+     * because the event is no longer in the log. Errors signaled later are
+     * handled by handleSubscriptionError.
+     */
+    private Throwable subscribeToEventLog(UUID newerThan,
+            long newerThanOffset) {
+        lastEventId = newerThan;
+        lastEventOffset = newerThanOffset;
+        EventSubscriber subscriber = new EventSubscriber();
+        eventSubscriber = subscriber;
+        FlightRecorderEvents.EventLogReplay event = new FlightRecorderEvents.EventLogReplay();
+        event.begin();
+        eventLog.publisher(newerThan, newerThanOffset).subscribe(subscriber);
+        subscriber.subscribing = false;
+        if (event.shouldCommit()) {
+            event.topic = id;
+            event.fromOffset = newerThanOffset;
+            event.toOffset = lastEventOffset;
+            event.events = subscriber.replayed;
+            event.failed = subscriber.failure != null;
+            event.commit();
+        }
+        if (subscriber.failure != null) {
+            eventSubscriber = null;
+            return subscriber.failure;
+        }
+        return null;
+    }
+
+    private synchronized void handleSubscriptionError(
+            EventSubscriber subscriber, Throwable error) {
+        if (subscriber != eventSubscriber) {
+            return;
+        }
+        if (subscriber.subscribing) {
+            subscriber.failure = error;
+            return;
+        }
+        eventSubscriber = null;
+        if (error instanceof EventLogPublisher.BufferOverflowException) {
+            CollaborationEngine.LOGGER.warn("Topic '" + id
+                    + "' fell behind its event log, resubscribing from the"
+                    + " latest handled event.");
+            if (subscribeToEventLog(lastEventId, lastEventOffset) == null) {
+                return;
+            }
+        } else {
+            CollaborationEngine.LOGGER.warn("Subscription to the event log of"
+                    + " topic '" + id + "' failed.", error);
+        }
+        // The log no longer has the events we need, start over from a snapshot
+        discardData();
+        BackendUtil
+                .initializeFromSnapshot(getCollaborationEngine(),
+                        this::reinitializeFromSnapshot)
+                .thenAccept(uuid -> lastSnapshotId = uuid);
+    }
+
+    /*
+     * Requests events from the event log in batches, and requests the next
+     * batch once half of the previous one has been applied. This lets the
+     * event log keep a bounded number of events in flight for this topic
+     * instead of pushing everything that is submitted.
+     *
+     * Events received after subscribing are queued and applied by a task on
+     * the executor service, so the thread that pushes them never waits for
+     * the topic lock. Further events are only requested once the queued ones
+     * have been applied, which makes the event log buffer the events for a
+     * topic that falls behind. Events replayed while subscribing are applied
+     * right away, since the subscribing thread already holds the topic lock.
+     */
+    private class EventSubscriber
+            implements Flow.Subscriber<Backend.OffsetEvent> {
+        private Flow.Subscription subscription;
+
+        private final Queue<Backend.OffsetEvent> received = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean applyScheduled = new AtomicBoolean();
+
+        // All fields below are guarded by the topic
+        private boolean subscribing = true;
+        private Throwable failure;
+        private long outstanding;
+        private int replayed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            synchronized (Topic.this) {
+                outstanding = EVENT_BATCH_SIZE;
+            }
+            subscription.request(EVENT_BATCH_SIZE);
+        }
+
+        @Override
+        public void onNext(Backend.OffsetEvent event) {
+            if (Thread.holdsLock(Topic.this) && subscribing) {
+                replayed++;
+                if (apply(List.of(event))) {
+                    subscription.request(EVENT_BATCH_SIZE);
+                }
+                return;
+            }
+            received.add(event);
+            if (applyScheduled.compareAndSet(false, true)) {
+                getCollaborationEngine().getExecutorService()
+                        .execute(this::applyReceived);
+            }
+        }
+
+        /*
+         * Applies the received events until there are no more. An event
+         * received while applying, also on the same thread when applying a
+         * change submits an event, is applied by the same loop.
+         */
+        private void applyReceived() {
+            do {
+                try {
+                    List<Backend.OffsetEvent> events = new ArrayList<>();
+                    Backend.OffsetEvent event;
+                    while ((event = received.poll()) != null) {
+                        events.add(event);
+                    }
+                    if (apply(events)) {
+                        subscription.request(EVENT_BATCH_SIZE);
+                    }
+                } finally {
+                    applyScheduled.set(false);
+                }
+            } while (!received.isEmpty()
+                    && applyScheduled.compareAndSet(false, true));
+        }
+
+        /*
+         * Applies the events and returns whether the next batch should be
+         * requested.
+         */
+        private boolean apply(List<Backend.OffsetEvent> events) {
+            synchronized (Topic.this) {
+                if (eventSubscriber != this || events.isEmpty()) {
+                    return false;
+                }
+                for (Backend.OffsetEvent event : events) {
+                    lastEventId = event.getTrackingId();
+                    lastEventOffset = event.getOffset();
+                    applyChange(event.getOffset(), event.getTrackingId(),
+                            event.getPayload());
+                }
+                outstanding -= events.size();
+                if (outstanding <= EVENT_BATCH_SIZE / 2) {
+                    outstanding += EVENT_BATCH_SIZE;
+                    return true;
+                }
+                return false;
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            handleSubscriptionError(this, throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            // Event logs are never completed
+        }
+
+        private void cancel() {
+            subscription.cancel();
+        }
+    }
+
     synchronized void handleNodeLeave(UUID nodeId) {
         Backend backend = getCollaborationEngine().getConfiguration()
                 .getBackend();
@@ -243,6 +535,7 @@ class Topic implements Serializable {
     }
 
     private void cleanupStaleEntries(Predicate<UUID> isStale) {
+        List<Backend.Event> events = new ArrayList<>();
         namedMapData.entrySet().stream()
                 .flatMap(map -> map.getValue().entrySet().stream().filter(
                         entry -> isStale.test(entry.getValue().scopeOwnerId))
@@ -254,9 +547,7 @@ class Topic implements Serializable {
                                     entry.getValue().revisionId.toString());
                             return change;
                         }))
-                .toList()
-                .forEach(change -> eventLog.submitEvent(UUID.randomUUID(),
-                        JsonUtil.toString(change)));
+                .map(Topic::createEvent).forEach(events::add);
         namedListData.entrySet().stream()
                 .flatMap(list -> list.getValue().stream()
                         .filter(entry -> isStale.test(entry.scopeOwnerId))
@@ -270,9 +561,8 @@ class Topic implements Serializable {
                                     entry.revisionId.toString());
                             return change;
                         }))
-                .toList()
-                .forEach(change -> eventLog.submitEvent(UUID.randomUUID(),
-                        JsonUtil.toString(change)));
+                .map(Topic::createEvent).forEach(events::add);
+        submitEvents(events);
     }
 
     Registration subscribeToChange(
@@ -282,10 +572,115 @@ class Topic implements Serializable {
         return () -> changeListeners.remove(changeListener);
     }
 
-    private void clearExpiredData() {
+    /**
+     * Subscribes to changes of a single named map. Unlike
+     * {@link #subscribeToChange(SerializableBiConsumer)}, the listener is not
+     * invoked for changes to other maps or to lists, so that connections that
+     * only use some of the collections in a busy topic don't have to handle
+     * every change.
+     */
+    Registration subscribeToMapChange(String mapName,
+            SerializableBiConsumer<UUID, ChangeDetails> changeListener) {
+        return addNamedChangeListener(mapChangeListeners, mapName,
+                changeListener);
+    }
+
+    /**
+     * Subscribes to changes of a single named list.
+     *
+     * @see #subscribeToMapChange(String, SerializableBiConsumer)
+     */
+    Registration subscribeToListChange(String listName,
+            SerializableBiConsumer<UUID, ChangeDetails> changeListener) {
+        return addNamedChangeListener(listChangeListeners, listName,
+                changeListener);
+    }
+
+    /**
+     * Subscribes to changes of a single key in a named map. The cost of
+     * delivering a change is independent of the number of listeners for
+     * other keys of the same map.
+     *
+     * @see #subscribeToMapChange(String, SerializableBiConsumer)
+     */
+    Registration subscribeToMapKeyChange(String mapName, String key,
+            SerializableBiConsumer<UUID, ChangeDetails> changeListener) {
+        return addNamedChangeListener(mapKeyChangeListeners,
+                new MapKey(mapName, key), changeListener);
+    }
+
+    private static <K> Registration addNamedChangeListener(
+            Map<K, List<SerializableBiConsumer<UUID, ChangeDetails>>> index,
+            K name,
+            SerializableBiConsumer<UUID, ChangeDetails> changeListener) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(changeListener);
+        index.computeIfAbsent(name, key -> new ArrayList<>())
+                .add(changeListener);
+        return () -> {
+            List<SerializableBiConsumer<UUID, ChangeDetails>> listeners = index
+                    .get(name);
+            if (listeners != null && listeners.remove(changeListener)
+                    && listeners.isEmpty()) {
+                index.remove(name);
+            }
+        };
+    }
+
+    private void fireChange(UUID trackingId, ChangeDetails details) {
+        RuntimeException failure = null;
+        try {
+            EventUtil.fireEvents(changeListeners,
+                    listener -> listener.accept(trackingId, details), true);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        if (details instanceof MapChange mapChange) {
+            failure = fireNamedChange(mapChangeListeners,
+                    mapChange.getMapName(), trackingId, details, failure);
+            failure = fireNamedChange(mapKeyChangeListeners,
+                    new MapKey(mapChange.getMapName(), mapChange.getKey()),
+                    trackingId, details, failure);
+        } else if (details instanceof ListChange listChange) {
+            failure = fireNamedChange(listChangeListeners,
+                    listChange.getListName(), trackingId, details, failure);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static <K> RuntimeException fireNamedChange(
+            Map<K, List<SerializableBiConsumer<UUID, ChangeDetails>>> index,
+            K name, UUID trackingId, ChangeDetails details,
+            RuntimeException failure) {
+        List<SerializableBiConsumer<UUID, ChangeDetails>> listeners = index
+                .get(name);
+        if (listeners == null) {
+            return failure;
+        }
+        try {
+            EventUtil.fireEvents(listeners,
+                    listener -> listener.accept(trackingId, details), true);
+        } catch (RuntimeException e) {
+            if (failure == null) {
+                return e;
+            }
+            failure.addSuppressed(e);
+        } finally {
+            if (listeners.isEmpty()) {
+                // All listeners for the name failed and were removed
+                index.remove(name);
+            }
+        }
+        return failure;
+    }
+
+    void clearExpiredData() {
         Clock clock = getCollaborationEngine().getClock();
         if (isLeader() && lastDisconnected != null) {
             Instant now = clock.instant();
+            List<Backend.Event> events = new ArrayList<>();
             mapExpirationTimeouts.entrySet().stream()
                     .filter(entry -> now
                             .isAfter(lastDisconnected.plus(entry.getValue()))
@@ -301,10 +696,8 @@ class Topic implements Serializable {
                                             entry.getValue().revisionId
                                                     .toString());
                                     return change;
-                                }).toList()
-                                .forEach(change -> eventLog.submitEvent(
-                                        UUID.randomUUID(),
-                                        JsonUtil.toString(change)));
+                                }).map(Topic::createEvent)
+                                .forEach(events::add);
                         mapExpirationTimeouts.remove(name);
                     });
             listExpirationTimeouts.entrySet().stream()
@@ -321,15 +714,23 @@ class Topic implements Serializable {
                             change.put(JsonUtil.CHANGE_EXPECTED_ID,
                                     entry.revisionId.toString());
                             return change;
-                        }).toList()
-                                .forEach(change -> eventLog.submitEvent(
-                                        UUID.randomUUID(),
-                                        JsonUtil.toString(change)));
+                        }).map(Topic::createEvent).forEach(events::add);
                         listExpirationTimeouts.remove(name);
                     });
+            submitEvents(events);
         }
     }
 
+    private void submitEvents(List<Backend.Event> events) {
+        if (!events.isEmpty()) {
+            eventLog.submitEvents(events);
+        }
+    }
+
+    private static Backend.Event createEvent(ObjectNode change) {
+        return new Backend.Event(IdUtil.newId(), JsonUtil.toString(change));
+    }
+
     Stream<MapChange> getMapData(String mapName) {
         Map<String, Entry> mapData = namedMapData.get(mapName);
         if (mapData == null) {
@@ -337,22 +738,72 @@ class Topic implements Serializable {
         }
         return mapData.entrySet().stream()
                 .map(entry -> new MapChange(mapName, MapChangeType.PUT,
-                        entry.getKey(), null, entry.getValue().data, null,
+                        entry.getKey(), null, entry.getValue().data.get(), null,
                         entry.getValue().revisionId));
     }
 
+    Stream<MapChange> getMapData(String mapName, Set<String> keys) {
+        Map<String, Entry> mapData = namedMapData.get(mapName);
+        if (mapData == null) {
+            return Stream.empty();
+        }
+        return keys.stream().filter(mapData::containsKey)
+                .map(key -> new MapChange(mapName, MapChangeType.PUT, key,
+                        null, mapData.get(key).data.get(), null,
+                        mapData.get(key).revisionId));
+    }
+
     JsonNode getMapValue(String mapName, String key) {
         Map<String, Entry> map = namedMapData.get(mapName);
         if (map == null || !map.containsKey(key)) {
             return null;
         }
-        return map.get(key).data.deepCopy();
+        return map.get(key).data.get();
     }
 
-    synchronized ChangeResult applyChange(UUID trackingId, String payload) {
+    ChangeResult applyChange(UUID trackingId, String payload) {
+        return applyChange(Backend.EventLog.NO_OFFSET, trackingId, payload);
+    }
+
+    synchronized ChangeResult applyChange(long offset, UUID trackingId,
+            String payload) {
+        CollaborationEngine ce = getCollaborationEngine();
+        EngineMetrics metrics = ce.getMetrics();
+        long start = metrics.start();
+        FlightRecorderEvents.TopicChangeApplied event = new FlightRecorderEvents.TopicChangeApplied();
+        event.begin();
         ObjectNode change = JsonUtil.fromString(payload);
-        changeCount++;
         String type = change.get(JsonUtil.CHANGE_TYPE).asText();
+        // Changes replayed from the log were delivered long ago
+        ChangeTrace trace = isReplaying() ? null
+                : ChangeTrace.startApply(change, ce, id);
+        ChangeResult result;
+        try {
+            result = applyChangeUntimed(offset, trackingId, change, type,
+                    metrics);
+        } finally {
+            if (trace != null) {
+                trace.applied();
+            }
+        }
+        metrics.recordSince(metrics.changeDuration, start);
+        if (event.shouldCommit()) {
+            event.topic = id;
+            event.changeType = type;
+            event.result = result.name();
+            event.offset = offset;
+            event.commit();
+        }
+        return result;
+    }
+
+    private boolean isReplaying() {
+        return eventSubscriber != null && eventSubscriber.subscribing;
+    }
+
+    private ChangeResult applyChangeUntimed(long offset, UUID trackingId,
+            ObjectNode change, String type, EngineMetrics metrics) {
+        changeCount++;
         ChangeDetails details;
         switch (type) {
         case JsonUtil.CHANGE_TYPE_PUT:
@@ -399,6 +850,12 @@ class Topic implements Serializable {
             }
             return ChangeResult.ACCEPTED;
         }
+        case JsonUtil.CHANGE_NODE_LEAVE: {
+            UUID nodeId = UUID
+                    .fromString(change.get(JsonUtil.CHANGE_NODE_ID).asText());
+            handleNodeLeave(nodeId);
+            return ChangeResult.ACCEPTED;
+        }
         case JsonUtil.CHANGE_NODE_JOIN: {
             UUID nodeId = UUID
                     .fromString(change.get(JsonUtil.CHANGE_NODE_ID).asText());
@@ -417,48 +874,76 @@ class Topic implements Serializable {
         ChangeResult result = details != null ? ChangeResult.ACCEPTED
                 : ChangeResult.REJECTED;
 
+        if (ChangeResult.ACCEPTED.equals(result)) {
+            metrics.changesAccepted.increment();
+        } else {
+            metrics.changesRejected.increment();
+        }
+
         SerializableConsumer<ChangeResult> changeResultTracker = changeResultTrackers
                 .remove(trackingId);
         if (changeResultTracker != null) {
             changeResultTracker.accept(result);
         }
         if (ChangeResult.ACCEPTED.equals(result)) {
-            EventUtil.fireEvents(changeListeners,
-                    listener -> listener.accept(trackingId, details), true);
+            fireChange(trackingId, details);
         }
         if (lastSnapshotId == null) {
-            UUID newId = UUID.randomUUID();
-            String snapshot = JsonUtil.toString(
-                    Topic.Snapshot.fromTopic(this, trackingId).toObjectNode());
+            UUID newId = IdUtil.newId();
+            String snapshot = createSnapshot(trackingId, offset, metrics);
             getBackend().replaceSnapshot(id, null, newId, snapshot);
             getBackend().loadLatestSnapshot(id)
                     .thenAccept(s -> lastSnapshotId = s.getId());
         }
         if (leader && changeCount % 100 == 0) {
-            UUID newId = UUID.randomUUID();
-            ObjectNode snapshot = Topic.Snapshot.fromTopic(this, trackingId)
-                    .toObjectNode();
-            getBackend()
-                    .replaceSnapshot(id, lastSnapshotId, newId,
-                            JsonUtil.toString(snapshot))
-                    .thenAccept(s -> eventLog.truncate(lastSnapshotId));
+            UUID newId = IdUtil.newId();
+            String snapshot = createSnapshot(trackingId, offset, metrics);
+            getBackend().replaceSnapshot(id, lastSnapshotId, newId, snapshot)
+                    .thenAccept(s -> eventLog.truncate(trackingId, offset));
             lastSnapshotId = newId;
         }
         return result;
     }
 
+    private String createSnapshot(UUID latestChangeId, long offset,
+            EngineMetrics metrics) {
+        long start = metrics.start();
+        FlightRecorderEvents.SnapshotWritten event = new FlightRecorderEvents.SnapshotWritten();
+        event.begin();
+        String snapshot = JsonUtil.toString(Topic.Snapshot
+                .fromTopic(this, latestChangeId, offset).toObjectNode());
+        event.end();
+        metrics.recordSince(metrics.snapshotDuration, start);
+        if (event.shouldCommit()) {
+            event.topic = id;
+            event.bytes = snapshot.getBytes(StandardCharsets.UTF_8).length;
+            event.commit();
+        }
+        return snapshot;
+    }
+
     void loadSnapshot(Snapshot snapshot) {
         if (!namedListData.isEmpty() || !namedMapData.isEmpty()
                 || !backendNodes.isEmpty()) {
             throw new IllegalStateException(
                     "You can only load snapshots for empty topics");
         }
+        EngineMetrics metrics = getCollaborationEngine().getMetrics();
+        long start = metrics.start();
         namedListData.putAll(snapshot.getLists());
         namedMapData.putAll(snapshot.getMaps());
+        if (decodedValues != null) {
+            namedListData.values().forEach(list -> list
+                    .replaceValues(value -> store(value.get())));
+            namedMapData.values().forEach(map -> map.replaceAll(
+                    (key, entry) -> new Entry(entry.revisionId,
+                            store(entry.data.get()), entry.scopeOwnerId)));
+        }
         listExpirationTimeouts.putAll(snapshot.getListTimeouts());
         mapExpirationTimeouts.putAll(snapshot.getMapTimeouts());
         activeNodes.addAll(snapshot.getActiveNodes());
         backendNodes.addAll(snapshot.getBackendNodes());
+        metrics.recordSince(metrics.snapshotLoadDuration, start);
     }
 
     private void becomeLeader() {
@@ -480,7 +965,7 @@ class Topic implements Serializable {
 
         Map<String, Entry> map = namedMapData.computeIfAbsent(mapName,
                 name -> new HashMap<>());
-        JsonNode oldValue = map.containsKey(key) ? map.get(key).data
+        JsonNode oldValue = map.containsKey(key) ? map.get(key).data.get()
                 : NullNode.getInstance();
         UUID oldChangeId = map.containsKey(key) ? map.get(key).revisionId
                 : null;
@@ -496,7 +981,7 @@ class Topic implements Serializable {
         if (newValue instanceof NullNode) {
             map.remove(key);
         } else {
-            map.put(key, new Entry(changeId, newValue.deepCopy(),
+            map.put(key, new Entry(changeId, store(newValue),
                     JsonUtil.toUUID(change.get(JsonUtil.CHANGE_SCOPE_OWNER))));
         }
         return new MapChange(mapName, MapChangeType.PUT, key, oldValue,
@@ -511,7 +996,7 @@ class Topic implements Serializable {
 
         Map<String, Entry> map = namedMapData.computeIfAbsent(mapName,
                 name -> new HashMap<>());
-        JsonNode oldValue = map.containsKey(key) ? map.get(key).data
+        JsonNode oldValue = map.containsKey(key) ? map.get(key).data.get()
                 : NullNode.getInstance();
 
         if (expectedValue != null && !Objects.equals(oldValue, expectedValue)) {
@@ -521,7 +1006,7 @@ class Topic implements Serializable {
         if (newValue instanceof NullNode) {
             map.remove(key);
         } else {
-            map.put(key, new Entry(changeId, newValue.deepCopy(),
+            map.put(key, new Entry(changeId, store(newValue),
                     JsonUtil.toUUID(change.get(JsonUtil.CHANGE_SCOPE_OWNER))));
         }
         return new MapChange(mapName, MapChangeType.REPLACE, key, oldValue,
@@ -546,9 +1031,11 @@ class Topic implements Serializable {
         ListEntrySnapshot insertedEntry;
         if (key == null) {
             if (before) { // insert before null -> insert last
-                insertedEntry = list.insertLast(id, item, id, scopeOwnerId);
+                insertedEntry = list.insertLast(id, store(item), id,
+                        scopeOwnerId);
             } else { // insert after null -> insert first
-                insertedEntry = list.insertFirst(id, item, id, scopeOwnerId);
+                insertedEntry = list.insertFirst(id, store(item), id,
+                        scopeOwnerId);
             }
         } else {
             ListEntrySnapshot entry = list.getEntry(key);
@@ -556,10 +1043,10 @@ class Topic implements Serializable {
                 return null;
             }
             if (before) {
-                insertedEntry = list.insertBefore(key, id, item, id,
+                insertedEntry = list.insertBefore(key, id, store(item), id,
                         scopeOwnerId);
             } else {
-                insertedEntry = list.insertAfter(key, id, item, id,
+                insertedEntry = list.insertAfter(key, id, store(item), id,
                         scopeOwnerId);
             }
         }
@@ -600,7 +1087,7 @@ class Topic implements Serializable {
         }
 
         return new ListChange(listName, ListChangeType.MOVE, changeKey,
-                moveEntry.value, moveEntry.value, moveEntry.prev,
+                moveEntry.getValue(), moveEntry.getValue(), moveEntry.prev,
                 insertedEntry.prev, moveEntry.next, insertedEntry.next, null,
                 id);
     }
@@ -628,16 +1115,16 @@ class Topic implements Serializable {
         if (newValue.isNull()) {
             list.remove(key);
             return new ListChange(listName, ListChangeType.SET, key,
-                    entry.value, null, entry.prev, null, entry.next, null,
+                    entry.getValue(), null, entry.prev, null, entry.next, null,
                     expectedId, null);
         } else {
-            JsonNode oldValue = entry.value;
+            JsonNode oldValue = entry.getValue();
             UUID scopeOwnerId = JsonUtil
                     .toUUID(change.get(JsonUtil.CHANGE_SCOPE_OWNER));
             if (Objects.equals(scopeOwnerId, JsonUtil.TOPIC_SCOPE_ID)) {
                 scopeOwnerId = null;
             }
-            list.setValue(key, newValue, trackingId, scopeOwnerId);
+            list.setValue(key, store(newValue), trackingId, scopeOwnerId);
             return new ListChange(listName, ListChangeType.SET, key, oldValue,
                     newValue, entry.prev, entry.prev, entry.next, entry.next,
                     expectedId, trackingId);
@@ -679,7 +1166,8 @@ class Topic implements Serializable {
             JsonNode expectedValue = valueCondition
                     .get(JsonUtil.CHANGE_EXPECTED_VALUE);
             if (refKey == null || getListEntry(listName, refKey) == null
-                    || !Objects.equals(getListEntry(listName, refKey).value,
+                    || !Objects.equals(
+                            getListEntry(listName, refKey).getValue(),
                             expectedValue)) {
                 return false;
             }
@@ -714,7 +1202,7 @@ class Topic implements Serializable {
 
     Stream<ListChange> getListChanges(String listName) {
         return getListItems(listName).map(item -> new ListChange(listName,
-                ListChangeType.INSERT, item.id, null, item.value, null,
+                ListChangeType.INSERT, item.id, null, item.getValue(), null,
                 item.prev, null, null, null, item.revisionId));
     }
 
@@ -731,6 +1219,12 @@ class Topic implements Serializable {
         return getList(listName).map(list -> list.getValue(key)).orElse(null);
     }
 
+    private StoredValue store(JsonNode value) {
+        return decodedValues != null
+                ? StoredValue.compact(value, decodedValues)
+                : StoredValue.of(value);
+    }
+
     private EntryList getOrCreateList(String listName) {
         return namedListData.computeIfAbsent(listName, name -> new EntryList());
     }
@@ -749,9 +1243,24 @@ class Topic implements Serializable {
         }
     }
 
+    String getId() {
+        return id;
+    }
+
+    int getChangeResultTrackerCount() {
+        return changeResultTrackers.size();
+    }
+
+    // For testing
+    boolean hasMapKeyChangeListeners() {
+        return !mapKeyChangeListeners.isEmpty();
+    }
+
     // For testing
     boolean hasChangeListeners() {
-        return !changeListeners.isEmpty();
+        return !changeListeners.isEmpty() || !mapChangeListeners.isEmpty()
+                || !listChangeListeners.isEmpty()
+                || !mapKeyChangeListeners.isEmpty();
     }
 
     private CollaborationEngine getCollaborationEngine() {
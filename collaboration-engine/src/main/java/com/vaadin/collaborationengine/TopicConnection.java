@@ -19,20 +19,25 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.BiConsumer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.vaadin.collaborationengine.Topic.ChangeDetails;
 import com.vaadin.collaborationengine.Topic.ChangeResult;
@@ -49,6 +54,51 @@ import com.vaadin.flow.shared.Registration;
  */
 public class TopicConnection {
 
+    /**
+     * A route of the changes to a single map key, shared by all the key
+     * subscriptions that include the key.
+     */
+    private static class KeyRoute {
+        private final Registration registration;
+        private int subscriptionCount;
+
+        private KeyRoute(Registration registration) {
+            this.registration = registration;
+        }
+    }
+
+    /**
+     * A value put through this connection that has not yet been applied to
+     * the topic.
+     */
+    private static class PendingPut {
+        private final UUID id;
+        private final JsonNode value;
+
+        private PendingPut(UUID id, JsonNode value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    /**
+     * The latest value put to a map key within the write coalescing interval,
+     * together with the futures of all the puts that it replaces.
+     */
+    private static class CoalescedPut {
+        private final CollaborationMapImplementation map;
+        private final String key;
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        private UUID id;
+        private boolean connectionScope;
+        private ObjectNode change;
+
+        private CoalescedPut(CollaborationMapImplementation map, String key) {
+            this.map = map;
+            this.key = key;
+        }
+    }
+
     class CollaborationMapImplementation implements CollaborationMap {
         private final String name;
 
@@ -62,12 +112,9 @@ public class TopicConnection {
             Objects.requireNonNull(subscriber, "Subscriber cannot be null");
 
             synchronized (topic) {
-                Consumer<MapChange> mapChangeNotifier = mapChange -> {
-                    MapChangeEvent event = new MapChangeEvent(this, mapChange);
-                    actionDispatcher.dispatchAction(
-                            () -> subscriber.onMapChange(event));
-                };
-                topic.getMapData(name).forEach(mapChangeNotifier);
+                Consumer<MapChange> mapChangeNotifier = createNotifier(
+                        subscriber);
+                dispatchInitialState(subscriber, getVisibleMapData(name));
 
                 Registration registration = subscribeToMap(name,
                         mapChangeNotifier);
@@ -76,6 +123,173 @@ public class TopicConnection {
             }
         }
 
+        @Override
+        public Registration subscribe(Set<String> keys,
+                MapSubscriber subscriber) {
+            ensureActiveConnection();
+            Objects.requireNonNull(keys, "Keys cannot be null");
+            Objects.requireNonNull(subscriber, "Subscriber cannot be null");
+
+            Set<String> subscribedKeys = Set.copyOf(keys);
+            synchronized (topic) {
+                Consumer<MapChange> mapChangeNotifier = createNotifier(
+                        subscriber);
+                dispatchInitialState(subscriber,
+                        getVisibleMapData(name,
+                                topic.getMapData(name, subscribedKeys),
+                                subscribedKeys::contains));
+
+                subscribedKeys.forEach(key -> routeMapKeyChanges(name, key));
+                Registration notifierRegistration = addMapNotifier(name,
+                        mapChange -> {
+                            if (subscribedKeys.contains(mapChange.getKey())) {
+                                mapChangeNotifier.accept(mapChange);
+                            }
+                        });
+                AtomicBoolean removed = new AtomicBoolean();
+                Registration registration = () -> {
+                    if (!removed.getAndSet(true)) {
+                        notifierRegistration.remove();
+                        subscribedKeys.forEach(
+                                key -> unrouteMapKeyChanges(name, key));
+                    }
+                };
+                addRegistration(registration);
+                return registration;
+            }
+        }
+
+        @Override
+        public Registration subscribe(Predicate<String> keyFilter,
+                MapSubscriber subscriber) {
+            ensureActiveConnection();
+            Objects.requireNonNull(keyFilter, "Key filter cannot be null");
+            Objects.requireNonNull(subscriber, "Subscriber cannot be null");
+
+            synchronized (topic) {
+                Consumer<MapChange> mapChangeNotifier = createNotifier(
+                        subscriber);
+                dispatchInitialState(subscriber, getVisibleMapData(name).filter(
+                        mapChange -> keyFilter.test(mapChange.getKey())));
+
+                Registration registration = subscribeToMap(name,
+                        mapChange -> {
+                            if (keyFilter.test(mapChange.getKey())) {
+                                mapChangeNotifier.accept(mapChange);
+                            }
+                        });
+                addRegistration(registration);
+                return registration;
+            }
+        }
+
+        /*
+         * The current values are delivered in one action rather than one
+         * action per value, which matters for maps with many keys.
+         */
+        private void dispatchInitialState(MapSubscriber subscriber,
+                Stream<MapChange> mapData) {
+            List<MapChangeEvent> events = mapData
+                    .map(mapChange -> new MapChangeEvent(this, mapChange,
+                            TopicConnection.this::isCachedValueType))
+                    .toList();
+            if (!events.isEmpty()) {
+                actionDispatcher.dispatchAction(
+                        () -> subscriber.onInitialState(events));
+            }
+        }
+
+        private Consumer<MapChange> createNotifier(MapSubscriber subscriber) {
+            return mapChange -> {
+                MapChangeEvent event = new MapChangeEvent(this, mapChange,
+                        TopicConnection.this::isCachedValueType);
+                actionDispatcher
+                        .dispatchAction(() -> subscriber.onMapChange(event));
+            };
+        }
+
+        @Override
+        public Registration subscribeConflated(MapSubscriber subscriber) {
+            ensureActiveConnection();
+            Objects.requireNonNull(subscriber, "Subscriber cannot be null");
+
+            synchronized (topic) {
+                ConflatingNotifier notifier = new ConflatingNotifier(
+                        subscriber);
+                getVisibleMapData(name).forEach(notifier);
+
+                routeMapChanges(name);
+                conflatedSubscribersPerMap
+                        .computeIfAbsent(name, key -> new ArrayList<>())
+                        .add(notifier);
+                Registration registration = () -> {
+                    synchronized (topic) {
+                        List<Consumer<MapChange>> notifiers = conflatedSubscribersPerMap
+                                .get(name);
+                        if (notifiers != null) {
+                            notifiers.remove(notifier);
+                            if (notifiers.isEmpty()) {
+                                conflatedSubscribersPerMap.remove(name);
+                            }
+                        }
+                    }
+                };
+                addRegistration(registration);
+                return registration;
+            }
+        }
+
+        /*
+         * Keeps at most one undelivered change per key. Changes are passed to
+         * the notifier as soon as they are applied to the topic rather than
+         * through a dispatched action, so that the first pending change
+         * schedules a delivery through the action dispatcher, and changes that
+         * arrive before it runs are merged into the pending ones.
+         */
+        private class ConflatingNotifier implements Consumer<MapChange> {
+            private final MapSubscriber subscriber;
+
+            // Guarded by this
+            private final Map<String, MapChange> pendingChanges = new LinkedHashMap<>();
+
+            private ConflatingNotifier(MapSubscriber subscriber) {
+                this.subscriber = subscriber;
+            }
+
+            @Override
+            public void accept(MapChange change) {
+                boolean deliveryNeeded;
+                synchronized (this) {
+                    deliveryNeeded = pendingChanges.isEmpty();
+                    pendingChanges.merge(change.getKey(), change,
+                            (pending, latest) -> new MapChange(name,
+                                    latest.getType(), latest.getKey(),
+                                    pending.getOldValue(), latest.getValue(),
+                                    latest.getExpectedId(),
+                                    latest.getRevisionId()));
+                }
+                if (deliveryNeeded) {
+                    actionDispatcher.dispatchAction(this::deliver);
+                }
+            }
+
+            private void deliver() {
+                List<MapChange> changes;
+                synchronized (this) {
+                    changes = new ArrayList<>(pendingChanges.values());
+                    pendingChanges.clear();
+                }
+                for (MapChange change : changes) {
+                    // Changes merged back to the old value are dropped
+                    if (change.hasChanges()) {
+                        subscriber.onMapChange(new MapChangeEvent(
+                                CollaborationMapImplementation.this, change,
+                                TopicConnection.this::isCachedValueType));
+                    }
+                }
+            }
+        }
+
         @Override
         public CompletableFuture<Boolean> replace(String key,
                 Object expectedValue, Object newValue) {
@@ -84,7 +298,9 @@ public class TopicConnection {
 
             ObjectNode change = JsonUtil.createReplaceChange(name, key,
                     expectedValue, newValue);
-            UUID id = UUID.randomUUID();
+            UUID id = IdUtil.newId();
+            // The replace must see the value that was put before it
+            submitCoalescedPut(name, key);
 
             return dispatchChangeWithBooleanResult(id, key, false, change);
         }
@@ -98,12 +314,50 @@ public class TopicConnection {
             boolean connectionScope = scope == EntryScope.CONNECTION;
             ObjectNode change = JsonUtil.createPutChange(name, key, null, value,
                     connectionScope ? topic.getCurrentNodeId() : null);
-            UUID id = UUID.randomUUID();
+            UUID id = IdUtil.newId();
+            if (connectionScope) {
+                routeMapChanges(name);
+            }
+            if (optimisticUpdates) {
+                applyOptimisticPut(name, key, id,
+                        change.get(JsonUtil.CHANGE_VALUE));
+            }
+            if (writeCoalescingInterval != null) {
+                return coalescePut(id, key, connectionScope, change);
+            }
 
             return dispatchChangeWithVoidResult(id, key, connectionScope,
                     change);
         }
 
+        private CompletableFuture<Void> coalescePut(UUID id, String key,
+                boolean connectionScope, ObjectNode change) {
+            CompletableFuture<Void> contextFuture = actionDispatcher
+                    .createCompletableFuture();
+            boolean scheduleFlush;
+            synchronized (coalescedPuts) {
+                CoalescedPut put = coalescedPuts
+                        .computeIfAbsent(name, k -> new HashMap<>())
+                        .get(key);
+                scheduleFlush = put == null;
+                if (put == null) {
+                    put = new CoalescedPut(this, key);
+                    coalescedPuts.get(name).put(key, put);
+                }
+                put.id = id;
+                put.connectionScope = connectionScope;
+                put.change = change;
+                put.futures.add(contextFuture);
+            }
+            if (scheduleFlush) {
+                collaborationEngineSupplier.get().getScheduler().schedule(
+                        () -> dispatchCoalescedPut(name, key),
+                        writeCoalescingInterval.toMillis(),
+                        TimeUnit.MILLISECONDS);
+            }
+            return contextFuture;
+        }
+
         private CompletableFuture<Void> dispatchChangeWithVoidResult(UUID id,
                 String key, boolean connectionScope, ObjectNode change) {
             CompletableFuture<Void> contextFuture = actionDispatcher
@@ -118,11 +372,14 @@ public class TopicConnection {
                         cleanupScopedData();
                     }
                 }
-                actionDispatcher
-                        .dispatchAction(() -> contextFuture.complete(null));
+                actionDispatcher.dispatchAction(() -> {
+                    if (result == ChangeResult.REJECTED) {
+                        rollbackOptimisticPuts(Set.of(id));
+                    }
+                    contextFuture.complete(null);
+                });
             });
-            actionDispatcher
-                    .dispatchAction(() -> distributor.accept(id, change));
+            submitChange(id, change);
 
             return contextFuture;
         }
@@ -145,8 +402,7 @@ public class TopicConnection {
                 actionDispatcher.dispatchAction(() -> contextFuture
                         .complete(result != ChangeResult.REJECTED));
             });
-            actionDispatcher
-                    .dispatchAction(() -> distributor.accept(id, change));
+            submitChange(id, change);
 
             return contextFuture;
         }
@@ -155,7 +411,7 @@ public class TopicConnection {
         public Stream<String> getKeys() {
             ensureActiveConnection();
             synchronized (topic) {
-                List<String> snapshot = topic.getMapData(name)
+                List<String> snapshot = getVisibleMapData(name)
                         .map(MapChange::getKey).collect(Collectors.toList());
                 return snapshot.stream();
             }
@@ -176,6 +432,11 @@ public class TopicConnection {
             Objects.requireNonNull(key, MessageUtil.Required.KEY);
 
             synchronized (topic) {
+                PendingPut pendingPut = getPendingPut(name, key);
+                if (pendingPut != null) {
+                    return pendingPut.value instanceof NullNode ? null
+                            : pendingPut.value;
+                }
                 return topic.getMapValue(name, key);
             }
         }
@@ -198,13 +459,18 @@ public class TopicConnection {
             ObjectNode change = JsonUtil.createMapTimeoutChange(name,
                     expirationTimeout);
 
-            UUID id = UUID.randomUUID();
-            actionDispatcher
-                    .dispatchAction(() -> distributor.accept(id, change));
+            UUID id = IdUtil.newId();
+            submitChange(id, change);
         }
 
         private Registration subscribeToMap(String mapName,
                 Consumer<MapChange> mapChangeNotifier) {
+            routeMapChanges(mapName);
+            return addMapNotifier(mapName, mapChangeNotifier);
+        }
+
+        private Registration addMapNotifier(String mapName,
+                Consumer<MapChange> mapChangeNotifier) {
             subscribersPerMap.computeIfAbsent(mapName, key -> new ArrayList<>())
                     .add(mapChangeNotifier);
             return () -> unsubscribeFromMap(mapName, mapChangeNotifier);
@@ -212,14 +478,16 @@ public class TopicConnection {
 
         private void unsubscribeFromMap(String mapName,
                 Consumer<MapChange> mapChangeNotifier) {
-            List<Consumer<MapChange>> notifiers = subscribersPerMap
-                    .get(mapName);
-            if (notifiers == null) {
-                return;
-            }
-            notifiers.remove(mapChangeNotifier);
-            if (notifiers.isEmpty()) {
-                subscribersPerMap.remove(mapName);
+            synchronized (topic) {
+                List<Consumer<MapChange>> notifiers = subscribersPerMap
+                        .get(mapName);
+                if (notifiers == null) {
+                    return;
+                }
+                notifiers.remove(mapChangeNotifier);
+                if (notifiers.isEmpty()) {
+                    subscribersPerMap.remove(mapName);
+                }
             }
         }
     }
@@ -239,11 +507,20 @@ public class TopicConnection {
             synchronized (topic) {
                 Consumer<ListChange> changeNotifier = listChange -> {
                     ListChangeEvent event = new ListChangeEvent(this,
-                            listChange);
+                            listChange,
+                            TopicConnection.this::isCachedValueType);
                     actionDispatcher.dispatchAction(
                             () -> subscriber.onListChange(event));
                 };
-                topic.getListChanges(name).forEach(changeNotifier);
+                List<ListChangeEvent> initialEvents = topic
+                        .getListChanges(name)
+                        .map(change -> new ListChangeEvent(this, change,
+                                TopicConnection.this::isCachedValueType))
+                        .toList();
+                if (!initialEvents.isEmpty()) {
+                    actionDispatcher.dispatchAction(
+                            () -> subscriber.onInitialState(initialEvents));
+                }
 
                 Registration registration = subscribeToList(name,
                         changeNotifier);
@@ -265,7 +542,7 @@ public class TopicConnection {
         private <T> List<T> getItems(Function<JsonNode, T> converter) {
             ensureActiveConnection();
             synchronized (topic) {
-                return topic.getListItems(name).map(item -> item.value)
+                return topic.getListItems(name).map(item -> item.getValue())
                         .map(converter).collect(Collectors.toList());
             }
         }
@@ -307,6 +584,7 @@ public class TopicConnection {
             if (operation.getScope() != null) {
                 if (operation.getScope() == EntryScope.CONNECTION) {
                     scopeOwnerId = topic.getCurrentNodeId();
+                    routeListChanges(name);
                 } else {
                     scopeOwnerId = JsonUtil.TOPIC_SCOPE_ID;
                 }
@@ -323,7 +601,7 @@ public class TopicConnection {
                     operation.getConditions(), operation.getValueConditions(),
                     operation.getEmpty());
 
-            UUID id = UUID.randomUUID();
+            UUID id = IdUtil.newId();
             return new ListOperationResult<>(new ListKey(id),
                     dispatchChangeWithBooleanResult(id,
                             valueKey != null ? valueKey.getKey() : id,
@@ -348,8 +626,7 @@ public class TopicConnection {
                 actionDispatcher.dispatchAction(() -> contextFuture
                         .complete(result != ChangeResult.REJECTED));
             });
-            actionDispatcher
-                    .dispatchAction(() -> distributor.accept(id, change));
+            submitChange(id, change);
 
             return contextFuture;
         }
@@ -372,13 +649,13 @@ public class TopicConnection {
             ObjectNode change = JsonUtil.createListTimeoutChange(name,
                     expirationTimeout);
 
-            UUID id = UUID.randomUUID();
-            actionDispatcher
-                    .dispatchAction(() -> distributor.accept(id, change));
+            UUID id = IdUtil.newId();
+            submitChange(id, change);
         }
 
         private Registration subscribeToList(String listName,
                 Consumer<ListChange> changeNotifier) {
+            routeListChanges(listName);
             subscribersPerList
                     .computeIfAbsent(listName, key -> new ArrayList<>())
                     .add(changeNotifier);
@@ -404,16 +681,28 @@ public class TopicConnection {
     private final List<Registration> deactivateRegistrations = new ArrayList<>();
     private final Consumer<Boolean> topicActivationHandler;
     private final Map<String, List<Consumer<MapChange>>> subscribersPerMap = new HashMap<>();
+    private final Map<String, List<Consumer<MapChange>>> conflatedSubscribersPerMap = new HashMap<>();
     private final Map<String, List<Consumer<ListChange>>> subscribersPerList = new HashMap<>();
     private final Map<String, Map<String, UUID>> connectionScopedMapKeys = new HashMap<>();
     private final Map<String, Map<UUID, UUID>> connectionScopedListItems = new HashMap<>();
+    private final Map<String, Registration> mapChangeRoutes = new HashMap<>();
+    private final Map<String, Registration> listChangeRoutes = new HashMap<>();
+    private final Map<String, Map<String, KeyRoute>> mapKeyChangeRoutes = new HashMap<>();
+    private final Map<String, Map<String, PendingPut>> pendingPuts = new HashMap<>();
+    private final boolean optimisticUpdates;
+    private final Set<Class<?>> immutableValueTypes;
+    private final Map<String, Map<String, CoalescedPut>> coalescedPuts = new HashMap<>();
+    private final Duration writeCoalescingInterval;
+    private final SerializableSupplier<CollaborationEngine> collaborationEngineSupplier;
 
     private volatile boolean cleanupPending;
 
-    private final BiConsumer<UUID, ObjectNode> distributor;
+    private final List<Backend.Event> pendingEvents = new ArrayList<>();
+
+    private final Consumer<List<Backend.Event>> distributor;
     private final SerializableFunction<TopicConnection, Registration> connectionActivationCallback;
     private Registration closeRegistration;
-    private ActionDispatcher actionDispatcher;
+    private EngineMetrics.MeteredActionDispatcher actionDispatcher;
     /**
      * Whether activation has happened, which isn't necessarily the same as
      * being active because of the asynchronous step before activation is
@@ -424,7 +713,7 @@ public class TopicConnection {
     TopicConnection(
             SerializableSupplier<CollaborationEngine> collaborationEngineSupplier,
             ConnectionContext context, Topic topic,
-            BiConsumer<UUID, ObjectNode> distributor, UserInfo localUser,
+            Consumer<List<Backend.Event>> distributor, UserInfo localUser,
             Consumer<Boolean> topicActivationHandler,
             SerializableFunction<TopicConnection, Registration> connectionActivationCallback) {
         this.topic = topic;
@@ -432,6 +721,15 @@ public class TopicConnection {
         this.localUser = localUser;
         this.topicActivationHandler = topicActivationHandler;
         this.connectionActivationCallback = connectionActivationCallback;
+        this.collaborationEngineSupplier = collaborationEngineSupplier;
+        CollaborationEngineConfiguration configuration = collaborationEngineSupplier
+                .get().getConfiguration();
+        this.optimisticUpdates = configuration.isOptimisticUpdates();
+        this.immutableValueTypes = configuration.getImmutableValueTypes();
+        Duration interval = configuration.getWriteCoalescingInterval();
+        this.writeCoalescingInterval = interval != null && !interval.isZero()
+                ? interval
+                : null;
         this.closeRegistration = context.init(this::acceptActionDispatcher,
                 command -> collaborationEngineSupplier.get()
                         .getExecutorService().execute(command));
@@ -457,26 +755,226 @@ public class TopicConnection {
     private void handleMapChange(UUID id, MapChange mapChange) {
         String mapName = mapChange.getMapName();
         String key = mapChange.getKey();
+        MapChange visibleChange = reconcilePendingPut(id, mapChange);
 
-        Map<String, UUID> keys = connectionScopedMapKeys.get(mapName);
-        if (keys != null) {
-            if (keys.containsKey(key)
-                    && mapChange.getType() == MapChangeType.REPLACE) {
-                keys.put(key, mapChange.getRevisionId());
-            }
-            // If there is a connection scoped entry for the same key with a
-            // different id, cleanup the existing entry
-            if (!Objects.equals(id, keys.get(key))) {
-                UUID uuid = keys.get(key);
-                if (!Objects.equals(mapChange.getExpectedId(), uuid)) {
-                    keys.remove(key);
+        synchronized (topic) {
+            Map<String, UUID> keys = connectionScopedMapKeys.get(mapName);
+            if (keys != null) {
+                if (keys.containsKey(key)
+                        && mapChange.getType() == MapChangeType.REPLACE) {
+                    keys.put(key, mapChange.getRevisionId());
+                }
+                // If there is a connection scoped entry for the same key with
+                // a different id, cleanup the existing entry
+                if (!Objects.equals(id, keys.get(key))) {
+                    UUID uuid = keys.get(key);
+                    if (!Objects.equals(mapChange.getExpectedId(), uuid)) {
+                        keys.remove(key);
+                    }
                 }
             }
         }
-        if (mapChange.hasChanges()) {
+        if (visibleChange != null && visibleChange.hasChanges()) {
             EventUtil.fireEvents(subscribersPerMap.get(mapName),
-                    notifier -> notifier.accept(mapChange), false);
+                    notifier -> notifier.accept(visibleChange), false);
+        }
+    }
+
+    /*
+     * Returns the change as seen by this connection, or null if the change is
+     * hidden by a value that this connection has put but which has not yet
+     * been applied to the topic.
+     */
+    private MapChange reconcilePendingPut(UUID id, MapChange mapChange) {
+        synchronized (topic) {
+            MapChange visibleChange = getVisibleChange(id, mapChange);
+            if (visibleChange != null && visibleChange != mapChange) {
+                removePendingPut(mapChange.getMapName(), mapChange.getKey());
+            }
+            return visibleChange;
+        }
+    }
+
+    /*
+     * Like reconcilePendingPut, but leaves the pending put in place. Must be
+     * called while holding the topic lock.
+     */
+    private MapChange getVisibleChange(UUID id, MapChange mapChange) {
+        PendingPut pendingPut = getPendingPut(mapChange.getMapName(),
+                mapChange.getKey());
+        if (pendingPut == null) {
+            return mapChange;
+        }
+        if (!pendingPut.id.equals(id)) {
+            return null;
+        }
+        return new MapChange(mapChange.getMapName(), mapChange.getType(),
+                mapChange.getKey(), pendingPut.value, mapChange.getValue(),
+                mapChange.getExpectedId(), mapChange.getRevisionId());
+    }
+
+    /*
+     * Conflated subscribers merge changes as soon as they are known, and
+     * dispatch at most one delivery action of their own.
+     */
+    private void notifyConflatedSubscribers(MapChange change) {
+        List<Consumer<MapChange>> notifiers;
+        synchronized (topic) {
+            notifiers = conflatedSubscribersPerMap.get(change.getMapName());
+            if (notifiers == null) {
+                return;
+            }
+            notifiers = new ArrayList<>(notifiers);
         }
+        EventUtil.fireEvents(notifiers, notifier -> notifier.accept(change),
+                false);
+    }
+
+    private void applyOptimisticPut(String mapName, String key, UUID id,
+            JsonNode value) {
+        MapChange change;
+        synchronized (topic) {
+            routeMapChanges(mapName);
+            PendingPut previous = getPendingPut(mapName, key);
+            JsonNode oldValue = previous != null ? previous.value
+                    : topic.getMapValue(mapName, key);
+            pendingPuts.computeIfAbsent(mapName, k -> new HashMap<>()).put(key,
+                    new PendingPut(id, value));
+            change = new MapChange(mapName, MapChangeType.PUT, key,
+                    oldValue != null ? oldValue : NullNode.getInstance(), value,
+                    null, id);
+        }
+        if (change.hasChanges()) {
+            notifyConflatedSubscribers(change);
+            actionDispatcher.dispatchAction(
+                    () -> EventUtil.fireEvents(subscribersPerMap.get(mapName),
+                            notifier -> notifier.accept(change), false));
+        }
+    }
+
+    private void rollbackOptimisticPuts(Set<UUID> ids) {
+        List<MapChange> changes = new ArrayList<>();
+        synchronized (topic) {
+            pendingPuts.forEach((mapName, puts) -> puts.forEach((key, put) -> {
+                if (ids.contains(put.id)) {
+                    JsonNode value = topic.getMapValue(mapName, key);
+                    changes.add(new MapChange(mapName, MapChangeType.PUT, key,
+                            put.value,
+                            value != null ? value : NullNode.getInstance(),
+                            null, put.id));
+                }
+            }));
+            changes.forEach(change -> removePendingPut(change.getMapName(),
+                    change.getKey()));
+        }
+        changes.stream().filter(MapChange::hasChanges).forEach(change -> {
+            notifyConflatedSubscribers(change);
+            EventUtil.fireEvents(subscribersPerMap.get(change.getMapName()),
+                    notifier -> notifier.accept(change), false);
+        });
+    }
+
+    private void dispatchCoalescedPut(String mapName, String key) {
+        ActionDispatcher dispatcher = actionDispatcher;
+        if (dispatcher != null) {
+            dispatcher.dispatchAction(() -> submitCoalescedPut(mapName, key));
+        }
+    }
+
+    private void submitCoalescedPut(String mapName, String key) {
+        CoalescedPut put;
+        synchronized (coalescedPuts) {
+            Map<String, CoalescedPut> puts = coalescedPuts.get(mapName);
+            put = puts != null ? puts.remove(key) : null;
+            if (puts != null && puts.isEmpty()) {
+                coalescedPuts.remove(mapName);
+            }
+        }
+        // Puts left when deactivating have already been submitted
+        if (put == null || !isActive()) {
+            return;
+        }
+        put.map.dispatchChangeWithVoidResult(put.id, put.key,
+                put.connectionScope, put.change)
+                .thenRun(() -> put.futures
+                        .forEach(future -> future.complete(null)));
+    }
+
+    /*
+     * Adds the values that are still waiting for the coalescing interval to
+     * the pending events. Their futures are completed through the dispatcher
+     * of the connection being deactivated once the topic has applied the
+     * values. Connection scoped values are recorded like any other accepted
+     * connection scoped value so that the scope cleanup removes them again.
+     */
+    private void submitCoalescedPutsOnDeactivation() {
+        List<CoalescedPut> puts = new ArrayList<>();
+        synchronized (coalescedPuts) {
+            coalescedPuts.values()
+                    .forEach(mapPuts -> puts.addAll(mapPuts.values()));
+            coalescedPuts.clear();
+        }
+        ActionDispatcher dispatcher = actionDispatcher;
+        for (CoalescedPut put : puts) {
+            topic.setChangeResultTracker(put.id, result -> {
+                if (put.connectionScope && result == ChangeResult.ACCEPTED) {
+                    connectionScopedMapKeys
+                            .computeIfAbsent(put.map.name,
+                                    k -> new HashMap<>())
+                            .put(put.key, put.id);
+                    if (!cleanupPending) {
+                        cleanupScopedData();
+                    }
+                }
+                dispatcher.dispatchAction(() -> put.futures
+                        .forEach(future -> future.complete(null)));
+            });
+            synchronized (pendingEvents) {
+                pendingEvents.add(createEvent(put.id, put.change));
+            }
+        }
+    }
+
+    private PendingPut getPendingPut(String mapName, String key) {
+        Map<String, PendingPut> puts = pendingPuts.get(mapName);
+        return puts != null ? puts.get(key) : null;
+    }
+
+    private void removePendingPut(String mapName, String key) {
+        Map<String, PendingPut> puts = pendingPuts.get(mapName);
+        if (puts != null) {
+            puts.remove(key);
+            if (puts.isEmpty()) {
+                pendingPuts.remove(mapName);
+            }
+        }
+    }
+
+    /*
+     * The map data of the topic with the values that this connection has put
+     * but which have not yet been applied to the topic. Must be consumed while
+     * holding the topic lock.
+     */
+    private Stream<MapChange> getVisibleMapData(String mapName) {
+        return getVisibleMapData(mapName, topic.getMapData(mapName),
+                key -> true);
+    }
+
+    private Stream<MapChange> getVisibleMapData(String mapName,
+            Stream<MapChange> mapData, Predicate<String> keyFilter) {
+        Map<String, PendingPut> puts = pendingPuts.get(mapName);
+        if (puts == null) {
+            return mapData;
+        }
+        Stream<MapChange> confirmed = mapData
+                .filter(change -> !puts.containsKey(change.getKey()));
+        Stream<MapChange> pending = puts.entrySet().stream()
+                .filter(entry -> keyFilter.test(entry.getKey()))
+                .filter(entry -> !(entry.getValue().value instanceof NullNode))
+                .map(entry -> new MapChange(mapName, MapChangeType.PUT,
+                        entry.getKey(), null, entry.getValue().value, null,
+                        entry.getValue().id));
+        return Stream.concat(confirmed, pending);
     }
 
     private void handleListChange(UUID id, ListChange listChange) {
@@ -563,6 +1061,9 @@ public class TopicConnection {
 
     private void deactivate() {
         try {
+            synchronized (topic) {
+                pendingPuts.clear();
+            }
             cleanupScopedData();
             EventUtil.fireEvents(deactivateRegistrations, Registration::remove,
                     false);
@@ -570,6 +1071,7 @@ public class TopicConnection {
         } catch (RuntimeException e) {
             if (actionDispatcher != null) {
                 this.topicActivationHandler.accept(false);
+                this.actionDispatcher.release();
                 this.actionDispatcher = null;
             }
             closeWithoutDeactivating();
@@ -593,12 +1095,13 @@ public class TopicConnection {
 
     private void cleanupScopedData() {
         synchronized (topic) {
+            List<Backend.Event> events = new ArrayList<>();
             connectionScopedMapKeys.forEach(
                     (mapName, mapKeys) -> mapKeys.forEach((key, id) -> {
                         ObjectNode change = JsonUtil.createPutChange(mapName,
                                 key, null, null, null);
                         change.put(JsonUtil.CHANGE_EXPECTED_ID, id.toString());
-                        distributor.accept(UUID.randomUUID(), change);
+                        events.add(createEvent(IdUtil.newId(), change));
                     }));
             connectionScopedMapKeys.clear();
             connectionScopedListItems.forEach(
@@ -609,13 +1112,58 @@ public class TopicConnection {
                                 Collections.emptyMap(), Collections.emptyMap(),
                                 null);
                         change.put(JsonUtil.CHANGE_EXPECTED_ID, id.toString());
-                        distributor.accept(UUID.randomUUID(), change);
+                        events.add(createEvent(IdUtil.newId(), change));
                     }));
             connectionScopedListItems.clear();
             cleanupPending = false;
+            if (!events.isEmpty()) {
+                distributor.accept(events);
+            }
+        }
+    }
+
+    /*
+     * Changes are buffered and submitted to the event log in one batch when
+     * the flush action is run, which means that all changes made before the
+     * dispatcher gets to run the flush end up in the same backend call.
+     */
+    private void submitChange(UUID id, ObjectNode change) {
+        Backend.Event event = ChangeTrace.createEvent(id, change,
+                collaborationEngineSupplier.get());
+        boolean flushNeeded;
+        synchronized (pendingEvents) {
+            flushNeeded = pendingEvents.isEmpty();
+            pendingEvents.add(event);
+        }
+        if (flushNeeded) {
+            actionDispatcher.dispatchAction(this::flushPendingEvents);
         }
     }
 
+    private void flushPendingEvents() {
+        List<Backend.Event> events;
+        synchronized (pendingEvents) {
+            events = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+        }
+        if (!events.isEmpty()) {
+            ChangeTrace.send(events, collaborationEngineSupplier.get(),
+                    topic.getId());
+            try {
+                distributor.accept(events);
+            } catch (RuntimeException e) {
+                rollbackOptimisticPuts(events.stream()
+                        .map(Backend.Event::getTrackingId)
+                        .collect(Collectors.toSet()));
+                throw e;
+            }
+        }
+    }
+
+    private static Backend.Event createEvent(UUID id, ObjectNode change) {
+        return new Backend.Event(id, JsonUtil.toString(change));
+    }
+
     private void ensureActiveConnection() {
         if (!isActive()) {
             throw new IllegalStateException("Cannot perform this "
@@ -642,6 +1190,8 @@ public class TopicConnection {
                 return;
             }
 
+            FlightRecorderEvents.ConnectionActivated event = new FlightRecorderEvents.ConnectionActivated();
+            event.begin();
             actionDispatcher.dispatchAction(() -> {
                 if (!activated) {
                     /*
@@ -654,21 +1204,25 @@ public class TopicConnection {
                             "Activation dispatch is run out-of-order.");
                 }
 
-                this.actionDispatcher = actionDispatcher;
+                this.actionDispatcher = collaborationEngineSupplier.get()
+                        .getMetrics().wrap(actionDispatcher, topic.getId());
                 cleanupPending = true;
                 topicActivationHandler.accept(true);
-                Registration changeRegistration = subscribeToChange();
+                synchronized (topic) {
+                    topic.clearExpiredData();
+                }
                 Registration callbackRegistration = connectionActivationCallback
                         .apply(this);
                 addRegistration(callbackRegistration);
-                addRegistration(() -> {
-                    synchronized (topic) {
-                        changeRegistration.remove();
-                    }
-                });
-
-                distributor.accept(UUID.randomUUID(),
-                        JsonUtil.createNodeActivate(topic.getCurrentNodeId()));
+                addRegistration(this::removeChangeRoutes);
+
+                distributor.accept(List.of(createEvent(IdUtil.newId(),
+                        JsonUtil.createNodeActivate(topic.getCurrentNodeId()))));
+                if (event.shouldCommit()) {
+                    event.topic = topic.getId();
+                    event.user = localUser.getId();
+                    event.commit();
+                }
             });
         } else {
             if (!activated) {
@@ -699,8 +1253,12 @@ public class TopicConnection {
                 }
 
                 try {
-                    distributor.accept(UUID.randomUUID(), JsonUtil
-                            .createNodeDeactivate(topic.getCurrentNodeId()));
+                    submitCoalescedPutsOnDeactivation();
+                    flushPendingEvents();
+                    distributor.accept(List.of(createEvent(IdUtil.newId(),
+                            JsonUtil.createNodeDeactivate(
+                                    topic.getCurrentNodeId()))));
+                    this.actionDispatcher.release();
                     this.actionDispatcher = null;
                     this.deactivate();
                 } finally {
@@ -710,15 +1268,117 @@ public class TopicConnection {
         }
     }
 
-    private Registration subscribeToChange() {
+    /*
+     * Changes are routed from the topic only for the collections that this
+     * connection subscribes to or has connection-scoped or optimistic values
+     * in. Changes to any other collection in the same topic are not dispatched
+     * to this connection at all. Routes are kept until the connection is
+     * deactivated.
+     */
+    private void routeMapChanges(String mapName) {
         synchronized (topic) {
-            return topic.subscribeToChange((id, change) -> {
-                // Dispatch only if we're still active
-                if (actionDispatcher != null) {
-                    actionDispatcher
-                            .dispatchAction(() -> handleChange(id, change));
-                }
-            });
+            if (!mapChangeRoutes.containsKey(mapName)) {
+                mapChangeRoutes.put(mapName, topic
+                        .subscribeToMapChange(mapName, this::dispatchChange));
+            }
+        }
+    }
+
+    /*
+     * Changes to a single key are only dispatched through the key route while
+     * there is no route for the whole map, since that would already dispatch
+     * them. Unlike the other routes, key routes are removed together with the
+     * last subscription that includes the key.
+     */
+    private void routeMapKeyChanges(String mapName, String key) {
+        synchronized (topic) {
+            KeyRoute route = mapKeyChangeRoutes
+                    .computeIfAbsent(mapName, k -> new HashMap<>())
+                    .computeIfAbsent(key, k -> new KeyRoute(
+                            topic.subscribeToMapKeyChange(mapName, key,
+                                    (id, change) -> {
+                                        if (!mapChangeRoutes
+                                                .containsKey(mapName)) {
+                                            dispatchChange(id, change);
+                                        }
+                                    })));
+            route.subscriptionCount++;
         }
     }
+
+    private void unrouteMapKeyChanges(String mapName, String key) {
+        synchronized (topic) {
+            Map<String, KeyRoute> routes = mapKeyChangeRoutes.get(mapName);
+            KeyRoute route = routes != null ? routes.get(key) : null;
+            // Routes are already gone if the connection was deactivated
+            if (route == null || --route.subscriptionCount > 0) {
+                return;
+            }
+            route.registration.remove();
+            routes.remove(key);
+            if (routes.isEmpty()) {
+                mapKeyChangeRoutes.remove(mapName);
+            }
+        }
+    }
+
+    private void routeListChanges(String listName) {
+        synchronized (topic) {
+            if (!listChangeRoutes.containsKey(listName)) {
+                listChangeRoutes.put(listName, topic
+                        .subscribeToListChange(listName, this::dispatchChange));
+            }
+        }
+    }
+
+    private void removeChangeRoutes() {
+        synchronized (topic) {
+            mapChangeRoutes.values().forEach(Registration::remove);
+            mapChangeRoutes.clear();
+            mapKeyChangeRoutes.values().forEach(routes -> routes.values()
+                    .forEach(route -> route.registration.remove()));
+            mapKeyChangeRoutes.clear();
+            listChangeRoutes.values().forEach(Registration::remove);
+            listChangeRoutes.clear();
+        }
+    }
+
+    /*
+     * Decoded event values are shared between all subscribers of a change
+     * for types that are known to be immutable.
+     */
+    private boolean isCachedValueType(Class<?> type) {
+        return DecodedValueCache.isImmutable(type)
+                || immutableValueTypes.contains(type);
+    }
+
+    /*
+     * Called while holding the topic lock. Map changes are passed to the
+     * conflated subscribers right away, and the change is only dispatched to
+     * be handled when there is something else in this connection that needs
+     * it.
+     */
+    private void dispatchChange(UUID id, ChangeDetails change) {
+        // Dispatch only if we're still active
+        if (actionDispatcher == null) {
+            return;
+        }
+        if (change instanceof MapChange mapChange) {
+            MapChange visibleChange = getVisibleChange(id, mapChange);
+            if (visibleChange != null && visibleChange.hasChanges()) {
+                notifyConflatedSubscribers(visibleChange);
+            }
+            if (!needsHandling(mapChange.getMapName())) {
+                return;
+            }
+        }
+        actionDispatcher.dispatchAction(
+                ChangeTrace.traceDelivery(() -> handleChange(id, change)));
+    }
+
+    private boolean needsHandling(String mapName) {
+        return subscribersPerMap.containsKey(mapName)
+                || connectionScopedMapKeys.containsKey(mapName)
+                || pendingPuts.containsKey(mapName);
+    }
 }
@@ -15,11 +15,13 @@
  */
 package com.vaadin.collaborationengine;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -28,6 +30,7 @@ import org.junit.Test;
 
 import com.vaadin.collaborationengine.MembershipEvent.MembershipEventType;
 import com.vaadin.collaborationengine.TestUtil.MockConfiguration;
+import com.vaadin.collaborationengine.util.MockConnectionContext;
 import com.vaadin.collaborationengine.util.MockService;
 import com.vaadin.collaborationengine.util.TestBackendFactory;
 
@@ -322,6 +325,191 @@ public class BackendTest {
                 .subscribe(events1.get(0), (id, node) -> events2.add(id)));
     }
 
+    @Test
+    public void subscribeWithOffset_offsetsIncrease_onlyNewerEventsDelivered() {
+        CollaborationEngine node1 = createNode();
+        CollaborationEngine node2 = createNode();
+
+        join(node1);
+
+        node1.openTopicConnection(node1.getSystemContext(), "topic",
+                new UserInfo("foo"), conn -> null);
+
+        join(node2);
+
+        node2.openTopicConnection(node2.getSystemContext(), "topic",
+                new UserInfo("foo"), conn -> null);
+
+        List<UUID> events1 = new ArrayList<>();
+        List<Long> offsets1 = new ArrayList<>();
+
+        Backend.EventLog log1 = getEventLog(node1);
+        try {
+            log1.subscribe(null, Backend.EventLog.NO_OFFSET,
+                    (offset, id, value) -> {
+                        offsets1.add(offset);
+                        events1.add(id);
+                    });
+        } catch (Backend.EventIdNotFoundException e) {
+            Assert.fail();
+        }
+
+        for (int i = 1; i < offsets1.size(); i++) {
+            Assert.assertTrue(offsets1.get(i) > offsets1.get(i - 1));
+        }
+
+        List<UUID> events2 = new ArrayList<>();
+
+        Backend.EventLog log2 = getEventLog(node2);
+        try {
+            log2.subscribe(events1.get(1), offsets1.get(1),
+                    (offset, id, value) -> events2.add(id));
+        } catch (Backend.EventIdNotFoundException e) {
+            Assert.fail();
+        }
+
+        Assert.assertEquals(events1.subList(2, events1.size()), events2);
+    }
+
+    @Test
+    public void truncateWithOffset_subscribeWithTruncatedOffset_subscribeFails() {
+        CollaborationEngine node1 = createNode();
+        CollaborationEngine node2 = createNode();
+
+        join(node1);
+
+        node1.openTopicConnection(node1.getSystemContext(), "topic",
+                new UserInfo("foo"), conn -> null);
+
+        join(node2);
+
+        node2.openTopicConnection(node2.getSystemContext(), "topic",
+                new UserInfo("foo"), conn -> null);
+
+        List<UUID> events1 = new ArrayList<>();
+        List<Long> offsets1 = new ArrayList<>();
+
+        Backend.EventLog log1 = getEventLog(node1);
+        try {
+            log1.subscribe(null, Backend.EventLog.NO_OFFSET,
+                    (offset, id, value) -> {
+                        offsets1.add(offset);
+                        events1.add(id);
+                    });
+        } catch (Backend.EventIdNotFoundException e) {
+            Assert.fail();
+        }
+
+        log1.truncate(events1.get(1), offsets1.get(1));
+
+        List<UUID> events2 = new ArrayList<>();
+
+        Backend.EventLog log2 = getEventLog(node2);
+        try {
+            log2.subscribe(null, (id, value) -> events2.add(id));
+        } catch (Backend.EventIdNotFoundException e) {
+            Assert.fail();
+        }
+
+        Assert.assertEquals(events1.subList(1, events1.size()), events2);
+        Assert.assertThrows(Backend.EventIdNotFoundException.class,
+                () -> log2.subscribe(events1.get(0), offsets1.get(0),
+                        (offset, id, value) -> {
+                        }));
+    }
+
+    @Test
+    public void leaderWritesSnapshots_logTruncatedUpToSnapshotChange()
+            throws Exception {
+        CollaborationEngine node = createNode();
+        join(node);
+        AtomicReference<CollaborationMap> map = new AtomicReference<>();
+        node.openTopicConnection(node.getSystemContext(), "topic",
+                new UserInfo("foo"), conn -> {
+                    map.set(conn.getNamedMap("map"));
+                    return null;
+                });
+        for (int i = 0; i < 250; i++) {
+            map.get().put("key", i);
+        }
+
+        Backend backend = node.getConfiguration().getBackend();
+        Topic.Snapshot snapshot = new Topic.Snapshot(JsonUtil.fromString(
+                backend.loadLatestSnapshot("topic").join().getPayload()));
+        List<UUID> ids = new ArrayList<>();
+        backend.openEventLog("topic").subscribe(null,
+                (id, payload) -> ids.add(id));
+
+        Assert.assertEquals(snapshot.getLatestChangeId(), ids.get(0));
+    }
+
+    @Test
+    public void lastConnectionDeactivated_topicUnloaded_loadedAgainOnActivation() {
+        CollaborationEngine node1 = createNode(Duration.ZERO);
+        CollaborationEngine node2 = createNode();
+        join(node1);
+        join(node2);
+        MockConnectionContext context = MockConnectionContext.createEager();
+        AtomicReference<String> value = new AtomicReference<>();
+
+        node1.openTopicConnection(context, "topic", new UserInfo("foo"),
+                conn -> {
+                    value.set(conn.getNamedMap("map").get("key",
+                            String.class));
+                    return null;
+                });
+        context.deactivate();
+        Topic topic = node1.getTopic("topic");
+        Assert.assertFalse("Topic should be unloaded", topic.isLoaded());
+
+        node2.openTopicConnection(node2.getSystemContext(), "topic",
+                new UserInfo("bar"), conn -> {
+                    conn.getNamedMap("map").put("key", "value");
+                    return null;
+                });
+        context.activate();
+
+        Assert.assertTrue("Topic should be loaded", topic.isLoaded());
+        Assert.assertEquals("value", value.get());
+    }
+
+    @Test
+    public void leaderUnloadsTopic_otherNodeBecomesLeader() {
+        CollaborationEngine node1 = createNode(Duration.ZERO);
+        CollaborationEngine node2 = createNode();
+        AtomicBoolean isLeader = new AtomicBoolean();
+        join(node1);
+        join(node2);
+        MockConnectionContext context = MockConnectionContext.createEager();
+
+        node1.openTopicConnection(context, "topic", new UserInfo("foo"),
+                conn -> null);
+        node2.openTopicConnection(node2.getSystemContext(), "topic",
+                new UserInfo("bar"), conn -> null);
+        context.deactivate();
+
+        node2.openTopicConnection(node2.getSystemContext(), "topic",
+                new UserInfo("bar"), conn -> {
+                    isLeader.set(conn.getTopic().isLeader());
+                    return null;
+                });
+        Assert.assertTrue("Node has not become topic leader", isLeader.get());
+    }
+
+    @Test
+    public void noUnloadDelay_lastConnectionDeactivated_topicStaysLoaded() {
+        CollaborationEngine node = createNode();
+        join(node);
+        MockConnectionContext context = MockConnectionContext.createEager();
+
+        node.openTopicConnection(context, "topic", new UserInfo("foo"),
+                conn -> null);
+        context.deactivate();
+
+        Assert.assertTrue("Topic should be loaded",
+                node.getTopic("topic").isLoaded());
+    }
+
     @Test
     public void initializeFromSnapshot_retryOnce_initializationSucceeds() {
         CollaborationEngine node = createNode();
@@ -345,8 +533,13 @@ public class BackendTest {
     }
 
     private CollaborationEngine createNode() {
+        return createNode(null);
+    }
+
+    private CollaborationEngine createNode(Duration topicUnloadDelay) {
         CollaborationEngineConfiguration conf = new MockConfiguration();
         conf.setBackend(backendFactory.createBackend());
+        conf.setTopicUnloadDelay(topicUnloadDelay);
         return TestUtil.createTestCollaborationEngine(new MockService(), conf);
     }
 
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.vaadin.collaborationengine.util.MockConnectionContext;
+import com.vaadin.collaborationengine.util.MockConnectionContext.MockActionDispatcher;
+import com.vaadin.collaborationengine.util.MockService;
+import com.vaadin.flow.server.Command;
+
+public class ChangeTraceTest {
+
+    private final InMemoryMetrics metrics = new InMemoryMetrics();
+
+    private final MockConnectionContext context = MockConnectionContext
+            .createEager();
+
+    private CollaborationEngine ce;
+
+    @Test
+    public void allChangesSampled_putValue_allLocalStagesRecorded() {
+        createEngine(1);
+        CollaborationMap map = openMap();
+        map.subscribe(event -> {
+        });
+
+        map.put("key", "value");
+
+        for (String stage : new String[] {
+                CollaborationEngineMetrics.TRACE_DISPATCH,
+                CollaborationEngineMetrics.TRACE_BACKEND,
+                CollaborationEngineMetrics.TRACE_APPLY,
+                CollaborationEngineMetrics.TRACE_FAN_OUT,
+                CollaborationEngineMetrics.TRACE_ACCESS,
+                CollaborationEngineMetrics.TRACE_DELIVERY,
+                CollaborationEngineMetrics.TRACE_END_TO_END }) {
+            Assert.assertEquals(stage, 1, getTraceCount(stage));
+        }
+        Assert.assertEquals(0, getTraceCount(
+                CollaborationEngineMetrics.TRACE_REMOTE_END_TO_END));
+    }
+
+    @Test
+    public void noChangesSampled_putValue_nothingRecorded() {
+        createEngine(0);
+
+        openMap().put("key", "value");
+
+        Assert.assertTrue(metrics.getHistograms().keySet().stream().noneMatch(
+                name -> name.startsWith("collaboration-engine.trace.")));
+    }
+
+    @Test
+    public void heldDispatcher_deliveryTracedWhenReleased() {
+        createEngine(1);
+        CollaborationMap map = openMap();
+        map.subscribe(event -> {
+        });
+        MockActionDispatcher dispatcher = (MockActionDispatcher) context
+                .getActionDispatcher();
+        dispatcher.hold();
+
+        map.put("key", "value");
+        Assert.assertEquals(0,
+                getTraceCount(CollaborationEngineMetrics.TRACE_END_TO_END));
+
+        dispatcher.release();
+        Assert.assertEquals(1,
+                getTraceCount(CollaborationEngineMetrics.TRACE_END_TO_END));
+    }
+
+    @Test
+    public void changeFromOtherNode_remoteEndToEndRecorded() {
+        createEngine(0);
+        ObjectNode change = JsonUtil.createPutChange("map", "key", null,
+                MockJson.FOO, null);
+        change.putObject(JsonUtil.CHANGE_TRACE)
+                .put(JsonUtil.CHANGE_TRACE_SUBMITTED, 0)
+                .put(JsonUtil.CHANGE_NODE_ID, UUID.randomUUID().toString());
+
+        ChangeTrace trace = ChangeTrace.startApply(change, ce, "topic");
+        Command delivery = ChangeTrace.traceDelivery(() -> {
+        });
+        trace.applied();
+        delivery.execute();
+
+        Assert.assertEquals(1, getTraceCount(
+                CollaborationEngineMetrics.TRACE_REMOTE_END_TO_END));
+        Assert.assertEquals(0,
+                getTraceCount(CollaborationEngineMetrics.TRACE_END_TO_END));
+    }
+
+    @Test
+    public void untracedChange_notTraced() {
+        createEngine(1);
+        ObjectNode change = JsonUtil.createPutChange("map", "key", null,
+                MockJson.FOO, null);
+
+        Assert.assertNull(ChangeTrace.startApply(change, ce, "topic"));
+    }
+
+    @Test
+    public void lastConnectionDeactivated_topicHistogramsRemoved() {
+        createEngine(1);
+        TopicConnectionRegistration registration = ce.openTopicConnection(
+                context, "topic", SystemUserInfo.getInstance(), connection -> {
+                    connection.getNamedMap("map").put("key", "value");
+                    return null;
+                });
+        Assert.assertEquals(1,
+                getTraceCount(CollaborationEngineMetrics.TRACE_APPLY));
+
+        registration.remove();
+
+        Assert.assertTrue(metrics.getHistograms().keySet().stream().noneMatch(
+                name -> name.startsWith("collaboration-engine.trace.")));
+    }
+
+    @Test
+    public void tooManyTracedTopics_changeOfOtherTopicNotTraced() {
+        createEngine(1);
+        EngineMetrics engineMetrics = ce.getMetrics();
+        for (int i = 0; i < EngineMetrics.MAX_TRACED_TOPICS; i++) {
+            Assert.assertNotNull(engineMetrics.getTraceStages("topic" + i));
+        }
+
+        Assert.assertNull(engineMetrics.getTraceStages("other"));
+        Assert.assertNotNull(engineMetrics.getTraceStages("topic0"));
+
+        engineMetrics.releaseTraceStages("topic0");
+        Assert.assertNotNull(engineMetrics.getTraceStages("other"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sampleRateAboveOne_throws() {
+        new CollaborationEngineConfiguration().setChangeTraceSampleRate(1.5);
+    }
+
+    private void createEngine(double sampleRate) {
+        TestUtil.MockConfiguration configuration = new TestUtil.MockConfiguration();
+        configuration.setMetrics(metrics);
+        configuration.setChangeTraceSampleRate(sampleRate);
+        ce = TestUtil.createTestCollaborationEngine(new MockService(),
+                configuration);
+    }
+
+    private CollaborationMap openMap() {
+        CollaborationMap[] opened = new CollaborationMap[1];
+        ce.openTopicConnection(context, "topic", SystemUserInfo.getInstance(),
+                connection -> {
+                    opened[0] = connection.getNamedMap("map");
+                    return null;
+                });
+        return opened[0];
+    }
+
+    private long getTraceCount(String stage) {
+        InMemoryMetrics.HistogramSnapshot histogram = metrics.getHistograms()
+                .get(stage + "[topic]");
+        return histogram != null ? histogram.getCount() : 0;
+    }
+}
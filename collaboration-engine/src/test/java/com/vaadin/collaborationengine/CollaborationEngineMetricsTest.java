@@ -0,0 +1,195 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.collaborationengine.util.MockConnectionContext;
+import com.vaadin.collaborationengine.util.MockConnectionContext.MockActionDispatcher;
+import com.vaadin.collaborationengine.util.MockService;
+
+public class CollaborationEngineMetricsTest {
+
+    private final InMemoryMetrics metrics = new InMemoryMetrics();
+
+    private final MockConnectionContext context = MockConnectionContext
+            .createEager();
+
+    private CollaborationEngine ce;
+
+    private CollaborationMap map;
+
+    @Before
+    public void init() {
+        TestUtil.MockConfiguration configuration = new TestUtil.MockConfiguration();
+        configuration.setMetrics(metrics);
+        ce = TestUtil.createTestCollaborationEngine(new MockService(),
+                configuration);
+        map = openMap(context);
+    }
+
+    @Test
+    public void defaultConfiguration_noMetrics() {
+        CollaborationEngineConfiguration configuration = new CollaborationEngineConfiguration();
+
+        Assert.assertSame(EngineMetrics.NO_OP, configuration.getMetrics());
+    }
+
+    @Test
+    public void noMetrics_actionRunByWrappedDispatcher() {
+        boolean[] run = new boolean[1];
+
+        EngineMetrics.DISABLED.wrap(context.getActionDispatcher(), "topic")
+                .dispatchAction(() -> run[0] = true);
+
+        Assert.assertTrue(run[0]);
+    }
+
+    @Test
+    public void putValue_changeAcceptedAndTimed() {
+        map.put("key", "value");
+
+        Assert.assertEquals(1,
+                getCounter(CollaborationEngineMetrics.CHANGES_ACCEPTED));
+        Assert.assertEquals(0,
+                getCounter(CollaborationEngineMetrics.CHANGES_REJECTED));
+        Assert.assertTrue(
+                getHistogramCount(CollaborationEngineMetrics.CHANGE_DURATION)
+                        > 0);
+    }
+
+    @Test
+    public void replaceWithUnexpectedValue_changeRejected() {
+        map.put("key", "value");
+
+        map.replace("key", "other", "new");
+
+        Assert.assertEquals(1,
+                getCounter(CollaborationEngineMetrics.CHANGES_ACCEPTED));
+        Assert.assertEquals(1,
+                getCounter(CollaborationEngineMetrics.CHANGES_REJECTED));
+    }
+
+    @Test
+    public void firstChange_snapshotTimed() {
+        Assert.assertEquals(0, getHistogramCount(
+                CollaborationEngineMetrics.SNAPSHOT_DURATION));
+
+        map.put("key", "value");
+
+        Assert.assertEquals(1, getHistogramCount(
+                CollaborationEngineMetrics.SNAPSHOT_DURATION));
+    }
+
+    @Test
+    public void openConnections_connectionGauges() {
+        openMap(MockConnectionContext.createEager());
+
+        Assert.assertEquals(2, getGauge(CollaborationEngineMetrics.CONNECTIONS));
+        Assert.assertEquals(1,
+                getGauge(CollaborationEngineMetrics.ACTIVE_TOPICS));
+        Assert.assertEquals(2,
+                getGauge(CollaborationEngineMetrics.MAX_TOPIC_CONNECTIONS));
+    }
+
+    @Test
+    public void heldActions_countedAsPendingUntilRun() {
+        map.subscribe(event -> {
+        });
+        long dispatched = getCounter(
+                CollaborationEngineMetrics.ACTIONS_DISPATCHED);
+        MockActionDispatcher dispatcher = (MockActionDispatcher) context
+                .getActionDispatcher();
+        dispatcher.hold();
+
+        map.put("key", "value");
+
+        Assert.assertTrue(
+                getGauge(CollaborationEngineMetrics.ACTIONS_PENDING) > 0);
+        Assert.assertTrue(
+                getCounter(CollaborationEngineMetrics.ACTIONS_DISPATCHED)
+                        > dispatched);
+
+        dispatcher.release();
+
+        Assert.assertEquals(0,
+                getGauge(CollaborationEngineMetrics.ACTIONS_PENDING));
+        Assert.assertEquals(
+                getCounter(CollaborationEngineMetrics.ACTIONS_DISPATCHED),
+                getHistogramCount(
+                        CollaborationEngineMetrics.ACTION_WAIT_DURATION));
+    }
+
+    @Test
+    public void heldActions_dispatcherReleased_noLongerCountedAsPending() {
+        InMemoryMetrics otherMetrics = new InMemoryMetrics();
+        EngineMetrics engineMetrics = new EngineMetrics(otherMetrics, 0);
+        MockConnectionContext otherContext = new MockConnectionContext();
+        otherContext.setExecutor(Runnable::run);
+        MockActionDispatcher dispatcher = (MockActionDispatcher) otherContext
+                .getActionDispatcher();
+        dispatcher.hold();
+        EngineMetrics.MeteredActionDispatcher metered = engineMetrics
+                .wrap(dispatcher, "topic");
+        metered.dispatchAction(() -> {
+        });
+        metered.dispatchAction(() -> {
+        });
+        Assert.assertEquals(2, (long) otherMetrics
+                .getGauges().get(CollaborationEngineMetrics.ACTIONS_PENDING));
+
+        metered.release();
+        Assert.assertEquals(0, (long) otherMetrics
+                .getGauges().get(CollaborationEngineMetrics.ACTIONS_PENDING));
+
+        // A context that becomes active again still runs the actions
+        dispatcher.release();
+        Assert.assertEquals(0, (long) otherMetrics
+                .getGauges().get(CollaborationEngineMetrics.ACTIONS_PENDING));
+    }
+
+    @Test
+    public void noChangesInProgress_noChangeResultTrackers() {
+        map.put("key", "value");
+
+        Assert.assertEquals(0,
+                getGauge(CollaborationEngineMetrics.CHANGE_RESULT_TRACKERS));
+    }
+
+    private CollaborationMap openMap(MockConnectionContext connectionContext) {
+        CollaborationMap[] opened = new CollaborationMap[1];
+        ce.openTopicConnection(connectionContext, "topic",
+                SystemUserInfo.getInstance(), connection -> {
+                    opened[0] = connection.getNamedMap("map");
+                    return null;
+                });
+        return opened[0];
+    }
+
+    private long getCounter(String name) {
+        return metrics.getCounters().getOrDefault(name, 0L);
+    }
+
+    private long getGauge(String name) {
+        return metrics.getGauges().get(name);
+    }
+
+    private long getHistogramCount(String name) {
+        return metrics.getHistograms().get(name).getCount();
+    }
+}
@@ -33,6 +33,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.TextNode;
 import com.vaadin.collaborationengine.util.MockConnectionContext;
 import com.vaadin.collaborationengine.util.MockConnectionContext.MockActionDispatcher;
 
@@ -1079,6 +1081,18 @@ public class CollaborationListTest {
         // All is fine if openTopicConnection runs successfully
     }
 
+    @Test
+    public void getItem_itemValueImmutable() {
+        ListKey key = list.insertLast(Arrays.asList("foo", "bar")).getKey();
+
+        ArrayNode itemNode = list.getItem(key, ArrayNode.class);
+        itemNode.set(0, new TextNode("baz"));
+
+        Assert.assertEquals(Arrays.asList("foo", "bar"),
+                list.getItem(key, new TypeReference<List<String>>() {
+                }));
+    }
+
     @Test
     public void insertAndSubscribe_thenDispatch_subscriberInvokedOnce() {
         dispatcher.hold();
@@ -1090,6 +1104,45 @@ public class CollaborationListTest {
         spy.assertNoExpectedEvents();
     }
 
+    @Test
+    public void listWithItems_subscribe_initialStateDeliveredInOneAction() {
+        insertLast(list, "foo", "bar", "baz");
+        List<List<String>> initialStates = new ArrayList<>();
+        context.resetActionDispatchCount();
+
+        list.subscribe(new ListSubscriber() {
+            @Override
+            public void onListChange(ListChangeEvent event) {
+                Assert.fail("Expected only the initial state");
+            }
+
+            @Override
+            public void onInitialState(List<ListChangeEvent> events) {
+                initialStates.add(events.stream()
+                        .map(event -> event.getValue(String.class))
+                        .collect(Collectors.toList()));
+            }
+        });
+
+        Assert.assertEquals(List.of(List.of("foo", "bar", "baz")),
+                initialStates);
+        Assert.assertEquals(1, context.getDispatchActionCount());
+    }
+
+    @Test
+    public void emptyList_subscribe_noInitialState() {
+        list.subscribe(new ListSubscriber() {
+            @Override
+            public void onListChange(ListChangeEvent event) {
+            }
+
+            @Override
+            public void onInitialState(List<ListChangeEvent> events) {
+                Assert.fail("No initial state expected for an empty list");
+            }
+        });
+    }
+
     private static List<ListKey> insertLast(CollaborationList list,
             String... values) {
         return Stream.of(values).map(list::insertLast)
@@ -17,11 +17,13 @@ package com.vaadin.collaborationengine;
 
 import java.time.Clock;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
@@ -36,6 +38,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.vaadin.collaborationengine.util.MockConnectionContext;
 import com.vaadin.collaborationengine.util.MockConnectionContext.MockActionDispatcher;
+import com.vaadin.collaborationengine.util.MockService;
 import com.vaadin.flow.shared.Registration;
 
 public class CollaborationMapTest {
@@ -519,4 +522,266 @@ public class CollaborationMapTest {
         dispatcher.release();
         spy.assertNoExpectedEvents();
     }
+
+    @Test
+    public void subscribeConflated_changesWhileBehind_oneEventWithLatestValue() {
+        CollaborationMap otherMap = openOtherMap();
+        map.subscribeConflated(spy);
+        dispatcher.hold();
+
+        otherMap.put("one", "a");
+        otherMap.put("one", "b");
+        otherMap.put("two", "c");
+        otherMap.put("one", "d");
+
+        spy.addExpectedEvent("one", null, "d");
+        spy.addExpectedEvent("two", null, "c");
+        dispatcher.releaseInOrder();
+        spy.assertNoExpectedEvents();
+    }
+
+    @Test
+    public void subscribeConflated_changesWhileBehind_singleActionQueued() {
+        CollaborationMap otherMap = openOtherMap();
+        map.subscribeConflated(spy);
+        dispatcher.hold();
+
+        for (int i = 0; i < 10; i++) {
+            otherMap.put("one", "value" + i);
+            otherMap.put("two", "value" + i);
+        }
+
+        Assert.assertEquals(1, dispatcher.getHeldActionCount());
+        spy.addExpectedEvent("one", null, "value9");
+        spy.addExpectedEvent("two", null, "value9");
+        dispatcher.releaseInOrder();
+        spy.assertNoExpectedEvents();
+    }
+
+    @Test
+    public void subscribeConflated_valueChangedBack_noEvent() {
+        CollaborationMap otherMap = openOtherMap();
+        otherMap.put("one", "a");
+        spy.addExpectedEvent("one", null, "a");
+        map.subscribeConflated(spy);
+        spy.assertNoExpectedEvents();
+        dispatcher.hold();
+
+        otherMap.put("one", "b");
+        otherMap.put("one", "a");
+
+        dispatcher.releaseInOrder();
+        // Spy would throw if an event is fired
+    }
+
+    @Test
+    public void subscribeConflated_notBehind_eventForEachChange() {
+        map.subscribeConflated(spy);
+
+        spy.addExpectedEvent("one", null, "a");
+        map.put("one", "a");
+        spy.assertNoExpectedEvents();
+
+        spy.addExpectedEvent("one", "a", "b");
+        map.put("one", "b");
+        spy.assertNoExpectedEvents();
+    }
+
+    @Test
+    public void subscribe_changesWhileBehind_eventForEachChange() {
+        CollaborationMap otherMap = openOtherMap();
+        List<String> values = new ArrayList<>();
+        map.subscribe(event -> values.add(event.getValue(String.class)));
+        dispatcher.hold();
+
+        otherMap.put("one", "a");
+        otherMap.put("one", "b");
+
+        dispatcher.releaseInOrder();
+        Assert.assertEquals(Arrays.asList("a", "b"), values);
+    }
+
+    @Test
+    public void subscribeToKeys_eventsOnlyForSubscribedKeys() {
+        CollaborationMap otherMap = openOtherMap();
+        otherMap.put("one", "a");
+        otherMap.put("two", "a");
+        spy.addExpectedEvent("one", null, "a");
+        map.subscribe(Set.of("one", "three"), spy);
+        spy.assertNoExpectedEvents();
+
+        otherMap.put("two", "b");
+        spy.addExpectedEvent("three", null, "a");
+        otherMap.put("three", "a");
+        spy.assertNoExpectedEvents();
+    }
+
+    @Test
+    public void subscribeToKeys_changeToOtherKey_notDispatchedToConnection() {
+        CollaborationMap otherMap = openOtherMap();
+        map.subscribe(Set.of("one"), spy);
+        context.resetActionDispatchCount();
+
+        otherMap.put("two", "a");
+
+        Assert.assertEquals(0, context.getDispatchActionCount());
+    }
+
+    @Test
+    public void subscribeToKeys_alsoSubscribedToMap_eventsDeliveredOnce() {
+        CollaborationMap otherMap = openOtherMap();
+        List<String> values = new ArrayList<>();
+        map.subscribe(Set.of("one"),
+                event -> values.add(event.getValue(String.class)));
+        map.subscribe(event -> {
+        });
+
+        otherMap.put("one", "a");
+
+        Assert.assertEquals(List.of("a"), values);
+    }
+
+    @Test
+    public void subscribeToKeys_registrationsRemoved_keyRoutesRemoved() {
+        CollaborationMap otherMap = openOtherMap();
+        List<String> values = new ArrayList<>();
+        Registration first = map.subscribe(Set.of("one", "two"),
+                event -> values.add(event.getValue(String.class)));
+        Registration second = map.subscribe(Set.of("two"),
+                event -> values.add(event.getValue(String.class)));
+
+        first.remove();
+        first.remove();
+        otherMap.put("one", "a");
+        otherMap.put("two", "b");
+        Assert.assertEquals(List.of("b"), values);
+        Assert.assertTrue(connection.getTopic().hasMapKeyChangeListeners());
+
+        second.remove();
+        Assert.assertFalse(connection.getTopic().hasMapKeyChangeListeners());
+    }
+
+    @Test
+    public void subscribeWithKeyFilter_eventsOnlyForMatchingKeys() {
+        CollaborationMap otherMap = openOtherMap();
+        otherMap.put("cell-1", "a");
+        otherMap.put("row-1", "a");
+        spy.addExpectedEvent("cell-1", null, "a");
+        map.subscribe(key -> key.startsWith("cell-"), spy);
+        spy.assertNoExpectedEvents();
+
+        otherMap.put("row-1", "b");
+        spy.addExpectedEvent("cell-2", null, "a");
+        otherMap.put("cell-2", "a");
+        spy.assertNoExpectedEvents();
+    }
+
+    @Test
+    public void mapWithValues_subscribe_initialStateDeliveredInOneAction() {
+        map.put("one", "first");
+        map.put("two", "second");
+        Map<String, String> initialState = new HashMap<>();
+        context.resetActionDispatchCount();
+
+        map.subscribe(new MapSubscriber() {
+            @Override
+            public void onMapChange(MapChangeEvent event) {
+                Assert.fail("Expected only the initial state");
+            }
+
+            @Override
+            public void onInitialState(List<MapChangeEvent> events) {
+                Assert.assertTrue(initialState.isEmpty());
+                events.forEach(event -> initialState.put(event.getKey(),
+                        event.getValue(String.class)));
+            }
+        });
+
+        Assert.assertEquals(Map.of("one", "first", "two", "second"),
+                initialState);
+        Assert.assertEquals(1, context.getDispatchActionCount());
+    }
+
+    @Test
+    public void subscribeToKeys_initialStateOnlyForSubscribedKeys() {
+        map.put("one", "first");
+        map.put("two", "second");
+        List<String> keys = new ArrayList<>();
+
+        map.subscribe(Set.of("two"), new MapSubscriber() {
+            @Override
+            public void onMapChange(MapChangeEvent event) {
+                Assert.fail("Expected only the initial state");
+            }
+
+            @Override
+            public void onInitialState(List<MapChangeEvent> events) {
+                events.forEach(event -> keys.add(event.getKey()));
+            }
+        });
+
+        Assert.assertEquals(List.of("two"), keys);
+    }
+
+    @Test
+    public void immutableValueType_sameInstanceForAllSubscribers() {
+        List<Object> values = new ArrayList<>();
+        map.subscribe(event -> values.add(event.getValue(String.class)));
+        openOtherMap()
+                .subscribe(event -> values.add(event.getValue(String.class)));
+
+        map.put("key", "value");
+
+        Assert.assertEquals(2, values.size());
+        Assert.assertSame(values.get(0), values.get(1));
+    }
+
+    @Test
+    public void mutableValueType_instancePerSubscriber() {
+        List<Object> values = new ArrayList<>();
+        map.subscribe(event -> values.add(event.getValue(UserInfo.class)));
+        openOtherMap()
+                .subscribe(event -> values.add(event.getValue(UserInfo.class)));
+
+        map.put("key", new UserInfo("id"));
+
+        Assert.assertEquals(2, values.size());
+        Assert.assertNotSame(values.get(0), values.get(1));
+    }
+
+    @Test
+    public void declaredImmutableValueType_sameInstanceForAllSubscribers() {
+        CollaborationEngineConfiguration configuration = new TestUtil.MockConfiguration();
+        configuration.setImmutableValueTypes(Set.of(UserInfo.class));
+        CollaborationEngine engine = TestUtil.createTestCollaborationEngine(
+                new MockService(), configuration);
+        List<Object> values = new ArrayList<>();
+        List<CollaborationMap> maps = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            engine.openTopicConnection(MockConnectionContext.createEager(),
+                    "topic", SystemUserInfo.getInstance(), topicConnection -> {
+                        CollaborationMap namedMap = topicConnection
+                                .getNamedMap("foo");
+                        namedMap.subscribe(event -> values
+                                .add(event.getValue(UserInfo.class)));
+                        maps.add(namedMap);
+                        return null;
+                    });
+        }
+
+        maps.get(0).put("key", new UserInfo("id"));
+
+        Assert.assertEquals(2, values.size());
+        Assert.assertSame(values.get(0), values.get(1));
+    }
+
+    private CollaborationMap openOtherMap() {
+        AtomicReference<CollaborationMap> otherMap = new AtomicReference<>();
+        ce.openTopicConnection(MockConnectionContext.createEager(), "topic",
+                SystemUserInfo.getInstance(), topicConnection -> {
+                    otherMap.set(topicConnection.getNamedMap("foo"));
+                    return null;
+                });
+        return otherMap.get();
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.vaadin.collaborationengine.TestUtil.MockConfiguration;
+import com.vaadin.collaborationengine.util.MockService;
+
+public class CompactValueStorageTest {
+
+    private static final JsonNode MESSAGE = JsonUtil
+            .toJsonNode(Map.of("text", "hello", "tags", List.of("a", "b")));
+
+    private Topic topic;
+
+    @Before
+    public void init() {
+        topic = createTopic(true);
+    }
+
+    @Test
+    public void putValue_sameValueRead() {
+        put(topic, "key", MESSAGE, null);
+
+        Assert.assertEquals(MESSAGE, topic.getMapValue("map", "key"));
+    }
+
+    @Test
+    public void putWithExpectedValue_comparedToStoredValue() {
+        put(topic, "key", MockJson.FOO, null);
+
+        put(topic, "key", MockJson.BAZ, MockJson.QUX);
+        Assert.assertEquals(MockJson.FOO, topic.getMapValue("map", "key"));
+
+        put(topic, "key", MockJson.BAZ, MockJson.FOO);
+        Assert.assertEquals(MockJson.BAZ, topic.getMapValue("map", "key"));
+    }
+
+    @Test
+    public void insertListItem_sameValueRead() {
+        insert(topic, MESSAGE);
+        insert(topic, MockJson.FOO);
+
+        Assert.assertEquals(List.of(MESSAGE, MockJson.FOO), topic
+                .getListItems("list").map(item -> item.getValue()).toList());
+    }
+
+    @Test
+    public void snapshot_sameAsWithoutCompactStorage() {
+        Topic treeTopic = createTopic(false);
+        UUID putId = UUID.randomUUID();
+        UUID insertId = UUID.randomUUID();
+        for (Topic t : List.of(topic, treeTopic)) {
+            t.applyChange(putId, createPut("key", MESSAGE, null));
+            t.applyChange(insertId, createInsert(MESSAGE));
+        }
+        UUID latest = UUID.randomUUID();
+
+        Assert.assertEquals(
+                Topic.Snapshot.fromTopic(treeTopic, latest).toObjectNode(),
+                Topic.Snapshot.fromTopic(topic, latest).toObjectNode());
+    }
+
+    @Test
+    public void loadSnapshot_valuesRead() {
+        put(topic, "key", MESSAGE, null);
+        insert(topic, MESSAGE);
+        Topic.Snapshot snapshot = Topic.Snapshot.fromTopic(topic,
+                UUID.randomUUID());
+
+        Topic loaded = createTopic(true);
+        loaded.loadSnapshot(snapshot);
+
+        Assert.assertEquals(MESSAGE, loaded.getMapValue("map", "key"));
+        Assert.assertEquals(List.of(MESSAGE), loaded.getListItems("list")
+                .map(item -> item.getValue()).toList());
+    }
+
+    @Test
+    public void decodedValues_leastRecentlyUsedValueEvicted() {
+        StoredValue.DecodedValues decodedValues = new StoredValue.DecodedValues(
+                1);
+
+        StoredValue first = StoredValue.compact(MockJson.FOO, decodedValues);
+        StoredValue second = StoredValue.compact(MockJson.BAZ, decodedValues);
+
+        Assert.assertEquals(1, decodedValues.size());
+        Assert.assertEquals(MockJson.FOO, first.get());
+        Assert.assertEquals(MockJson.BAZ, second.get());
+        Assert.assertEquals(1, decodedValues.size());
+    }
+
+    @Test
+    public void streamListEntries_valuesNotDecodedUntilRead() {
+        StoredValue.DecodedValues decodedValues = new StoredValue.DecodedValues(
+                1);
+        JsonNode last = JsonUtil.toJsonNode("last");
+        EntryList list = new EntryList();
+        list.insertLast(UUID.randomUUID(),
+                StoredValue.compact(MESSAGE, decodedValues), null, null);
+        list.insertLast(UUID.randomUUID(),
+                StoredValue.compact(last, decodedValues), null, null);
+
+        List<EntryList.ListEntrySnapshot> entries = list.stream().toList();
+
+        // Decoding the first value would have evicted the cached last value
+        Assert.assertSame(last, entries.get(1).getValue());
+    }
+
+    @Test
+    public void decodedValues_hotValueDecodedOnce() {
+        StoredValue.DecodedValues decodedValues = new StoredValue.DecodedValues(
+                1);
+        StoredValue value = StoredValue.compact(MESSAGE, decodedValues);
+
+        Assert.assertSame(value.get(), value.get());
+    }
+
+    private static Topic createTopic(boolean compact) {
+        CollaborationEngineConfiguration conf = new MockConfiguration();
+        conf.setCompactValueStorage(compact);
+        CollaborationEngine ce = TestUtil
+                .createTestCollaborationEngine(new MockService(), conf);
+        return new Topic("id", () -> ce, null);
+    }
+
+    private static void put(Topic topic, String key, JsonNode value,
+            JsonNode expectedValue) {
+        topic.applyChange(UUID.randomUUID(),
+                createPut(key, value, expectedValue));
+    }
+
+    private static void insert(Topic topic, JsonNode value) {
+        topic.applyChange(UUID.randomUUID(), createInsert(value));
+    }
+
+    private static String createPut(String key, JsonNode value,
+            JsonNode expectedValue) {
+        return JsonUtil.toString(JsonUtil.createPutChange("map", key,
+                expectedValue, value, null));
+    }
+
+    private static String createInsert(JsonNode value) {
+        return JsonUtil.toString(JsonUtil.createListChange(
+                ListOperation.OperationType.INSERT_BEFORE, "list", null, null,
+                value, null, Collections.emptyMap(), Collections.emptyMap(),
+                null));
+    }
+}
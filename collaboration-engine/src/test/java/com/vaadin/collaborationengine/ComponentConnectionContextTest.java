@@ -319,6 +319,46 @@ public class ComponentConnectionContextTest {
                 Arrays.asList("command"), executed);
     }
 
+    @Test
+    public void activeContext_dispatchSeveralActions_uiAccessedOnce() {
+        ui.add(component);
+        ComponentConnectionContext context = new ComponentConnectionContext(
+                component);
+        context.init(activationHandler, Runnable::run);
+        ui.setExecuteAccessTasks(false);
+        ui.getAccessTasks().clear();
+        ActionDispatcher dispatcher = activationHandler.getActionDispatcher();
+
+        ArrayList<String> executed = new ArrayList<>();
+        dispatcher.dispatchAction(() -> executed.add("foo"));
+        dispatcher.dispatchAction(() -> executed.add("bar"));
+        dispatcher.dispatchAction(() -> executed.add("baz"));
+
+        Assert.assertEquals(1, ui.getAccessTasks().size());
+        ui.runAccessTasks();
+        Assert.assertEquals(Arrays.asList("foo", "bar", "baz"), executed);
+    }
+
+    @Test
+    public void activeContext_dispatchActionAfterFlush_uiAccessedAgain() {
+        ui.add(component);
+        ComponentConnectionContext context = new ComponentConnectionContext(
+                component);
+        context.init(activationHandler, Runnable::run);
+        ui.setExecuteAccessTasks(false);
+        ui.getAccessTasks().clear();
+        ActionDispatcher dispatcher = activationHandler.getActionDispatcher();
+
+        ArrayList<String> executed = new ArrayList<>();
+        dispatcher.dispatchAction(() -> executed.add("foo"));
+        ui.runAccessTasks();
+        dispatcher.dispatchAction(() -> executed.add("bar"));
+
+        Assert.assertEquals(1, ui.getAccessTasks().size());
+        ui.runAccessTasks();
+        Assert.assertEquals(Arrays.asList("foo", "bar"), executed);
+    }
+
     @Test
     public void deactivatedContext_dispatchAction_actionsEnqueued() {
         ui.add(component);
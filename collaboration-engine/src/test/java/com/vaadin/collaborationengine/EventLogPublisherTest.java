@@ -0,0 +1,196 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.collaborationengine.Backend.EventLog;
+import com.vaadin.collaborationengine.Backend.OffsetEvent;
+import com.vaadin.collaborationengine.util.TestBackendFactory;
+
+public class EventLogPublisherTest {
+
+    private EventLog log;
+
+    private RecordingSubscriber subscriber;
+
+    @Before
+    public void init() {
+        log = new TestBackendFactory().createBackend()
+                .openEventLog(EventLogPublisherTest.class.getName());
+        subscriber = new RecordingSubscriber();
+    }
+
+    @Test
+    public void eventsDeliveredOnlyWhenRequested() {
+        log.publisher(null, EventLog.NO_OFFSET).subscribe(subscriber);
+        subscriber.subscription.request(2);
+
+        submit("a", "b", "c");
+        Assert.assertEquals(List.of("a", "b"), subscriber.payloads);
+
+        subscriber.subscription.request(1);
+        Assert.assertEquals(List.of("a", "b", "c"), subscriber.payloads);
+    }
+
+    @Test
+    public void subscribeWithOffset_onlyNewerEventsDelivered() {
+        submit("a", "b", "c");
+        List<OffsetEvent> all = new ArrayList<>();
+        RecordingSubscriber first = new RecordingSubscriber();
+        first.onEvent = all::add;
+        log.publisher(null, EventLog.NO_OFFSET).subscribe(first);
+        first.subscription.request(Long.MAX_VALUE);
+
+        OffsetEvent newerThan = all.get(0);
+        log.publisher(newerThan.getTrackingId(), newerThan.getOffset())
+                .subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        Assert.assertEquals(List.of("b", "c"), subscriber.payloads);
+    }
+
+    @Test
+    public void eventSubmittedWhileHandlingEvent_deliveredAfterCurrentEvent() {
+        List<String> trace = new ArrayList<>();
+        subscriber.onEvent = event -> {
+            trace.add("start " + event.getPayload());
+            if (event.getPayload().equals("a")) {
+                submit("b");
+            }
+            trace.add("end " + event.getPayload());
+        };
+        log.publisher(null, EventLog.NO_OFFSET).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        submit("a");
+
+        Assert.assertEquals(List.of("start a", "end a", "start b", "end b"),
+                trace);
+    }
+
+    @Test
+    public void bufferFull_overflowSignaledAndNoMoreEventsDelivered() {
+        new EventLogPublisher(log, null, EventLog.NO_OFFSET, 2)
+                .subscribe(subscriber);
+
+        submit("a", "b", "c");
+        subscriber.subscription.request(Long.MAX_VALUE);
+        submit("d");
+
+        Assert.assertTrue(subscriber.error
+                instanceof EventLogPublisher.BufferOverflowException);
+        Assert.assertEquals(List.of(), subscriber.payloads);
+    }
+
+    @Test
+    public void overflow_resubscribeFromLastEvent_remainingEventsDelivered() {
+        List<OffsetEvent> received = new ArrayList<>();
+        subscriber.onEvent = received::add;
+        new EventLogPublisher(log, null, EventLog.NO_OFFSET, 2)
+                .subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        submit("a", "b", "c", "d");
+        Assert.assertNotNull(subscriber.error);
+
+        OffsetEvent last = received.get(received.size() - 1);
+        RecordingSubscriber resubscribed = new RecordingSubscriber();
+        log.publisher(last.getTrackingId(), last.getOffset())
+                .subscribe(resubscribed);
+        resubscribed.subscription.request(Long.MAX_VALUE);
+
+        Assert.assertEquals(List.of("a"), subscriber.payloads);
+        Assert.assertEquals(List.of("b", "c", "d"), resubscribed.payloads);
+        Assert.assertNull(resubscribed.error);
+    }
+
+    @Test
+    public void unknownEvent_errorSignaled() {
+        log.publisher(UUID.randomUUID(), EventLog.NO_OFFSET)
+                .subscribe(subscriber);
+
+        Assert.assertTrue(
+                subscriber.error instanceof Backend.EventIdNotFoundException);
+    }
+
+    @Test
+    public void cancel_noMoreEventsDelivered() {
+        log.publisher(null, EventLog.NO_OFFSET).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        submit("a");
+
+        subscriber.subscription.cancel();
+        submit("b");
+
+        Assert.assertEquals(List.of("a"), subscriber.payloads);
+        Assert.assertNull(subscriber.error);
+    }
+
+    @Test
+    public void requestZero_errorSignaled() {
+        log.publisher(null, EventLog.NO_OFFSET).subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        Assert.assertTrue(
+                subscriber.error instanceof IllegalArgumentException);
+    }
+
+    private void submit(String... payloads) {
+        for (String payload : payloads) {
+            log.submitEvent(UUID.randomUUID(), payload);
+        }
+    }
+
+    private static class RecordingSubscriber
+            implements Flow.Subscriber<OffsetEvent> {
+        private final List<String> payloads = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Consumer<OffsetEvent> onEvent = event -> {
+        };
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(OffsetEvent item) {
+            payloads.add(item.getPayload());
+            onEvent.accept(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            Assert.fail("Event logs should never complete");
+        }
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.vaadin.collaborationengine.Backend.EventLog;
+import com.vaadin.collaborationengine.MembershipEvent.MembershipEventType;
+import com.vaadin.collaborationengine.TestUtil.MockConfiguration;
+import com.vaadin.collaborationengine.util.MockService;
+
+public class FileBackendTest {
+    private static final String LOG_ID = FileBackendTest.class.getName();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    private FileBackend backend;
+
+    @Before
+    public void init() throws IOException {
+        directory = folder.newFolder().toPath();
+        backend = new FileBackend(directory);
+    }
+
+    @After
+    public void cleanup() {
+        backend.close();
+    }
+
+    @Test
+    public void submitEvents_subscriberReceivesEventsWithIncreasingOffsets()
+            throws Exception {
+        List<String> received = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        EventLog log = backend.openEventLog(LOG_ID);
+        log.subscribe(null, EventLog.NO_OFFSET, (offset, id, payload) -> {
+            offsets.add(offset);
+            received.add(payload);
+        });
+
+        log.submitEvents(createEvents(3));
+        log.submitEvent(UUID.randomUUID(), "3");
+
+        Assert.assertEquals(List.of("0", "1", "2", "3"), received);
+        Assert.assertEquals(List.of(0L, 1L, 2L, 3L), offsets);
+    }
+
+    @Test
+    public void submitFromSubscriber_deliveredAfterCurrentEvent()
+            throws Exception {
+        List<String> received = new ArrayList<>();
+        boolean[] delivering = new boolean[1];
+        EventLog log = backend.openEventLog(LOG_ID);
+        log.subscribe(null, EventLog.NO_OFFSET, (offset, id, payload) -> {
+            Assert.assertFalse("Delivery should not be nested",
+                    delivering[0]);
+            delivering[0] = true;
+            received.add(payload);
+            if (payload.equals("0")) {
+                log.submitEvent(UUID.randomUUID(), "1");
+            }
+            delivering[0] = false;
+        });
+
+        log.submitEvent(UUID.randomUUID(), "0");
+
+        Assert.assertEquals(List.of("0", "1"), received);
+    }
+
+    @Test(timeout = 5000)
+    public void submitWhileHoldingSubscriberLock_noDeadlock()
+            throws Exception {
+        Object topicLock = new Object();
+        CountDownLatch delivering = new CountDownLatch(1);
+        List<String> received = new ArrayList<>();
+        EventLog log = backend.openEventLog(LOG_ID);
+        log.subscribe(null, EventLog.NO_OFFSET, (offset, id, payload) -> {
+            delivering.countDown();
+            synchronized (topicLock) {
+                received.add(payload);
+            }
+        });
+
+        Thread other = new Thread(
+                () -> log.submitEvent(UUID.randomUUID(), "0"));
+        synchronized (topicLock) {
+            other.start();
+            delivering.await();
+            // Must not wait for the other thread to finish delivering
+            log.submitEvent(UUID.randomUUID(), "1");
+        }
+        other.join();
+
+        Assert.assertEquals(List.of("0", "1"), received);
+    }
+
+    @Test
+    public void reopen_eventsReplayedToNewSubscriber() throws Exception {
+        List<Backend.Event> events = createEvents(5);
+        backend.openEventLog(LOG_ID).submitEvents(events);
+        backend.close();
+
+        backend = new FileBackend(directory);
+        List<UUID> ids = new ArrayList<>();
+        List<String> received = new ArrayList<>();
+        backend.openEventLog(LOG_ID).subscribe(null, (id, payload) -> {
+            ids.add(id);
+            received.add(payload);
+        });
+
+        Assert.assertEquals(List.of("0", "1", "2", "3", "4"), received);
+        Assert.assertEquals(events.get(4).getTrackingId(), ids.get(4));
+    }
+
+    @Test
+    public void reopen_subscribeWithOffset_onlyNewerEventsReceived()
+            throws Exception {
+        List<Backend.Event> events = createEvents(5);
+        backend.openEventLog(LOG_ID).submitEvents(events);
+        backend.close();
+
+        backend = new FileBackend(directory);
+        EventLog log = backend.openEventLog(LOG_ID);
+        List<String> received = new ArrayList<>();
+        log.subscribe(events.get(2).getTrackingId(), 2,
+                (offset, id, payload) -> received.add(payload));
+        log.submitEvent(UUID.randomUUID(), "5");
+
+        Assert.assertEquals(List.of("3", "4", "5"), received);
+    }
+
+    @Test
+    public void subscribeWithMismatchingOffset_subscribeFails() {
+        List<Backend.Event> events = createEvents(5);
+        EventLog log = backend.openEventLog(LOG_ID);
+        log.submitEvents(events);
+
+        Assert.assertThrows(Backend.EventIdNotFoundException.class,
+                () -> log.subscribe(events.get(2).getTrackingId(), 3,
+                        (offset, id, payload) -> {
+                        }));
+    }
+
+    @Test
+    public void smallSegments_truncate_oldSegmentsDeleted() throws Exception {
+        backend.setSegmentSize(100);
+        EventLog log = backend.openEventLog(LOG_ID);
+        List<Backend.Event> events = createEvents(10);
+        log.submitEvents(events);
+        long segmentsBefore = countSegments();
+
+        log.truncate(events.get(8).getTrackingId(), 8);
+
+        Assert.assertTrue(segmentsBefore > 2);
+        Assert.assertTrue(countSegments() < segmentsBefore);
+        Assert.assertThrows(Backend.EventIdNotFoundException.class,
+                () -> log.subscribe(events.get(7).getTrackingId(),
+                        (id, payload) -> {
+                        }));
+        List<String> received = new ArrayList<>();
+        log.subscribe(null, (id, payload) -> received.add(payload));
+        Assert.assertEquals(List.of("8", "9"), received);
+    }
+
+    @Test
+    public void truncate_reopen_truncatedEventsNotReplayed() throws Exception {
+        backend.setSegmentSize(100);
+        List<Backend.Event> events = createEvents(10);
+        EventLog log = backend.openEventLog(LOG_ID);
+        log.submitEvents(events);
+        log.truncate(events.get(5).getTrackingId());
+        backend.close();
+
+        backend = new FileBackend(directory);
+        List<Long> offsets = new ArrayList<>();
+        backend.openEventLog(LOG_ID).subscribe(null, EventLog.NO_OFFSET,
+                (offset, id, payload) -> offsets.add(offset));
+
+        Assert.assertEquals(List.of(5L, 6L, 7L, 8L, 9L), offsets);
+    }
+
+    @Test
+    public void eventLargerThanSegment_submitted() throws Exception {
+        backend.setSegmentSize(100);
+        String payload = "x".repeat(1000);
+        EventLog log = backend.openEventLog(LOG_ID);
+        log.submitEvent(UUID.randomUUID(), payload);
+
+        AtomicReference<String> received = new AtomicReference<>();
+        log.subscribe(null, (id, value) -> received.set(value));
+
+        Assert.assertEquals(payload, received.get());
+    }
+
+    @Test
+    public void flushOnEverySubmit_eventsReplayedAfterReopen()
+            throws Exception {
+        backend.setFlushInterval(Duration.ZERO);
+        backend.openEventLog(LOG_ID).submitEvents(createEvents(2));
+        backend.close();
+
+        backend = new FileBackend(directory);
+        List<String> received = new ArrayList<>();
+        backend.openEventLog(LOG_ID).subscribe(null,
+                (id, payload) -> received.add(payload));
+
+        Assert.assertEquals(List.of("0", "1"), received);
+    }
+
+    @Test
+    public void replaceSnapshot_expectedId_replaced() {
+        UUID id = UUID.randomUUID();
+        UUID newId = UUID.randomUUID();
+        backend.replaceSnapshot("snapshot", null, id, "foo").join();
+        backend.replaceSnapshot("snapshot", id, newId, "bar").join();
+
+        Backend.Snapshot snapshot = backend.loadLatestSnapshot("snapshot")
+                .join();
+        Assert.assertEquals(newId, snapshot.getId());
+        Assert.assertEquals("bar", snapshot.getPayload());
+    }
+
+    @Test
+    public void replaceSnapshot_unexpectedId_notReplaced() {
+        UUID id = UUID.randomUUID();
+        backend.replaceSnapshot("snapshot", null, id, "foo").join();
+        backend.replaceSnapshot("snapshot", UUID.randomUUID(),
+                UUID.randomUUID(), "bar").join();
+
+        Backend.Snapshot snapshot = backend.loadLatestSnapshot("snapshot")
+                .join();
+        Assert.assertEquals(id, snapshot.getId());
+        Assert.assertEquals("foo", snapshot.getPayload());
+    }
+
+    @Test
+    public void replaceSnapshot_reopen_snapshotLoaded() {
+        UUID id = UUID.randomUUID();
+        backend.replaceSnapshot("snapshot", null, id, "foo\nbar").join();
+        backend.close();
+
+        backend = new FileBackend(directory);
+        Backend.Snapshot snapshot = backend.loadLatestSnapshot("snapshot")
+                .join();
+
+        Assert.assertEquals(id, snapshot.getId());
+        Assert.assertEquals("foo\nbar", snapshot.getPayload());
+        Assert.assertNull(backend.loadLatestSnapshot("other").join());
+    }
+
+    @Test
+    public void reopen_newNodeId() {
+        UUID nodeId = backend.getNodeId();
+        backend.close();
+
+        backend = new FileBackend(directory);
+
+        Assert.assertNotEquals(nodeId, backend.getNodeId());
+    }
+
+    @Test
+    public void reopenSeveralTimes_unreportedNodesStored() throws IOException {
+        backend.openEventLog(LOG_ID).submitEvents(createEvents(1));
+        UUID first = backend.getNodeId();
+        backend.close();
+        backend = new FileBackend(directory);
+        UUID second = backend.getNodeId();
+        backend.close();
+
+        backend = new FileBackend(directory);
+
+        Assert.assertEquals(
+                List.of(first.toString(), second.toString(),
+                        backend.getNodeId().toString()),
+                Files.readAllLines(directory.resolve("nodes")));
+    }
+
+    @Test
+    public void reopen_allLogsReported_reportedNodesNoLongerStored()
+            throws IOException {
+        CollaborationEngine engine = createEngine();
+        engine.openTopicConnection(engine.getSystemContext(), "topic",
+                new UserInfo("foo"), connection -> null);
+        backend.close();
+        backend = new FileBackend(directory);
+        engine = createEngine();
+        engine.openTopicConnection(engine.getSystemContext(), "topic",
+                new UserInfo("foo"), connection -> null);
+        backend.awaitBackgroundTasks();
+        UUID second = backend.getNodeId();
+        backend.close();
+
+        backend = new FileBackend(directory);
+
+        Assert.assertEquals(
+                List.of(second.toString(), backend.getNodeId().toString()),
+                Files.readAllLines(directory.resolve("nodes")));
+    }
+
+    @Test
+    public void reopen_subscribeWhileHoldingLock_leaveReportedFromOtherThread()
+            throws Exception {
+        backend.openEventLog(LOG_ID).submitEvents(createEvents(1));
+        UUID previousNodeId = backend.getNodeId();
+        backend.close();
+        backend = new FileBackend(directory);
+        Object topicLock = new Object();
+        AtomicReference<UUID> leftNode = new AtomicReference<>();
+        AtomicReference<Boolean> lockHeld = new AtomicReference<>();
+        backend.addMembershipListener(event -> {
+            if (event.getType() == MembershipEventType.LEAVE) {
+                leftNode.set(event.getNodeId());
+                lockHeld.set(Thread.holdsLock(topicLock));
+            }
+        });
+
+        synchronized (topicLock) {
+            backend.openEventLog(LOG_ID).subscribe(null, (id, payload) -> {
+            });
+        }
+        backend.awaitBackgroundTasks();
+
+        Assert.assertEquals(previousNodeId, leftNode.get());
+        Assert.assertFalse(lockHeld.get());
+    }
+
+    @Test
+    public void restartEngine_topicDataRestored_connectionScopedDataRemoved() {
+        CollaborationEngine engine = createEngine();
+        engine.openTopicConnection(engine.getSystemContext(), "topic",
+                new UserInfo("foo"), connection -> {
+                    CollaborationMap map = connection.getNamedMap("map");
+                    map.put("topic", "foo");
+                    map.put("connection", "bar", EntryScope.CONNECTION);
+                    return null;
+                });
+        backend.close();
+
+        backend = new FileBackend(directory);
+        engine = createEngine();
+        engine.openTopicConnection(engine.getSystemContext(), "topic",
+                new UserInfo("foo"), connection -> null);
+        // The previous node is reported as having left in the background
+        backend.awaitBackgroundTasks();
+        AtomicReference<Object> topicValue = new AtomicReference<>();
+        AtomicReference<Object> connectionValue = new AtomicReference<>();
+        AtomicReference<Boolean> leader = new AtomicReference<>();
+        engine.openTopicConnection(engine.getSystemContext(), "topic",
+                new UserInfo("foo"), connection -> {
+                    CollaborationMap map = connection.getNamedMap("map");
+                    topicValue.set(map.get("topic", String.class));
+                    connectionValue.set(map.get("connection", String.class));
+                    leader.set(connection.getTopic().isLeader());
+                    return null;
+                });
+
+        Assert.assertEquals("foo", topicValue.get());
+        Assert.assertNull(connectionValue.get());
+        Assert.assertTrue(leader.get());
+    }
+
+    @Test
+    public void topicNotLoadedDuringRestart_connectionScopedDataRemovedLater() {
+        CollaborationEngine engine = createEngine();
+        engine.openTopicConnection(engine.getSystemContext(), "topic",
+                new UserInfo("foo"), connection -> {
+                    connection.getNamedMap("map").put("connection", "bar",
+                            EntryScope.CONNECTION);
+                    return null;
+                });
+        backend.close();
+        // A run that doesn't load the topic
+        backend = new FileBackend(directory);
+        engine = createEngine();
+        engine.openTopicConnection(engine.getSystemContext(), "other",
+                new UserInfo("foo"), connection -> null);
+        backend.awaitBackgroundTasks();
+        backend.close();
+
+        backend = new FileBackend(directory);
+        engine = createEngine();
+        engine.openTopicConnection(engine.getSystemContext(), "topic",
+                new UserInfo("foo"), connection -> null);
+        backend.awaitBackgroundTasks();
+        AtomicReference<Object> connectionValue = new AtomicReference<>();
+        AtomicReference<Boolean> leader = new AtomicReference<>();
+        engine.openTopicConnection(engine.getSystemContext(), "topic",
+                new UserInfo("foo"), connection -> {
+                    connectionValue.set(connection.getNamedMap("map")
+                            .get("connection", String.class));
+                    leader.set(connection.getTopic().isLeader());
+                    return null;
+                });
+
+        Assert.assertNull(connectionValue.get());
+        Assert.assertTrue(leader.get());
+    }
+
+    private CollaborationEngine createEngine() {
+        CollaborationEngineConfiguration conf = new MockConfiguration();
+        conf.setBackend(backend);
+        return TestUtil.createTestCollaborationEngine(new MockService(), conf);
+    }
+
+    private long countSegments() throws IOException {
+        try (Stream<Path> files = Files.walk(directory.resolve("logs"))) {
+            return files.filter(
+                    file -> file.getFileName().toString().endsWith(".segment"))
+                    .count();
+        }
+    }
+
+    private static List<Backend.Event> createEvents(int count) {
+        List<Backend.Event> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(new Backend.Event(UUID.randomUUID(), String.valueOf(i)));
+        }
+        return events;
+    }
+}
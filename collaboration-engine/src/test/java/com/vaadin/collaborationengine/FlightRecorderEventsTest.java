@@ -0,0 +1,121 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import com.vaadin.collaborationengine.util.MockConnectionContext;
+import com.vaadin.collaborationengine.util.MockService;
+
+public class FlightRecorderEventsTest {
+
+    private static final String PREFIX = "com.vaadin.collaborationengine.";
+
+    private final MockConnectionContext context = MockConnectionContext
+            .createEager();
+
+    private CollaborationEngine ce;
+
+    private Recording recording;
+
+    @Before
+    public void init() {
+        ce = TestUtil.createTestCollaborationEngine(new MockService());
+        recording = new Recording();
+        for (String name : List.of("TopicChangeApplied", "ActionDispatched",
+                "SnapshotWritten", "ConnectionActivated")) {
+            recording.enable(PREFIX + name).withoutThreshold();
+        }
+        recording.start();
+    }
+
+    @After
+    public void cleanup() {
+        recording.close();
+    }
+
+    @Test
+    public void putValue_changeAppliedRecorded() throws IOException {
+        openMap().put("key", "value");
+
+        RecordedEvent event = getEvents("TopicChangeApplied").get(0);
+        Assert.assertEquals("topic", event.getString("topic"));
+        Assert.assertEquals(JsonUtil.CHANGE_TYPE_PUT,
+                event.getString("changeType"));
+        Assert.assertEquals("ACCEPTED", event.getString("result"));
+    }
+
+    @Test
+    public void putValue_snapshotWrittenRecorded() throws IOException {
+        openMap().put("key", "value");
+
+        RecordedEvent event = getEvents("SnapshotWritten").get(0);
+        Assert.assertEquals("topic", event.getString("topic"));
+        Assert.assertTrue(event.getLong("bytes") > 0);
+    }
+
+    @Test
+    public void openConnection_activationAndDispatchRecorded()
+            throws IOException {
+        openMap();
+
+        RecordedEvent activated = getEvents("ConnectionActivated").get(0);
+        Assert.assertEquals("topic", activated.getString("topic"));
+        Assert.assertEquals(SystemUserInfo.getInstance().getId(),
+                activated.getString("user"));
+        Assert.assertEquals("topic",
+                getEvents("ActionDispatched").get(0).getString("topic"));
+    }
+
+    private CollaborationMap openMap() {
+        CollaborationMap[] opened = new CollaborationMap[1];
+        ce.openTopicConnection(context, "topic", SystemUserInfo.getInstance(),
+                connection -> {
+                    opened[0] = connection.getNamedMap("map");
+                    return null;
+                });
+        return opened[0];
+    }
+
+    private List<RecordedEvent> getEvents(String name) throws IOException {
+        recording.stop();
+        Path file = Files.createTempFile("ce", ".jfr");
+        try {
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file)
+                    .stream().filter(event -> event.getEventType().getName()
+                            .equals(PREFIX + name))
+                    .toList();
+            Assert.assertFalse("No " + name + " events recorded",
+                    events.isEmpty());
+            return events;
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
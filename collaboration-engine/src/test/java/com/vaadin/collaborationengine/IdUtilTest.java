@@ -0,0 +1,97 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IdUtilTest {
+
+    @Test
+    public void newId_versionAndVariant() {
+        UUID id = IdUtil.newId();
+        Assert.assertEquals(7, id.version());
+        Assert.assertEquals(2, id.variant());
+    }
+
+    @Test
+    public void newId_containsTimestamp() {
+        long before = System.currentTimeMillis();
+        UUID id = IdUtil.newId();
+        long after = System.currentTimeMillis();
+
+        long timestamp = IdUtil.getTimestamp(id);
+        Assert.assertTrue(timestamp >= before);
+        Assert.assertTrue(timestamp <= after);
+    }
+
+    @Test
+    public void newIdsInSameMillisecond_increasingAndUnique()
+            throws InterruptedException {
+        // Run in a new thread to not leave the state ahead of the clock
+        runInNewThread(() -> {
+            long millis = System.currentTimeMillis() - 10000;
+            Set<UUID> ids = new HashSet<>();
+            UUID previous = IdUtil.newId(millis);
+            ids.add(previous);
+            // More ids than the counter can hold within one millisecond
+            for (int i = 0; i < 10000; i++) {
+                UUID id = IdUtil.newId(millis);
+                Assert.assertTrue(Long.compareUnsigned(
+                        id.getMostSignificantBits(),
+                        previous.getMostSignificantBits()) > 0);
+                ids.add(id);
+                previous = id;
+            }
+            Assert.assertEquals(10001, ids.size());
+        });
+    }
+
+    @Test
+    public void clockMovesBack_idsStillIncreasing()
+            throws InterruptedException {
+        runInNewThread(() -> {
+            long millis = System.currentTimeMillis() - 5000;
+            UUID first = IdUtil.newId(millis);
+            UUID second = IdUtil.newId(millis - 500);
+            Assert.assertTrue(
+                    Long.compareUnsigned(second.getMostSignificantBits(),
+                            first.getMostSignificantBits()) > 0);
+        });
+    }
+
+    private static void runInNewThread(Runnable test)
+            throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                test.run();
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        thread.start();
+        thread.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vaadin.collaborationengine.InMemoryMetrics.HistogramSnapshot;
+
+public class InMemoryMetricsTest {
+
+    private final InMemoryMetrics metrics = new InMemoryMetrics();
+
+    @Test
+    public void incrementCounter_valueSummed() {
+        CollaborationEngineMetrics.Counter counter = metrics.counter("foo");
+
+        counter.increment();
+        counter.increment(2);
+
+        Assert.assertEquals(Long.valueOf(3), metrics.getCounters().get("foo"));
+    }
+
+    @Test
+    public void sameName_sameCounter() {
+        metrics.counter("foo").increment();
+        metrics.counter("foo").increment();
+
+        Assert.assertEquals(Long.valueOf(2), metrics.getCounters().get("foo"));
+    }
+
+    @Test
+    public void registerGauge_readWhenRequested() {
+        long[] value = { 1 };
+        metrics.gauge("foo", () -> value[0]);
+
+        value[0] = 2;
+
+        Assert.assertEquals(Long.valueOf(2), metrics.getGauges().get("foo"));
+    }
+
+    @Test
+    public void recordValues_countSumMaxAndMean() {
+        CollaborationEngineMetrics.Histogram histogram = metrics
+                .histogram("foo");
+
+        histogram.record(10);
+        histogram.record(20);
+        histogram.record(60);
+
+        HistogramSnapshot snapshot = metrics.getHistograms().get("foo");
+        Assert.assertEquals(3, snapshot.getCount());
+        Assert.assertEquals(90, snapshot.getSum());
+        Assert.assertEquals(60, snapshot.getMax());
+        Assert.assertEquals(30, snapshot.getMean(), 0);
+    }
+
+    @Test
+    public void recordValues_percentilesWithinBucketError() {
+        CollaborationEngineMetrics.Histogram histogram = metrics
+                .histogram("foo");
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        HistogramSnapshot snapshot = metrics.getHistograms().get("foo");
+        assertWithinError(5_000_000, snapshot.getPercentile(50));
+        assertWithinError(9_900_000, snapshot.getPercentile(99));
+        Assert.assertEquals(10_000_000, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void recordSmallValues_percentilesExact() {
+        CollaborationEngineMetrics.Histogram histogram = metrics
+                .histogram("foo");
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+
+        Assert.assertEquals(5,
+                metrics.getHistograms().get("foo").getPercentile(50));
+    }
+
+    @Test
+    public void noValues_zeros() {
+        metrics.histogram("foo");
+
+        HistogramSnapshot snapshot = metrics.getHistograms().get("foo");
+        Assert.assertEquals(0, snapshot.getCount());
+        Assert.assertEquals(0, snapshot.getMax());
+        Assert.assertEquals(0, snapshot.getMean(), 0);
+        Assert.assertEquals(0, snapshot.getPercentile(99));
+    }
+
+    @Test
+    public void removeTopicHistogram_otherHistogramsKept() {
+        metrics.histogram("foo", "topic").record(1);
+        metrics.histogram("foo", "other").record(1);
+
+        metrics.removeHistogram("foo", "topic");
+
+        Assert.assertEquals(Set.of("foo[other]"),
+                metrics.getHistograms().keySet());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPercentile_throws() {
+        metrics.histogram("foo");
+
+        metrics.getHistograms().get("foo").getPercentile(101);
+    }
+
+    private static void assertWithinError(long expected, long actual) {
+        Assert.assertTrue("Expected at least " + expected + " but was " + actual,
+                actual >= expected);
+        Assert.assertTrue(
+                "Expected at most 12.5% above " + expected + " but was "
+                        + actual,
+                actual <= expected * 1.125);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.vaadin.collaborationengine;
 
+import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
@@ -24,9 +25,13 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.vaadin.collaborationengine.util.MockService;
 import com.vaadin.flow.server.VaadinService;
 
@@ -66,6 +71,25 @@ public class JsonUtilTest {
         Assert.assertEquals(5, deserializedUser.getColorIndex());
     }
 
+    @Test
+    public void toInstance_nodeType_copyReturned() {
+        JsonNode node = JsonUtil.toJsonNode(user);
+
+        ObjectNode instance = JsonUtil.toInstance(node, ObjectNode.class);
+        instance.put("name", "other-name");
+
+        Assert.assertNotSame(node, instance);
+        Assert.assertEquals("my-name", node.get("name").asText());
+    }
+
+    @Test
+    public void toInstance_objectType_valueConverted() {
+        Object instance = JsonUtil.toInstance(JsonUtil.toJsonNode(List.of(1)),
+                Object.class);
+
+        Assert.assertEquals(List.of(1), instance);
+    }
+
     @Test
     public void usersList_toJson_noRedundantData() {
         List<UserInfo> users = Collections.singletonList(user);
@@ -86,6 +110,104 @@ public class JsonUtilTest {
         Assert.assertEquals(5, userJson.get("colorIndex").intValue());
     }
 
+    @Test
+    public void collaborationMessage_toJsonAndBack_allPropertiesPreserved() {
+        CollaborationMessage message = new CollaborationMessage(user, "text",
+                Instant.ofEpochSecond(1000, 5));
+
+        Assert.assertEquals(message, JsonUtil.toInstance(
+                JsonUtil.toJsonNode(message), CollaborationMessage.class));
+    }
+
+    @Test
+    public void focusedEditor_toJsonAndBack_allPropertiesPreserved() {
+        FormManager.FocusedEditor editor = new FormManager.FocusedEditor(user,
+                2, "property");
+
+        FormManager.FocusedEditor deserializedEditor = JsonUtil.toInstance(
+                JsonUtil.toJsonNode(editor), FormManager.FocusedEditor.class);
+
+        Assert.assertEquals("my-id", deserializedEditor.user.getId());
+        Assert.assertEquals(5, deserializedEditor.user.getColorIndex());
+        Assert.assertEquals(2, deserializedEditor.fieldIndex);
+        Assert.assertEquals("property", deserializedEditor.propertyName);
+    }
+
+    @Test
+    public void builtInTypes_toJsonNode_sameAsBeanSerialization() {
+        ObjectMapper beanMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule()).configure(
+                        SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        List<Object> values = List.of(user, new UserInfo("other-id"),
+                new CollaborationMessage(user, "text", Instant.now()),
+                new CollaborationMessage(),
+                new FormManager.FocusedEditor(user, 1, null));
+
+        for (Object value : values) {
+            Assert.assertEquals(beanMapper.valueToTree(value).toString(),
+                    JsonUtil.toJsonNode(value).toString());
+        }
+    }
+
+    @Test
+    public void userInfoSubclass_toJsonNode_subclassPropertiesIncluded() {
+        UserInfo subclassUser = new UserInfo("my-id") {
+            public String getExtra() {
+                return "extra";
+            }
+        };
+
+        Assert.assertEquals("extra",
+                JsonUtil.toJsonNode(subclassUser).get("extra").textValue());
+    }
+
+    @Test
+    public void messageWithUserInfoSubclass_toJsonNode_subclassPropertiesIncluded() {
+        UserInfo subclassUser = new UserInfo("my-id") {
+            public String getExtra() {
+                return "extra";
+            }
+        };
+        CollaborationMessage message = new CollaborationMessage(subclassUser,
+                "text", Instant.ofEpochSecond(1000));
+
+        JsonNode userNode = JsonUtil.toJsonNode(message).get("user");
+
+        Assert.assertEquals("my-id", userNode.get("id").textValue());
+        Assert.assertEquals("extra", userNode.get("extra").textValue());
+    }
+
+    @Test
+    public void nullValue_toJsonNode_sameAsValueToTree() {
+        Assert.assertEquals(
+                JsonUtil.getObjectMapper().valueToTree(null),
+                JsonUtil.toJsonNode(null));
+    }
+
+    @Test
+    public void userInfoWithoutId_toInstance_throws() {
+        ObjectNode node = JsonUtil.getObjectMapper().createObjectNode();
+        node.put("name", "my-name");
+
+        Assert.assertThrows(JsonConversionException.class,
+                () -> JsonUtil.toInstance(node, UserInfo.class));
+    }
+
+    @Test
+    public void sameNodeToDifferentGenericTypes_eachTypeConverted() {
+        UUID uuid = UUID.randomUUID();
+        JsonNode node = JsonUtil.toJsonNode(List.of(uuid.toString()));
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(List.of(uuid), JsonUtil.toInstance(node,
+                    new TypeReference<List<UUID>>() {
+                    }));
+            Assert.assertEquals(List.of(uuid.toString()), JsonUtil
+                    .toInstance(node, new TypeReference<List<String>>() {
+                    }));
+        }
+    }
+
     @Test
     public void literalNull_toUUID_returnsNull() {
         Assert.assertNull(JsonUtil.toUUID(null));
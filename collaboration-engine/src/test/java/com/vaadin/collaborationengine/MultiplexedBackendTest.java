@@ -0,0 +1,290 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.collaborationengine.Backend.EventLog;
+import com.vaadin.collaborationengine.TestUtil.MockConfiguration;
+import com.vaadin.collaborationengine.util.MockService;
+import com.vaadin.collaborationengine.util.TestBackendFactory;
+import com.vaadin.flow.shared.Registration;
+
+public class MultiplexedBackendTest {
+
+    private TestBackendFactory backendFactory;
+
+    private CountingBackend delegate1;
+
+    private MultiplexedBackend backend1;
+
+    private MultiplexedBackend backend2;
+
+    @Before
+    public void init() {
+        backendFactory = new TestBackendFactory();
+        delegate1 = new CountingBackend(backendFactory.createBackend());
+        backend1 = new MultiplexedBackend(delegate1, 4);
+        backend2 = new MultiplexedBackend(backendFactory.createBackend(), 4);
+    }
+
+    @Test
+    public void submitEvent_subscriberOnOtherNode_receivesOnlyOwnTopicEvents()
+            throws Exception {
+        List<String> received = new ArrayList<>();
+        backend2.openEventLog("foo").subscribe(null,
+                (id, payload) -> received.add(payload));
+
+        backend1.openEventLog("foo").submitEvent(UUID.randomUUID(), "a");
+        backend1.openEventLog("bar").submitEvent(UUID.randomUUID(), "b");
+        backend1.openEventLog("foo").submitEvent(UUID.randomUUID(), "c");
+
+        Assert.assertEquals(List.of("a", "c"), received);
+    }
+
+    @Test
+    public void manyTopics_onePartitionLogAndSubscriptionPerPartition()
+            throws Exception {
+        List<String> received = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            backend1.openEventLog("topic" + i).subscribe(null,
+                    (id, payload) -> received.add(payload));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            backend1.openEventLog("topic" + i).submitEvent(UUID.randomUUID(),
+                    String.valueOf(i));
+        }
+
+        Assert.assertEquals(100, received.size());
+        Assert.assertTrue(delegate1.openedLogs.size() <= 4);
+        Assert.assertTrue(delegate1.activeSubscriptions.get() <= 4);
+    }
+
+    @Test
+    public void topicLoadedLater_catchesUpAndReceivesNewEventsOnce()
+            throws Exception {
+        // A single partition so that both topics share it
+        MultiplexedBackend backend = new MultiplexedBackend(delegate1, 1);
+        backend.openEventLog("foo").subscribe(null, (id, payload) -> {
+        });
+        EventLog log = backend.openEventLog("bar");
+        UUID first = UUID.randomUUID();
+        log.submitEvent(first, "a");
+        log.submitEvent(UUID.randomUUID(), "b");
+
+        List<String> received = new ArrayList<>();
+        backend.openEventLog("bar").subscribe(first,
+                (id, payload) -> received.add(payload));
+        Assert.assertEquals(List.of("b"), received);
+
+        log.submitEvent(UUID.randomUUID(), "c");
+        log.submitEvent(UUID.randomUUID(), "d");
+        Assert.assertEquals(List.of("b", "c", "d"), received);
+        Assert.assertEquals(1, delegate1.activeSubscriptions.get());
+    }
+
+    @Test
+    public void subscribeWithOffset_onlyNewerEventsReceived() throws Exception {
+        List<Long> offsets = new ArrayList<>();
+        List<UUID> ids = new ArrayList<>();
+        EventLog log = backend1.openEventLog("foo");
+        log.subscribe(null, EventLog.NO_OFFSET, (offset, id, payload) -> {
+            offsets.add(offset);
+            ids.add(id);
+        });
+        log.submitEvents(List.of(new Backend.Event(UUID.randomUUID(), "a"),
+                new Backend.Event(UUID.randomUUID(), "b"),
+                new Backend.Event(UUID.randomUUID(), "c")));
+
+        List<String> received = new ArrayList<>();
+        backend2.openEventLog("foo").subscribe(ids.get(0), offsets.get(0),
+                (offset, id, payload) -> received.add(payload));
+
+        Assert.assertEquals(List.of("b", "c"), received);
+    }
+
+    @Test
+    public void subscribeWithUnknownId_subscribeFails_partitionStillUsable()
+            throws Exception {
+        EventLog log = backend1.openEventLog("foo");
+        Assert.assertThrows(Backend.EventIdNotFoundException.class,
+                () -> log.subscribe(UUID.randomUUID(), (id, payload) -> {
+                }));
+
+        List<String> received = new ArrayList<>();
+        log.subscribe(null, (id, payload) -> received.add(payload));
+        log.submitEvent(UUID.randomUUID(), "a");
+
+        Assert.assertEquals(List.of("a"), received);
+    }
+
+    @Test
+    public void unsubscribeAllTopics_sharedSubscriptionRemoved()
+            throws Exception {
+        Registration foo = backend1.openEventLog("foo").subscribe(null,
+                (id, payload) -> {
+                });
+        Registration bar = backend1.openEventLog("bar").subscribe(null,
+                (id, payload) -> {
+                });
+        backend1.openEventLog("foo").submitEvent(UUID.randomUUID(), "a");
+
+        foo.remove();
+        bar.remove();
+
+        Assert.assertEquals(0, delegate1.activeSubscriptions.get());
+    }
+
+    @Test
+    public void consumerSubmitsEvent_eventsDeliveredInOrder() throws Exception {
+        EventLog log = backend1.openEventLog("foo");
+        List<String> received = new ArrayList<>();
+        log.subscribe(null, (id, payload) -> {
+            received.add(payload);
+            if (payload.equals("a")) {
+                log.submitEvent(UUID.randomUUID(), "b");
+            }
+        });
+
+        log.submitEvent(UUID.randomUUID(), "a");
+
+        Assert.assertEquals(List.of("a", "b"), received);
+    }
+
+    @Test
+    public void envelope_topicIdAndPayloadRestored() {
+        String envelope = MultiplexedBackend.wrap("a:b", "{\"x\":1}");
+
+        Assert.assertEquals("a:b", MultiplexedBackend.getTopicId(envelope));
+        Assert.assertEquals("{\"x\":1}",
+                MultiplexedBackend.getPayload(envelope));
+        Assert.assertTrue(MultiplexedBackend.isForTopic(envelope, "a:b"));
+        Assert.assertFalse(MultiplexedBackend.isForTopic(envelope, "a"));
+    }
+
+    @Test
+    public void mapValueSetOnOneNode_visibleOnOtherNode() {
+        CollaborationEngine node1 = createNode(backend1);
+        CollaborationEngine node2 = createNode(backend2);
+        node1.openTopicConnection(node1.getSystemContext(), "topic",
+                new UserInfo("foo"), connection -> {
+                    connection.getNamedMap("map").put("key", "value");
+                    return null;
+                });
+
+        AtomicReference<String> value = new AtomicReference<>();
+        node2.openTopicConnection(node2.getSystemContext(), "topic",
+                new UserInfo("foo"), connection -> {
+                    value.set(connection.getNamedMap("map").get("key",
+                            String.class));
+                    return null;
+                });
+
+        Assert.assertEquals("value", value.get());
+    }
+
+    private static CollaborationEngine createNode(Backend backend) {
+        CollaborationEngineConfiguration conf = new MockConfiguration();
+        conf.setBackend(backend);
+        return TestUtil.createTestCollaborationEngine(new MockService(), conf);
+    }
+
+    private static class CountingBackend extends Backend {
+        private final Backend delegate;
+        private final Set<String> openedLogs = new HashSet<>();
+        private final AtomicInteger activeSubscriptions = new AtomicInteger();
+
+        private CountingBackend(Backend delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public EventLog openEventLog(String logId) {
+            openedLogs.add(logId);
+            EventLog log = delegate.openEventLog(logId);
+            return new EventLog() {
+                @Override
+                public void submitEvent(UUID trackingId, String eventPayload) {
+                    log.submitEvent(trackingId, eventPayload);
+                }
+
+                @Override
+                public Registration subscribe(UUID newerThan,
+                        BiConsumer<UUID, String> eventConsumer)
+                        throws EventIdNotFoundException {
+                    return count(log.subscribe(newerThan, eventConsumer));
+                }
+
+                @Override
+                public Registration subscribe(UUID newerThan,
+                        long newerThanOffset,
+                        OffsetEventConsumer eventConsumer)
+                        throws EventIdNotFoundException {
+                    return count(log.subscribe(newerThan, newerThanOffset,
+                            eventConsumer));
+                }
+
+                @Override
+                public void truncate(UUID olderThan) {
+                    log.truncate(olderThan);
+                }
+            };
+        }
+
+        private Registration count(Registration registration) {
+            activeSubscriptions.incrementAndGet();
+            return () -> {
+                activeSubscriptions.decrementAndGet();
+                registration.remove();
+            };
+        }
+
+        @Override
+        public Registration addMembershipListener(
+                MembershipListener membershipListener) {
+            return delegate.addMembershipListener(membershipListener);
+        }
+
+        @Override
+        public UUID getNodeId() {
+            return delegate.getNodeId();
+        }
+
+        @Override
+        public CompletableFuture<Snapshot> loadLatestSnapshot(String name) {
+            return delegate.loadLatestSnapshot(name);
+        }
+
+        @Override
+        public CompletableFuture<Void> replaceSnapshot(String name,
+                UUID expectedId, UUID newId, String payload) {
+            return delegate.replaceSnapshot(name, expectedId, newId, payload);
+        }
+    }
+}
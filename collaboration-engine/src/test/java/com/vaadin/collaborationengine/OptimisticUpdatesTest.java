@@ -0,0 +1,282 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.collaborationengine.TestUtil.MockConfiguration;
+import com.vaadin.collaborationengine.util.MockConnectionContext;
+import com.vaadin.collaborationengine.util.MockConnectionContext.MockActionDispatcher;
+import com.vaadin.collaborationengine.util.MockService;
+import com.vaadin.collaborationengine.util.TestBackendFactory;
+import com.vaadin.flow.shared.Registration;
+
+public class OptimisticUpdatesTest {
+
+    private TestBackendFactory backendFactory;
+
+    private HoldingBackend backend;
+
+    private CollaborationMap map;
+
+    private List<String> events;
+
+    @Before
+    public void init() {
+        backendFactory = new TestBackendFactory();
+        backend = new HoldingBackend(backendFactory.createBackend());
+        map = openMap(createNode(backend, true));
+        events = new ArrayList<>();
+        map.subscribe(event -> events.add(event.getOldValue(String.class)
+                + " -> " + event.getValue(String.class)));
+    }
+
+    @Test
+    public void put_valueVisibleBeforeChangeIsConfirmed() {
+        backend.holding = true;
+
+        map.put("key", "value");
+
+        Assert.assertEquals("value", map.get("key", String.class));
+        Assert.assertEquals(List.of("key"), map.getKeys().toList());
+        Assert.assertEquals(List.of("null -> value"), events);
+    }
+
+    @Test
+    public void put_changeConfirmed_noDuplicateEvent() {
+        backend.holding = true;
+        map.put("key", "value");
+
+        backend.release();
+
+        Assert.assertEquals("value", map.get("key", String.class));
+        Assert.assertEquals(List.of("null -> value"), events);
+    }
+
+    @Test
+    public void put_removeValue_keyHiddenBeforeChangeIsConfirmed() {
+        map.put("key", "value");
+        backend.holding = true;
+
+        map.put("key", null);
+
+        Assert.assertNull(map.get("key", String.class));
+        Assert.assertEquals(List.of(), map.getKeys().toList());
+        Assert.assertEquals(List.of("null -> value", "value -> null"), events);
+    }
+
+    @Test
+    public void otherNodePutsWhilePending_otherValueHiddenUntilOwnChangeApplied() {
+        CollaborationMap otherMap = openMap(
+                createNode(backendFactory.createBackend(), true));
+        backend.holding = true;
+        map.put("key", "mine");
+
+        otherMap.put("key", "theirs");
+        Assert.assertEquals("mine", map.get("key", String.class));
+
+        backend.release();
+
+        Assert.assertEquals("mine", map.get("key", String.class));
+        Assert.assertEquals("mine", otherMap.get("key", String.class));
+        Assert.assertEquals(List.of("null -> mine"), events);
+    }
+
+    @Test
+    public void otherNodePutsAfterOwnChange_eventForOtherValue() {
+        CollaborationMap otherMap = openMap(
+                createNode(backendFactory.createBackend(), true));
+        backend.holding = true;
+        map.put("key", "mine");
+        backend.release();
+
+        otherMap.put("key", "theirs");
+
+        Assert.assertEquals("theirs", map.get("key", String.class));
+        Assert.assertEquals(List.of("null -> mine", "mine -> theirs"),
+                events);
+    }
+
+    @Test
+    public void submitFails_valueRolledBackWithEvent() {
+        map.put("key", "value");
+        backend.failing = true;
+
+        Assert.assertThrows(IllegalStateException.class,
+                () -> map.put("key", "other"));
+
+        Assert.assertEquals("value", map.get("key", String.class));
+        Assert.assertEquals(List.of("null -> value", "value -> other",
+                "other -> value"), events);
+    }
+
+    @Test
+    public void putWhileOtherChangeUndelivered_eventsInOrder() {
+        CollaborationEngine node = createNode(backendFactory.createBackend(),
+                true);
+        MockConnectionContext context = MockConnectionContext.createEager();
+        MockActionDispatcher dispatcher = (MockActionDispatcher) context
+                .getActionDispatcher();
+        AtomicReference<CollaborationMap> contextMap = new AtomicReference<>();
+        node.openTopicConnection(context, "topic", new UserInfo("foo"),
+                connection -> {
+                    contextMap.set(connection.getNamedMap("map"));
+                    return null;
+                });
+        List<String> keys = new ArrayList<>();
+        contextMap.get().subscribe(event -> keys.add(event.getKey()));
+        dispatcher.hold();
+
+        openMap(node).put("other", "theirs");
+        contextMap.get().put("own", "mine");
+        Assert.assertEquals(List.of(), keys);
+
+        dispatcher.releaseInOrder();
+        Assert.assertEquals(List.of("other", "own"), keys);
+    }
+
+    @Test
+    public void optimisticUpdatesDisabled_valueVisibleOnlyAfterConfirmed() {
+        HoldingBackend otherBackend = new HoldingBackend(
+                backendFactory.createBackend());
+        CollaborationMap otherMap = openMap(createNode(otherBackend, false));
+        otherBackend.holding = true;
+
+        otherMap.put("key", "value");
+        Assert.assertNull(otherMap.get("key", String.class));
+
+        otherBackend.release();
+        Assert.assertEquals("value", otherMap.get("key", String.class));
+    }
+
+    private static CollaborationMap openMap(CollaborationEngine node) {
+        AtomicReference<CollaborationMap> map = new AtomicReference<>();
+        node.openTopicConnection(node.getSystemContext(), "topic",
+                new UserInfo("foo"), connection -> {
+                    map.set(connection.getNamedMap("map"));
+                    return null;
+                });
+        return map.get();
+    }
+
+    private static CollaborationEngine createNode(Backend backend,
+            boolean optimisticUpdates) {
+        CollaborationEngineConfiguration conf = new MockConfiguration();
+        conf.setBackend(backend);
+        conf.setOptimisticUpdates(optimisticUpdates);
+        return TestUtil.createTestCollaborationEngine(new MockService(), conf);
+    }
+
+    /*
+     * Holds back submitted events to simulate the round trip to a remote
+     * backend.
+     */
+    private static class HoldingBackend extends Backend {
+        private final Backend delegate;
+        private final List<Runnable> held = new ArrayList<>();
+        private boolean holding;
+        private boolean failing;
+
+        private HoldingBackend(Backend delegate) {
+            this.delegate = delegate;
+        }
+
+        private void release() {
+            holding = false;
+            List<Runnable> submissions = new ArrayList<>(held);
+            held.clear();
+            submissions.forEach(Runnable::run);
+        }
+
+        @Override
+        public EventLog openEventLog(String logId) {
+            EventLog log = delegate.openEventLog(logId);
+            return new EventLog() {
+                @Override
+                public void submitEvent(UUID trackingId, String eventPayload) {
+                    submit(() -> log.submitEvent(trackingId, eventPayload));
+                }
+
+                @Override
+                public void submitEvents(List<Event> events) {
+                    submit(() -> log.submitEvents(events));
+                }
+
+                private void submit(Runnable submission) {
+                    if (failing) {
+                        throw new IllegalStateException("Backend unavailable");
+                    } else if (holding) {
+                        held.add(submission);
+                    } else {
+                        submission.run();
+                    }
+                }
+
+                @Override
+                public Registration subscribe(UUID newerThan,
+                        BiConsumer<UUID, String> eventConsumer)
+                        throws EventIdNotFoundException {
+                    return log.subscribe(newerThan, eventConsumer);
+                }
+
+                @Override
+                public Registration subscribe(UUID newerThan,
+                        long newerThanOffset,
+                        OffsetEventConsumer eventConsumer)
+                        throws EventIdNotFoundException {
+                    return log.subscribe(newerThan, newerThanOffset,
+                            eventConsumer);
+                }
+
+                @Override
+                public void truncate(UUID olderThan) {
+                    log.truncate(olderThan);
+                }
+            };
+        }
+
+        @Override
+        public Registration addMembershipListener(
+                MembershipListener membershipListener) {
+            return delegate.addMembershipListener(membershipListener);
+        }
+
+        @Override
+        public UUID getNodeId() {
+            return delegate.getNodeId();
+        }
+
+        @Override
+        public CompletableFuture<Snapshot> loadLatestSnapshot(String name) {
+            return delegate.loadLatestSnapshot(name);
+        }
+
+        @Override
+        public CompletableFuture<Void> replaceSnapshot(String name,
+                UUID expectedId, UUID newId, String payload) {
+            return delegate.replaceSnapshot(name, expectedId, newId, payload);
+        }
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.collaborationengine.TestUtil.MockConfiguration;
+import com.vaadin.collaborationengine.util.MockConnectionContext;
+import com.vaadin.collaborationengine.util.MockService;
+import com.vaadin.collaborationengine.util.TestBackendFactory;
+import com.vaadin.flow.shared.Registration;
+
+public class ResilientBackendTest {
+
+    private static final String LOG_ID = ResilientBackendTest.class.getName();
+
+    private ScheduledExecutorService scheduler;
+
+    private FailingBackend delegate;
+
+    private ResilientBackend backend;
+
+    @Before
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        delegate = new FailingBackend(
+                new TestBackendFactory().createBackend());
+        backend = new ResilientBackend(delegate, scheduler);
+        backend.setFailureThreshold(2);
+        backend.setOpenDuration(Duration.ofMillis(50));
+    }
+
+    @After
+    public void cleanup() {
+        backend.close();
+    }
+
+    @Test
+    public void submitEvents_deliveredInOrder() throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        Backend.EventLog log = backend.openEventLog(LOG_ID);
+        log.subscribe(null, (id, event) -> received.add(event));
+
+        log.submitEvent(UUID.randomUUID(), "a");
+        log.submitEvent(UUID.randomUUID(), "b");
+        log.submitEvent(UUID.randomUUID(), "c");
+
+        waitUntil(() -> received.size() == 3);
+        Assert.assertEquals(List.of("a", "b", "c"), received);
+    }
+
+    @Test
+    public void delegateFails_submitDoesNotThrow_circuitOpens()
+            throws Exception {
+        delegate.failing.set(true);
+        Backend.EventLog log = backend.openEventLog(LOG_ID);
+
+        log.submitEvent(UUID.randomUUID(), "a");
+
+        waitUntil(backend::isDegraded);
+    }
+
+    @Test
+    public void delegateRecovers_queuedEventsDelivered_circuitCloses()
+            throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        delegate.failing.set(true);
+        Backend.EventLog log = backend.openEventLog(LOG_ID);
+        log.subscribe(null, (id, event) -> received.add(event));
+
+        log.submitEvent(UUID.randomUUID(), "a");
+        log.submitEvent(UUID.randomUUID(), "b");
+        waitUntil(backend::isDegraded);
+        Assert.assertTrue(received.isEmpty());
+
+        delegate.failing.set(false);
+
+        waitUntil(() -> received.size() == 2);
+        Assert.assertEquals(List.of("a", "b"), received);
+        Assert.assertFalse(backend.isDegraded());
+    }
+
+    @Test
+    public void snapshotCallsFail_noSubmits_circuitClosesAfterRecovery()
+            throws Exception {
+        delegate.failing.set(true);
+        backend.loadLatestSnapshot("foo");
+        backend.loadLatestSnapshot("foo");
+        Assert.assertTrue(backend.isDegraded());
+
+        delegate.failing.set(false);
+
+        waitUntil(() -> !backend.isDegraded());
+    }
+
+    @Test
+    public void circuitOpen_submit_noCallBeforeOpenDuration()
+            throws Exception {
+        backend.setOpenDuration(Duration.ofSeconds(10));
+        delegate.failing.set(true);
+        Backend.EventLog log = backend.openEventLog(LOG_ID);
+        log.submitEvent(UUID.randomUUID(), "a");
+        waitUntil(backend::isDegraded);
+        int calls = delegate.submitCalls.get();
+
+        log.submitEvent(UUID.randomUUID(), "b");
+        Thread.sleep(200);
+
+        Assert.assertEquals(calls, delegate.submitCalls.get());
+    }
+
+    @Test
+    public void deliveryFailsBelowThreshold_retriedWithDelay()
+            throws Exception {
+        backend.setFailureThreshold(100);
+        backend.setOpenDuration(Duration.ofSeconds(10));
+        delegate.failing.set(true);
+        Backend.EventLog log = backend.openEventLog(LOG_ID);
+
+        log.submitEvent(UUID.randomUUID(), "a");
+        Thread.sleep(250);
+
+        // Attempts at 0, 100 and 300 ms
+        Assert.assertTrue(delegate.submitCalls.get() <= 3);
+        Assert.assertFalse(backend.isDegraded());
+    }
+
+    @Test
+    public void queueFull_submitThrows() throws Exception {
+        backend.setQueueCapacity(1);
+        CountDownLatch submitStarted = new CountDownLatch(1);
+        CountDownLatch releaseSubmit = new CountDownLatch(1);
+        delegate.beforeSubmit = () -> {
+            submitStarted.countDown();
+            try {
+                releaseSubmit.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Backend.EventLog log = backend.openEventLog(LOG_ID);
+
+        // First event is taken by the drain and blocks in the delegate
+        log.submitEvent(UUID.randomUUID(), "a");
+        Assert.assertTrue(submitStarted.await(5, TimeUnit.SECONDS));
+        // Second event fills the queue
+        log.submitEvent(UUID.randomUUID(), "b");
+
+        try {
+            Assert.assertThrows(IllegalStateException.class,
+                    () -> log.submitEvent(UUID.randomUUID(), "c"));
+        } finally {
+            releaseSubmit.countDown();
+        }
+    }
+
+    @Test
+    public void queueAlmostFull_concurrentBatches_onlyWholeBatchesQueued()
+            throws Exception {
+        backend.setQueueCapacity(10);
+        CountDownLatch submitStarted = new CountDownLatch(1);
+        CountDownLatch releaseSubmit = new CountDownLatch(1);
+        delegate.beforeSubmit = () -> {
+            submitStarted.countDown();
+            try {
+                releaseSubmit.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Backend.EventLog log = backend.openEventLog(LOG_ID);
+        log.submitEvent(UUID.randomUUID(), "blocking");
+        Assert.assertTrue(submitStarted.await(5, TimeUnit.SECONDS));
+
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    log.submitEvents(List.of(
+                            new Backend.Event(UUID.randomUUID(), "a"),
+                            new Backend.Event(UUID.randomUUID(), "b"),
+                            new Backend.Event(UUID.randomUUID(), "c")));
+                    accepted.incrementAndGet();
+                } catch (IllegalStateException e) {
+                    // Queue full
+                }
+            }));
+        }
+        try {
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            Assert.assertEquals(3, accepted.get());
+            Assert.assertEquals(9, backend.getQueuedEventCount());
+        } finally {
+            releaseSubmit.countDown();
+        }
+    }
+
+    @Test
+    public void submitHangs_callTimesOut_circuitOpens() throws Exception {
+        backend.setCallTimeout(Duration.ofMillis(50));
+        CountDownLatch releaseSubmit = new CountDownLatch(1);
+        delegate.beforeSubmit = () -> {
+            try {
+                releaseSubmit.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        List<String> received = new CopyOnWriteArrayList<>();
+        Backend.EventLog log = backend.openEventLog(LOG_ID);
+        log.subscribe(null, (id, event) -> received.add(event));
+
+        log.submitEvent(UUID.randomUUID(), "a");
+
+        try {
+            waitUntil(backend::isDegraded);
+        } finally {
+            releaseSubmit.countDown();
+        }
+        waitUntil(() -> !backend.isDegraded());
+        Assert.assertEquals(List.of("a"), received);
+    }
+
+    @Test
+    public void batchFailsHalfway_onlyRemainingEventsResubmitted()
+            throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        delegate.beforeSubmit = () -> {
+            if (attempts.incrementAndGet() == 2) {
+                throw new IllegalStateException("Fail on purpose");
+            }
+        };
+        List<String> received = new CopyOnWriteArrayList<>();
+        Backend.EventLog log = backend.openEventLog(LOG_ID);
+        log.subscribe(null, (id, event) -> received.add(event));
+
+        log.submitEvents(List.of(new Backend.Event(UUID.randomUUID(), "a"),
+                new Backend.Event(UUID.randomUUID(), "b"),
+                new Backend.Event(UUID.randomUUID(), "c")));
+
+        waitUntil(() -> received.size() >= 3);
+        Thread.sleep(100);
+        Assert.assertEquals(List.of("a", "b", "c"), received);
+    }
+
+    @Test
+    public void circuitOpen_truncate_truncatedAfterRecovery()
+            throws Exception {
+        Backend.EventLog log = backend.openEventLog(LOG_ID);
+        delegate.failing.set(true);
+        log.submitEvent(UUID.randomUUID(), "a");
+        waitUntil(backend::isDegraded);
+
+        log.truncate(UUID.randomUUID());
+        Thread.sleep(100);
+        Assert.assertEquals(0, delegate.truncateCalls.get());
+        delegate.failing.set(false);
+
+        waitUntil(() -> delegate.truncateCalls.get() == 1);
+    }
+
+    @Test
+    public void close_submitThrows() {
+        Backend.EventLog log = backend.openEventLog(LOG_ID);
+
+        backend.close();
+
+        Assert.assertThrows(IllegalStateException.class,
+                () -> log.submitEvent(UUID.randomUUID(), "a"));
+    }
+
+    @Test
+    public void backendDegraded_openTopicConnection_connectionFails()
+            throws Exception {
+        MockConfiguration configuration = new MockConfiguration();
+        configuration.setBackend(backend);
+        CollaborationEngine ce = TestUtil
+                .createTestCollaborationEngine(new MockService(), configuration);
+
+        delegate.failing.set(true);
+        backend.openEventLog(LOG_ID).submitEvent(UUID.randomUUID(), "a");
+        waitUntil(backend::isDegraded);
+
+        AtomicBoolean failed = new AtomicBoolean();
+        MockConnectionContext context = MockConnectionContext.createEager();
+        ce.openTopicConnection(context, "topic", new UserInfo("foo"),
+                connection -> null)
+                .onConnectionFailed(event -> failed.set(true));
+
+        Assert.assertTrue(failed.get());
+    }
+
+    private static void waitUntil(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static class FailingBackend extends Backend {
+        private final Backend backend;
+        private final AtomicBoolean failing = new AtomicBoolean();
+        private final AtomicInteger submitCalls = new AtomicInteger();
+        private final AtomicInteger truncateCalls = new AtomicInteger();
+        private volatile Runnable beforeSubmit = () -> {
+        };
+
+        private FailingBackend(Backend backend) {
+            this.backend = backend;
+        }
+
+        @Override
+        public EventLog openEventLog(String logId) {
+            EventLog log = backend.openEventLog(logId);
+            return new EventLog() {
+                @Override
+                public void submitEvent(UUID trackingId, String eventPayload) {
+                    beforeSubmit.run();
+                    submitCalls.incrementAndGet();
+                    if (failing.get()) {
+                        throw new IllegalStateException("Fail on purpose");
+                    }
+                    log.submitEvent(trackingId, eventPayload);
+                }
+
+                @Override
+                public Registration subscribe(UUID newerThan,
+                        BiConsumer<UUID, String> eventConsumer)
+                        throws EventIdNotFoundException {
+                    return log.subscribe(newerThan, eventConsumer);
+                }
+
+                @Override
+                public void truncate(UUID olderThan) {
+                    if (failing.get()) {
+                        throw new IllegalStateException("Fail on purpose");
+                    }
+                    truncateCalls.incrementAndGet();
+                    log.truncate(olderThan);
+                }
+            };
+        }
+
+        @Override
+        public Registration addMembershipListener(
+                MembershipListener membershipListener) {
+            return backend.addMembershipListener(membershipListener);
+        }
+
+        @Override
+        public UUID getNodeId() {
+            return backend.getNodeId();
+        }
+
+        @Override
+        public CompletableFuture<Snapshot> loadLatestSnapshot(String name) {
+            if (failing.get()) {
+                return CompletableFuture.failedFuture(
+                        new IllegalStateException("Fail on purpose"));
+            }
+            return backend.loadLatestSnapshot(name);
+        }
+
+        @Override
+        public CompletableFuture<Void> replaceSnapshot(
+                String name, UUID expectedId, UUID newId, String payload) {
+            return backend.replaceSnapshot(name, expectedId, newId, payload);
+        }
+    }
+}
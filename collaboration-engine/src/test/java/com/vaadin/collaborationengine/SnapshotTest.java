@@ -71,9 +71,9 @@ public class SnapshotTest {
                 .get("foo");
         Assert.assertNotNull(collaborationMapSnapshot);
         Assert.assertEquals("a",
-                collaborationMapSnapshot.get("1").data.asText());
+                collaborationMapSnapshot.get("1").data.get().asText());
         Assert.assertEquals("b",
-                collaborationMapSnapshot.get("2").data.asText());
+                collaborationMapSnapshot.get("2").data.get().asText());
     }
 
     @Test
@@ -91,10 +91,10 @@ public class SnapshotTest {
                 .get("foo").stream().collect(Collectors.toList());
         Iterator<EntryList.ListEntrySnapshot> iterator = listSnapshot
                 .iterator();
-        Assert.assertEquals("a", iterator.next().value.asText());
-        Assert.assertEquals("b", iterator.next().value.asText());
-        Assert.assertEquals("c", iterator.next().value.asText());
-        Assert.assertEquals("b", iterator.next().value.asText());
+        Assert.assertEquals("a", iterator.next().getValue().asText());
+        Assert.assertEquals("b", iterator.next().getValue().asText());
+        Assert.assertEquals("c", iterator.next().getValue().asText());
+        Assert.assertEquals("b", iterator.next().getValue().asText());
     }
 
     @Test
@@ -144,4 +144,19 @@ public class SnapshotTest {
         Assert.assertEquals(Collections.singletonList(expectedId),
                 snapshot.getBackendNodes());
     }
+
+    @Test
+    public void fromTopicWithOffset_offsetRetained() {
+        Topic.Snapshot snapshot = Topic.Snapshot
+                .fromTopic(connection.getTopic(), UUID.randomUUID(), 42);
+        Assert.assertEquals(42, snapshot.getLatestChangeOffset());
+    }
+
+    @Test
+    public void fromTopicWithoutOffset_noOffset() {
+        Topic.Snapshot snapshot = Topic.Snapshot
+                .fromTopic(connection.getTopic(), UUID.randomUUID());
+        Assert.assertEquals(Backend.EventLog.NO_OFFSET,
+                snapshot.getLatestChangeOffset());
+    }
 }
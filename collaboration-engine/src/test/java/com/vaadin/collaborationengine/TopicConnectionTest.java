@@ -30,6 +30,7 @@ import org.junit.Test;
 
 import com.vaadin.collaborationengine.util.MockConnectionContext;
 import com.vaadin.collaborationengine.util.MockConnectionContext.FailOnPurposeException;
+import com.vaadin.collaborationengine.util.MockConnectionContext.MockActionDispatcher;
 import com.vaadin.collaborationengine.util.MockService;
 import com.vaadin.flow.server.Command;
 import com.vaadin.flow.server.VaadinService;
@@ -178,6 +179,44 @@ public class TopicConnectionTest {
         Assert.assertTrue(activeTopics.isEmpty());
     }
 
+    @Test
+    public void changeToOtherMap_notDispatchedToConnection() {
+        map.subscribe(event -> {
+        });
+        MockConnectionContext otherContext = MockConnectionContext
+                .createEager();
+        AtomicReference<CollaborationMap> otherMap = new AtomicReference<>();
+        engine.openTopicConnection(otherContext, "topic",
+                SystemUserInfo.getInstance(), topicConnection -> {
+                    otherMap.set(topicConnection.getNamedMap("other"));
+                    return null;
+                });
+        context.resetActionDispatchCount();
+
+        otherMap.get().put("key", "value");
+
+        Assert.assertEquals(0, context.getDispatchActionCount());
+    }
+
+    @Test
+    public void multipleChangesWhileDispatcherHeld_submittedInOneAction() {
+        MockActionDispatcher dispatcher = (MockActionDispatcher) context
+                .getActionDispatcher();
+        dispatcher.hold();
+        map.put("a", "1");
+        map.put("b", "2");
+        map.put("c", "3");
+        context.resetActionDispatchCount();
+
+        dispatcher.release();
+
+        // One action submits all changes and one completes each result
+        Assert.assertEquals(4, context.getDispatchActionCount());
+        Assert.assertEquals("1", map.get("a", String.class));
+        Assert.assertEquals("2", map.get("b", String.class));
+        Assert.assertEquals("3", map.get("c", String.class));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void getNamedMap_throwsIfInactive() {
         connectionRegistration.remove();
@@ -15,9 +15,16 @@
  */
 package com.vaadin.collaborationengine;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -25,7 +32,9 @@ import org.junit.Test;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.vaadin.collaborationengine.Topic.ChangeResult;
+import com.vaadin.collaborationengine.util.MockService;
 import com.vaadin.collaborationengine.util.TestUtils;
+import com.vaadin.flow.shared.Registration;
 
 public class TopicTest {
 
@@ -130,6 +139,37 @@ public class TopicTest {
                 2, count.get());
     }
 
+    @Test
+    public void subscribeToMapChange_onlyChangesToThatMapDelivered() {
+        List<String> keys = new ArrayList<>();
+        topic.subscribeToMapChange("foo",
+                (id, event) -> keys.add(((MapChange) event).getKey()));
+
+        topic.applyChange(UUID.randomUUID(), JsonUtil.toString(JsonUtil
+                .createPutChange("foo", "a", null, MockJson.BAZ, null)));
+        topic.applyChange(UUID.randomUUID(), JsonUtil.toString(JsonUtil
+                .createPutChange("bar", "b", null, MockJson.BAZ, null)));
+        topic.applyChange(UUID.randomUUID(),
+                JsonUtil.toString(JsonUtil.createListChange(
+                        ListOperation.OperationType.INSERT_AFTER, "foo", null,
+                        null, MockJson.BAZ, null, Collections.emptyMap(),
+                        Collections.emptyMap(), null)));
+
+        Assert.assertEquals(List.of("a"), keys);
+    }
+
+    @Test
+    public void subscribeToMapChange_removeRegistration_noListenersLeft() {
+        Registration registration = topic.subscribeToMapChange("foo",
+                (id, event) -> {
+                });
+        Assert.assertTrue(topic.hasChangeListeners());
+
+        registration.remove();
+
+        Assert.assertFalse(topic.hasChangeListeners());
+    }
+
     @Test
     public void applyChange_listContainsAppendedItem() {
         ObjectNode change = JsonUtil.createListChange(
@@ -138,7 +178,7 @@ public class TopicTest {
                 Collections.emptyMap(), null);
         topic.applyChange(UUID.randomUUID(), JsonUtil.toString(change));
         Assert.assertEquals("foo",
-                topic.getListItems("foo").findFirst().get().value.textValue());
+                topic.getListItems("foo").findFirst().get().getValue().textValue());
     }
 
     @Test
@@ -181,8 +221,136 @@ public class TopicTest {
                 2, count.get());
     }
 
+    @Test
+    public void eventsSubmittedToLog_appliedByExecutor_moreRequestedAfterwards() {
+        List<Runnable> tasks = new ArrayList<>();
+        TestUtil.TestCollaborationEngine ce = TestUtil
+                .createTestCollaborationEngine(new MockService(),
+                        new AbstractExecutorService() {
+                            @Override
+                            public void execute(Runnable command) {
+                                tasks.add(command);
+                            }
+
+                            @Override
+                            public void shutdown() {
+                            }
+
+                            @Override
+                            public List<Runnable> shutdownNow() {
+                                return List.of();
+                            }
+
+                            @Override
+                            public boolean isShutdown() {
+                                return false;
+                            }
+
+                            @Override
+                            public boolean isTerminated() {
+                                return false;
+                            }
+
+                            @Override
+                            public boolean awaitTermination(long timeout,
+                                    TimeUnit unit) {
+                                return true;
+                            }
+                        });
+        ce.setAsynchronous(true);
+        Backend.EventLog log = ce.getConfiguration().getBackend()
+                .openEventLog("id");
+        AtomicLong requested = new AtomicLong();
+        Topic eventLogTopic = new Topic("id", () -> ce,
+                new RequestCountingEventLog(log, requested));
+
+        for (int i = 0; i < Topic.EVENT_BATCH_SIZE * 2; i++) {
+            ObjectNode change = JsonUtil.createPutChange("foo", "bar", null,
+                    MockJson.BAZ, null);
+            log.submitEvent(UUID.randomUUID(), JsonUtil.toString(change));
+        }
+
+        Assert.assertNull(eventLogTopic.getMapValue("foo", "bar"));
+        Assert.assertEquals(Topic.EVENT_BATCH_SIZE, requested.get());
+
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+
+        Assert.assertEquals("baz",
+                eventLogTopic.getMapValue("foo", "bar").textValue());
+        Assert.assertTrue(requested.get() > Topic.EVENT_BATCH_SIZE);
+    }
+
     @Test
     public void serializeTopic() {
         Topic deserializedTopic = TestUtils.serialize(topic);
     }
+
+    private static class RequestCountingEventLog implements Backend.EventLog {
+        private final Backend.EventLog log;
+        private final AtomicLong requested;
+
+        private RequestCountingEventLog(Backend.EventLog log,
+                AtomicLong requested) {
+            this.log = log;
+            this.requested = requested;
+        }
+
+        @Override
+        public void submitEvent(UUID trackingId, String eventPayload) {
+            log.submitEvent(trackingId, eventPayload);
+        }
+
+        @Override
+        public Registration subscribe(UUID newerThan,
+                BiConsumer<UUID, String> eventConsumer)
+                throws Backend.EventIdNotFoundException {
+            return log.subscribe(newerThan, eventConsumer);
+        }
+
+        @Override
+        public Flow.Publisher<Backend.OffsetEvent> publisher(UUID newerThan,
+                long newerThanOffset) {
+            return subscriber -> log.publisher(newerThan, newerThanOffset)
+                    .subscribe(new Flow.Subscriber<Backend.OffsetEvent>() {
+                        @Override
+                        public void onSubscribe(
+                                Flow.Subscription subscription) {
+                            subscriber.onSubscribe(new Flow.Subscription() {
+                                @Override
+                                public void request(long n) {
+                                    requested.addAndGet(n);
+                                    subscription.request(n);
+                                }
+
+                                @Override
+                                public void cancel() {
+                                    subscription.cancel();
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onNext(Backend.OffsetEvent item) {
+                            subscriber.onNext(item);
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable) {
+                            subscriber.onError(throwable);
+                        }
+
+                        @Override
+                        public void onComplete() {
+                            subscriber.onComplete();
+                        }
+                    });
+        }
+
+        @Override
+        public void truncate(UUID olderThan) {
+            log.truncate(olderThan);
+        }
+    }
 }
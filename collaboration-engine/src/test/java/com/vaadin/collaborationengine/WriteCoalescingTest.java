@@ -0,0 +1,147 @@
+/*
+ * Copyright 2000-2024 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.vaadin.collaborationengine;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.vaadin.collaborationengine.TestUtil.MockConfiguration;
+import com.vaadin.collaborationengine.util.MockService;
+import com.vaadin.collaborationengine.util.TestBackendFactory;
+
+public class WriteCoalescingTest {
+
+    private static final Duration INTERVAL = Duration.ofMillis(50);
+
+    private CollaborationEngine node;
+
+    private TopicConnectionRegistration registration;
+
+    private CollaborationMap map;
+
+    private List<String> submittedValues;
+
+    @Before
+    public void init() throws Exception {
+        Backend backend = new TestBackendFactory().createBackend();
+        submittedValues = new CopyOnWriteArrayList<>();
+        backend.openEventLog("topic").subscribe(null, (id, payload) -> {
+            ObjectNode change = JsonUtil.fromString(payload);
+            if (JsonUtil.CHANGE_TYPE_PUT
+                    .equals(change.get(JsonUtil.CHANGE_TYPE).asText())) {
+                submittedValues
+                        .add(change.get(JsonUtil.CHANGE_VALUE).asText());
+            }
+        });
+        CollaborationEngineConfiguration conf = new MockConfiguration();
+        conf.setBackend(backend);
+        conf.setWriteCoalescingInterval(INTERVAL);
+        node = TestUtil.createTestCollaborationEngine(new MockService(), conf);
+
+        AtomicReference<CollaborationMap> mapReference = new AtomicReference<>();
+        registration = node.openTopicConnection(node.getSystemContext(),
+                "topic", new UserInfo("foo"), connection -> {
+                    mapReference.set(connection.getNamedMap("map"));
+                    return null;
+                });
+        map = mapReference.get();
+    }
+
+    @Test
+    public void putSameKeyRepeatedly_onlyLatestValueSubmitted()
+            throws Exception {
+        CompletableFuture<Void> first = map.put("key", "a");
+        CompletableFuture<Void> second = map.put("key", "ab");
+        CompletableFuture<Void> third = map.put("key", "abc");
+        Assert.assertEquals(List.of(), submittedValues);
+
+        CompletableFuture.allOf(first, second, third).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(List.of("abc"), submittedValues);
+        Assert.assertEquals("abc", map.get("key", String.class));
+    }
+
+    @Test
+    public void putDifferentKeys_eachKeySubmitted() throws Exception {
+        CompletableFuture.allOf(map.put("first", "a"), map.put("second", "b"))
+                .get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(2, submittedValues.size());
+        Assert.assertTrue(submittedValues.containsAll(List.of("a", "b")));
+    }
+
+    @Test
+    public void putAfterInterval_submittedSeparately() throws Exception {
+        map.put("key", "a").get(5, TimeUnit.SECONDS);
+        map.put("key", "b").get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(List.of("a", "b"), submittedValues);
+    }
+
+    @Test
+    public void replace_notCoalesced() throws Exception {
+        map.put("key", "a").get(5, TimeUnit.SECONDS);
+
+        Assert.assertTrue(map.replace("key", "a", "b").get(5,
+                TimeUnit.SECONDS));
+        Assert.assertEquals("b", map.get("key", String.class));
+    }
+
+    @Test
+    public void replaceWhilePutPending_pendingPutSubmittedFirst()
+            throws Exception {
+        CompletableFuture<Void> put = map.put("key", "a");
+
+        Assert.assertTrue(map.replace("key", "a", "b").get(5,
+                TimeUnit.SECONDS));
+        put.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(List.of("a"), submittedValues);
+        Assert.assertEquals("b", map.get("key", String.class));
+    }
+
+    @Test
+    public void deactivateBeforeInterval_latestValueSubmitted()
+            throws Exception {
+        CompletableFuture<Void> future = map.put("key", "a");
+        map.put("key", "b");
+
+        registration.remove();
+
+        future.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(List.of("b"), submittedValues);
+    }
+
+    @Test
+    public void deactivateBeforeInterval_connectionScope_submittedThenRemoved()
+            throws Exception {
+        CompletableFuture<Void> future = map.put("key", "a",
+                EntryScope.CONNECTION);
+
+        registration.remove();
+
+        future.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(List.of("a", "null"), submittedValues);
+    }
+}
@@ -135,6 +135,22 @@ public class MockConnectionContext implements ConnectionContext {
             actions.clear();
         }
 
+        /**
+         * Runs the held actions in order like a real dispatcher would, so that
+         * actions dispatched while running them are run after the ones that
+         * were already held.
+         */
+        public void releaseInOrder() {
+            while (!actions.isEmpty()) {
+                execute(actions.remove(0));
+            }
+            hold = false;
+        }
+
+        public int getHeldActionCount() {
+            return actions.size();
+        }
+
         @Override
         public <T> CompletableFuture<T> createCompletableFuture() {
             return new CompletableFuture<>();
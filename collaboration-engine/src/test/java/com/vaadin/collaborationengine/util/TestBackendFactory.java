@@ -47,6 +47,8 @@ public class TestBackendFactory {
 
     private Map<String, Backend.Snapshot> snapshots = new HashMap<>();
 
+    private long nextOffset;
+
     public TestBackend createBackend() {
         return new TestBackend();
     }
@@ -66,10 +68,12 @@ public class TestBackendFactory {
     }
 
     private static class IdAndEvent {
+        private final long offset;
         private final UUID id;
         private final String event;
 
-        private IdAndEvent(UUID id, String event) {
+        private IdAndEvent(long offset, UUID id, String event) {
+            this.offset = offset;
             this.id = id;
             this.event = event;
         }
@@ -79,7 +83,7 @@ public class TestBackendFactory {
 
         private final List<IdAndEvent> events;
 
-        private final List<BiConsumer<UUID, String>> consumers = new ArrayList<>();
+        private final List<Backend.OffsetEventConsumer> consumers = new ArrayList<>();
 
         private TestEventLog(List<IdAndEvent> events) {
             this.events = events;
@@ -87,17 +91,34 @@ public class TestBackendFactory {
 
         @Override
         public void submitEvent(UUID trackingId, String eventPayload) {
-            events.add(new IdAndEvent(trackingId, eventPayload));
-            consumers.forEach(
-                    consumer -> consumer.accept(trackingId, eventPayload));
+            long offset = nextOffset++;
+            events.add(new IdAndEvent(offset, trackingId, eventPayload));
+            // Copy to allow consumers to unsubscribe while handling the event
+            new ArrayList<>(consumers).forEach(consumer -> consumer
+                    .accept(offset, trackingId, eventPayload));
         }
 
         @Override
         public Registration subscribe(UUID newerThan,
                 BiConsumer<UUID, String> consumer)
                 throws Backend.EventIdNotFoundException {
+            return subscribe(newerThan, NO_OFFSET,
+                    (offset, id, event) -> consumer.accept(id, event));
+        }
+
+        @Override
+        public Registration subscribe(UUID newerThan, long newerThanOffset,
+                Backend.OffsetEventConsumer consumer)
+                throws Backend.EventIdNotFoundException {
             Predicate<IdAndEvent> filter = e -> true;
-            if (newerThan != null) {
+            if (newerThanOffset != NO_OFFSET) {
+                if (events.stream()
+                        .noneMatch(item -> item.offset == newerThanOffset)) {
+                    throw new Backend.EventIdNotFoundException(
+                            "newerThanOffset doesn't exist in the log.");
+                }
+                filter = e -> e.offset > newerThanOffset;
+            } else if (newerThan != null) {
                 Optional<IdAndEvent> newerThanIdAndEvent = events.stream()
                         .filter(item -> newerThan.equals(item.id)).findFirst();
                 if (newerThanIdAndEvent.isEmpty()) {
@@ -116,7 +137,7 @@ public class TestBackendFactory {
                 };
             }
             events.stream().filter(filter)
-                    .forEach(e -> consumer.accept(e.id, e.event));
+                    .forEach(e -> consumer.accept(e.offset, e.id, e.event));
             consumers.add(consumer);
             return () -> consumers.remove(consumer);
         }
@@ -143,6 +164,16 @@ public class TestBackendFactory {
             }
             events.removeIf(filter);
         }
+
+        @Override
+        public void truncate(UUID olderThan, long olderThanOffset) {
+            if (olderThanOffset == NO_OFFSET) {
+                truncate(olderThan);
+            } else if (events.stream()
+                    .anyMatch(item -> item.offset == olderThanOffset)) {
+                events.removeIf(e -> e.offset < olderThanOffset);
+            }
+        }
     }
 
     public class TestBackend extends Backend {